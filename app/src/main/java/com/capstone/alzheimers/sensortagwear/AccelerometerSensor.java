@@ -0,0 +1,31 @@
+package com.capstone.alzheimers.sensortagwear;
+
+import com.capstone.alzheimers.sensortagwear.core.SensorSample;
+import com.capstone.alzheimers.sensortagwear.core.SensorTagDecoder;
+
+import java.util.UUID;
+
+/**
+ * Implements the Accelerometer (CC2541 SensorTag).
+ */
+public class AccelerometerSensor extends Sensor
+{
+
+    public AccelerometerSensor(UUID serviceUuid,BluetoothLeService mBluetoothLeService,String address)
+    {
+        super(serviceUuid,mBluetoothLeService,address);
+    }
+
+    @Override
+    public void decode(byte[] value,SensorSample sample)
+    {
+        SensorTagDecoder.decodeAccelerometer(value,sample);
+    }
+
+    @Override
+    protected void appendTo(StringBuilder builder)
+    {
+        appendValues(builder,0,3,"G");
+    }
+
+}
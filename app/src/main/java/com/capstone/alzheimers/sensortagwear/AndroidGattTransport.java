@@ -0,0 +1,362 @@
+package com.capstone.alzheimers.sensortagwear;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothProfile;
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.capstone.alzheimers.sensortagwear.core.ConnectionProfile;
+import com.capstone.alzheimers.sensortagwear.core.GattTransport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * GATT transport on top of the Android Bluetooth stack, one BluetoothGatt per device. The
+ * BluetoothGatt of a device is kept across disconnections, with its services, until closed, and
+ * the characteristics it resolves are kept until its services are discovered again.
+ */
+public class AndroidGattTransport implements GattTransport
+{
+
+    private final static String TAG = AndroidGattTransport.class.getSimpleName();
+    // Logging of every GATT event, off in release builds. In debug builds, enable it with
+    // "adb shell setprop log.tag.AndroidGattTransport VERBOSE" before the app starts.
+    private final static boolean VERBOSE = BuildConfig.DEBUG && Log.isLoggable(TAG, Log.VERBOSE);
+    private final static UUID CLIENT_CHARACTERISTIC_CONFIG = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+
+    private final Context mContext;
+    private final BluetoothAdapter mBluetoothAdapter;
+    //private String mBluetoothDeviceAddress;
+    //private BluetoothGatt mBluetoothGatt;
+    private ConcurrentHashMap<String,BluetoothGatt> mBluetoothGattMap = new ConcurrentHashMap<String,BluetoothGatt>();
+    private CopyOnWriteArrayList<String> mBluetoothDeviceAddressList = new CopyOnWriteArrayList<String>();
+    // Characteristics resolved on each device, by characteristic UUID.
+    private ConcurrentHashMap<String,ConcurrentHashMap<UUID,BluetoothGattCharacteristic>> mCharacteristicMap =
+            new ConcurrentHashMap<String,ConcurrentHashMap<UUID,BluetoothGattCharacteristic>>();
+    private volatile Callback mCallback;
+
+    public AndroidGattTransport(Context context, BluetoothAdapter adapter)
+    {
+        mContext = context;
+        mBluetoothAdapter = adapter;
+    }
+
+    /**
+     * Implements callback methods for GATT events that the app cares about.
+     * For example, connection change and services discovered.
+     */
+    private final BluetoothGattCallback mGattCallback = new BluetoothGattCallback()
+    {
+
+        @Override
+        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState)
+        {
+            if (newState == BluetoothProfile.STATE_CONNECTED)
+            {
+                Log.i(TAG, "Connected to GATT server.");
+                // Service discovery, if needed, is up to the engine.
+                mCallback.onConnectionStateChange(gatt.getDevice().getAddress(), true);
+            } else if (newState == BluetoothProfile.STATE_DISCONNECTED)
+            {
+                Log.i(TAG, "Disconnected from GATT server.");
+                mCallback.onConnectionStateChange(gatt.getDevice().getAddress(), false);
+            }
+        }
+
+        @Override
+        public void onServicesDiscovered(BluetoothGatt gatt, int status)
+        {
+            if (status== BluetoothGatt.GATT_SUCCESS)
+            {
+                if (VERBOSE)
+                {
+                    for(int i=0;i<gatt.getServices().size();i++)
+                    {
+                        BluetoothGattService bgs=gatt.getServices().get(i);
+                        Log.v(TAG, "found service " + bgs.getUuid().toString());
+                        Log.v(TAG, bgs.getCharacteristics().toString());
+                    }
+                }
+                mCallback.onServicesDiscovered(gatt.getDevice().getAddress(), true);
+            } else
+            {
+                Log.w(TAG, "onServicesDiscovered received: " + status);
+                mCallback.onServicesDiscovered(gatt.getDevice().getAddress(), false);
+            }
+        }
+
+        @Override
+        public void onCharacteristicWrite(BluetoothGatt gatt,
+                                          BluetoothGattCharacteristic characteristic,
+                                          int status)
+        {
+            if (VERBOSE)
+                Log.v(TAG, "onCharacteristicWrite received: " + status);
+            mCallback.onCharacteristicWrite(gatt.getDevice().getAddress(), characteristic.getUuid(), status);
+        }
+
+        @Override
+        public void onCharacteristicRead(BluetoothGatt gatt,
+                                         BluetoothGattCharacteristic characteristic,
+                                         int status)
+        {
+            if (VERBOSE)
+                Log.v(TAG, "onCharacteristicRead received: " + status);
+            mCallback.onCharacteristicRead(gatt.getDevice().getAddress(), characteristic.getUuid(), characteristic.getValue(), status);
+        }
+
+        @Override
+        public void onCharacteristicChanged(BluetoothGatt gatt,
+                                            BluetoothGattCharacteristic characteristic) {
+            // Stamped before anything else, on the clock that keeps counting in deep sleep.
+            long timestampNanos = SystemClock.elapsedRealtimeNanos();
+            if (VERBOSE)
+                Log.v(TAG, "onCharacteristicChanged received: " + characteristic.getUuid());
+            // The stack sets a new value array for every notification, so it is handed off as is.
+            mCallback.onCharacteristicChanged(gatt.getDevice().getAddress(), characteristic.getUuid(), characteristic.getValue(), timestampNanos);
+        }
+
+        @Override
+        public void onDescriptorRead(BluetoothGatt gatt,BluetoothGattDescriptor descriptor, int status)
+        {
+            if (VERBOSE)
+                Log.v(TAG, "onDescriptorRead received: " + descriptor.getUuid().toString());
+        }
+
+        @Override
+        public void onDescriptorWrite(BluetoothGatt gatt,BluetoothGattDescriptor descriptor, int status)
+        {
+            if (VERBOSE)
+                Log.v(TAG, "onDescriptorWrite received: " + descriptor.getUuid().toString());
+            mCallback.onDescriptorWrite(gatt.getDevice().getAddress(), descriptor.getCharacteristic().getUuid(), status);
+        }
+
+    };
+
+    @Override
+    public void setCallback(Callback callback)
+    {
+        mCallback = callback;
+    }
+
+    /**
+     * Connects to the GATT server hosted on the Bluetooth LE device.
+     *
+     * @param address The device address of the destination device.
+     *
+     * @return Return true if the connection is initiated successfully. The connection result
+     *         is reported asynchronously through the
+     *         {@code BluetoothGattCallback#onConnectionStateChange(android.bluetooth.BluetoothGatt, int, int)}
+     *         callback.
+     */
+    @Override
+    public boolean connect(final String address) {
+        if (address == null) {
+            Log.w(TAG, "Unspecified address.");
+            return false;
+        }
+        // Previously connected device.  Try to reconnect.
+        //if (mBluetoothDeviceAddress != null && address.equals(mBluetoothDeviceAddress) && mBluetoothGatt != null)
+        if (mBluetoothDeviceAddressList.contains(address) && mBluetoothGattMap.containsKey(address))
+        {
+            Log.d(TAG, "Trying to use an existing mBluetoothGatt for connection.");
+            BluetoothGatt gatt = mBluetoothGattMap.get(address);
+            if (gatt.connect())
+                return true;
+        }
+        final BluetoothDevice device = mBluetoothAdapter.getRemoteDevice(address);
+        // We want to directly connect to the device, so we are setting the autoConnect
+        // parameter to false.
+
+        mCharacteristicMap.remove(address);
+        mBluetoothGattMap.put(address, device.connectGatt(mContext, false, mGattCallback));
+        Log.d(TAG, "Trying to create a new connection.");
+        mBluetoothDeviceAddressList.addIfAbsent(address);
+        return true;
+    }
+
+    @Override
+    public boolean discoverServices(String address)
+    {
+        BluetoothGatt gatt = mBluetoothGattMap.get(address);
+        if (gatt == null)
+            return false;
+        // Discovery replaces the services, and their characteristics.
+        mCharacteristicMap.remove(address);
+        boolean started = gatt.discoverServices();
+        Log.i(TAG, "Attempting to start service discovery:" + started);
+        return started;
+    }
+
+    @Override
+    public void disconnect(String address)
+    {
+        BluetoothGatt gatt = mBluetoothGattMap.get(address);
+        if (gatt != null)
+            gatt.disconnect();
+    }
+
+    /**
+     * After using a given BLE device, the app must call this method to ensure resources are
+     * released properly.
+     */
+    @Override
+    public void closeAll()
+    {
+        for (BluetoothGatt gatt : mBluetoothGattMap.values()) {
+            gatt.close();
+        }
+
+        mBluetoothGattMap.clear();
+        mBluetoothDeviceAddressList.clear();
+        mCharacteristicMap.clear();
+    }
+
+    @Override
+    public List<String> getAddresses()
+    {
+        return mBluetoothDeviceAddressList;
+    }
+
+    /**
+     * Retrieves the UUIDs of the supported GATT services on the connected device, or null before
+     * {@code BluetoothGatt#discoverServices()} completes successfully.
+     */
+    @Override
+    public List<UUID> getServices(String address)
+    {
+        BluetoothGatt gatt = mBluetoothGattMap.get(address);
+        if (gatt == null || gatt.getServices().isEmpty())
+            return null;
+        List<UUID> services = new ArrayList<UUID>();
+        for (BluetoothGattService service : gatt.getServices())
+            services.add(service.getUuid());
+        return services;
+    }
+
+    @Override
+    public List<UUID> getCharacteristics(String address, UUID serviceUuid)
+    {
+        BluetoothGatt gatt = mBluetoothGattMap.get(address);
+        BluetoothGattService service = gatt == null ? null : gatt.getService(serviceUuid);
+        if (service == null)
+            return null;
+        List<UUID> characteristics = new ArrayList<UUID>();
+        for (BluetoothGattCharacteristic characteristic : service.getCharacteristics())
+            characteristics.add(characteristic.getUuid());
+        return characteristics;
+    }
+
+    @Override
+    public boolean hasCharacteristic(String address, UUID serviceUuid, UUID characteristicUuid)
+    {
+        return getCharacteristic(address, serviceUuid, characteristicUuid) != null;
+    }
+
+    @Override
+    public boolean writeCharacteristic(String address, UUID serviceUuid, UUID characteristicUuid, byte[] value)
+    {
+        BluetoothGattCharacteristic characteristic = getCharacteristic(address, serviceUuid, characteristicUuid);
+        if (characteristic == null)
+            return false;
+        characteristic.setValue(value);
+        return mBluetoothGattMap.get(address).writeCharacteristic(characteristic);
+    }
+
+    @Override
+    public boolean readCharacteristic(String address, UUID serviceUuid, UUID characteristicUuid)
+    {
+        BluetoothGattCharacteristic characteristic = getCharacteristic(address, serviceUuid, characteristicUuid);
+        if (characteristic == null)
+            return false;
+        return mBluetoothGattMap.get(address).readCharacteristic(characteristic);
+    }
+
+    /**
+     * Enables or disables notification on a give characteristic, locally then remotely.
+     */
+    @Override
+    public boolean setNotification(String address, UUID serviceUuid, UUID characteristicUuid, boolean enabled)
+    {
+        BluetoothGattCharacteristic characteristic = getCharacteristic(address, serviceUuid, characteristicUuid);
+        if (characteristic == null)
+            return false;
+        BluetoothGatt gatt = mBluetoothGattMap.get(address);
+        gatt.setCharacteristicNotification(characteristic, enabled); // Enabled locally.
+        BluetoothGattDescriptor clientConfig=characteristic.getDescriptor(CLIENT_CHARACTERISTIC_CONFIG);
+        if (clientConfig == null)
+        {
+            Log.w(TAG, "No client configuration descriptor on " + characteristicUuid);
+            return false;
+        }
+        clientConfig.setValue(enabled ? BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE : BluetoothGattDescriptor.DISABLE_NOTIFICATION_VALUE);
+        return gatt.writeDescriptor(clientConfig); // Enabled remotely.
+    }
+
+    @Override
+    public boolean requestConnectionPriority(String address, ConnectionProfile profile)
+    {
+        BluetoothGatt gatt = mBluetoothGattMap.get(address);
+        if (gatt == null)
+            return false;
+        int priority;
+        switch (profile)
+        {
+            case HIGH_THROUGHPUT:
+                priority = BluetoothGatt.CONNECTION_PRIORITY_HIGH;
+                break;
+            case LOW_POWER:
+                priority = BluetoothGatt.CONNECTION_PRIORITY_LOW_POWER;
+                break;
+            default:
+                priority = BluetoothGatt.CONNECTION_PRIORITY_BALANCED;
+                break;
+        }
+        return gatt.requestConnectionPriority(priority);
+    }
+
+    /**
+     * Gives the characteristic of the device, resolved once then reused.
+     */
+    private BluetoothGattCharacteristic getCharacteristic(String address, UUID serviceUuid, UUID characteristicUuid)
+    {
+        ConcurrentHashMap<UUID,BluetoothGattCharacteristic> characteristics = mCharacteristicMap.get(address);
+        if (characteristics != null)
+        {
+            BluetoothGattCharacteristic characteristic = characteristics.get(characteristicUuid);
+            if (characteristic != null && characteristic.getService().getUuid().equals(serviceUuid))
+                return characteristic;
+        }
+        BluetoothGatt gatt = mBluetoothGattMap.get(address);
+        if (gatt == null)
+        {
+            Log.w(TAG, "GATT does not exist");
+            return null;
+        }
+        BluetoothGattService service = gatt.getService(serviceUuid);
+        BluetoothGattCharacteristic characteristic = service == null ? null : service.getCharacteristic(characteristicUuid);
+        if (characteristic == null)
+            return null;
+        if (characteristics == null)
+        {
+            characteristics = new ConcurrentHashMap<UUID,BluetoothGattCharacteristic>();
+            ConcurrentHashMap<UUID,BluetoothGattCharacteristic> existing = mCharacteristicMap.putIfAbsent(address, characteristics);
+            if (existing != null)
+                characteristics = existing;
+        }
+        characteristics.put(characteristicUuid, characteristic);
+        return characteristic;
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.capstone.alzheimers.sensortagwear;
+
+import com.capstone.alzheimers.sensortagwear.core.AdaptivePeriodController;
+import com.capstone.alzheimers.sensortagwear.core.GattOperation;
+import com.capstone.alzheimers.sensortagwear.core.SensorDescriptor;
+import com.capstone.alzheimers.sensortagwear.core.SensorSample;
+import com.capstone.alzheimers.sensortagwear.core.SensorTagDecoder;
+
+import java.util.UUID;
+
+/**
+ * Implements the Barometric Pressure Sensor. The CC2650 reports compensated values, the CC2541
+ * reports raw values that need the coefficients of its calibration characteristic.
+ */
+public class BarometerSensor extends Sensor
+{
+
+    // CC2541 only. Not initialized in a field initializer: set while the super constructor runs.
+    private volatile long[] calibration;
+
+    public BarometerSensor(UUID serviceUuid,BluetoothLeService mBluetoothLeService,String address)
+    {
+        super(serviceUuid,mBluetoothLeService,address);
+    }
+
+    /**
+     * Reads the calibration first if the tag has one, then turns the sensor on.
+     */
+    @Override
+    public void turnOnService()
+    {
+        if(this.calibration==null)
+            readCalibration();
+        super.turnOnService();
+    }
+
+    private void readCalibration()
+    {
+        UUID calibrationUuid=getDescriptor().getCalibrationUuid();
+        if(!getBluetoothLeService().hasCharacteristic(getServiceUuid(),calibrationUuid,getDeviceAddress()))
+            return; // CC2650
+        // 2: make the calibration readable.
+        getBluetoothLeService().writeCharacteristic(getServiceUuid(),getDescriptor().getConfigUuid(),
+                new byte[]{2},getDeviceAddress(),getOperationCallback());
+        getBluetoothLeService().readCharacteristic(getServiceUuid(),calibrationUuid,getDeviceAddress(),new GattOperation.Callback()
+        {
+            @Override
+            public void onComplete(GattOperation operation,int status)
+            {
+                byte[] value=operation.getValue();
+                if(status!=GattOperation.STATUS_SUCCESS||value==null||value.length<16)
+                    return;
+                long[] coefficients=new long[8];
+                SensorTagDecoder.parseBarometerCalibration(value,coefficients);
+                calibration=coefficients;
+            }
+        });
+    }
+
+    /**
+     * Quiet within 0.1 C and 0.1 hPa.
+     */
+    @Override
+    protected AdaptivePeriodController createPeriodController()
+    {
+        return new AdaptivePeriodController(SensorDescriptor.BAROMETER.getDefaultPeriod(),
+                AdaptivePeriodController.MAX_PERIOD,0.1,0);
+    }
+
+    @Override
+    public void decode(byte[] value,SensorSample sample)
+    {
+        long[] coefficients=this.calibration;
+        if(value.length>=6)
+            SensorTagDecoder.decodeBarometer(value,sample);
+        else if(coefficients!=null)
+            SensorTagDecoder.decodeBarometer(value,coefficients,sample);
+    }
+
+    @Override
+    protected void appendTo(StringBuilder builder)
+    {
+        appendValues(builder,0,1,"C");
+        builder.append(' ');
+        appendValues(builder,1,2,"hPa");
+    }
+
+}
@@ -2,28 +2,44 @@ package com.capstone.alzheimers.sensortagwear;
 
 import android.app.Service;
 import android.bluetooth.BluetoothAdapter;
-import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothGatt;
-import android.bluetooth.BluetoothGattCallback;
-import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattDescriptor;
-import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothManager;
-import android.bluetooth.BluetoothProfile;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Binder;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.util.Log;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import com.capstone.alzheimers.sensortagwear.core.ConnectionOrchestrator;
+import com.capstone.alzheimers.sensortagwear.core.DeviceLink;
+import com.capstone.alzheimers.sensortagwear.core.FallDetector;
+import com.capstone.alzheimers.sensortagwear.core.GattLayoutCache;
+import com.capstone.alzheimers.sensortagwear.core.GattOperation;
+import com.capstone.alzheimers.sensortagwear.core.GattTransport;
+import com.capstone.alzheimers.sensortagwear.core.LivenessMonitor;
+import com.capstone.alzheimers.sensortagwear.core.MetricsRegistry;
+import com.capstone.alzheimers.sensortagwear.core.MotionFusion;
+import com.capstone.alzheimers.sensortagwear.core.NotificationListener;
+import com.capstone.alzheimers.sensortagwear.core.SensorTagEngine;
+import com.capstone.alzheimers.sensortagwear.core.StageQueue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * Service for managing connection and data communication with a GATT server hosted on a
- * given Bluetooth LE device.
+ * given Bluetooth LE device. The pipeline itself is a {@link SensorTagEngine} on top of an
+ * {@link AndroidGattTransport}; this service adds the Android lifecycle and the broadcasts.
  */
 public class BluetoothLeService extends Service {
 
@@ -31,10 +47,33 @@ public class BluetoothLeService extends Service {
     // Bluetooth instances.
     private BluetoothManager mBluetoothManager;
     private BluetoothAdapter mBluetoothAdapter;
-    //private String mBluetoothDeviceAddress;
-    //private BluetoothGatt mBluetoothGatt;
-    private HashMap<String,BluetoothGatt> mBluetoothGattMap = new HashMap<String,BluetoothGatt>();
-    private ArrayList<String> mBluetoothDeviceAddressList = new ArrayList<String>();
+    private SensorTagEngine mEngine;
+    private final ScheduledExecutorService mOperationTimer = Executors.newSingleThreadScheduledExecutor();
+    // Watchdog of every sensor of every tag, ticking on the operation timer. Recoveries run on
+    // their own thread.
+    private final ExecutorService mRecoveryExecutor = Executors.newSingleThreadExecutor();
+    private final LivenessMonitor mLivenessMonitor = new LivenessMonitor(mOperationTimer, mRecoveryExecutor,
+            LivenessMonitor.DEFAULT_TICK_MILLIS, LivenessMonitor.DEFAULT_WHEEL_SIZE);
+
+    // Sensor configurators run on the main thread during bring-up.
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Executor mMainExecutor = new Executor()
+    {
+        @Override
+        public void execute(Runnable command)
+        {
+            mMainHandler.post(command);
+        }
+    };
+
+    public final static String METRICS_FILE = "metrics.txt";
+    // GATT layout and firmware revision of every known tag.
+    public final static String LAYOUT_CACHE_FILE = "gatt_layouts.bin";
+
+    // Streams waiting for their broadcast at most, one notification each.
+    private final static int BROADCAST_QUEUE_CAPACITY = 256;
+    // ACTION_DATA_NOTIFY broadcasts are only sent when enabled.
+    private boolean mNotificationBroadcastsEnabled = false;
 
     // Actions.
     public final static String ACTION_GATT_CONNECTED =
@@ -55,96 +94,111 @@ public class BluetoothLeService extends Service {
             "com.example.cyril.sensortagti.EXTRA_UUID";
     public final static String EXTRA_DEVICEADDRESS =
             "com.example.cyril.sensortagti.EXTRA_DEVICEADDRESS";
+    // Of ACTION_DATA_NOTIFY: SystemClock.elapsedRealtimeNanos() at the GATT callback, and the
+    // sequence number of the notification in its stream.
+    public final static String EXTRA_TIMESTAMP =
+            "com.example.cyril.sensortagti.EXTRA_TIMESTAMP";
+    public final static String EXTRA_SEQUENCE =
+            "com.example.cyril.sensortagti.EXTRA_SEQUENCE";
+    // Falls and impacts seen by the motion fusion, with EXTRA_DEVICEADDRESS and EXTRA_TIMESTAMP,
+    // the time of the impact.
+    public final static String ACTION_FALL_DETECTED =
+            "com.capstone.alzheimers.sensortagwear.ACTION_FALL_DETECTED";
+    public final static String ACTION_IMPACT_DETECTED =
+            "com.capstone.alzheimers.sensortagwear.ACTION_IMPACT_DETECTED";
+
+    // Fall detection on the movement stream of every tag, on the GATT callback thread.
+    private MotionFusion mMotionFusion;
+
+    /**
+     * Broadcasts the falls and impacts as soon as they are detected.
+     */
+    private final MotionFusion.Listener mMotionListener = new MotionFusion.Listener()
+    {
+        @Override
+        public void onMotionEvent(String address, FallDetector.Event event, FallDetector detector)
+        {
+            Log.w(TAG, event + " - " + address + ": " + detector.getImpactG() + " G, "
+                    + detector.getTiltDegrees() + " degrees");
+            final Intent intent = new Intent(event == FallDetector.Event.FALL ? ACTION_FALL_DETECTED : ACTION_IMPACT_DETECTED);
+            intent.putExtra(EXTRA_DEVICEADDRESS, address);
+            intent.putExtra(EXTRA_TIMESTAMP, detector.getImpactNanos());
+            sendBroadcast(intent);
+        }
+    };
 
     /**
-     * Implements callback methods for GATT events that the app cares about.
-     * For example, connection change and services discovered.
+     * Turns the GATT events the app cares about into broadcasts.
      */
-    private final BluetoothGattCallback mGattCallback = new BluetoothGattCallback()
+    private final GattTransport.Callback mBroadcastObserver = new GattTransport.Callback()
     {
 
         @Override
-        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState)
+        public void onConnectionStateChange(String address, boolean connected)
         {
-            String intentAction;
-            if (newState == BluetoothProfile.STATE_CONNECTED)
-            {
-                intentAction = ACTION_GATT_CONNECTED;
-                broadcastUpdate(intentAction);
-                Log.i(TAG, "Connected to GATT server.");
-                // Attempts to discover services after successful connection.
-                Log.i(TAG, "Attempting to start service discovery:" + gatt.discoverServices());
-            } else if (newState == BluetoothProfile.STATE_DISCONNECTED)
-            {
-                intentAction = ACTION_GATT_DISCONNECTED;
-                Log.i(TAG, "Disconnected from GATT server.");
-                broadcastUpdate(intentAction);
-            }
+            broadcastUpdate(connected ? ACTION_GATT_CONNECTED : ACTION_GATT_DISCONNECTED);
         }
 
         @Override
-        public void onServicesDiscovered(BluetoothGatt gatt, int status)
+        public void onServicesDiscovered(String address, boolean success)
         {
-            if (status== BluetoothGatt.GATT_SUCCESS)
-            {
-                boolean isGood=true;
-                for(int i=0;i<gatt.getServices().size();i++)
-                {
-                    BluetoothGattService bgs=gatt.getServices().get(i);
-                    Log.w(TAG, "found service " + bgs.getUuid().toString());
-                    Log.w(TAG, bgs.getCharacteristics().toString());
-                    if(bgs.getCharacteristics().size()==0)
-                        isGood=false;
-                }
+            if (success)
                 broadcastUpdate(ACTION_GATT_SERVICES_DISCOVERED);
-            } else
-            {
-                Log.w(TAG, "onServicesDiscovered received: " + status);
-            }
         }
 
         @Override
-        public void onCharacteristicWrite(BluetoothGatt gatt,
-                                          BluetoothGattCharacteristic characteristic,
-                                          int status)
+        public void onCharacteristicWrite(String address, UUID characteristicUuid, int status)
         {
-            Log.w(TAG, "onCharacteristicWrite received: " + status);
-            broadcastUpdate(ACTION_DATA_WRITE,characteristic,gatt.getDevice().getAddress());
+            broadcastUpdate(ACTION_DATA_WRITE, characteristicUuid, null, address);
         }
 
         @Override
-        public void onCharacteristicRead(BluetoothGatt gatt,
-                                         BluetoothGattCharacteristic characteristic,
-                                         int status)
+        public void onCharacteristicRead(String address, UUID characteristicUuid, byte[] value, int status)
         {
-            if (status == BluetoothGatt.GATT_SUCCESS)
-            {
-                Log.i(TAG, "onCharacteristicRead received: " + status);
-                broadcastUpdate(ACTION_DATA_READ,characteristic,gatt.getDevice().getAddress());
-            }
+            if (status == GattOperation.STATUS_SUCCESS)
+                broadcastUpdate(ACTION_DATA_READ, characteristicUuid, value, address);
         }
 
         @Override
-        public void onCharacteristicChanged(BluetoothGatt gatt,
-                                            BluetoothGattCharacteristic characteristic) {
-            Log.i(TAG, "onCharacteristicChanged received: ");
-            broadcastUpdate(ACTION_DATA_NOTIFY, characteristic, gatt.getDevice().getAddress());
+        public void onDescriptorWrite(String address, UUID characteristicUuid, int status)
+        {
         }
 
         @Override
-        public void onDescriptorRead(BluetoothGatt gatt,BluetoothGattDescriptor descriptor, int status)
+        public void onCharacteristicChanged(String address, UUID characteristicUuid, byte[] value, long timestampNanos)
         {
-            Log.i(TAG, "onDescriptorRead received: " + descriptor.getUuid().toString());
+            // Broadcast by mBroadcastListener, with the sequence number.
         }
 
+    };
+
+    /**
+     * Sends the notifications as broadcasts, on the main thread through mBroadcastQueue.
+     */
+    private final NotificationListener mBroadcastListener = new NotificationListener()
+    {
         @Override
-        public void onDescriptorWrite(BluetoothGatt gatt,BluetoothGattDescriptor descriptor, int status)
+        public void onNotification(String deviceAddress, UUID characteristicUuid, byte[] value,
+                                   long timestampNanos, long sequence)
         {
-            Log.i(TAG, "onDescriptorWrite received: " + descriptor.getUuid().toString());
+            final Intent intent = new Intent(ACTION_DATA_NOTIFY);
+            intent.putExtra(EXTRA_DATA, value);
+            intent.putExtra(EXTRA_UUID, characteristicUuid.toString());
+            intent.putExtra(EXTRA_DEVICEADDRESS, deviceAddress);
+            intent.putExtra(EXTRA_TIMESTAMP, timestampNanos);
+            intent.putExtra(EXTRA_SEQUENCE, sequence);
+            sendBroadcast(intent);
         }
-
     };
 
+    /**
+     * Keeps the Binder transactions of the broadcasts off the GATT callback thread. Receivers of
+     * the broadcasts want the latest readings, so a stream that waits is conflated: only its last
+     * notification is sent, the skipped ones show up as gaps in the sequence numbers.
+     */
+    private final StageQueue mBroadcastQueue = new StageQueue("broadcast", StageQueue.Policy.CONFLATE,
+            BROADCAST_QUEUE_CAPACITY, mMainExecutor, mBroadcastListener);
+
     /**
      * Broadcast update.
      */
@@ -157,19 +211,49 @@ public class BluetoothLeService extends Service {
     /**
      * Broadcast update.
      */
-    private void broadcastUpdate(final String action,final BluetoothGattCharacteristic characteristic, String deviceAddress)
+    private void broadcastUpdate(final String action,final UUID characteristicUuid,final byte[] data, String deviceAddress)
     {
         final Intent intent = new Intent(action);
-        final byte[] data = characteristic.getValue();
         if (data != null && data.length > 0)
         {
-            intent.putExtra(EXTRA_DATA,characteristic.getValue());
-            intent.putExtra(EXTRA_UUID,characteristic.getUuid().toString());
+            intent.putExtra(EXTRA_DATA,data);
+            intent.putExtra(EXTRA_UUID,characteristicUuid.toString());
             intent.putExtra(EXTRA_DEVICEADDRESS,deviceAddress);
         }
         sendBroadcast(intent);
     }
 
+    /**
+     * Registers an in-process listener for characteristic notifications.
+     *
+     * @param executor Executor to deliver on, or null to deliver directly on the GATT callback
+     *                 thread, in which case the listener must return quickly.
+     */
+    public void addNotificationListener(NotificationListener listener, Executor executor)
+    {
+        mEngine.addNotificationListener(listener, executor);
+    }
+
+    public void removeNotificationListener(NotificationListener listener)
+    {
+        mEngine.removeNotificationListener(listener);
+    }
+
+    /**
+     * Also sends every notification as an {@link #ACTION_DATA_NOTIFY} broadcast, for receivers
+     * written against the broadcast API. Disabled by default. Call once initialized.
+     */
+    public void setNotificationBroadcastsEnabled(boolean enabled)
+    {
+        if (enabled == mNotificationBroadcastsEnabled)
+            return;
+        mNotificationBroadcastsEnabled = enabled;
+        if (enabled)
+            mEngine.addNotificationListener(mBroadcastQueue, null);
+        else
+            mEngine.removeNotificationListener(mBroadcastQueue);
+    }
+
     public class LocalBinder extends Binder {
         BluetoothLeService getService() {
             return BluetoothLeService.this;
@@ -190,6 +274,14 @@ public class BluetoothLeService extends Service {
         return super.onUnbind(intent);
     }
 
+    @Override
+    public void onDestroy() {
+        mLivenessMonitor.stop();
+        mRecoveryExecutor.shutdownNow();
+        mOperationTimer.shutdownNow();
+        super.onDestroy();
+    }
+
     private final IBinder mBinder = new LocalBinder();
 
     /**
@@ -217,69 +309,130 @@ public class BluetoothLeService extends Service {
             return false;
         }
 
+        if (mEngine == null)
+        {
+            mEngine = new SensorTagEngine(new AndroidGattTransport(this, mBluetoothAdapter), mOperationTimer);
+            mEngine.setObserver(mBroadcastObserver);
+            GattLayoutCache layoutCache = new GattLayoutCache(new File(getFilesDir(), LAYOUT_CACHE_FILE));
+            if (layoutCache.getFailure() != null)
+                Log.w(TAG, "Unable to read the GATT layouts", layoutCache.getFailure());
+            mEngine.setLayoutCache(layoutCache);
+            mMotionFusion = new MotionFusion(mEngine.getMetrics());
+            mMotionFusion.setListener(mMotionListener);
+            mEngine.addNotificationListener(mMotionFusion, null);
+            mBroadcastQueue.registerMetrics(mEngine.getMetrics());
+            mEngine.getMetrics().gauge("liveness.recoveries", new MetricsRegistry.Gauge()
+            {
+                @Override
+                public long get()
+                {
+                    return mLivenessMonitor.getRecoveryCount();
+                }
+            });
+        }
+        mLivenessMonitor.start();
         return true;
     }
 
+    /**
+     * Gives the platform-independent pipeline behind this service.
+     */
+    public SensorTagEngine getEngine()
+    {
+        return mEngine;
+    }
+
+    /**
+     * Records the notification period of a stream, 0 once it is disabled. The connection profile
+     * of the device follows the rate of its streams.
+     */
+    public void setStreamPeriod(UUID charUuid, long periodMillis, String address)
+    {
+        mEngine.setStreamPeriod(address, charUuid, periodMillis);
+    }
+
+    /**
+     * Gives the connection profile and link measurements of a device.
+     */
+    public DeviceLink getLink(String address)
+    {
+        return mEngine.getLink(address);
+    }
+
+    /**
+     * Gives the counters and latency histograms of the pipeline.
+     */
+    public MetricsRegistry getMetrics()
+    {
+        return mEngine.getMetrics();
+    }
+
+    /**
+     * Writes a snapshot of the metrics to {@link #METRICS_FILE} in the files directory, replacing
+     * the previous one, and to the debug log.
+     */
+    public void dumpMetrics()
+    {
+        if (mEngine == null)
+            return;
+        String snapshot = mEngine.getMetrics().snapshot();
+        Log.d(TAG, snapshot);
+        try (Writer writer = new FileWriter(new File(getFilesDir(), METRICS_FILE)))
+        {
+            writer.write(snapshot);
+        } catch (IOException e)
+        {
+            Log.w(TAG, "Unable to write the metrics", e);
+        }
+    }
+
+    /**
+     * Gives the watchdog the sensors register their notification streams with.
+     */
+    public LivenessMonitor getLivenessMonitor()
+    {
+        return mLivenessMonitor;
+    }
+
     /**
      * Connects to the GATT server hosted on the Bluetooth LE device.
      *
      * @param address The device address of the destination device.
      *
      * @return Return true if the connection is initiated successfully. The connection result
-     *         is reported asynchronously through the
-     *         {@code BluetoothGattCallback#onConnectionStateChange(android.bluetooth.BluetoothGatt, int, int)}
-     *         callback.
+     *         is reported asynchronously through the {@link #ACTION_GATT_CONNECTED} broadcast.
      */
     public boolean connect(final String address) {
-        if (mBluetoothAdapter == null || address == null) {
+        if (mEngine == null || address == null) {
             Log.w(TAG, "BluetoothAdapter not initialized or unspecified address.");
             return false;
         }
-        // Previously connected device.  Try to reconnect.
-        //if (mBluetoothDeviceAddress != null && address.equals(mBluetoothDeviceAddress) && mBluetoothGatt != null)
-        if (mBluetoothDeviceAddressList.contains(address) && mBluetoothGattMap.containsKey(address))
-        {
-            Log.d(TAG, "Trying to use an existing mBluetoothGatt for connection.");
-            BluetoothGatt gatt = mBluetoothGattMap.get(address);
-            if (gatt.connect())
-                return true;
-            /*
-            if (mBluetoothGatt.connect())
-                return true;
-                */
-        }
-        final BluetoothDevice device = mBluetoothAdapter.getRemoteDevice(address);
-        // We want to directly connect to the device, so we are setting the autoConnect
-        // parameter to false.
-
-        mBluetoothGattMap.put(address, device.connectGatt(this, false, mGattCallback));
-        //mBluetoothGatt = device.connectGatt(this, false, mGattCallback);
-        Log.d(TAG, "Trying to create a new connection.");
-        mBluetoothDeviceAddressList.add(address);
-        //mBluetoothDeviceAddress = address;
-        return true;
+        return mEngine.connect(address);
+    }
+
+    /**
+     * Connects, discovers and configures several devices at once, with at most
+     * {@code maxConcurrent} of them in bring-up at the same time. Sensors are created through
+     * the configurator on the main thread, and each stage change is reported to the listener.
+     */
+    public void bringUp(Collection<String> addresses, int maxConcurrent,
+                        SensorTagEngine.Configurator configurator, ConnectionOrchestrator.ProgressListener listener)
+    {
+        mEngine.bringUp(addresses, maxConcurrent, configurator, mMainExecutor, listener);
     }
 
     /**
      * Disconnects an existing connection or cancel a pending connection. The disconnection result
-     * is reported asynchronously through the
-     * {@code BluetoothGattCallback#onConnectionStateChange(android.bluetooth.BluetoothGatt, int, int)}
-     * callback.
+     * is reported asynchronously through the {@link #ACTION_GATT_DISCONNECTED} broadcast.
      */
     //TODO: allow disconnection of individual instances
     public void disconnect() {
         // Shut down the relevant Bluetooth instances.
-        if (mBluetoothAdapter == null || mBluetoothGattMap.isEmpty()) {
+        if (mEngine == null) {
             Log.w(TAG, "BluetoothAdapter not initialized");
             return;
         }
-
-        for (BluetoothGatt gatt : mBluetoothGattMap.values()) {
-            gatt.disconnect();
-        }
-
-        //mBluetoothGattMap.clear();
-        //mBluetoothDeviceAddressList.clear();
+        mEngine.disconnectAll();
     }
 
     /**
@@ -288,98 +441,72 @@ public class BluetoothLeService extends Service {
      */
     //TODO: allow closing of individual instances
     public void close() {
-        if (mBluetoothGattMap.isEmpty()) {
+        if (mEngine == null) {
             return;
         }
-
-        for (BluetoothGatt gatt : mBluetoothGattMap.values()) {
-            gatt.close();
-        }
-
-        mBluetoothGattMap.clear();
-        mBluetoothDeviceAddressList.clear();
-
-        //mBluetoothGatt.close();
-        //mBluetoothGatt = null;
+        mEngine.close();
     }
 
     /**
-     * Writes a characteristic.
+     * Queues a write of the given value. The write starts as soon as the previous operation on
+     * this device has been acknowledged and completes through the callback.
      */
-
-    public boolean writeCharacteristic(BluetoothGattCharacteristic characteristic, String address)
+    public void writeCharacteristic(UUID servUuid, UUID charUuid, byte[] value, String address, GattOperation.Callback callback)
     {
-        return mBluetoothGattMap.get(address).writeCharacteristic(characteristic);
-        //return true;
+        mEngine.writeCharacteristic(address, servUuid, charUuid, value, callback);
     }
 
     /**
-     * Enables or disables notification on a give characteristic.
-     *
-     * @param characteristic Characteristic to act on.
-     * @param enabled If true, enable notification.  False otherwise.
+     * Queues a read of the characteristic. The value is given by {@link GattOperation#getValue()}
+     * and broadcast with {@link #ACTION_DATA_READ}.
      */
-
-    public void setCharacteristicNotification(BluetoothGattCharacteristic characteristic,boolean enabled,String address)
+    public void readCharacteristic(UUID servUuid, UUID charUuid, String address, GattOperation.Callback callback)
     {
-        if (mBluetoothAdapter == null || !mBluetoothGattMap.containsKey(address))
-        {
-            Log.w(TAG, "BluetoothAdapter not initialized or GATT does not exist");
-            return;
-        }
-        mBluetoothGattMap.get(address).setCharacteristicNotification(characteristic, enabled); // Enabled locally.
+        mEngine.readCharacteristic(address, servUuid, charUuid, callback);
     }
 
     /**
-     * Writes the Descriptor for the input characteristic.
+     * Enables notification on a given characteristic, locally then remotely.
      */
-
-    public void writeDescriptor(BluetoothGattCharacteristic characteristic,String address)
+    public void enableNotifications(UUID servUuid, UUID charUuid, String address, GattOperation.Callback callback)
     {
-        if (mBluetoothAdapter == null || !mBluetoothGattMap.containsKey(address))
-        {
-            Log.w(TAG, "BluetoothAdapter not initialized or GATT does not exist");
-            return;
-        }
-        BluetoothGattDescriptor clientConfig=characteristic.getDescriptor(UUID.fromString("00002902-0000-1000-8000-00805f9b34fb"));
-        clientConfig.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
-        mBluetoothGattMap.get(address).writeDescriptor(clientConfig);
+        mEngine.enableNotifications(address, servUuid, charUuid, callback);
     }
 
     /**
-     * Retrieves a list of supported GATT services on the connected device. This should be
-     * invoked only after {@code BluetoothGatt#discoverServices()} completes successfully.
+     * Retrieves the UUIDs of the services on the connected device. This should be invoked only
+     * after {@code BluetoothGatt#discoverServices()} completes successfully.
      *
-     * @return A {@code List} of supported services.
+     * @return A {@code List} of service UUIDs, or null.
      */
-
-    public List<BluetoothGattService> getSupportedGattServices(String address)
+    public List<UUID> getSupportedGattServices(String address)
     {
-        if (mBluetoothAdapter == null || !mBluetoothGattMap.containsKey(address))
+        if (mEngine == null)
         {
-            Log.w(TAG, "BluetoothAdapter not initialized or GATT does not exist");
+            Log.w(TAG, "BluetoothAdapter not initialized");
             return null;
         }
-
-        return mBluetoothGattMap.get(address).getServices();
+        return mEngine.getServices(address);
     }
 
     /**
-     * Retrieves the service corresponding to the input UUID.
+     * Checks whether the device has the input service.
      */
+    public boolean hasService(UUID servUuid, String address)
+    {
+        return mEngine != null && mEngine.hasService(address, servUuid);
+    }
 
-    public BluetoothGattService getService(UUID servUuid,String address)
+    /**
+     * Checks whether the service of the device has the input characteristic.
+     */
+    public boolean hasCharacteristic(UUID servUuid, UUID charUuid, String address)
     {
-        if (mBluetoothAdapter == null || !mBluetoothGattMap.containsKey(address))
-        {
-            Log.w(TAG, "BluetoothAdapter not initialized or GATT does not exist");
-            return null;
-        }
-        return mBluetoothGattMap.get(address).getService(servUuid);
+        return mEngine != null && mEngine.getTransport().hasCharacteristic(address, servUuid, charUuid);
     }
 
-    public ArrayList<String> getConnectedDevices() {
-        return mBluetoothDeviceAddressList;
+    public List<String> getConnectedDevices() {
+        return mEngine.getTransport().getAddresses();
     }
 
 }
@@ -0,0 +1,62 @@
+package com.capstone.alzheimers.sensortagwear;
+
+import com.capstone.alzheimers.sensortagwear.core.AdaptivePeriodController;
+import com.capstone.alzheimers.sensortagwear.core.SensorDescriptor;
+import com.capstone.alzheimers.sensortagwear.core.SensorSample;
+import com.capstone.alzheimers.sensortagwear.core.SensorTagDecoder;
+
+import java.util.UUID;
+
+/**
+ * Implements the Humidity Sensor: an HDC1000 on the CC2650, an SHT21 on the CC2541, which
+ * reports raw values that need another formula. The tag is told by its services.
+ */
+public class HumiditySensor extends Sensor
+{
+
+    // CC2541. Not initialized in a field initializer: set while the super constructor runs.
+    private volatile boolean sht21;
+
+    public HumiditySensor(UUID serviceUuid,BluetoothLeService mBluetoothLeService,String address)
+    {
+        super(serviceUuid,mBluetoothLeService,address);
+    }
+
+    /**
+     * Tells the tag from its services, then turns the sensor on.
+     */
+    @Override
+    public void turnOnService()
+    {
+        this.sht21=isCC2541();
+        super.turnOnService();
+    }
+
+    /**
+     * Quiet within 0.2 C and 0.2 %RH.
+     */
+    @Override
+    protected AdaptivePeriodController createPeriodController()
+    {
+        return new AdaptivePeriodController(SensorDescriptor.HUMIDITY.getDefaultPeriod(),
+                AdaptivePeriodController.MAX_PERIOD,0.2,0);
+    }
+
+    @Override
+    public void decode(byte[] value,SensorSample sample)
+    {
+        if(this.sht21)
+            SensorTagDecoder.decodeHumiditySht21(value,sample);
+        else
+            SensorTagDecoder.decodeHumidity(value,sample);
+    }
+
+    @Override
+    protected void appendTo(StringBuilder builder)
+    {
+        appendValues(builder,0,1,"C");
+        builder.append(' ');
+        appendValues(builder,1,2,"%RH");
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.capstone.alzheimers.sensortagwear;
+
+import com.capstone.alzheimers.sensortagwear.core.AdaptivePeriodController;
+import com.capstone.alzheimers.sensortagwear.core.SensorDescriptor;
+import com.capstone.alzheimers.sensortagwear.core.SensorSample;
+import com.capstone.alzheimers.sensortagwear.core.SensorTagDecoder;
+
+import java.util.UUID;
+
+/**
+ * Implements the IR Temperature Sensor: a TMP007 on the CC2650, a TMP006 on the CC2541, which
+ * reports raw values that need another formula. The tag is told by its services.
+ */
+public class IRTemperatureSensor extends Sensor
+{
+
+    // CC2541. Not initialized in a field initializer: set while the super constructor runs.
+    private volatile boolean tmp006;
+
+    public IRTemperatureSensor(UUID serviceUuid,BluetoothLeService mBluetoothLeService,String address)
+    {
+        super(serviceUuid,mBluetoothLeService,address);
+    }
+
+    /**
+     * Tells the tag from its services, then turns the sensor on.
+     */
+    @Override
+    public void turnOnService()
+    {
+        this.tmp006=isCC2541();
+        super.turnOnService();
+    }
+
+    /**
+     * Temperatures drift slowly: quiet within 0.1 C.
+     */
+    @Override
+    protected AdaptivePeriodController createPeriodController()
+    {
+        return new AdaptivePeriodController(SensorDescriptor.IR_TEMPERATURE.getDefaultPeriod(),
+                AdaptivePeriodController.MAX_PERIOD,0.1,0);
+    }
+
+    @Override
+    public void decode(byte[] value,SensorSample sample)
+    {
+        if(this.tmp006)
+            SensorTagDecoder.decodeIrTemperatureTmp006(value,sample);
+        else
+            SensorTagDecoder.decodeIrTemperature(value,sample);
+    }
+
+    @Override
+    protected void appendTo(StringBuilder builder)
+    {
+        // Ambient/object.
+        appendValues(builder,0,2,"C");
+    }
+
+}
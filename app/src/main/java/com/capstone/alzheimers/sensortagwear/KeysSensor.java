@@ -0,0 +1,32 @@
+package com.capstone.alzheimers.sensortagwear;
+
+import com.capstone.alzheimers.sensortagwear.core.SensorSample;
+import com.capstone.alzheimers.sensortagwear.core.SensorTagDecoder;
+
+import java.util.UUID;
+
+/**
+ * Implements the Simple Keys service: user button, power button and reed relay.
+ */
+public class KeysSensor extends Sensor
+{
+
+    public KeysSensor(UUID serviceUuid,BluetoothLeService mBluetoothLeService,String address)
+    {
+        super(serviceUuid,mBluetoothLeService,address);
+    }
+
+    @Override
+    public void decode(byte[] value,SensorSample sample)
+    {
+        SensorTagDecoder.decodeKeys(value,sample);
+    }
+
+    @Override
+    protected void appendTo(StringBuilder builder)
+    {
+        // User/power/reed.
+        appendValues(builder,0,3,"keys");
+    }
+
+}
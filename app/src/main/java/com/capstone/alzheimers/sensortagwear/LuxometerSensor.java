@@ -1,8 +1,11 @@
 package com.capstone.alzheimers.sensortagwear;
 
-import java.util.UUID;
+import com.capstone.alzheimers.sensortagwear.core.AdaptivePeriodController;
+import com.capstone.alzheimers.sensortagwear.core.SensorDescriptor;
+import com.capstone.alzheimers.sensortagwear.core.SensorSample;
+import com.capstone.alzheimers.sensortagwear.core.SensorTagDecoder;
 
-import static java.lang.Math.pow;
+import java.util.UUID;
 
 /**
  * Implements the Luxometer Light Sensor.
@@ -10,36 +13,31 @@ import static java.lang.Math.pow;
 public class LuxometerSensor extends Sensor
 {
 
-    private double luxvalue;
-
     public LuxometerSensor(UUID serviceUuid,BluetoothLeService mBluetoothLeService,String address)
     {
         super(serviceUuid,mBluetoothLeService,address);
-        this.luxvalue=0.0;
+    }
+
+    /**
+     * Room light changes in steps: quiet within 2 lux or 1 %.
+     */
+    @Override
+    protected AdaptivePeriodController createPeriodController()
+    {
+        return new AdaptivePeriodController(SensorDescriptor.LUXOMETER.getDefaultPeriod(),
+                AdaptivePeriodController.MAX_PERIOD,2,0.01);
     }
 
     @Override
-    public Point3D convert(byte[] value)
+    public void decode(byte[] value,SensorSample sample)
     {
-        // bits [1..0] are status bits and need to be cleared according
-        // to the user guide, but the iOS code doesn't bother. It should
-        // have minimal impact.
-        int mantissa;
-        int exponent;
-        Integer sfloat= shortUnsignedAtOffset(value, 0);
-        mantissa = sfloat & 0x0FFF;
-        exponent = (sfloat >> 12) & 0xFF;
-        double output;
-        double magnitude = pow(2.0f, exponent);
-        output = (mantissa * magnitude);
-        this.luxvalue=output / 100.0f;
-        return new Point3D(this.luxvalue,0,0);
+        sample.set(SensorTagDecoder.sfloatToLux(shortUnsignedAtOffset(value, 0)));
     }
 
     @Override
-    public String toString()
+    protected void appendTo(StringBuilder builder)
     {
-        return this.luxvalue+" Lux";
+        appendValues(builder,0,1,"Lux");
     }
 
 }
@@ -0,0 +1,31 @@
+package com.capstone.alzheimers.sensortagwear;
+
+import com.capstone.alzheimers.sensortagwear.core.SensorSample;
+import com.capstone.alzheimers.sensortagwear.core.SensorTagDecoder;
+
+import java.util.UUID;
+
+/**
+ * Implements the Magnetometer (CC2541 SensorTag).
+ */
+public class MagnetometerSensor extends Sensor
+{
+
+    public MagnetometerSensor(UUID serviceUuid,BluetoothLeService mBluetoothLeService,String address)
+    {
+        super(serviceUuid,mBluetoothLeService,address);
+    }
+
+    @Override
+    public void decode(byte[] value,SensorSample sample)
+    {
+        SensorTagDecoder.decodeMagnetometer(value,sample);
+    }
+
+    @Override
+    protected void appendTo(StringBuilder builder)
+    {
+        appendValues(builder,0,3,"uT");
+    }
+
+}
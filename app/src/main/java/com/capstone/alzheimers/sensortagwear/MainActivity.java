@@ -3,7 +3,6 @@ package com.capstone.alzheimers.sensortagwear;
 import android.app.Activity;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothManager;
 import android.content.BroadcastReceiver;
 import android.content.ComponentName;
@@ -15,16 +14,41 @@ import android.content.pm.PackageManager;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.SystemClock;
+import android.support.wearable.activity.WearableActivity;
 import android.support.wearable.view.WatchViewStub;
 import android.util.Log;
 import android.view.View;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.capstone.alzheimers.sensortagwear.core.AggregateStore;
+import com.capstone.alzheimers.sensortagwear.core.ConnectionOrchestrator;
+import com.capstone.alzheimers.sensortagwear.core.MetricsRegistry;
+import com.capstone.alzheimers.sensortagwear.core.NotificationListener;
+import com.capstone.alzheimers.sensortagwear.core.Rule;
+import com.capstone.alzheimers.sensortagwear.core.RuleEngine;
+import com.capstone.alzheimers.sensortagwear.core.SampleLog;
+import com.capstone.alzheimers.sensortagwear.core.SampleStore;
+import com.capstone.alzheimers.sensortagwear.core.SampleUplink;
+import com.capstone.alzheimers.sensortagwear.core.SensorTagEngine;
+import com.capstone.alzheimers.sensortagwear.core.StageQueue;
+import com.capstone.alzheimers.sensortagwear.core.StripedStage;
+
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class MainActivity extends Activity {
+public class MainActivity extends WearableActivity {
 
     private TextView mTextView;
 
@@ -33,17 +57,45 @@ public class MainActivity extends Activity {
     // Scan instances.
     //private LeDeviceListAdapter mLeDeviceListAdapter;
     private BluetoothAdapter mBluetoothAdapter;
-    private boolean mScanning;
+    private SensorTagScanner mScanner;
     private Handler mHandler;
     // Scan parameters.
     private static final int REQUEST_ENABLE_BT = 1;
     private static final long SCAN_PERIOD = 6000; // Stops scanning after 3 seconds.
+    // Number of tags connected and configured at the same time.
+    private static final int MAX_CONCURRENT_BRINGUP = 4;
+    // History kept for every sensor of every tag, at the optimal 100 ms period.
+    private static final long HISTORY_WINDOW_MILLIS = 10 * 60 * 1000;
+    private static final long HISTORY_PERIOD_MILLIS = 100;
+    // Readings are redrawn at most this often, whatever the notification rate.
+    private static final long READINGS_INTERVAL_MILLIS = 100;
+    // Absences in the rules expire on this tick when no sample comes.
+    private static final long RULES_TICK_MILLIS = 1000;
     //private ArrayList<String> mDeviceAddressList = new ArrayList<>();
 
     private HashMap<String,Integer> uuidToIndex=new HashMap<>(); // dataUuid to index
-    private HashMap<String,Sensor> sensors=new HashMap<String,Sensor>();
+    // Device address to (data UUID to sensor) map. Read by the processing workers; the map of a
+    // device is complete before it is put, and not changed after.
+    private ConcurrentHashMap<String,HashMap<UUID,Sensor>> sensors=new ConcurrentHashMap<String,HashMap<UUID,Sensor>>();
     private HashMap<String,BluetoothDevice> bleDeviceMap = new HashMap<String,BluetoothDevice>();
-    private HashMap<String,String> latestSensorReadingMap= new HashMap<String,String>();
+    // Redraws the readings once per frame at most, see displayLatestReadings().
+    private ReadingsRenderer mReadingsRenderer;
+    // Time series of every sensor, keyed by device address and data UUID.
+    private final SampleStore mSampleStore = new SampleStore(
+            SampleStore.capacityFor(HISTORY_WINDOW_MILLIS, HISTORY_PERIOD_MILLIS));
+    // Rolling min, max, mean, variance and percentiles of every sensor over 10 s, 1 min and 10 min.
+    private final AggregateStore mAggregateStore = new AggregateStore(
+            AggregateStore.DEFAULT_WINDOWS_MILLIS, HISTORY_PERIOD_MILLIS);
+    // Events across tags, e.g. CareRules.nightWandering(door, bed, ...) with the addresses of the
+    // tags on the door and the bed. Fed by every processing worker, so used under its own lock.
+    private final RuleEngine mRuleEngine = new RuleEngine(mAggregateStore, TimeZone.getDefault(),
+            System.currentTimeMillis());
+    // Persists every decoded sample, null if the log could not be opened.
+    private SampleLog mSampleLog;
+    // Sends the samples to the phone in batches, on its own thread.
+    private final ScheduledExecutorService mUplinkExecutor = Executors.newSingleThreadScheduledExecutor();
+    private WearableUplinkChannel mUplinkChannel;
+    private SampleUplink mSampleUplink;
 
     private BluetoothLeService mBluetoothLeService;
 
@@ -60,7 +112,10 @@ public class MainActivity extends Activity {
             {
                 Log.e(TAG, "Unable to initialize Bluetooth");
                 finish();
+                return;
             }
+            mBluetoothLeService.addNotificationListener(mProcessing, null);
+            registerMetrics(mBluetoothLeService.getMetrics());
         }
 
         @Override
@@ -82,10 +137,24 @@ public class MainActivity extends Activity {
             @Override
             public void onLayoutInflated(WatchViewStub stub) {
                 mTextView = (TextView) stub.findViewById(R.id.textView);
+                mReadingsRenderer.setTextView(mTextView);
             }
         });
+        mReadingsRenderer = new ReadingsRenderer(mReadingsContent, READINGS_INTERVAL_MILLIS);
+        setAmbientEnabled();
 
         mHandler = new Handler();
+        mRuleEngine.setListener(mRuleListener);
+        mHandler.postDelayed(mRuleTicker, RULES_TICK_MILLIS);
+        try {
+            mSampleLog = new SampleLog(new File(getFilesDir(), "samples"));
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to open the sample log", e);
+        }
+        mUplinkChannel = new WearableUplinkChannel(this);
+        mSampleUplink = new SampleUplink(mUplinkChannel, mUplinkExecutor,
+                SampleUplink.DEFAULT_BATCH_SAMPLES, SampleUplink.DEFAULT_FLUSH_INTERVAL_MILLIS);
+        mSampleUplink.start();
         // Use this check to determine whether BLE is supported on the device.  Then you can
         // selectively disable BLE-related features.
         if (!getPackageManager().hasSystemFeature(PackageManager.FEATURE_BLUETOOTH_LE))
@@ -103,6 +172,7 @@ public class MainActivity extends Activity {
             Toast.makeText(this, R.string.error_bluetooth_not_supported, Toast.LENGTH_SHORT).show();
             finish();
         }
+        mScanner = new SensorTagScanner(mBluetoothAdapter, mScanListener);
 
         // Bind BluetoothLeService.
         Intent gattServiceIntent = new Intent(this, BluetoothLeService.class);
@@ -112,6 +182,9 @@ public class MainActivity extends Activity {
     public void initiateNewScan(View v) {
         mBluetoothLeService.close();
         bleDeviceMap.clear();
+        for (HashMap<UUID,Sensor> deviceSensors : sensors.values())
+            for (Sensor s : deviceSensors.values())
+                s.disable();
         sensors.clear();
         mTextView.setText("");
         scanLeDevice(true);
@@ -121,37 +194,79 @@ public class MainActivity extends Activity {
     public void connectAllLeDevice(View v) {
         scanLeDevice(false);
         mTextView.setText("");
-        for (String address : bleDeviceMap.keySet()) {
-            if (mBluetoothLeService.connect(address)) {
-                //Log.d(TAG, "New sensor connected - " + address);
-                mTextView.setText(mTextView.getText() + "Connected - " + address +"\n");
-            }
-        }
+        mBluetoothLeService.bringUp(bleDeviceMap.keySet(), MAX_CONCURRENT_BRINGUP, mSensorConfigurator, mBringUpListener);
     }
 
+    /**
+     * Creates the sensors of a tag as soon as its services are discovered.
+     */
+    private final SensorTagEngine.Configurator mSensorConfigurator = new SensorTagEngine.Configurator()
+    {
+        @Override
+        public void configureSensors(String address) {
+            replaceSensors(address);
+        }
+    };
+
+    /**
+     * Shows the bring-up progress of each tag.
+     */
+    private final ConnectionOrchestrator.ProgressListener mBringUpListener = new ConnectionOrchestrator.ProgressListener()
+    {
+        @Override
+        public void onProgress(final String address, final ConnectionOrchestrator.Stage stage) {
+            runOnUiThread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    mTextView.append(stage + " - " + address + "\n");
+                }
+            });
+        }
+    };
+
     public void createSensors(View v) {
         mTextView.setText("");
-        latestSensorReadingMap.clear();
         for (String address : bleDeviceMap.keySet()) {
-            Sensor sensor = createSensor(address);
-            if (sensor != null) {
-                sensors.put(address, sensor);
-            }
+            replaceSensors(address);
+        }
+    }
+
+    /**
+     * Creates the sensors of a device, disabling those it had first: otherwise their watches
+     * would keep recovering streams that now go to the new sensors.
+     */
+    private void replaceSensors(String address) {
+        HashMap<UUID,Sensor> previous = sensors.remove(address);
+        if (previous != null) {
+            for (Sensor s : previous.values())
+                s.disable();
+        }
+        HashMap<UUID,Sensor> deviceSensors = createSensors(address);
+        if (!deviceSensors.isEmpty()) {
+            sensors.put(address, deviceSensors);
         }
     }
 
-    public Sensor createSensor(String address) {
-        Sensor sensor = null;
-        for (BluetoothGattService service : mBluetoothLeService.getSupportedGattServices(address)) {
-            Log.d(TAG, "GATT Service UUID - " + service.getUuid().toString() + " - " + address);
-            if ("f000aa70-0451-4000-b000-000000000000".equals(service.getUuid().toString())) {
-                sensor = new LuxometerSensor(service.getUuid(),mBluetoothLeService,address);
-                //Log.d(TAG, "New lux sensor created - " + address);
-                mTextView.setText(mTextView.getText() + "Created - " + address + "\n");
-                break;
+    /**
+     * Creates a sensor for every SensorTag service of the device, keyed by data UUID.
+     */
+    public HashMap<UUID,Sensor> createSensors(String address) {
+        HashMap<UUID,Sensor> deviceSensors = new HashMap<UUID,Sensor>();
+        List<UUID> services = mBluetoothLeService.getSupportedGattServices(address);
+        if (services == null)
+            return deviceSensors;
+        for (UUID service : services) {
+            Log.d(TAG, "GATT Service UUID - " + service.toString() + " - " + address);
+            Sensor sensor = SensorRegistry.create(service, mBluetoothLeService, address);
+            if (sensor != null) {
+                deviceSensors.put(sensor.getDataUuid(), sensor);
             }
         }
-        return sensor;
+        if (!deviceSensors.isEmpty())
+            mTextView.append("Created " + deviceSensors.size() + " - " + address + "\n");
+        return deviceSensors;
     }
 
 
@@ -196,6 +311,59 @@ public class MainActivity extends Activity {
         }
     }
 
+    @Override
+    public void onEnterAmbient(Bundle ambientDetails)
+    {
+        super.onEnterAmbient(ambientDetails);
+        mReadingsRenderer.setAmbient(true);
+    }
+
+    @Override
+    public void onUpdateAmbient()
+    {
+        super.onUpdateAmbient();
+        mReadingsRenderer.invalidate();
+    }
+
+    @Override
+    public void onExitAmbient()
+    {
+        mReadingsRenderer.setAmbient(false);
+        mReadingsRenderer.invalidate();
+        super.onExitAmbient();
+    }
+
+    @Override
+    protected void onDestroy()
+    {
+        mReadingsRenderer.setTextView(null);
+        mHandler.removeCallbacks(mRuleTicker);
+        if (mBluetoothLeService != null) {
+            mBluetoothLeService.removeNotificationListener(mProcessing);
+            unregisterMetrics(mBluetoothLeService.getMetrics());
+        }
+        mProcessing.shutdown();
+        if (mSampleLog != null) {
+            try {
+                mSampleLog.close();
+            } catch (IOException | InterruptedException e) {
+                Log.e(TAG, "Unable to close the sample log", e);
+            }
+        }
+        // Last batch, then the Data Layer connection.
+        mSampleUplink.stop();
+        mUplinkExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                mUplinkChannel.close();
+            }
+        });
+        mUplinkExecutor.shutdown();
+        super.onDestroy();
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data)
     {
@@ -214,62 +382,85 @@ public class MainActivity extends Activity {
         super.onPause();
         scanLeDevice(false);
         Log.d(TAG, "onPause");
+        if (mBluetoothLeService != null)
+            mBluetoothLeService.dumpMetrics();
+        RuntimeException uplinkFailure = mSampleUplink.getFailure();
+        if (uplinkFailure != null)
+            Log.w(TAG, mSampleUplink.getFlushFailures() + " uplink flushes failed, last with", uplinkFailure);
         //bleDeviceMap.clear();
     }
 
+    /**
+     * Adds the drops of the sample log and the uplink, the notifications lost on the way to the
+     * activity, the queues of the processing workers, and the display latency, to the metrics.
+     */
+    private void registerMetrics(MetricsRegistry metrics)
+    {
+        mReadingsRenderer.setDisplayLatency(metrics.histogram("latency.display"));
+        mProcessing.registerMetrics(metrics);
+        metrics.gauge("log.dropped", new MetricsRegistry.Gauge()
+        {
+            @Override
+            public long get() {
+                return mSampleLog == null ? 0 : mSampleLog.getDroppedCount();
+            }
+        });
+        metrics.gauge("uplink.dropped", new MetricsRegistry.Gauge()
+        {
+            @Override
+            public long get() {
+                return mSampleUplink.getSamplesDropped();
+            }
+        });
+        metrics.gauge("uplink.failures", new MetricsRegistry.Gauge()
+        {
+            @Override
+            public long get() {
+                return mSampleUplink.getFlushFailures();
+            }
+        });
+        // Read on the main thread, by dumpMetrics().
+        metrics.gauge("activity.lost", new MetricsRegistry.Gauge()
+        {
+            @Override
+            public long get() {
+                long lost = 0;
+                for (HashMap<UUID,Sensor> deviceSensors : sensors.values())
+                    for (Sensor s : deviceSensors.values())
+                        lost += s.getLostCount();
+                return lost;
+            }
+        });
+    }
+
+    private void unregisterMetrics(MetricsRegistry metrics)
+    {
+        mReadingsRenderer.setDisplayLatency(null);
+        mProcessing.unregisterMetrics(metrics);
+        metrics.removeGauge("log.dropped");
+        metrics.removeGauge("uplink.dropped");
+        metrics.removeGauge("uplink.failures");
+        metrics.removeGauge("activity.lost");
+    }
+
     private void scanLeDevice(final boolean enable)
     {
-        if (enable) {
-            // Stops scanning after a pre-defined scan period.
-            mHandler.postDelayed(new Runnable()
-            {
-                @Override
-                public void run()
-                {
-                    mScanning = false;
-                    //noinspection deprecation
-                    mBluetoothAdapter.stopLeScan(mLeScanCallback);
-                    invalidateOptionsMenu();
-                }
-            }, SCAN_PERIOD);
-            mScanning = true;
-            //noinspection deprecation
-            mBluetoothAdapter.startLeScan(mLeScanCallback);
-        } else {
-            mScanning = false;
-            //noinspection deprecation
-            mBluetoothAdapter.stopLeScan(mLeScanCallback);
-        }
+        if (enable)
+            mScanner.start(SCAN_PERIOD);
+        else
+            mScanner.stop();
         invalidateOptionsMenu();
     }
 
     /**
-     * Device scan callback.
+     * Gets every SensorTag found by the scanner, once.
      */
-    private BluetoothAdapter.LeScanCallback mLeScanCallback=new BluetoothAdapter.LeScanCallback()
+    private final SensorTagScanner.Listener mScanListener = new SensorTagScanner.Listener()
     {
         @Override
-        public void onLeScan(final BluetoothDevice device,final int rssi, byte[] scanRecord) {
-            runOnUiThread(new Runnable()
-            {
-                @Override
-                public void run()
-                {
-                    // Check if the device is a SensorTag.
-                    String deviceName=device.getName();
-                    if(deviceName==null)
-                        return;
-                    if(!(deviceName.equals("SensorTag")||deviceName.equals("TI BLE Sensor Tag")||deviceName.equals("CC2650 SensorTag")))
-                        return;
-
-                    // Add the device to the adapter.
-                    //mDeviceAddressList.add(device.getAddress());
-                    bleDeviceMap.put(device.getAddress(), device);
-                    displayAvailableDevices();
-                    //txtView.setText(txtView.getText() + "\n" + "Device: " + device.getAddress());
-
-                }
-            });
+        public void onDeviceFound(BluetoothDevice device) {
+            bleDeviceMap.put(device.getAddress(), device);
+            displayAvailableDevices();
         }
     };
 
@@ -284,62 +475,190 @@ public class MainActivity extends Activity {
 
             } else if (BluetoothLeService.ACTION_GATT_DISCONNECTED.equals(action))
             {
-                for(Sensor s:sensors.values())
-                    s.disable();
+                for(HashMap<UUID,Sensor> deviceSensors:sensors.values())
+                    for(Sensor s:deviceSensors.values())
+                        s.disable();
             } else if (BluetoothLeService.ACTION_GATT_SERVICES_DISCOVERED.equals(action))
             {
                 // Nothing to do.
             } else if (BluetoothLeService.ACTION_DATA_READ.equals(action))
             {
                 // Nothing to do.
+            } else if (BluetoothLeService.ACTION_FALL_DETECTED.equals(action))
+            {
+                String deviceAddress = intent.getStringExtra(BluetoothLeService.EXTRA_DEVICEADDRESS);
+                Toast.makeText(MainActivity.this, R.string.fall_detected, Toast.LENGTH_LONG).show();
+                mTextView.append("FALL - " + deviceAddress + "\n");
             } else if (BluetoothLeService.ACTION_DATA_NOTIFY.equals(action))
             {
                 String uuidStr = intent.getStringExtra(BluetoothLeService.EXTRA_UUID);
                 byte[] value = intent.getByteArrayExtra(BluetoothLeService.EXTRA_DATA);
                 String deviceAddress = intent.getStringExtra(BluetoothLeService.EXTRA_DEVICEADDRESS);
-                onCharacteristicChanged(uuidStr, value, deviceAddress);
+                long timestampNanos = intent.getLongExtra(BluetoothLeService.EXTRA_TIMESTAMP,
+                        SystemClock.elapsedRealtimeNanos());
+                long sequence = intent.getLongExtra(BluetoothLeService.EXTRA_SEQUENCE, -1);
+                mProcessing.onNotification(deviceAddress, UUID.fromString(uuidStr), value, timestampNanos, sequence);
             }
         }
     };
 
     /**
-     * Gets called when there is a data notification.
+     * Receives the notifications from the service, on the processing worker of their device.
      */
-    private void onCharacteristicChanged(String uuidStr,byte[] value, String deviceAddress) {
-        Sensor s = sensors.get(deviceAddress);
-        if (s != null) {
-            s.receiveNotification();
-            s.convert(value);
-
-            //String output = "Device: " + deviceAddress +  " - Lux: " + s.toString();
-            //Log.d(TAG, output);
-            latestSensorReadingMap.put(deviceAddress, s.toString());
+    private final NotificationListener mNotificationListener = new NotificationListener()
+    {
+        @Override
+        public void onNotification(String deviceAddress, UUID characteristicUuid, byte[] value,
+                                   long timestampNanos, long sequence) {
+            onCharacteristicChanged(characteristicUuid, value, deviceAddress, timestampNanos, sequence);
+        }
+    };
+
+    /**
+     * Decodes and records the notifications off the main thread, each device on one of a few
+     * workers in the order its notifications arrived, dropping the oldest of the lowest priority
+     * rather than piling up behind a busy worker. Drops show up as lost in the sensors. Only the
+     * redraw of the readings comes back to the main thread.
+     */
+    private final StripedStage mProcessing = new StripedStage("processing", StripedStage.defaultStripes(),
+            StageQueue.Policy.DROP_OLDEST, StageQueue.DEFAULT_CAPACITY, mNotificationListener);
+
+    /**
+     * Gets called when there is a data notification, on the processing worker of the device.
+     *
+     * @param timestampNanos SystemClock.elapsedRealtimeNanos() at the GATT callback.
+     * @param sequence Sequence number of the notification in its stream, -1 if unknown.
+     */
+    private void onCharacteristicChanged(UUID uuid, byte[] value, String deviceAddress,
+                                         long timestampNanos, long sequence) {
+        HashMap<UUID,Sensor> deviceSensors = sensors.get(deviceAddress);
+        if (deviceSensors != null) {
+            Sensor s = deviceSensors.get(uuid);
+            if (s == null)
+                return;
+            s.receiveNotification(timestampNanos, sequence);
+            s.update(value);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(timestampNanos);
+            mSampleStore.record(deviceAddress, uuid, elapsedMillis, s.getLatestSample());
+            mAggregateStore.record(deviceAddress, uuid, elapsedMillis, s.getLatestSample());
+            // Wall-clock time of the GATT callback: the log and the phone outlive the watch uptime.
+            long time = System.currentTimeMillis() - (SystemClock.elapsedRealtime() - elapsedMillis);
+            long deviceId = SampleLog.deviceId(deviceAddress);
+            int sensorId = SampleLog.sensorId(uuid);
+            if (mSampleLog != null)
+                mSampleLog.append(time, deviceId, sensorId, s.getLatestSample());
+            mSampleUplink.offer(time, deviceId, sensorId, s.getLatestSample());
+            synchronized (mRuleEngine) {
+                mRuleEngine.onSample(deviceAddress, uuid, time, s.getLatestSample());
+            }
             displayLatestReadings();
             //this.mDataValues.get(index).setText(s.toString());
         } else {
-            //recreate sensor, likely lost due to onPause
-            Sensor sensor = createSensor(deviceAddress);
-            if (sensor != null) {
-                sensors.put(deviceAddress, sensor);
-            }
+            //recreate sensors, likely lost due to onPause
+            recreateSensors(deviceAddress);
         }
     }
 
+    /**
+     * Creates the sensors of a device again, on the main thread, unless done since.
+     */
+    private void recreateSensors(final String deviceAddress) {
+        mHandler.post(new Runnable()
+        {
+            @Override
+            public void run() {
+                if (sensors.containsKey(deviceAddress) || mBluetoothLeService == null)
+                    return;
+                HashMap<UUID,Sensor> deviceSensors = createSensors(deviceAddress);
+                if (!deviceSensors.isEmpty()) {
+                    sensors.put(deviceAddress, deviceSensors);
+                }
+            }
+        });
+    }
+
+
+    /**
+     * Expires the absences of the rules when no sample comes.
+     */
+    private final Runnable mRuleTicker = new Runnable()
+    {
+        @Override
+        public void run() {
+            synchronized (mRuleEngine) {
+                mRuleEngine.advance(System.currentTimeMillis());
+            }
+            mHandler.postDelayed(this, RULES_TICK_MILLIS);
+        }
+    };
+
+    /**
+     * Called on a processing worker or the main thread; shows the match on the main thread.
+     */
+    private final RuleEngine.Listener mRuleListener = new RuleEngine.Listener()
+    {
+        @Override
+        public void onRuleMatched(final Rule rule, long timestamp) {
+            Log.w(TAG, "Rule matched - " + rule.getName());
+            runOnUiThread(new Runnable()
+            {
+                @Override
+                public void run() {
+                    Toast.makeText(MainActivity.this, rule.getName(), Toast.LENGTH_LONG).show();
+                    if (mTextView != null)
+                        mTextView.append(rule.getName() + "\n");
+                }
+            });
+        }
+    };
 
     private void displayAvailableDevices() {
         mTextView.setText("");
         for (String entry : bleDeviceMap.keySet()) {
-            mTextView.append("Available: " + entry + "\n");
+            mTextView.append("Available: " + entry + " " + mScanner.getRssi(entry) + " dBm\n");
         }
     }
 
+    /**
+     * Asks for a redraw of the readings from a processing worker: one post to the main thread
+     * at most until it runs, however many notifications come meanwhile.
+     */
     private void displayLatestReadings() {
-        mTextView.setText("");
-        for (Map.Entry<String, String> entry : latestSensorReadingMap.entrySet()) {
-            mTextView.append(entry.getKey() +  ": " + entry.getValue() + "\n");
-        }
+        if (mReadingsPending.compareAndSet(false, true))
+            mHandler.post(mInvalidateReadings);
     }
 
+    private final AtomicBoolean mReadingsPending = new AtomicBoolean();
+
+    private final Runnable mInvalidateReadings = new Runnable()
+    {
+        @Override
+        public void run() {
+            mReadingsPending.set(false);
+            mReadingsRenderer.invalidate();
+        }
+    };
+
+    /**
+     * Writes the latest reading of every sensor, grouped by device, on the main thread.
+     */
+    private final ReadingsRenderer.Content mReadingsContent = new ReadingsRenderer.Content()
+    {
+        @Override
+        public void appendTo(StringBuilder builder) {
+            for (Map.Entry<String, HashMap<UUID,Sensor>> entry : sensors.entrySet()) {
+                builder.append(entry.getKey()).append('\n');
+                for (Sensor s : entry.getValue().values()) {
+                    if (!s.hasReading())
+                        continue;
+                    builder.append("  ");
+                    s.appendLatestTo(builder);
+                    builder.append('\n');
+                }
+            }
+        }
+    };
+
     private static IntentFilter makeGattUpdateIntentFilter() {
         final IntentFilter intentFilter = new IntentFilter();
         intentFilter.addAction(BluetoothLeService.ACTION_GATT_CONNECTED);
@@ -348,6 +667,7 @@ public class MainActivity extends Activity {
         intentFilter.addAction(BluetoothLeService.ACTION_DATA_READ);
         intentFilter.addAction(BluetoothLeService.ACTION_DATA_NOTIFY);
         intentFilter.addAction(BluetoothLeService.ACTION_DATA_WRITE);
+        intentFilter.addAction(BluetoothLeService.ACTION_FALL_DETECTED);
         return intentFilter;
     }
 }
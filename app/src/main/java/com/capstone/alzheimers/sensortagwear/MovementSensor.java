@@ -0,0 +1,39 @@
+package com.capstone.alzheimers.sensortagwear;
+
+import com.capstone.alzheimers.sensortagwear.core.SensorDescriptor;
+import com.capstone.alzheimers.sensortagwear.core.SensorSample;
+import com.capstone.alzheimers.sensortagwear.core.SensorTagDecoder;
+
+import java.util.UUID;
+
+/**
+ * Implements the Movement Sensor: accelerometer, gyroscope and magnetometer (CC2650 SensorTag).
+ */
+public class MovementSensor extends Sensor
+{
+
+    public MovementSensor(UUID serviceUuid,BluetoothLeService mBluetoothLeService,String address)
+    {
+        super(serviceUuid,mBluetoothLeService,address);
+        this.measure=1;
+    }
+
+    @Override
+    public void decode(byte[] value,SensorSample sample)
+    {
+        SensorTagDecoder.decodeMovement(value,SensorDescriptor.MOVEMENT_ACCELEROMETER_RANGE,sample);
+    }
+
+    @Override
+    protected void appendTo(StringBuilder builder)
+    {
+        // Shows the axes selected by measure.
+        if(this.measure==2)
+            appendValues(builder,3,6,"deg/s");
+        else if(this.measure==3)
+            appendValues(builder,6,9,"uT");
+        else
+            appendValues(builder,0,3,"G");
+    }
+
+}
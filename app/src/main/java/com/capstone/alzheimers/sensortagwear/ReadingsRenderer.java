@@ -0,0 +1,192 @@
+package com.capstone.alzheimers.sensortagwear;
+
+import android.view.Choreographer;
+import android.widget.TextView;
+
+import com.capstone.alzheimers.sensortagwear.core.LogHistogram;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Draws the latest readings into a TextView at most once per display frame, however often they
+ * change. {@link #invalidate} only marks the readings dirty; the text is rebuilt on the next
+ * Choreographer frame, and not before the minimum interval since the last one. In ambient mode
+ * the interval becomes {@link #AMBIENT_INTERVAL_MILLIS}.
+ *
+ * The text is built into a reused buffer and handed to the TextView as a char array, which it
+ * wraps without copying. Unchanged text is not set again, so it costs no relayout. Must be used
+ * on the main thread.
+ *
+ * The time from the first invalidation to the draw that shows it can be recorded in a histogram.
+ */
+public class ReadingsRenderer implements Choreographer.FrameCallback
+{
+
+    /**
+     * Writes the current readings.
+     */
+    public interface Content
+    {
+        void appendTo(StringBuilder builder);
+    }
+
+    public final static long AMBIENT_INTERVAL_MILLIS = 5000;
+
+    private final Choreographer mChoreographer = Choreographer.getInstance();
+    private final Content mContent;
+    private final long mIntervalNanos;
+    // Reused text buffers: the one being built and the one shown.
+    private final StringBuilder mBuilder = new StringBuilder(256);
+    private char[] mText = new char[256];
+    private int mLength;
+    private CharSequence mShownText;
+    private TextView mTextView;
+    private boolean mAmbient;
+    private boolean mDirty;
+    private boolean mScheduled;
+    private long mLastFrameNanos;
+    private long mFrameCount;
+    // Time of the first invalidation not drawn yet.
+    private long mDirtyNanos;
+    private LogHistogram mDisplayLatency;
+
+    /**
+     * @param minIntervalMillis Minimum time between two draws, 0 to draw on every frame.
+     */
+    public ReadingsRenderer(Content content, long minIntervalMillis)
+    {
+        mContent = content;
+        mIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMillis);
+    }
+
+    /**
+     * Sets the view to draw into, null to stop drawing.
+     */
+    public void setTextView(TextView textView)
+    {
+        mTextView = textView;
+        mShownText = null;
+        if (textView == null)
+            cancel();
+        else if (mDirty)
+            schedule();
+    }
+
+    /**
+     * Marks the readings as changed. Cheap enough to call on every notification.
+     */
+    public void invalidate()
+    {
+        if (!mDirty && mDisplayLatency != null)
+            mDirtyNanos = System.nanoTime();
+        mDirty = true;
+        if (!mScheduled && mTextView != null)
+            schedule();
+    }
+
+    /**
+     * Records the display latency in nanoseconds, null to stop.
+     */
+    public void setDisplayLatency(LogHistogram histogram)
+    {
+        mDisplayLatency = histogram;
+        mDirtyNanos = System.nanoTime();
+    }
+
+    public void setAmbient(boolean ambient)
+    {
+        if (ambient == mAmbient)
+            return;
+        mAmbient = ambient;
+        // The pending frame was timed for the other interval.
+        if (mScheduled)
+        {
+            cancel();
+            schedule();
+        }
+    }
+
+    public boolean isAmbient()
+    {
+        return mAmbient;
+    }
+
+    /**
+     * Number of times the text was rebuilt.
+     */
+    public long getFrameCount()
+    {
+        return mFrameCount;
+    }
+
+    public void cancel()
+    {
+        mChoreographer.removeFrameCallback(this);
+        mScheduled = false;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos)
+    {
+        mScheduled = false;
+        if (!mDirty || mTextView == null)
+            return;
+        if (frameTimeNanos - mLastFrameNanos < getIntervalNanos())
+        {
+            // Woken up early by rounding of the delay.
+            schedule();
+            return;
+        }
+        mLastFrameNanos = frameTimeNanos;
+        mDirty = false;
+        draw();
+        if (mDisplayLatency != null)
+            mDisplayLatency.record(System.nanoTime() - mDirtyNanos);
+    }
+
+    private long getIntervalNanos()
+    {
+        return mAmbient ? TimeUnit.MILLISECONDS.toNanos(AMBIENT_INTERVAL_MILLIS) : mIntervalNanos;
+    }
+
+    private void schedule()
+    {
+        mScheduled = true;
+        // Frame times are on the System.nanoTime() clock.
+        long delayNanos = mLastFrameNanos + getIntervalNanos() - System.nanoTime();
+        if (delayNanos > 0)
+            mChoreographer.postFrameCallbackDelayed(this, TimeUnit.NANOSECONDS.toMillis(delayNanos));
+        else
+            mChoreographer.postFrameCallback(this);
+    }
+
+    private void draw()
+    {
+        mFrameCount++;
+        mBuilder.setLength(0);
+        mContent.appendTo(mBuilder);
+        int length = mBuilder.length();
+        // Someone else may have written to the view since the last draw.
+        if (mTextView.getText() == mShownText && sameText(length))
+            return;
+        if (length > mText.length)
+            mText = new char[Math.max(length, mText.length * 2)];
+        mBuilder.getChars(0, length, mText, 0);
+        mLength = length;
+        mTextView.setText(mText, 0, length);
+        mShownText = mTextView.getText();
+    }
+
+    private boolean sameText(int length)
+    {
+        if (length != mLength)
+            return false;
+        for (int i = 0; i < length; i++)
+        {
+            if (mBuilder.charAt(i) != mText[i])
+                return false;
+        }
+        return true;
+    }
+
+}
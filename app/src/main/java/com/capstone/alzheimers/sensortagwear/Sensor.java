@@ -1,14 +1,21 @@
 package com.capstone.alzheimers.sensortagwear;
 
-import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattService;
-import android.os.Handler;
 import android.util.Log;
 
+import com.capstone.alzheimers.sensortagwear.core.AdaptivePeriodController;
+import com.capstone.alzheimers.sensortagwear.core.GattOperation;
+import com.capstone.alzheimers.sensortagwear.core.LivenessMonitor;
+import com.capstone.alzheimers.sensortagwear.core.SensorDescriptor;
+import com.capstone.alzheimers.sensortagwear.core.SensorSample;
+import com.capstone.alzheimers.sensortagwear.core.SensorTagDecoder;
+
 import java.util.UUID;
 
 /**
  * Implements any sensor in the TI SensorTag.
+ *
+ * Notifications are received and decoded on one thread at a time, the processing worker of the
+ * device; the latest reading can be displayed from any thread, see {@link #appendLatestTo}.
  */
 public abstract class Sensor
 {
@@ -18,47 +25,96 @@ public abstract class Sensor
     // Indicator.
     public boolean wasInitialized=false;
     // Service & Characteristics UUIDs.
+    private final SensorDescriptor descriptor;
     private final UUID serviceUuid;
+    private final UUID dataUuid;
     // Bluetooth instances.
     private BluetoothLeService mBluetoothLeService;
     //Bluetooth address for this particular sensor
     private String mBluetoothLeDeviceAddress;
     // Special for motion sensor.
     public int measure; //1=acc,2=gyr,3=mag
-    // Check for a received notification every second.
-    private Handler handler;
-    private boolean wasNotified;
-    public void checkForNotification()
+    // Latest reading, reused for every notification.
+    protected final SensorSample sample=new SensorSample();
+    // Copy of the latest reading for the display, which reads it on the main thread.
+    private final SensorSample shown=new SensorSample();
+    // Adapts the period to the signal, null for a fixed period.
+    private final AdaptivePeriodController periodController;
+    // Watchdog of the notifications, null if this sensor has no period.
+    private LivenessMonitor.Watch watch;
+    // Stamp and sequence number of the latest notification, -1 before the first.
+    private long latestTimestampNanos=-1;
+    private long latestSequence=-1;
+    // Notifications lost between the engine and this sensor, read by the metrics on another thread.
+    private volatile long lostCount;
+    /**
+     * Turns the service and the notifications on again when they stopped, on the recovery thread.
+     */
+    private final Runnable recovery=new Runnable()
     {
-        handler.postDelayed(new Runnable()
+        @Override
+        public void run()
         {
-            @Override
-            public void run()
-            {
-                if(!wasNotified)
-                {
-                    Log.w(TAG, "no notifications");
-                    turnOnService();
-                    unableNotifications();
-                }
-                else
-                    Log.w(TAG, "notifications");
-                wasNotified=false;
-                handler.postDelayed(this,1000);
-            }
-        },1000);
+            Log.w(TAG, "no notifications from "+dataUuid+" - "+mBluetoothLeDeviceAddress);
+            turnOnService();
+            unableNotifications();
+        }
+    };
+    /**
+     * Records a notification before it is decoded.
+     *
+     * @param timestampNanos SystemClock.elapsedRealtimeNanos() at the GATT callback.
+     * @param sequence Sequence number in the stream, -1 if unknown.
+     */
+    public void receiveNotification(long timestampNanos,long sequence)
+    {
+        LivenessMonitor.Watch watch=this.watch;
+        if(watch!=null)
+            watch.touch();
+        this.latestTimestampNanos=timestampNanos;
+        if(sequence>=0&&this.latestSequence>=0&&sequence>this.latestSequence+1)
+            this.lostCount+=sequence-this.latestSequence-1;
+        if(sequence>=0)
+            this.latestSequence=sequence;
     }
-    public void receiveNotification()
+
+    /**
+     * Time of the latest notification, SystemClock.elapsedRealtimeNanos() at the GATT callback.
+     */
+    public long getLatestTimestampNanos()
+    {
+        return this.latestTimestampNanos;
+    }
+
+    /**
+     * Number of notifications of the stream that did not reach this sensor, going by the sequence
+     * numbers. Those lost before the engine are counted in its stream metrics.
+     */
+    public long getLostCount()
     {
-        this.wasNotified=true;
+        return this.lostCount;
     }
 
+    // Logs the GATT operations of this sensor that did not succeed.
+    private final GattOperation.Callback operationCallback=new GattOperation.Callback()
+    {
+        @Override
+        public void onComplete(GattOperation operation,int status)
+        {
+            if(status!=GattOperation.STATUS_SUCCESS)
+                Log.w(TAG, operation+" failed with status "+status);
+        }
+    };
+
     /**
      * Disable sensor.
      */
     public void disable()
     {
-        this.handler.removeCallbacksAndMessages(null);
+        this.mBluetoothLeService.setStreamPeriod(this.dataUuid,0,mBluetoothLeDeviceAddress);
+        if(this.watch!=null)
+            this.mBluetoothLeService.getLivenessMonitor().unwatch(this.watch);
+        this.watch=null;
     }
 
     /**
@@ -67,11 +123,14 @@ public abstract class Sensor
     public Sensor(UUID serviceUuid,BluetoothLeService mBluetoothLeService,String address)
     {
         // Initialize the Service & Characteristics UUIDs.
+        this.descriptor=SensorDescriptor.forService(serviceUuid);
         this.serviceUuid=serviceUuid;
+        this.dataUuid=this.descriptor.getDataUuid();
         // Initialize the Bluetooth instances.
         this.mBluetoothLeService=mBluetoothLeService;
         // Initialize the device address
         this.mBluetoothLeDeviceAddress = address;
+        this.periodController=createPeriodController();
 
         // Turns on this sensor's service.
         turnOnService();
@@ -81,10 +140,21 @@ public abstract class Sensor
         unableNotifications();
         // Set this sensor's period.
         setPeriod();
-        // Start the notifications checking.
-        this.handler=new Handler();
-        this.wasNotified=false;
-        checkForNotification();
+        // Start the notifications checking, for sensors that notify periodically.
+        long period=getPeriodMillis();
+        if(period>0)
+            this.watch=mBluetoothLeService.getLivenessMonitor().watch(address,this.dataUuid,
+                    LivenessMonitor.deadlineFor(period),this.recovery);
+    }
+
+    /**
+     * Whether the tag is a CC2541 SensorTag rather than a CC2650: it has this sensor's service but
+     * no movement service. False until the services are discovered.
+     */
+    protected boolean isCC2541()
+    {
+        return this.mBluetoothLeService.hasService(this.serviceUuid,mBluetoothLeDeviceAddress)
+                &&!this.mBluetoothLeService.hasService(SensorDescriptor.MOVEMENT.getServiceUuid(),mBluetoothLeDeviceAddress);
     }
 
     /**
@@ -92,21 +162,23 @@ public abstract class Sensor
      */
     public void turnOnService()
     {
-        BluetoothGattService service=this.mBluetoothLeService.getService(this.serviceUuid,mBluetoothLeDeviceAddress);
-        if(service==null)return;
-        UUID configUuid= UUID.fromString(SensorTagGattAttributes.servToConfig(this.serviceUuid.toString(), "Default"));
-        BluetoothGattCharacteristic configCharacteristic=service.getCharacteristic(configUuid);
-        configCharacteristic.setValue(new byte[]{1});
-        // Special case: Movement
-        if("f000aa80-0451-4000-b000-000000000000".equals(this.serviceUuid.toString()))
-            configCharacteristic.setValue(new byte[] {0x7F,0x02});
-        this.mBluetoothLeService.writeCharacteristic(configCharacteristic,mBluetoothLeDeviceAddress);
-        try {
-            Thread.sleep(400);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+        if(!this.mBluetoothLeService.hasService(this.serviceUuid,mBluetoothLeDeviceAddress))return;
         this.wasInitialized=true;
+        // Special case: Keys have no configuration, they always notify.
+        UUID configUuid=this.descriptor.getConfigUuid();
+        if(configUuid==null)return;
+        // Queued: starts once the previous GATT operation on this device has been acknowledged.
+        this.mBluetoothLeService.writeCharacteristic(this.serviceUuid,configUuid,configValue(),mBluetoothLeDeviceAddress,operationCallback);
+    }
+
+    /**
+     * Value written to the configuration characteristic to turn the sensor on, the one of the
+     * descriptor by default. Called from the constructor, so overrides must not rely on their own
+     * fields.
+     */
+    protected byte[] configValue()
+    {
+        return this.descriptor.getConfigValue();
     }
 
     /**
@@ -114,17 +186,8 @@ public abstract class Sensor
      */
     public void unableNotifications()
     {
-        BluetoothGattService service=this.mBluetoothLeService.getService(this.serviceUuid,mBluetoothLeDeviceAddress);
-        if(service==null)return;
-        UUID dataUuid= UUID.fromString(SensorTagGattAttributes.servToData(serviceUuid.toString(), "Default"));
-        BluetoothGattCharacteristic dataCharacteristic=service.getCharacteristic(dataUuid);
-        this.mBluetoothLeService.setCharacteristicNotification(dataCharacteristic, true,mBluetoothLeDeviceAddress); // Enabled locally.
-        this.mBluetoothLeService.writeDescriptor(dataCharacteristic,mBluetoothLeDeviceAddress); // Enabled remotely.
-        try {
-            Thread.sleep(400);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+        if(!this.mBluetoothLeService.hasService(this.serviceUuid,mBluetoothLeDeviceAddress))return;
+        this.mBluetoothLeService.enableNotifications(this.serviceUuid,this.dataUuid,mBluetoothLeDeviceAddress,operationCallback);
     }
 
     /**
@@ -132,56 +195,192 @@ public abstract class Sensor
      */
     public void setPeriod()
     {
-        BluetoothGattService service=this.mBluetoothLeService.getService(this.serviceUuid,mBluetoothLeDeviceAddress);
-        if(service==null)return;
-        UUID periUuid= UUID.fromString(SensorTagGattAttributes.servToPeri(this.serviceUuid.toString(), "default"));
-        BluetoothGattCharacteristic periodCharacteristic=service.getCharacteristic(periUuid);
-        periodCharacteristic.setValue(new byte[] {SensorTagGattAttributes.optimalPeriod(this.serviceUuid.toString())});
-        this.mBluetoothLeService.writeCharacteristic(periodCharacteristic,mBluetoothLeDeviceAddress);
-        try {
-            Thread.sleep(400);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+        if(!this.mBluetoothLeService.hasService(this.serviceUuid,mBluetoothLeDeviceAddress))return;
+        UUID periUuid=this.descriptor.getPeriodUuid();
+        if(periUuid==null)return;
+        byte[] period=new byte[] {(byte)getPeriod()};
+        this.mBluetoothLeService.writeCharacteristic(this.serviceUuid,periUuid,period,mBluetoothLeDeviceAddress,operationCallback);
+        this.mBluetoothLeService.setStreamPeriod(this.dataUuid,getPeriodMillis(),mBluetoothLeDeviceAddress);
     }
 
     /**
-     * Gyroscope, Magnetometer, Barometer, IR temperature all store 16 bit two's complement values as LSB MSB, which cannot be directly parsed
-     * as getIntValue(FORMAT_SINT16, offset) because the bytes are stored as little-endian.
-     *
-     * This function extracts these 16 bit two's complement values.
+     * Notification period this sensor is configured with, 0 if it only notifies on change.
+     */
+    public long getPeriodMillis()
+    {
+        if(!this.descriptor.hasPeriod())
+            return 0;
+        return getPeriod()*10L;
+    }
+
+    /**
+     * Period in tens of milliseconds, as written to the period characteristic.
+     */
+    private int getPeriod()
+    {
+        if(this.periodController!=null)
+            return this.periodController.getPeriod();
+        return this.descriptor.getDefaultPeriod()&0xFF;
+    }
+
+    /**
+     * Controller of the period of this sensor, or null to keep the optimal period. Called from
+     * the constructor, so overrides must not rely on their own fields.
+     */
+    protected AdaptivePeriodController createPeriodController()
+    {
+        return null;
+    }
+
+    /**
+     * Gives the controller of the period, with its metrics, or null if the period is fixed.
+     */
+    public AdaptivePeriodController getPeriodController()
+    {
+        return this.periodController;
+    }
+
+    /**
+     * Gives the UUIDs and defaults of this kind of sensor.
+     */
+    public SensorDescriptor getDescriptor()
+    {
+        return this.descriptor;
+    }
+
+    public UUID getServiceUuid()
+    {
+        return this.serviceUuid;
+    }
+
+    /**
+     * UUID of the characteristic this sensor's notifications come from.
+     */
+    public UUID getDataUuid()
+    {
+        return this.dataUuid;
+    }
+
+    protected BluetoothLeService getBluetoothLeService()
+    {
+        return this.mBluetoothLeService;
+    }
+
+    protected String getDeviceAddress()
+    {
+        return this.mBluetoothLeDeviceAddress;
+    }
+
+    protected GattOperation.Callback getOperationCallback()
+    {
+        return this.operationCallback;
+    }
+
+    /**
+     * See {@link SensorTagDecoder#shortSignedAtOffset(byte[], int)}.
      * */
-    protected static Integer shortSignedAtOffset(byte[] c, int offset)
+    protected static int shortSignedAtOffset(byte[] c, int offset)
+    {
+        return SensorTagDecoder.shortSignedAtOffset(c, offset);
+    }
+
+    protected static int shortUnsignedAtOffset(byte[] c, int offset)
+    {
+        return SensorTagDecoder.shortUnsignedAtOffset(c, offset);
+    }
+
+    protected static int twentyFourBitUnsignedAtOffset(byte[] c, int offset)
+    {
+        return SensorTagDecoder.twentyFourBitUnsignedAtOffset(c, offset);
+    }
+
+    /**
+     * Decodes the byte array into the given sample, without allocating.
+     */
+    public abstract void decode(byte[] value,SensorSample sample);
+
+    /**
+     * Decodes the byte array into this sensor's latest reading and returns it.
+     */
+    public SensorSample update(byte[] value)
     {
-        Integer lowerByte = (int) c[offset] & 0xFF;
-        Integer upperByte = (int) c[offset+1]; // // Interpret MSB as signed
-        return (upperByte << 8) + lowerByte;
+        decode(value,this.sample);
+        if(this.periodController!=null&&!this.sample.isEmpty()&&this.periodController.update(this.sample))
+        {
+            setPeriod();
+            LivenessMonitor.Watch watch=this.watch;
+            if(watch!=null)
+                watch.setDeadlineMillis(LivenessMonitor.deadlineFor(getPeriodMillis()));
+        }
+        synchronized(this.shown)
+        {
+            this.shown.copyFrom(this.sample);
+        }
+        return this.sample;
     }
 
-    protected static Integer shortUnsignedAtOffset(byte[] c, int offset)
+    public SensorSample getLatestSample()
     {
-        Integer lowerByte = (int) c[offset] & 0xFF;
-        Integer upperByte = (int) c[offset + 1] & 0xFF; // // Interpret MSB as signed
-        return (upperByte << 8) + lowerByte;
+        return this.sample;
     }
 
-    protected static Integer twentyFourBitUnsignedAtOffset(byte[] c, int offset)
+    /**
+     * Converts the byte array to an actual measured value. Allocates; prefer {@link #update(byte[])}.
+     */
+    public Point3D convert(byte[] value)
     {
-        Integer lowerByte = (int) c[offset] & 0xFF;
-        Integer mediumByte = (int) c[offset+1] & 0xFF;
-        Integer upperByte = (int) c[offset + 2] & 0xFF;
-        return (upperByte << 16) + (mediumByte << 8) + lowerByte;
+        SensorSample latest=update(value);
+        return new Point3D(latest.get(0),latest.count>1?latest.get(1):0,latest.count>2?latest.get(2):0);
+    }
+
+    /**
+     * Whether a reading was decoded yet, from any thread.
+     */
+    public boolean hasReading()
+    {
+        synchronized(this.shown)
+        {
+            return !this.shown.isEmpty();
+        }
     }
 
     /**
-     * Converts the byte array to an actual measured value.
+     * Appends the latest reading, with its unit, for display, from any thread.
      */
-    public abstract Point3D convert(byte[] value);
+    public void appendLatestTo(StringBuilder builder)
+    {
+        synchronized(this.shown)
+        {
+            appendTo(builder);
+        }
+    }
+
+    /**
+     * Appends the latest reading, with its unit. Called by {@link #appendLatestTo}, which holds
+     * the display copy of the reading still.
+     */
+    protected abstract void appendTo(StringBuilder builder);
+
+    /**
+     * Appends the values of the latest reading separated by '/', followed by the unit.
+     */
+    protected void appendValues(StringBuilder builder,int from,int to,String unit)
+    {
+        for(int i=from;i<to;i++)
+        {
+            if(i>from)
+                builder.append('/');
+            builder.append(this.shown.get(i));
+        }
+        builder.append(' ').append(unit);
+    }
 
     @Override
     public String toString()
     {
-        throw new UnsupportedOperationException("Error: shouldn't be called.");
+        StringBuilder builder=new StringBuilder();
+        appendLatestTo(builder);
+        return builder.toString();
     }
 
 }
@@ -0,0 +1,123 @@
+package com.capstone.alzheimers.sensortagwear;
+
+import com.capstone.alzheimers.sensortagwear.core.SensorDescriptor;
+
+import java.util.HashMap;
+import java.util.UUID;
+
+/**
+ * Creates the Sensor implementation matching a SensorTag service, looked up by service UUID.
+ */
+public class SensorRegistry
+{
+
+    /**
+     * Creates one kind of sensor.
+     */
+    public interface Factory
+    {
+        Sensor create(UUID serviceUuid,BluetoothLeService mBluetoothLeService,String address);
+    }
+
+    // Service UUID to sensor factory map.
+    private static HashMap<UUID,Factory> factories=new HashMap<>();
+
+    static
+    {
+        register(SensorDescriptor.IR_TEMPERATURE,new Factory()
+        {
+            @Override
+            public Sensor create(UUID serviceUuid,BluetoothLeService mBluetoothLeService,String address)
+            {
+                return new IRTemperatureSensor(serviceUuid,mBluetoothLeService,address);
+            }
+        });
+        register(SensorDescriptor.ACCELEROMETER,new Factory()
+        {
+            @Override
+            public Sensor create(UUID serviceUuid,BluetoothLeService mBluetoothLeService,String address)
+            {
+                return new AccelerometerSensor(serviceUuid,mBluetoothLeService,address);
+            }
+        });
+        register(SensorDescriptor.HUMIDITY,new Factory()
+        {
+            @Override
+            public Sensor create(UUID serviceUuid,BluetoothLeService mBluetoothLeService,String address)
+            {
+                return new HumiditySensor(serviceUuid,mBluetoothLeService,address);
+            }
+        });
+        register(SensorDescriptor.MAGNETOMETER,new Factory()
+        {
+            @Override
+            public Sensor create(UUID serviceUuid,BluetoothLeService mBluetoothLeService,String address)
+            {
+                return new MagnetometerSensor(serviceUuid,mBluetoothLeService,address);
+            }
+        });
+        register(SensorDescriptor.BAROMETER,new Factory()
+        {
+            @Override
+            public Sensor create(UUID serviceUuid,BluetoothLeService mBluetoothLeService,String address)
+            {
+                return new BarometerSensor(serviceUuid,mBluetoothLeService,address);
+            }
+        });
+        register(SensorDescriptor.GYROSCOPE,new Factory()
+        {
+            @Override
+            public Sensor create(UUID serviceUuid,BluetoothLeService mBluetoothLeService,String address)
+            {
+                return new GyroscopeSensor(serviceUuid,mBluetoothLeService,address);
+            }
+        });
+        register(SensorDescriptor.LUXOMETER,new Factory()
+        {
+            @Override
+            public Sensor create(UUID serviceUuid,BluetoothLeService mBluetoothLeService,String address)
+            {
+                return new LuxometerSensor(serviceUuid,mBluetoothLeService,address);
+            }
+        });
+        register(SensorDescriptor.MOVEMENT,new Factory()
+        {
+            @Override
+            public Sensor create(UUID serviceUuid,BluetoothLeService mBluetoothLeService,String address)
+            {
+                return new MovementSensor(serviceUuid,mBluetoothLeService,address);
+            }
+        });
+        register(SensorDescriptor.KEYS,new Factory()
+        {
+            @Override
+            public Sensor create(UUID serviceUuid,BluetoothLeService mBluetoothLeService,String address)
+            {
+                return new KeysSensor(serviceUuid,mBluetoothLeService,address);
+            }
+        });
+    }
+
+    private static void register(SensorDescriptor descriptor,Factory factory)
+    {
+        factories.put(descriptor.getServiceUuid(),factory);
+    }
+
+    /**
+     * Checks whether a Sensor implementation exists for the input service.
+     */
+    public static boolean supports(UUID serviceUuid)
+    {
+        return factories.containsKey(serviceUuid);
+    }
+
+    /**
+     * Creates the sensor for the input service, or gives null if the service is not a sensor.
+     */
+    public static Sensor create(UUID serviceUuid,BluetoothLeService mBluetoothLeService,String address)
+    {
+        Factory factory=factories.get(serviceUuid);
+        return factory==null?null:factory.create(serviceUuid,mBluetoothLeService,address);
+    }
+
+}
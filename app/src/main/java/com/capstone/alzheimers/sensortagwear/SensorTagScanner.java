@@ -0,0 +1,182 @@
+package com.capstone.alzheimers.sensortagwear;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelUuid;
+import android.util.Log;
+
+import com.capstone.alzheimers.sensortagwear.core.AdvertisingData;
+import com.capstone.alzheimers.sensortagwear.core.DeviceSightings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Scans for SensorTags with BluetoothLeScanner. The controller filters the advertisements by
+ * SensorTag name and service UUID, and when it supports it, batches them and reports every
+ * {@link #REPORT_DELAY_MILLIS}. Each device is reported to the listener once; later
+ * advertisements only update its smoothed RSSI.
+ *
+ * The callbacks run on the main thread, as do all methods.
+ */
+public class SensorTagScanner
+{
+
+    /**
+     * Gets the devices found.
+     */
+    public interface Listener
+    {
+        void onDeviceFound(BluetoothDevice device);
+    }
+
+    private final static String TAG = SensorTagScanner.class.getSimpleName();
+
+    public final static long REPORT_DELAY_MILLIS = 1000;
+    // Names advertised by the CC2541 and CC2650 SensorTags.
+    private final static String[] NAMES = {"SensorTag", "TI BLE Sensor Tag", "CC2650 SensorTag"};
+    // 16-bit movement service UUID advertised by the CC2650 SensorTag.
+    private final static int MOVEMENT_SERVICE_UUID16 = 0xAA80;
+    private final static ParcelUuid MOVEMENT_SERVICE_UUID =
+            new ParcelUuid(UUID.fromString("0000aa80-0000-1000-8000-00805f9b34fb"));
+
+    private final BluetoothAdapter mBluetoothAdapter;
+    private final Listener mListener;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final DeviceSightings mSightings = new DeviceSightings();
+    private final List<ScanFilter> mFilters;
+    private BluetoothLeScanner mScanner;
+    private boolean mScanning;
+
+    public SensorTagScanner(BluetoothAdapter adapter, Listener listener)
+    {
+        mBluetoothAdapter = adapter;
+        mListener = listener;
+        mFilters = new ArrayList<ScanFilter>();
+        mFilters.add(new ScanFilter.Builder().setServiceUuid(MOVEMENT_SERVICE_UUID).build());
+        for (String name : NAMES)
+            mFilters.add(new ScanFilter.Builder().setDeviceName(name).build());
+    }
+
+    /**
+     * Starts a new scan, which stops by itself after the period.
+     */
+    public void start(long periodMillis)
+    {
+        stop();
+        mScanner = mBluetoothAdapter.getBluetoothLeScanner();
+        if (mScanner == null)
+        {
+            Log.w(TAG, "Bluetooth is off");
+            return;
+        }
+        mSightings.clear();
+        ScanSettings.Builder settings = new ScanSettings.Builder()
+                .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY);
+        if (mBluetoothAdapter.isOffloadedScanBatchingSupported())
+            settings.setReportDelay(REPORT_DELAY_MILLIS);
+        mScanner.startScan(mFilters, settings.build(), mScanCallback);
+        mScanning = true;
+        mHandler.postDelayed(mStopRunnable, periodMillis);
+    }
+
+    public void stop()
+    {
+        mHandler.removeCallbacks(mStopRunnable);
+        if (!mScanning)
+            return;
+        mScanning = false;
+        // The scanner is null again once Bluetooth is off, and so is the scan.
+        if (mBluetoothAdapter.getBluetoothLeScanner() != null)
+        {
+            // Delivers the batch in progress first.
+            mScanner.flushPendingScanResults(mScanCallback);
+            mScanner.stopScan(mScanCallback);
+        }
+    }
+
+    public boolean isScanning()
+    {
+        return mScanning;
+    }
+
+    /**
+     * Gives the smoothed RSSI of a device found by the last scan, in dBm.
+     */
+    public int getRssi(String address)
+    {
+        return mSightings.getRssi(address);
+    }
+
+    private final Runnable mStopRunnable = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            stop();
+        }
+    };
+
+    private final ScanCallback mScanCallback = new ScanCallback()
+    {
+        @Override
+        public void onScanResult(int callbackType, ScanResult result)
+        {
+            onResult(result);
+        }
+
+        @Override
+        public void onBatchScanResults(List<ScanResult> results)
+        {
+            for (int i = 0; i < results.size(); i++)
+                onResult(results.get(i));
+        }
+
+        @Override
+        public void onScanFailed(int errorCode)
+        {
+            Log.w(TAG, "Scan failed: " + errorCode);
+            mScanning = false;
+        }
+    };
+
+    private void onResult(ScanResult result)
+    {
+        BluetoothDevice device = result.getDevice();
+        String address = device.getAddress();
+        // Known devices only need their RSSI updated.
+        if (!mSightings.contains(address))
+        {
+            ScanRecord record = result.getScanRecord();
+            if (record == null || !isSensorTag(record.getBytes()))
+                return;
+        }
+        if (mSightings.update(address, result.getRssi(), result.getTimestampNanos()))
+            mListener.onDeviceFound(device);
+    }
+
+    /**
+     * Checks the raw advertisement, in case the controller could not filter it.
+     */
+    private static boolean isSensorTag(byte[] scanRecord)
+    {
+        if (AdvertisingData.hasUuid16(scanRecord, MOVEMENT_SERVICE_UUID16))
+            return true;
+        for (String name : NAMES)
+        {
+            if (AdvertisingData.hasName(scanRecord, name))
+                return true;
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.capstone.alzheimers.sensortagwear;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.capstone.alzheimers.sensortagwear.core.UplinkChannel;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.MessageApi;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.NodeApi;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the sample batches to the connected phone as Wearable Data Layer messages. All calls block,
+ * so they must run off the main thread.
+ */
+public class WearableUplinkChannel implements UplinkChannel
+{
+
+    private final static String TAG = WearableUplinkChannel.class.getSimpleName();
+    private final static long TIMEOUT_SECONDS = 10;
+
+    private final GoogleApiClient mGoogleApiClient;
+
+    public WearableUplinkChannel(Context context)
+    {
+        mGoogleApiClient = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .build();
+    }
+
+    @Override
+    public boolean send(String path, byte[] payload)
+    {
+        if (!mGoogleApiClient.isConnected())
+        {
+            ConnectionResult result = mGoogleApiClient.blockingConnect(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (!result.isSuccess())
+            {
+                Log.w(TAG, "Unable to connect to the Data Layer: " + result.getErrorCode());
+                return false;
+            }
+        }
+        NodeApi.GetConnectedNodesResult nodes =
+                Wearable.NodeApi.getConnectedNodes(mGoogleApiClient).await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        boolean sent = false;
+        for (Node node : nodes.getNodes())
+        {
+            MessageApi.SendMessageResult result = Wearable.MessageApi.sendMessage(
+                    mGoogleApiClient, node.getId(), path, payload).await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (result.getStatus().isSuccess())
+                sent = true;
+            else
+                Log.w(TAG, "Unable to send to " + node.getDisplayName());
+        }
+        return sent;
+    }
+
+    public void close()
+    {
+        mGoogleApiClient.disconnect();
+    }
+
+}
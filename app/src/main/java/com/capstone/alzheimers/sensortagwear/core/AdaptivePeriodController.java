@@ -0,0 +1,173 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+/**
+ * Closed-loop control of the notification period of one sensor stream. Every notification
+ * updates a moving mean and variance of each value. While the signal stays quiet, the period is
+ * doubled every {@link #DECISION_SAMPLES} notifications, up to the maximum. A value further than
+ * {@link #ACTIVITY_FACTOR} quiet deviations from its mean is activity and drops the period back to
+ * the minimum at once.
+ *
+ * Also keeps the metrics of the trade-off: the notifications saved compared to the minimum period,
+ * and the error of holding each value until the next notification, which is what a reader of the
+ * stream sees between two notifications.
+ *
+ * Periods are in tens of milliseconds, as written to the period characteristic. Not thread safe:
+ * update it from the thread the notifications are handled on.
+ */
+public class AdaptivePeriodController
+{
+
+    // Maximum period of the SensorTag, 2.55 s.
+    public final static int MAX_PERIOD=255;
+    public final static int DECISION_SAMPLES=10;
+    public final static double ACTIVITY_FACTOR=4;
+    // Weight of a new value in the moving mean and variance.
+    private final static double WEIGHT=0.2;
+
+    private final int minPeriod;
+    private final int maxPeriod;
+    private final double absoluteDeviation;
+    private final double relativeDeviation;
+    private final double[] means=new double[SensorSample.MAX_VALUES];
+    private final double[] variances=new double[SensorSample.MAX_VALUES];
+    private final double[] previous=new double[SensorSample.MAX_VALUES];
+    private int count;
+    private int period;
+    private int quietSamples;
+    // Metrics.
+    private long notifications;
+    private long fullRateNotifications;
+    private long periodChanges;
+    private double squaredHoldError;
+
+    /**
+     * The signal is quiet while the deviation of every value stays under the larger of the
+     * absolute deviation and the relative deviation times the value.
+     */
+    public AdaptivePeriodController(int minPeriod,int maxPeriod,double absoluteDeviation,double relativeDeviation)
+    {
+        if(minPeriod<=0||maxPeriod<minPeriod||maxPeriod>MAX_PERIOD)
+            throw new IllegalArgumentException("period "+minPeriod+" to "+maxPeriod);
+        this.minPeriod=minPeriod;
+        this.maxPeriod=maxPeriod;
+        this.absoluteDeviation=absoluteDeviation;
+        this.relativeDeviation=relativeDeviation;
+        this.period=minPeriod;
+    }
+
+    /**
+     * Current period, in tens of milliseconds.
+     */
+    public int getPeriod()
+    {
+        return this.period;
+    }
+
+    public int getMinPeriod()
+    {
+        return this.minPeriod;
+    }
+
+    /**
+     * Takes a new sample into account.
+     *
+     * @return True if the period changed and must be written to the sensor.
+     */
+    public boolean update(SensorSample sample)
+    {
+        this.notifications++;
+        this.fullRateNotifications+=this.period/this.minPeriod;
+        if(this.count!=sample.count)
+        {
+            // First sample: start from it.
+            this.count=sample.count;
+            for(int i=0;i<this.count;i++)
+            {
+                this.means[i]=sample.values[i];
+                this.variances[i]=0;
+                this.previous[i]=sample.values[i];
+            }
+            return false;
+        }
+        boolean active=false;
+        boolean quiet=true;
+        double holdError=0;
+        for(int i=0;i<this.count;i++)
+        {
+            double value=sample.values[i];
+            double deviation=Math.max(this.absoluteDeviation,this.relativeDeviation*Math.abs(this.means[i]));
+            double difference=value-this.means[i];
+            if(Math.abs(difference)>ACTIVITY_FACTOR*deviation)
+                active=true;
+            this.means[i]+=WEIGHT*difference;
+            this.variances[i]=(1-WEIGHT)*(this.variances[i]+WEIGHT*difference*difference);
+            if(this.variances[i]>deviation*deviation)
+                quiet=false;
+            holdError=Math.max(holdError,Math.abs(value-this.previous[i]));
+            this.previous[i]=value;
+        }
+        this.squaredHoldError+=holdError*holdError;
+        if(active)
+        {
+            this.quietSamples=0;
+            return setPeriod(this.minPeriod);
+        }
+        if(!quiet)
+        {
+            this.quietSamples=0;
+            return false;
+        }
+        if(++this.quietSamples<DECISION_SAMPLES)
+            return false;
+        this.quietSamples=0;
+        return setPeriod(Math.min(this.maxPeriod,this.period*2));
+    }
+
+    private boolean setPeriod(int period)
+    {
+        if(period==this.period)
+            return false;
+        this.period=period;
+        this.periodChanges++;
+        return true;
+    }
+
+    public long getNotificationCount()
+    {
+        return this.notifications;
+    }
+
+    /**
+     * Notifications that would have been received at the minimum period, minus those received.
+     */
+    public long getNotificationsSaved()
+    {
+        return this.fullRateNotifications-this.notifications;
+    }
+
+    public long getPeriodChangeCount()
+    {
+        return this.periodChanges;
+    }
+
+    /**
+     * Root mean square of the largest change of a value from one notification to the next, in
+     * the units of the sensor.
+     */
+    public double getRmsHoldError()
+    {
+        return this.notifications<2?0:Math.sqrt(this.squaredHoldError/(this.notifications-1));
+    }
+
+    public void reset()
+    {
+        this.count=0;
+        this.period=this.minPeriod;
+        this.quietSamples=0;
+        this.notifications=0;
+        this.fullRateNotifications=0;
+        this.periodChanges=0;
+        this.squaredHoldError=0;
+    }
+
+}
@@ -0,0 +1,155 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+/**
+ * Reads the fields of a raw BLE advertisement (the scan record) in place: nothing is copied or
+ * allocated, so it can run on every advertisement of a busy environment.
+ *
+ * A scan record is a sequence of AD structures, each a length byte, a type byte and length-1 bytes
+ * of data. A zero length ends the record.
+ */
+public final class AdvertisingData
+{
+
+    // AD types.
+    public final static int TYPE_UUID16_INCOMPLETE=0x02;
+    public final static int TYPE_UUID16_COMPLETE=0x03;
+    public final static int TYPE_UUID128_INCOMPLETE=0x06;
+    public final static int TYPE_UUID128_COMPLETE=0x07;
+    public final static int TYPE_NAME_SHORT=0x08;
+    public final static int TYPE_NAME_COMPLETE=0x09;
+    public final static int TYPE_TX_POWER=0x0A;
+
+    private AdvertisingData()
+    {
+    }
+
+    /**
+     * Gives the offset of the first AD structure of the type, i.e. of its length byte, or -1.
+     */
+    public static int find(byte[] record,int type)
+    {
+        return findFrom(record,0,type);
+    }
+
+    /**
+     * Gives the offset of the first AD structure of the type at or after from, or -1.
+     */
+    public static int findFrom(byte[] record,int from,int type)
+    {
+        if(record==null)
+            return -1;
+        int offset=from;
+        while(offset<record.length)
+        {
+            int length=record[offset]&0xFF;
+            if(length==0||offset+length>=record.length)
+                return -1;
+            if((record[offset+1]&0xFF)==type)
+                return offset;
+            offset+=length+1;
+        }
+        return -1;
+    }
+
+    /**
+     * Number of data bytes of the AD structure at offset.
+     */
+    public static int dataLength(byte[] record,int offset)
+    {
+        return (record[offset]&0xFF)-1;
+    }
+
+    /**
+     * Offset of the data of the AD structure at offset.
+     */
+    public static int dataOffset(int offset)
+    {
+        return offset+2;
+    }
+
+    /**
+     * Tells whether the 16-bit service UUID is advertised, in a complete or incomplete list.
+     */
+    public static boolean hasUuid16(byte[] record,int uuid)
+    {
+        return hasUuid16(record,TYPE_UUID16_COMPLETE,uuid)||hasUuid16(record,TYPE_UUID16_INCOMPLETE,uuid);
+    }
+
+    private static boolean hasUuid16(byte[] record,int type,int uuid)
+    {
+        for(int offset=find(record,type);offset>=0;offset=findFrom(record,offset+(record[offset]&0xFF)+1,type))
+        {
+            int end=dataOffset(offset)+dataLength(record,offset);
+            for(int i=dataOffset(offset);i+1<end;i+=2)
+            {
+                if(((record[i]&0xFF)|(record[i+1]&0xFF)<<8)==uuid)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells whether the 128-bit service UUID is advertised, in a complete or incomplete list.
+     */
+    public static boolean hasUuid128(byte[] record,long mostSignificantBits,long leastSignificantBits)
+    {
+        return hasUuid128(record,TYPE_UUID128_COMPLETE,mostSignificantBits,leastSignificantBits)
+                ||hasUuid128(record,TYPE_UUID128_INCOMPLETE,mostSignificantBits,leastSignificantBits);
+    }
+
+    private static boolean hasUuid128(byte[] record,int type,long mostSignificantBits,long leastSignificantBits)
+    {
+        for(int offset=find(record,type);offset>=0;offset=findFrom(record,offset+(record[offset]&0xFF)+1,type))
+        {
+            int end=dataOffset(offset)+dataLength(record,offset);
+            // Little endian: the least significant half comes first.
+            for(int i=dataOffset(offset);i+15<end;i+=16)
+            {
+                if(longAt(record,i)==leastSignificantBits&&longAt(record,i+8)==mostSignificantBits)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static long longAt(byte[] record,int offset)
+    {
+        long value=0;
+        for(int i=7;i>=0;i--)
+            value=(value<<8)|(record[offset+i]&0xFF);
+        return value;
+    }
+
+    /**
+     * Tells whether the advertised local name, complete or shortened, is the name. Names are
+     * compared as ASCII.
+     */
+    public static boolean hasName(byte[] record,String name)
+    {
+        int offset=find(record,TYPE_NAME_COMPLETE);
+        if(offset<0)
+            offset=find(record,TYPE_NAME_SHORT);
+        if(offset<0||dataLength(record,offset)!=name.length())
+            return false;
+        int data=dataOffset(offset);
+        for(int i=0;i<name.length();i++)
+        {
+            if((record[data+i]&0xFF)!=name.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gives the advertised transmit power in dBm, or Integer.MIN_VALUE if there is none.
+     */
+    public static int txPower(byte[] record)
+    {
+        int offset=find(record,TYPE_TX_POWER);
+        if(offset<0||dataLength(record,offset)<1)
+            return Integer.MIN_VALUE;
+        return record[dataOffset(offset)];
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rolling aggregates of every sensor of every device: one {@link WindowAggregator} per device and
+ * data characteristic, all over the same windows. An aggregator is created on the first sample of
+ * its stream, with that sample's number of values.
+ *
+ * Streams can be recorded and read from any thread.
+ */
+public class AggregateStore
+{
+
+    public final static long[] DEFAULT_WINDOWS_MILLIS=new long[]{10*1000,60*1000,10*60*1000};
+
+    private final long[] windowsMillis;
+    private final int capacity;
+    private final ConcurrentHashMap<String,ConcurrentHashMap<UUID,WindowAggregator>> aggregators=
+            new ConcurrentHashMap<String,ConcurrentHashMap<UUID,WindowAggregator>>();
+
+    /**
+     * @param windowsMillis Length of each window, in the unit of the timestamps.
+     * @param periodMillis Shortest expected period of the streams, to size the aggregators.
+     */
+    public AggregateStore(long[] windowsMillis,long periodMillis)
+    {
+        long longest=0;
+        for(long windowMillis:windowsMillis)
+            longest=Math.max(longest,windowMillis);
+        this.windowsMillis=windowsMillis.clone();
+        this.capacity=SampleStore.capacityFor(longest,periodMillis);
+    }
+
+    public void record(String address,UUID dataUuid,long timestamp,SensorSample sample)
+    {
+        if(sample.isEmpty())
+            return;
+        ConcurrentHashMap<UUID,WindowAggregator> device=this.aggregators.get(address);
+        if(device==null)
+        {
+            device=new ConcurrentHashMap<UUID,WindowAggregator>();
+            ConcurrentHashMap<UUID,WindowAggregator> existing=this.aggregators.putIfAbsent(address,device);
+            if(existing!=null)
+                device=existing;
+        }
+        WindowAggregator aggregator=device.get(dataUuid);
+        if(aggregator==null)
+        {
+            aggregator=new WindowAggregator(this.windowsMillis,this.capacity,sample.count);
+            WindowAggregator existing=device.putIfAbsent(dataUuid,aggregator);
+            if(existing!=null)
+                aggregator=existing;
+        }
+        aggregator.add(timestamp,sample);
+    }
+
+    /**
+     * Gives the aggregator of a stream, or null if it has no sample yet.
+     */
+    public WindowAggregator getAggregator(String address,UUID dataUuid)
+    {
+        ConcurrentHashMap<UUID,WindowAggregator> device=this.aggregators.get(address);
+        return device==null?null:device.get(dataUuid);
+    }
+
+    /**
+     * Index of the window of the given length, -1 if there is none.
+     */
+    public int windowOf(long windowMillis)
+    {
+        for(int i=0;i<this.windowsMillis.length;i++)
+        {
+            if(this.windowsMillis[i]==windowMillis)
+                return i;
+        }
+        return -1;
+    }
+
+    public Set<String> getDevices()
+    {
+        return Collections.unmodifiableSet(this.aggregators.keySet());
+    }
+
+    public Set<UUID> getStreams(String address)
+    {
+        ConcurrentHashMap<UUID,WindowAggregator> device=this.aggregators.get(address);
+        return device==null?Collections.<UUID>emptySet():Collections.unmodifiableSet(device.keySet());
+    }
+
+    /**
+     * Evicts the samples of every stream that are out of their windows at the given time.
+     */
+    public void expire(long timestamp)
+    {
+        for(ConcurrentHashMap<UUID,WindowAggregator> device:this.aggregators.values())
+            for(WindowAggregator aggregator:device.values())
+                aggregator.expire(timestamp);
+    }
+
+    /**
+     * Bytes held by all the aggregators, roughly.
+     */
+    public long getMemoryBytes()
+    {
+        long bytes=0;
+        for(ConcurrentHashMap<UUID,WindowAggregator> device:this.aggregators.values())
+            for(WindowAggregator aggregator:device.values())
+                bytes+=aggregator.getMemoryBytes();
+        return bytes;
+    }
+
+    public void clear()
+    {
+        this.aggregators.clear();
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+/**
+ * The rules of a deployment with SensorTags on the doors, the bed and the patient, all on the
+ * movement sensor: accelerometer in G from index 0, gyroscope in degrees per second from 3. The
+ * thresholds are starting points, to be tuned on recordings of each home.
+ */
+public class CareRules
+{
+
+    // A door swinging open turns its tag faster than this.
+    public final static double DOOR_DEGREES_PER_SECOND=30;
+    // Someone moving in bed shakes the mattress by more than this over 10 s.
+    public final static double BED_MOTION_G=0.02;
+    public final static long BED_MOTION_WINDOW_MILLIS=10*1000;
+    // The patient turning or walking.
+    public final static double PATIENT_DEGREES_PER_SECOND=20;
+
+    public final static int NIGHT_FROM_MINUTE=22*60;
+    public final static int NIGHT_TO_MINUTE=6*60;
+
+    private CareRules()
+    {
+    }
+
+    public static Rule.Condition doorMoves(String door)
+    {
+        return Rule.Condition.magnitude(door,SensorDescriptor.MOVEMENT,3,Rule.Comparison.ABOVE,DOOR_DEGREES_PER_SECOND);
+    }
+
+    public static Rule.Condition bedMoves(String bed)
+    {
+        return Rule.Condition.aggregate(bed,SensorDescriptor.MOVEMENT,2,Rule.Statistic.STANDARD_DEVIATION,
+                BED_MOTION_WINDOW_MILLIS,Rule.Comparison.ABOVE,BED_MOTION_G);
+    }
+
+    public static Rule.Condition patientMoves(String patient)
+    {
+        return Rule.Condition.magnitude(patient,SensorDescriptor.MOVEMENT,3,Rule.Comparison.ABOVE,
+                PATIENT_DEGREES_PER_SECOND);
+    }
+
+    /**
+     * The door opens at night, then the bed stays still for the time: the patient left the
+     * bedroom and did not come back.
+     */
+    public static Rule nightWandering(String door,String bed,long stillMillis)
+    {
+        return new Rule("Night wandering")
+                .between(NIGHT_FROM_MINUTE,NIGHT_TO_MINUTE)
+                .when(doorMoves(door))
+                .absent(bedMoves(bed),stillMillis);
+    }
+
+    /**
+     * The patient does not move for the time during the day; matches again each time it passes.
+     */
+    public static Rule inactivity(String patient,long stillMillis)
+    {
+        return new Rule("Inactivity")
+                .between(NIGHT_TO_MINUTE,NIGHT_FROM_MINUTE)
+                .absent(patientMoves(patient),stillMillis);
+    }
+
+}
@@ -0,0 +1,262 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Brings up several SensorTags at once: connect, discover services, configure sensors.
+ * At most {@code maxConcurrent} devices are in bring-up at the same time, the others wait in
+ * FIFO order. Each stage has a timeout so that one unresponsive tag cannot hold a slot forever.
+ */
+public class ConnectionOrchestrator
+{
+
+    public final static int DEFAULT_MAX_CONCURRENT=4;
+    public final static long DEFAULT_STAGE_TIMEOUT_MILLIS=10000;
+
+    // Bring-up stages, in order.
+    public enum Stage
+    {
+        QUEUED,
+        CONNECTING,
+        DISCOVERING,
+        CONFIGURING,
+        READY,
+        FAILED
+    }
+
+    /**
+     * The Bluetooth side of the bring-up. Every call must return quickly; the results are fed
+     * back through {@link #onConnected}, {@link #onServicesDiscovered} and {@link #onConfigured}.
+     * Service discovery is expected to be started by the host itself once connected.
+     */
+    public interface Host
+    {
+        boolean connect(String address);
+        void configure(String address);
+        void abort(String address);
+    }
+
+    /**
+     * Receives every stage change. Called on the thread that caused the change.
+     */
+    public interface ProgressListener
+    {
+        void onProgress(String address,Stage stage);
+    }
+
+    private final Host host;
+    private final ScheduledExecutorService timer;
+    private final long stageTimeoutMillis;
+    private int maxConcurrent;
+    private ProgressListener listener;
+
+    private final ArrayDeque<String> waiting=new ArrayDeque<String>();
+    private final HashMap<String,Stage> stages=new HashMap<String,Stage>();
+    private final HashMap<String,ScheduledFuture<?>> timeouts=new HashMap<String,ScheduledFuture<?>>();
+    private int active;
+
+    public ConnectionOrchestrator(Host host,ScheduledExecutorService timer,int maxConcurrent,long stageTimeoutMillis)
+    {
+        if(maxConcurrent<1)
+            throw new IllegalArgumentException("maxConcurrent must be at least 1");
+        this.host=host;
+        this.timer=timer;
+        this.maxConcurrent=maxConcurrent;
+        this.stageTimeoutMillis=stageTimeoutMillis;
+    }
+
+    public synchronized void setMaxConcurrent(int maxConcurrent)
+    {
+        if(maxConcurrent<1)
+            throw new IllegalArgumentException("maxConcurrent must be at least 1");
+        this.maxConcurrent=maxConcurrent;
+    }
+
+    public synchronized void setProgressListener(ProgressListener listener)
+    {
+        this.listener=listener;
+    }
+
+    /**
+     * Queues the devices for bring-up. Devices already waiting or in bring-up are ignored.
+     */
+    public void bringUp(Collection<String> addresses)
+    {
+        for(String address:addresses)
+        {
+            boolean queued;
+            synchronized(this)
+            {
+                Stage stage=this.stages.get(address);
+                queued=stage==null||stage==Stage.READY||stage==Stage.FAILED;
+                if(queued)
+                {
+                    this.stages.put(address,Stage.QUEUED);
+                    this.waiting.add(address);
+                }
+            }
+            if(queued)
+                report(address,Stage.QUEUED);
+        }
+        startWaiting();
+    }
+
+    public void onConnected(String address)
+    {
+        advance(address,Stage.CONNECTING,Stage.DISCOVERING);
+    }
+
+    public void onServicesDiscovered(String address,boolean success)
+    {
+        if(!success)
+        {
+            fail(address);
+            return;
+        }
+        if(advance(address,Stage.DISCOVERING,Stage.CONFIGURING))
+            this.host.configure(address);
+    }
+
+    public void onConfigured(String address,boolean success)
+    {
+        if(!success)
+        {
+            fail(address);
+            return;
+        }
+        if(advance(address,Stage.CONFIGURING,Stage.READY))
+            release();
+    }
+
+    /**
+     * A device that disconnects during bring-up fails and frees its slot.
+     */
+    public void onDisconnected(String address)
+    {
+        fail(address);
+    }
+
+    public synchronized Stage getStage(String address)
+    {
+        return this.stages.get(address);
+    }
+
+    /**
+     * Forgets every device, e.g. when all connections are closed.
+     */
+    public synchronized void cancelAll()
+    {
+        for(ScheduledFuture<?> timeout:this.timeouts.values())
+            timeout.cancel(false);
+        this.timeouts.clear();
+        this.waiting.clear();
+        this.stages.clear();
+        this.active=0;
+    }
+
+    private void startWaiting()
+    {
+        while(true)
+        {
+            String address;
+            synchronized(this)
+            {
+                if(this.active>=this.maxConcurrent||this.waiting.isEmpty())
+                    return;
+                address=this.waiting.poll();
+                this.active++;
+                this.stages.put(address,Stage.CONNECTING);
+                scheduleTimeout(address);
+            }
+            report(address,Stage.CONNECTING);
+            if(!this.host.connect(address))
+                fail(address);
+        }
+    }
+
+    /**
+     * Moves a device from one stage to the next.
+     *
+     * @return Return false if the device was not in the expected stage, e.g. after a timeout.
+     */
+    private boolean advance(String address,Stage from,Stage to)
+    {
+        synchronized(this)
+        {
+            if(this.stages.get(address)!=from)
+                return false;
+            this.stages.put(address,to);
+            if(to==Stage.READY)
+                cancelTimeout(address);
+            else
+                scheduleTimeout(address);
+        }
+        report(address,to);
+        return true;
+    }
+
+    private void fail(String address)
+    {
+        synchronized(this)
+        {
+            Stage stage=this.stages.get(address);
+            if(stage==null||stage==Stage.READY||stage==Stage.FAILED)
+                return;
+            this.stages.put(address,Stage.FAILED);
+            cancelTimeout(address);
+            if(stage==Stage.QUEUED)
+                this.waiting.remove(address);
+            else
+                this.active--;
+        }
+        report(address,Stage.FAILED);
+        this.host.abort(address);
+        startWaiting();
+    }
+
+    private void release()
+    {
+        synchronized(this)
+        {
+            this.active--;
+        }
+        startWaiting();
+    }
+
+    private void scheduleTimeout(final String address)
+    {
+        cancelTimeout(address);
+        this.timeouts.put(address,this.timer.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                fail(address);
+            }
+        },this.stageTimeoutMillis,TimeUnit.MILLISECONDS));
+    }
+
+    private void cancelTimeout(String address)
+    {
+        ScheduledFuture<?> timeout=this.timeouts.remove(address);
+        if(timeout!=null)
+            timeout.cancel(false);
+    }
+
+    private void report(String address,Stage stage)
+    {
+        ProgressListener listener;
+        synchronized(this)
+        {
+            listener=this.listener;
+        }
+        if(listener!=null)
+            listener.onProgress(address,stage);
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+/**
+ * Connection parameters requested for a device, after the Android connection priorities. A short
+ * connection interval gives more throughput and less latency for more radio time on both ends.
+ */
+public enum ConnectionProfile
+{
+
+    // BluetoothGatt.CONNECTION_PRIORITY_HIGH: 11.25 to 15 ms interval. Bring-up and fast streams.
+    HIGH_THROUGHPUT(15),
+    // BluetoothGatt.CONNECTION_PRIORITY_BALANCED: 30 to 50 ms interval, the default.
+    BALANCED(50),
+    // BluetoothGatt.CONNECTION_PRIORITY_LOW_POWER: 100 to 125 ms interval. Slow streams.
+    LOW_POWER(125);
+
+    // Notifications per second of a device from which each profile is used.
+    public final static double HIGH_THROUGHPUT_RATE=50;
+    public final static double BALANCED_RATE=5;
+
+    private final int maxIntervalMillis;
+
+    ConnectionProfile(int maxIntervalMillis)
+    {
+        this.maxIntervalMillis=maxIntervalMillis;
+    }
+
+    /**
+     * Longest connection interval of the profile, i.e. the worst latency it adds.
+     */
+    public int getMaxIntervalMillis()
+    {
+        return this.maxIntervalMillis;
+    }
+
+    /**
+     * Gives the profile for a device whose streams notify at the rate in total.
+     */
+    public static ConnectionProfile forRate(double notificationsPerSecond)
+    {
+        if(notificationsPerSecond>=HIGH_THROUGHPUT_RATE)
+            return HIGH_THROUGHPUT;
+        if(notificationsPerSecond>=BALANCED_RATE)
+            return BALANCED;
+        return LOW_POWER;
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The connection of one device as the engine sees it: the period of each of its streams, the
+ * connection profile requested for them, and measurements of what the link delivers. Notification
+ * throughput and the largest gap between two notifications are measured since the last reset; the
+ * GATT operation round trip comes from the operation queue of the device. Each stream also has its
+ * {@link StreamMetrics} in the registry of the engine.
+ */
+public class DeviceLink
+{
+
+    private final GattOperationQueue operationQueue;
+    private final MetricsRegistry metrics;
+    private final String address;
+    // Notification period of each stream, by data UUID.
+    private final ConcurrentHashMap<UUID,Long> periods=new ConcurrentHashMap<UUID,Long>();
+    private final ConcurrentHashMap<UUID,StreamMetrics> streams=new ConcurrentHashMap<UUID,StreamMetrics>();
+    private volatile ConnectionProfile profile;
+    private long notifications;
+    private long bytes;
+    private long startNanos=System.nanoTime();
+    private long lastNanos;
+    private long maxGapNanos;
+
+    DeviceLink(GattOperationQueue operationQueue,MetricsRegistry metrics,String address)
+    {
+        this.operationQueue=operationQueue;
+        this.metrics=metrics;
+        this.address=address;
+    }
+
+    /**
+     * Sets the period of a stream, 0 if it stopped or only notifies on change.
+     */
+    void setPeriod(UUID uuid,long periodMillis)
+    {
+        if(periodMillis>0)
+            this.periods.put(uuid,periodMillis);
+        else
+            this.periods.remove(uuid);
+    }
+
+    /**
+     * Notifications per second expected from the periods of the streams.
+     */
+    public double getExpectedRate()
+    {
+        double rate=0;
+        for(long period:this.periods.values())
+            rate+=1000.0/period;
+        return rate;
+    }
+
+    /**
+     * Profile last requested, null while disconnected.
+     */
+    public ConnectionProfile getProfile()
+    {
+        return this.profile;
+    }
+
+    void setProfile(ConnectionProfile profile)
+    {
+        this.profile=profile;
+    }
+
+    /**
+     * Gives the metrics of a stream, creating them on first use.
+     */
+    public StreamMetrics getStreamMetrics(UUID uuid)
+    {
+        StreamMetrics stream=this.streams.get(uuid);
+        if(stream==null)
+        {
+            stream=new StreamMetrics(this.metrics,this.address,uuid);
+            StreamMetrics existing=this.streams.putIfAbsent(uuid,stream);
+            if(existing!=null)
+                stream=existing;
+        }
+        return stream;
+    }
+
+    /**
+     * Gives the metrics of every stream that notified.
+     */
+    public Collection<StreamMetrics> getStreamMetrics()
+    {
+        return this.streams.values();
+    }
+
+    /**
+     * Records a notification of a stream.
+     *
+     * @return Sequence number of the notification in its stream.
+     */
+    long onNotification(UUID uuid,int length,long timestampNanos)
+    {
+        Long period=this.periods.get(uuid);
+        long sequence=getStreamMetrics(uuid).onNotification(timestampNanos,period==null?0:period);
+        synchronized(this)
+        {
+            if(this.lastNanos!=0)
+                this.maxGapNanos=Math.max(this.maxGapNanos,timestampNanos-this.lastNanos);
+            this.lastNanos=timestampNanos;
+            this.notifications++;
+            this.bytes+=length;
+        }
+        return sequence;
+    }
+
+    /**
+     * Starts a new measurement. The stream metrics keep counting, but not the gap up to now.
+     */
+    public synchronized void resetStats()
+    {
+        for(StreamMetrics stream:this.streams.values())
+            stream.restart();
+        this.notifications=0;
+        this.bytes=0;
+        this.startNanos=System.nanoTime();
+        this.lastNanos=0;
+        this.maxGapNanos=0;
+    }
+
+    public synchronized long getNotificationCount()
+    {
+        return this.notifications;
+    }
+
+    public synchronized double getNotificationRate()
+    {
+        return this.notifications*1e9/Math.max(1,System.nanoTime()-this.startNanos);
+    }
+
+    public synchronized double getByteRate()
+    {
+        return this.bytes*1e9/Math.max(1,System.nanoTime()-this.startNanos);
+    }
+
+    /**
+     * Largest time between two notifications of the device, any stream.
+     */
+    public synchronized double getMaxGapMillis()
+    {
+        return this.maxGapNanos/1e6;
+    }
+
+    /**
+     * Mean time from issuing a GATT operation to its acknowledgement, since the connection.
+     */
+    public double getMeanOperationMillis()
+    {
+        return this.operationQueue.getMeanLatencyNanos()/1e6;
+    }
+
+    public double getMaxOperationMillis()
+    {
+        return this.operationQueue.getMaxLatencyNanos()/1e6;
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * Devices seen by a scan, one entry per address however often it advertises. The signal strength
+ * of each is smoothed with an exponential moving average, since a single RSSI reading varies by
+ * several dBm from one advertisement to the next.
+ *
+ * Not thread safe: scan results are delivered on one thread.
+ */
+public class DeviceSightings
+{
+
+    /**
+     * Weight of a new RSSI reading in the average.
+     */
+    public final static float DEFAULT_RSSI_WEIGHT=0.25f;
+
+    private static class Sighting
+    {
+        float rssi;
+        long count;
+        long lastSeenNanos;
+    }
+
+    private final float weight;
+    private final HashMap<String,Sighting> sightings=new HashMap<String,Sighting>();
+
+    public DeviceSightings()
+    {
+        this(DEFAULT_RSSI_WEIGHT);
+    }
+
+    public DeviceSightings(float weight)
+    {
+        if(weight<=0||weight>1)
+            throw new IllegalArgumentException("weight "+weight);
+        this.weight=weight;
+    }
+
+    /**
+     * Records an advertisement.
+     *
+     * @return True the first time the address is seen.
+     */
+    public boolean update(String address,int rssi,long timestampNanos)
+    {
+        Sighting sighting=this.sightings.get(address);
+        boolean added=sighting==null;
+        if(added)
+        {
+            sighting=new Sighting();
+            sighting.rssi=rssi;
+            this.sightings.put(address,sighting);
+        }
+        else
+            sighting.rssi+=(rssi-sighting.rssi)*this.weight;
+        sighting.count++;
+        sighting.lastSeenNanos=timestampNanos;
+        return added;
+    }
+
+    public boolean contains(String address)
+    {
+        return this.sightings.containsKey(address);
+    }
+
+    /**
+     * Gives the smoothed RSSI in dBm, or Integer.MIN_VALUE if the address was not seen.
+     */
+    public int getRssi(String address)
+    {
+        Sighting sighting=this.sightings.get(address);
+        return sighting==null?Integer.MIN_VALUE:Math.round(sighting.rssi);
+    }
+
+    /**
+     * Number of advertisements received from the address.
+     */
+    public long getCount(String address)
+    {
+        Sighting sighting=this.sightings.get(address);
+        return sighting==null?0:sighting.count;
+    }
+
+    public long getLastSeenNanos(String address)
+    {
+        Sighting sighting=this.sightings.get(address);
+        return sighting==null?0:sighting.lastSeenNanos;
+    }
+
+    public Set<String> getAddresses()
+    {
+        return this.sightings.keySet();
+    }
+
+    public int size()
+    {
+        return this.sightings.size();
+    }
+
+    public void clear()
+    {
+        this.sightings.clear();
+    }
+
+}
@@ -0,0 +1,167 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detects falls in the motion of a worn sensor, one sample at a time, with the usual three
+ * phases: a free fall, where the acceleration drops well under 1 G, an impact, where it peaks
+ * over {@link #IMPACT_G} within {@link #IMPACT_WINDOW_MILLIS}, then the wearer lying still in a
+ * new posture. The posture is the direction of gravity from the orientation filter: a fall turns
+ * it by at least {@link #FALL_TILT_DEGREES} from where it was before the free fall.
+ *
+ * A hard impact is also taken without a free fall, as when tripping against something. An impact
+ * not followed by a fall is reported as such. A fall is reported {@link #CONFIRM_MILLIS} after its
+ * impact at the latest, whatever comes in between.
+ *
+ * Allocation free, with constant work per sample. Not thread safe.
+ */
+public class FallDetector
+{
+
+    public final static double FREE_FALL_G=0.6;
+    public final static double IMPACT_G=2.5;
+    // Impact taken as a fall even without a free fall before it.
+    public final static double HARD_IMPACT_G=3.5;
+    public final static long IMPACT_WINDOW_MILLIS=1000;
+    // Bouncing and scrambling after the impact, not looked at.
+    public final static long SETTLE_MILLIS=500;
+    public final static long CONFIRM_MILLIS=2500;
+    public final static double FALL_TILT_DEGREES=50;
+    // Still: acceleration within this of 1 G, and rotation under STILL_DEGREES_PER_SECOND.
+    public final static double STILL_G=0.25;
+    public final static double STILL_DEGREES_PER_SECOND=60;
+    // Share of the samples after settling that must be still.
+    public final static double STILL_FRACTION=0.7;
+
+    public enum Event
+    {
+        NONE,
+        IMPACT,
+        FALL
+    }
+
+    private enum State
+    {
+        MONITORING,
+        FREE_FALL,
+        IMPACT
+    }
+
+    private final static double COS_FALL_TILT=Math.cos(Math.toRadians(FALL_TILT_DEGREES));
+    private final static long IMPACT_WINDOW_NANOS=TimeUnit.MILLISECONDS.toNanos(IMPACT_WINDOW_MILLIS);
+    private final static long SETTLE_NANOS=TimeUnit.MILLISECONDS.toNanos(SETTLE_MILLIS);
+    private final static long CONFIRM_NANOS=TimeUnit.MILLISECONDS.toNanos(CONFIRM_MILLIS);
+
+    private State state=State.MONITORING;
+    // Direction of gravity before the event, a unit vector in the sensor frame.
+    private final double[] reference=new double[]{0,0,1};
+    private long freeFallNanos;
+    private long impactNanos;
+    private double impactG;
+    private int samples;
+    private int stillSamples;
+    private double tiltDegrees;
+
+    /**
+     * Takes one sample.
+     *
+     * @param timestampNanos Time of the sample, on a monotonic clock.
+     * @param accelerationG Magnitude of the acceleration, in G.
+     * @param rotationDegreesPerSecond Magnitude of the rotation rate.
+     * @param gravity Direction of gravity in the sensor frame, a unit vector, from the
+     *                orientation filter updated with this sample.
+     * @return The event this sample completes, {@link Event#NONE} most of the time.
+     */
+    public Event update(long timestampNanos,double accelerationG,double rotationDegreesPerSecond,double[] gravity)
+    {
+        switch(this.state)
+        {
+            case MONITORING:
+                if(accelerationG<FREE_FALL_G)
+                {
+                    this.state=State.FREE_FALL;
+                    this.freeFallNanos=timestampNanos;
+                }
+                else if(accelerationG>HARD_IMPACT_G)
+                    impact(timestampNanos,accelerationG);
+                else
+                {
+                    this.reference[0]=gravity[0];
+                    this.reference[1]=gravity[1];
+                    this.reference[2]=gravity[2];
+                }
+                return Event.NONE;
+            case FREE_FALL:
+                if(accelerationG>IMPACT_G)
+                    impact(timestampNanos,accelerationG);
+                else if(timestampNanos-this.freeFallNanos>IMPACT_WINDOW_NANOS)
+                    this.state=State.MONITORING;
+                return Event.NONE;
+            default:
+                return confirm(timestampNanos,accelerationG,rotationDegreesPerSecond,gravity);
+        }
+    }
+
+    private void impact(long timestampNanos,double accelerationG)
+    {
+        this.state=State.IMPACT;
+        this.impactNanos=timestampNanos;
+        this.impactG=accelerationG;
+        this.samples=0;
+        this.stillSamples=0;
+    }
+
+    private Event confirm(long timestampNanos,double accelerationG,double rotationDegreesPerSecond,double[] gravity)
+    {
+        long sinceImpact=timestampNanos-this.impactNanos;
+        if(sinceImpact<SETTLE_NANOS)
+        {
+            this.impactG=Math.max(this.impactG,accelerationG);
+            return Event.NONE;
+        }
+        this.samples++;
+        if(Math.abs(accelerationG-1)<STILL_G&&rotationDegreesPerSecond<STILL_DEGREES_PER_SECOND)
+            this.stillSamples++;
+        if(sinceImpact<CONFIRM_NANOS)
+            return Event.NONE;
+        this.state=State.MONITORING;
+        double cosine=gravity[0]*this.reference[0]+gravity[1]*this.reference[1]+gravity[2]*this.reference[2];
+        this.tiltDegrees=Math.toDegrees(Math.acos(Math.max(-1,Math.min(1,cosine))));
+        if(cosine<=COS_FALL_TILT&&this.stillSamples>=STILL_FRACTION*this.samples)
+            return Event.FALL;
+        return Event.IMPACT;
+    }
+
+    /**
+     * Time of the impact of the last event, on the clock of the samples.
+     */
+    public long getImpactNanos()
+    {
+        return this.impactNanos;
+    }
+
+    /**
+     * Peak acceleration of the last impact, in G.
+     */
+    public double getImpactG()
+    {
+        return this.impactG;
+    }
+
+    /**
+     * Change of posture of the last event, in degrees.
+     */
+    public double getTiltDegrees()
+    {
+        return this.tiltDegrees;
+    }
+
+    public void reset()
+    {
+        this.state=State.MONITORING;
+        this.reference[0]=0;
+        this.reference[1]=0;
+        this.reference[2]=1;
+    }
+
+}
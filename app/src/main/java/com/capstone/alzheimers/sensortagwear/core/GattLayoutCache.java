@@ -0,0 +1,279 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import com.capstone.alzheimers.sensortagwear.SensorTagGattAttributes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * GATT layout of each known device, its services and their characteristics, with the firmware
+ * revision of the device when it was discovered. On reconnection, a layout the transport kept from
+ * the previous connection is trusted as long as the firmware revision read from the device is the
+ * same, which takes one read instead of a whole service discovery.
+ *
+ * Persisted to a file, if given, on every change, so the firmware revisions survive a restart.
+ * A file that cannot be read is ignored: every device is then discovered again.
+ */
+public class GattLayoutCache
+{
+
+    public final static UUID FIRMWARE_SERVICE=UUID.fromString(SensorTagGattAttributes.UUID_DEVINFO_SERV);
+    public final static UUID FIRMWARE_REVISION=UUID.fromString(SensorTagGattAttributes.UUID_DEVINFO_FWREV);
+
+    private final static int MAGIC=0x4C41594F;
+    private final static int VERSION=1;
+    private final static Charset UTF_8=Charset.forName("UTF-8");
+
+    /**
+     * The services of a device in discovery order, each with its characteristics, and the
+     * firmware revision they belong to.
+     */
+    public static class Layout
+    {
+        private final String firmwareRevision;
+        private final LinkedHashMap<UUID,List<UUID>> characteristics;
+        private final List<UUID> services;
+
+        public Layout(String firmwareRevision,LinkedHashMap<UUID,List<UUID>> characteristics)
+        {
+            this.firmwareRevision=firmwareRevision;
+            this.characteristics=characteristics;
+            this.services=Collections.unmodifiableList(new ArrayList<UUID>(characteristics.keySet()));
+        }
+
+        public String getFirmwareRevision()
+        {
+            return this.firmwareRevision;
+        }
+
+        public List<UUID> getServices()
+        {
+            return this.services;
+        }
+
+        /**
+         * Gives the characteristics of a service, or null if the device does not have it.
+         */
+        public List<UUID> getCharacteristics(UUID serviceUuid)
+        {
+            return this.characteristics.get(serviceUuid);
+        }
+
+        /**
+         * Whether the transport knows the same services and characteristics for the device.
+         */
+        public boolean matches(GattTransport transport,String address)
+        {
+            if(!this.services.equals(transport.getServices(address)))
+                return false;
+            for(Map.Entry<UUID,List<UUID>> service:this.characteristics.entrySet())
+            {
+                if(!service.getValue().equals(transport.getCharacteristics(address,service.getKey())))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    private final File file;
+    private final HashMap<String,Layout> layouts=new HashMap<String,Layout>();
+    private volatile IOException failure;
+
+    /**
+     * Cache in memory only.
+     */
+    public GattLayoutCache()
+    {
+        this.file=null;
+    }
+
+    /**
+     * Cache persisted to the file, loaded from it if it exists.
+     */
+    public GattLayoutCache(File file)
+    {
+        this.file=file;
+        try
+        {
+            load();
+        }
+        catch(FileNotFoundException e)
+        {
+            // First run.
+        }
+        catch(IOException e)
+        {
+            this.layouts.clear();
+            this.failure=e;
+        }
+    }
+
+    /**
+     * Gives the layout of the services the transport knows for a device, with the firmware
+     * revision, or null if the transport knows none.
+     */
+    public static Layout capture(GattTransport transport,String address,String firmwareRevision)
+    {
+        List<UUID> services=transport.getServices(address);
+        if(services==null)
+            return null;
+        LinkedHashMap<UUID,List<UUID>> characteristics=new LinkedHashMap<UUID,List<UUID>>();
+        for(UUID serviceUuid:services)
+        {
+            List<UUID> uuids=transport.getCharacteristics(address,serviceUuid);
+            characteristics.put(serviceUuid,uuids==null?Collections.<UUID>emptyList():uuids);
+        }
+        return new Layout(firmwareRevision,characteristics);
+    }
+
+    /**
+     * Decodes the value of the firmware revision characteristic, a UTF-8 string the SensorTag
+     * pads with NULs.
+     */
+    public static String firmwareRevision(byte[] value)
+    {
+        if(value==null)
+            return null;
+        int length=value.length;
+        while(length>0&&value[length-1]==0)
+            length--;
+        return new String(value,0,length,UTF_8);
+    }
+
+    public synchronized Layout get(String address)
+    {
+        return this.layouts.get(address);
+    }
+
+    public synchronized void put(String address,Layout layout)
+    {
+        this.layouts.put(address,layout);
+        save();
+    }
+
+    /**
+     * Forgets the layout of a device, e.g. once its firmware changed.
+     */
+    public synchronized void invalidate(String address)
+    {
+        if(this.layouts.remove(address)!=null)
+            save();
+    }
+
+    public synchronized int size()
+    {
+        return this.layouts.size();
+    }
+
+    /**
+     * Last error reading or writing the file, null if none.
+     */
+    public IOException getFailure()
+    {
+        return this.failure;
+    }
+
+    private void load() throws IOException
+    {
+        if(this.file==null)
+            return;
+        DataInputStream in=new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)));
+        try
+        {
+            if(in.readInt()!=MAGIC||in.readInt()!=VERSION)
+                throw new IOException("Not a layout cache: "+this.file);
+            for(int devices=in.readInt();devices>0;devices--)
+            {
+                String address=in.readUTF();
+                String firmwareRevision=in.readUTF();
+                LinkedHashMap<UUID,List<UUID>> characteristics=new LinkedHashMap<UUID,List<UUID>>();
+                for(int services=in.readInt();services>0;services--)
+                {
+                    UUID serviceUuid=readUuid(in);
+                    int count=in.readInt();
+                    List<UUID> uuids=new ArrayList<UUID>(count);
+                    for(int i=0;i<count;i++)
+                        uuids.add(readUuid(in));
+                    characteristics.put(serviceUuid,Collections.unmodifiableList(uuids));
+                }
+                this.layouts.put(address,new Layout(firmwareRevision,characteristics));
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes every layout to a new file, then replaces the old one, so a crash leaves either.
+     * Called with the cache locked.
+     */
+    private void save()
+    {
+        if(this.file==null)
+            return;
+        File temporary=new File(this.file.getPath()+".tmp");
+        try
+        {
+            DataOutputStream out=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            try
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(this.layouts.size());
+                for(Map.Entry<String,Layout> entry:this.layouts.entrySet())
+                {
+                    Layout layout=entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(layout.firmwareRevision);
+                    out.writeInt(layout.characteristics.size());
+                    for(Map.Entry<UUID,List<UUID>> service:layout.characteristics.entrySet())
+                    {
+                        writeUuid(out,service.getKey());
+                        out.writeInt(service.getValue().size());
+                        for(UUID uuid:service.getValue())
+                            writeUuid(out,uuid);
+                    }
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+            if(!temporary.renameTo(this.file))
+                throw new IOException("Cannot replace "+this.file);
+        }
+        catch(IOException e)
+        {
+            this.failure=e;
+        }
+    }
+
+    private static UUID readUuid(DataInputStream in) throws IOException
+    {
+        return new UUID(in.readLong(),in.readLong());
+    }
+
+    private static void writeUuid(DataOutputStream out,UUID uuid) throws IOException
+    {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+}
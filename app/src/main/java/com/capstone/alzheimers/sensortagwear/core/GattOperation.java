@@ -0,0 +1,156 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single GATT request (characteristic write, descriptor write or read) waiting in a
+ * {@link GattOperationQueue}. The request is issued by {@link #start()} and completed by the
+ * queue when the matching GATT callback arrives, the timeout expires or the queue is cancelled.
+ */
+public abstract class GattOperation
+{
+
+    // Operation types.
+    public enum Type
+    {
+        WRITE_CHARACTERISTIC,
+        WRITE_DESCRIPTOR,
+        READ_CHARACTERISTIC,
+        BARRIER // Completes as soon as every operation queued before it has completed.
+    }
+
+    // Completion statuses. Any other value is the status reported by the GATT callback.
+    public final static int STATUS_SUCCESS=0; // Same value as BluetoothGatt.GATT_SUCCESS.
+    public final static int STATUS_NOT_STARTED=-1;
+    public final static int STATUS_TIMEOUT=-2;
+    public final static int STATUS_CANCELLED=-3;
+
+    /**
+     * Receives the completion of an operation. Called on the GATT callback thread or on the
+     * queue's timer thread, so implementations must not block.
+     */
+    public interface Callback
+    {
+        void onComplete(GattOperation operation,int status);
+    }
+
+    private final Type type;
+    // UUID of the characteristic the operation acts on (for descriptors: the owning characteristic).
+    private final UUID uuid;
+    private final long timeoutMillis;
+    private final Callback callback;
+    private final CountDownLatch completion=new CountDownLatch(1);
+    private volatile int status=STATUS_NOT_STARTED;
+    // Value returned by a read.
+    private volatile byte[] value;
+    private volatile long startNanos;
+
+    protected GattOperation(Type type,UUID uuid,long timeoutMillis,Callback callback)
+    {
+        this.type=type;
+        this.uuid=uuid;
+        this.timeoutMillis=timeoutMillis;
+        this.callback=callback;
+    }
+
+    /**
+     * Issues the request to the Bluetooth stack.
+     *
+     * @return Return false if the stack refused the request, in which case it is completed
+     *         immediately with {@link #STATUS_NOT_STARTED}.
+     */
+    protected abstract boolean start();
+
+    /**
+     * Records when the queue issued the operation.
+     */
+    void started()
+    {
+        this.startNanos=System.nanoTime();
+    }
+
+    /**
+     * System.nanoTime() at which the operation was issued, 0 while it waits in the queue.
+     */
+    public long getStartNanos()
+    {
+        return this.startNanos;
+    }
+
+    /**
+     * Checks whether a GATT callback of the given type and characteristic completes this operation.
+     */
+    boolean matches(Type type,UUID uuid)
+    {
+        return this.type==type&&this.uuid.equals(uuid);
+    }
+
+    /**
+     * Records the final status and notifies the callback. Only called once, by the queue.
+     */
+    void finish(int status,byte[] value)
+    {
+        this.value=value;
+        this.status=status;
+        this.completion.countDown();
+        if(this.callback!=null)
+            this.callback.onComplete(this,status);
+    }
+
+    /**
+     * Blocks until the operation completes. Must never be called on the GATT callback thread.
+     *
+     * @return Return true if the operation completed within the given time.
+     */
+    public boolean await(long timeout,TimeUnit unit) throws InterruptedException
+    {
+        return this.completion.await(timeout,unit);
+    }
+
+    public boolean isDone()
+    {
+        return this.completion.getCount()==0;
+    }
+
+    public boolean isSuccessful()
+    {
+        return isDone()&&this.status==STATUS_SUCCESS;
+    }
+
+    public int getStatus()
+    {
+        return this.status;
+    }
+
+    /**
+     * Gives the value of a completed read, null for other operations.
+     */
+    public byte[] getValue()
+    {
+        return this.value;
+    }
+
+    public Type getType()
+    {
+        return this.type;
+    }
+
+    public UUID getUuid()
+    {
+        return this.uuid;
+    }
+
+    public long getTimeoutMillis()
+    {
+        return this.timeoutMillis;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.type+" "+this.uuid;
+    }
+
+}
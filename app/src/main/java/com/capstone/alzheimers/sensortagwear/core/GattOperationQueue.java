@@ -0,0 +1,234 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.util.ArrayDeque;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes the GATT operations of one device. The Android stack only accepts one outstanding
+ * request per connection, so each operation is started as soon as the previous one has been
+ * acknowledged by its GATT callback (or has timed out), instead of after a fixed sleep.
+ */
+public class GattOperationQueue
+{
+
+    public final static long DEFAULT_TIMEOUT_MILLIS=2000;
+    // Most timed out operations whose late acknowledgement is still waited for.
+    final static int MAX_TIMED_OUT=4;
+
+    // Runs the per-operation timeouts. Shared between the queues of all devices.
+    private final ScheduledExecutorService timer;
+    private final ArrayDeque<GattOperation> pending=new ArrayDeque<GattOperation>();
+    private GattOperation current;
+    private ScheduledFuture<?> currentTimeout;
+    // Round trip of the operations acknowledged successfully.
+    private long acknowledged;
+    private long totalLatencyNanos;
+    private long maxLatencyNanos;
+    // First failure among the operations completed since the last barrier, reported by the next one.
+    private int barrierStatus=GattOperation.STATUS_SUCCESS;
+    // Operations that timed out, oldest first: the stack may still acknowledge them, and the
+    // callback says nothing but the type and characteristic, so the first such acknowledgement is
+    // theirs and not the one of a newer operation on the same characteristic.
+    private final ArrayDeque<GattOperation> timedOut=new ArrayDeque<GattOperation>();
+
+    public GattOperationQueue(ScheduledExecutorService timer)
+    {
+        this.timer=timer;
+    }
+
+    /**
+     * Adds an operation to the queue and starts it right away if the queue is idle.
+     */
+    public void enqueue(GattOperation operation)
+    {
+        synchronized(this)
+        {
+            this.pending.add(operation);
+            if(this.current!=null)
+                return;
+        }
+        startNext();
+    }
+
+    /**
+     * Queues a barrier whose callback runs once every operation queued before it has completed.
+     * It completes with the status of the first of them, since the previous barrier, that failed,
+     * timed out or was refused, or with {@link GattOperation#STATUS_SUCCESS} if none did.
+     */
+    public void enqueueBarrier(GattOperation.Callback callback)
+    {
+        enqueue(new GattOperation(GattOperation.Type.BARRIER,null,DEFAULT_TIMEOUT_MILLIS,callback)
+        {
+            @Override
+            protected boolean start()
+            {
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Gets called from the GATT callbacks. Completes the in-flight operation if it matches, unless
+     * the acknowledgement is the late one of an operation that timed out on the same
+     * characteristic. Should that one never come, the next acknowledgement is taken for it and the
+     * in-flight operation times out in turn rather than completing with another's status.
+     *
+     * @return Return true if an operation was completed.
+     */
+    public boolean onComplete(GattOperation.Type type,UUID uuid,int status)
+    {
+        return onComplete(type,uuid,status,null);
+    }
+
+    /**
+     * Same as {@link #onComplete(GattOperation.Type, UUID, int)}, for reads that return a value.
+     */
+    public boolean onComplete(GattOperation.Type type,UUID uuid,int status,byte[] value)
+    {
+        GattOperation operation;
+        synchronized(this)
+        {
+            for(GattOperation stale:this.timedOut)
+            {
+                if(stale.matches(type,uuid))
+                {
+                    this.timedOut.remove(stale);
+                    return false;
+                }
+            }
+            operation=this.current;
+        }
+        if(operation==null||!operation.matches(type,uuid))
+            return false;
+        return finish(operation,status,value);
+    }
+
+    /**
+     * Fails the in-flight operation and every pending one, e.g. after a disconnection.
+     */
+    public void cancelAll()
+    {
+        GattOperation[] cancelled;
+        synchronized(this)
+        {
+            if(this.currentTimeout!=null)
+                this.currentTimeout.cancel(false);
+            this.currentTimeout=null;
+            int count=this.pending.size()+(this.current==null?0:1);
+            cancelled=new GattOperation[count];
+            int i=0;
+            if(this.current!=null)
+                cancelled[i++]=this.current;
+            while(!this.pending.isEmpty())
+                cancelled[i++]=this.pending.poll();
+            this.current=null;
+            this.barrierStatus=GattOperation.STATUS_SUCCESS;
+            this.timedOut.clear();
+        }
+        for(GattOperation operation:cancelled)
+            operation.finish(GattOperation.STATUS_CANCELLED,null);
+    }
+
+    /**
+     * Number of operations in flight or waiting.
+     */
+    public synchronized int size()
+    {
+        return this.pending.size()+(this.current==null?0:1);
+    }
+
+    /**
+     * Mean time from issuing an operation to its successful acknowledgement.
+     */
+    public synchronized long getMeanLatencyNanos()
+    {
+        return this.acknowledged==0?0:this.totalLatencyNanos/this.acknowledged;
+    }
+
+    public synchronized long getMaxLatencyNanos()
+    {
+        return this.maxLatencyNanos;
+    }
+
+    public synchronized void resetLatency()
+    {
+        this.acknowledged=0;
+        this.totalLatencyNanos=0;
+        this.maxLatencyNanos=0;
+    }
+
+    private boolean finish(GattOperation operation,int status)
+    {
+        return finish(operation,status,null);
+    }
+
+    private boolean finish(GattOperation operation,int status,byte[] value)
+    {
+        synchronized(this)
+        {
+            if(this.current!=operation)
+                return false;
+            if(operation.getType()==GattOperation.Type.BARRIER)
+            {
+                if(status==GattOperation.STATUS_SUCCESS)
+                    status=this.barrierStatus;
+                this.barrierStatus=GattOperation.STATUS_SUCCESS;
+            }
+            else if(status==GattOperation.STATUS_SUCCESS)
+            {
+                long latency=System.nanoTime()-operation.getStartNanos();
+                this.acknowledged++;
+                this.totalLatencyNanos+=latency;
+                this.maxLatencyNanos=Math.max(this.maxLatencyNanos,latency);
+            }
+            else
+            {
+                if(this.barrierStatus==GattOperation.STATUS_SUCCESS)
+                    this.barrierStatus=status;
+                if(status==GattOperation.STATUS_TIMEOUT)
+                {
+                    if(this.timedOut.size()==MAX_TIMED_OUT)
+                        this.timedOut.poll();
+                    this.timedOut.add(operation);
+                }
+            }
+            if(this.currentTimeout!=null)
+                this.currentTimeout.cancel(false);
+            this.currentTimeout=null;
+            this.current=null;
+        }
+        operation.finish(status,value);
+        startNext();
+        return true;
+    }
+
+    private void startNext()
+    {
+        final GattOperation operation;
+        synchronized(this)
+        {
+            if(this.current!=null||this.pending.isEmpty())
+                return;
+            operation=this.pending.poll();
+            this.current=operation;
+            this.currentTimeout=this.timer.schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    finish(operation,GattOperation.STATUS_TIMEOUT);
+                }
+            },operation.getTimeoutMillis(),TimeUnit.MILLISECONDS);
+        }
+        operation.started();
+        // Refused by the stack: fail it, which moves on to the next one.
+        if(!operation.start())
+            finish(operation,GattOperation.STATUS_NOT_STARTED);
+        else if(operation.getType()==GattOperation.Type.BARRIER)
+            finish(operation,GattOperation.STATUS_SUCCESS);
+    }
+
+}
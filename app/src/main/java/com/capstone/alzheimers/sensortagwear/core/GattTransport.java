@@ -0,0 +1,86 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The Bluetooth side of the pipeline: GATT connections of several devices, addressed by device
+ * address and by UUID. Requests return immediately and complete through the {@link Callback},
+ * like {@code BluetoothGatt} does. Implemented on top of Android, and in memory for simulation.
+ */
+public interface GattTransport
+{
+
+    /**
+     * Receives the GATT events of every device. Called on the transport's own threads.
+     *
+     * Notifications are stamped as soon as the transport gets them, on a monotonic clock in
+     * nanoseconds: SystemClock.elapsedRealtimeNanos() on Android, which keeps counting in deep
+     * sleep, and System.nanoTime() in simulation. The value of a notification is a new array that
+     * the transport does not touch again: the listeners keep it, see {@link NotificationListener}.
+     */
+    interface Callback
+    {
+        void onConnectionStateChange(String address,boolean connected);
+        void onServicesDiscovered(String address,boolean success);
+        void onCharacteristicWrite(String address,UUID characteristicUuid,int status);
+        void onCharacteristicRead(String address,UUID characteristicUuid,byte[] value,int status);
+        void onDescriptorWrite(String address,UUID characteristicUuid,int status);
+        void onCharacteristicChanged(String address,UUID characteristicUuid,byte[] value,long timestampNanos);
+    }
+
+    void setCallback(Callback callback);
+
+    /**
+     * Connects to the device. Services are not discovered: see {@link #discoverServices}.
+     */
+    boolean connect(String address);
+
+    /**
+     * Discovers the services of a connected device, replacing those known from a previous
+     * connection. Completes through {@link Callback#onServicesDiscovered}.
+     */
+    boolean discoverServices(String address);
+
+    void disconnect(String address);
+
+    /**
+     * Releases the connection resources of every device.
+     */
+    void closeAll();
+
+    /**
+     * Addresses of the devices a connection was requested for.
+     */
+    List<String> getAddresses();
+
+    /**
+     * Gives the service UUIDs known for the device, discovered on this connection or kept from the
+     * previous one, or null if none are known.
+     */
+    List<UUID> getServices(String address);
+
+    /**
+     * Gives the characteristic UUIDs of a known service, or null if the service is not known.
+     */
+    List<UUID> getCharacteristics(String address,UUID serviceUuid);
+
+    boolean hasCharacteristic(String address,UUID serviceUuid,UUID characteristicUuid);
+
+    boolean writeCharacteristic(String address,UUID serviceUuid,UUID characteristicUuid,byte[] value);
+
+    boolean readCharacteristic(String address,UUID serviceUuid,UUID characteristicUuid);
+
+    /**
+     * Enables or disables notifications locally, then writes the client configuration descriptor.
+     * Completes through {@link Callback#onDescriptorWrite}.
+     */
+    boolean setNotification(String address,UUID serviceUuid,UUID characteristicUuid,boolean enabled);
+
+    /**
+     * Asks for the connection parameters of the profile. Takes effect after the next connection
+     * update; there is no completion callback.
+     */
+    boolean requestConnectionPriority(String address,ConnectionProfile profile);
+
+}
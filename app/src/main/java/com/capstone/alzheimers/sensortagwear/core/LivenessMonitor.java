@@ -0,0 +1,218 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watchdog of the notification streams of every device and sensor, on one {@link TimerWheel}.
+ * A stream that has not notified for its deadline gets its recovery run on the recovery executor,
+ * then again every deadline until it notifies.
+ *
+ * A notification only stores its time in the watch; the wheel is only touched when a deadline
+ * expires, and then rescheduled from the last notification. The cost per tick does not depend on
+ * the number of streams watched.
+ */
+public class LivenessMonitor
+{
+
+    public final static long DEFAULT_TICK_MILLIS=100;
+    public final static int DEFAULT_WHEEL_SIZE=512;
+    // Deadline of a stream: this many missed periods, and at least the minimum.
+    public final static int DEFAULT_MISSED_PERIODS=5;
+    public final static long DEFAULT_MIN_DEADLINE_MILLIS=1000;
+
+    /**
+     * The watchdog of one stream.
+     */
+    public final class Watch implements Runnable
+    {
+        private final String address;
+        private final UUID uuid;
+        private volatile long deadlineNanos;
+        private final Runnable recovery;
+        private volatile long lastSeenNanos;
+        private volatile boolean cancelled;
+        private long recoveries;
+        // Owned by the timer thread.
+        private TimerWheel.Timeout timeout;
+
+        private Watch(String address,UUID uuid,long deadlineMillis,Runnable recovery)
+        {
+            this.address=address;
+            this.uuid=uuid;
+            this.deadlineNanos=TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+            this.recovery=recovery;
+            this.lastSeenNanos=System.nanoTime();
+        }
+
+        /**
+         * Records a notification. Cheap enough to call on every one.
+         */
+        public void touch()
+        {
+            this.lastSeenNanos=System.nanoTime();
+        }
+
+        public String getAddress()
+        {
+            return this.address;
+        }
+
+        public UUID getUuid()
+        {
+            return this.uuid;
+        }
+
+        public long getDeadlineMillis()
+        {
+            return TimeUnit.NANOSECONDS.toMillis(this.deadlineNanos);
+        }
+
+        /**
+         * Changes the deadline, e.g. with the period of the stream. Applies from the next expiry.
+         */
+        public void setDeadlineMillis(long deadlineMillis)
+        {
+            this.deadlineNanos=TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        }
+
+        /**
+         * Number of recoveries of this stream, read on the timer thread.
+         */
+        public long getRecoveryCount()
+        {
+            return this.recoveries;
+        }
+
+        /**
+         * Expiry of the deadline, on the timer thread.
+         */
+        @Override
+        public void run()
+        {
+            if(this.cancelled)
+                return;
+            long now=System.nanoTime();
+            long silent=now-this.lastSeenNanos;
+            long deadline=this.deadlineNanos;
+            if(silent<deadline)
+            {
+                // Notified since: wait for the deadline counted from the last notification.
+                wheel.reschedule(this.timeout,TimeUnit.NANOSECONDS.toMillis(deadline-silent));
+                return;
+            }
+            this.recoveries++;
+            recoveryCount.incrementAndGet();
+            recoveryExecutor.execute(this.recovery);
+            wheel.reschedule(this.timeout,getDeadlineMillis());
+        }
+    }
+
+    private final ScheduledExecutorService timer;
+    private final Executor recoveryExecutor;
+    private final TimerWheel wheel;
+    // Watches added or removed from other threads, applied on the next tick.
+    private final ConcurrentLinkedQueue<Watch> added=new ConcurrentLinkedQueue<Watch>();
+    private final ConcurrentLinkedQueue<Watch> removed=new ConcurrentLinkedQueue<Watch>();
+    private final AtomicLong recoveryCount=new AtomicLong();
+    private ScheduledFuture<?> ticker;
+
+    /**
+     * @param timer Thread of the wheel. Ticks must not wait for other work, so share it only with
+     *              short tasks.
+     * @param recoveryExecutor Runs the recoveries, off the timer thread.
+     */
+    public LivenessMonitor(ScheduledExecutorService timer,Executor recoveryExecutor,long tickMillis,int wheelSize)
+    {
+        this.timer=timer;
+        this.recoveryExecutor=recoveryExecutor;
+        this.wheel=new TimerWheel(wheelSize,tickMillis,TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+    }
+
+    /**
+     * Deadline of a stream notifying every period.
+     */
+    public static long deadlineFor(long periodMillis)
+    {
+        return Math.max(DEFAULT_MIN_DEADLINE_MILLIS,periodMillis*DEFAULT_MISSED_PERIODS);
+    }
+
+    public synchronized void start()
+    {
+        if(this.ticker!=null)
+            return;
+        long tick=this.wheel.getTickMillis();
+        this.ticker=this.timer.scheduleAtFixedRate(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                tick();
+            }
+        },tick,tick,TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop()
+    {
+        if(this.ticker==null)
+            return;
+        this.ticker.cancel(false);
+        this.ticker=null;
+    }
+
+    /**
+     * Starts watching a stream, from now.
+     *
+     * @param recovery Run when the stream has been silent for the deadline.
+     */
+    public Watch watch(String address,UUID uuid,long deadlineMillis,Runnable recovery)
+    {
+        Watch watch=new Watch(address,uuid,deadlineMillis,recovery);
+        this.added.add(watch);
+        return watch;
+    }
+
+    public void unwatch(Watch watch)
+    {
+        watch.cancelled=true;
+        this.removed.add(watch);
+    }
+
+    /**
+     * Number of streams watched, as of the last tick.
+     */
+    public int getWatchCount()
+    {
+        return this.wheel.size();
+    }
+
+    /**
+     * Number of recoveries started so far.
+     */
+    public long getRecoveryCount()
+    {
+        return this.recoveryCount.get();
+    }
+
+    private void tick()
+    {
+        Watch watch;
+        while((watch=this.added.poll())!=null)
+        {
+            if(!watch.cancelled)
+                watch.timeout=this.wheel.schedule(watch,watch.getDeadlineMillis());
+        }
+        while((watch=this.removed.poll())!=null)
+        {
+            if(watch.timeout!=null)
+                this.wheel.cancel(watch.timeout);
+        }
+        this.wheel.advance(TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of non-negative values, e.g. latencies in nanoseconds, in log-linear buckets: each
+ * power of two is split into {@link #SUB_BUCKETS} buckets, so a percentile is known to within
+ * about 6 % over the whole range of a long, in a fixed array of counters.
+ *
+ * Lock free: recording is an increment of one bucket plus the count, sum and maximum, from any
+ * number of threads, without allocation. Readers see each counter as of some point during the read.
+ */
+public class LogHistogram
+{
+
+    // Buckets per power of two, as a number of mantissa bits.
+    private final static int SUB_BUCKET_BITS=3;
+    public final static int SUB_BUCKETS=1<<SUB_BUCKET_BITS;
+    // Values under SUB_BUCKETS have a bucket each, then SUB_BUCKETS per power of two up to 2^63.
+    private final static int BUCKETS=(64-SUB_BUCKET_BITS)*SUB_BUCKETS;
+
+    private final AtomicLongArray buckets=new AtomicLongArray(BUCKETS);
+    private final AtomicLong count=new AtomicLong();
+    private final AtomicLong sum=new AtomicLong();
+    private final AtomicLong max=new AtomicLong();
+
+    /**
+     * Records a value. Negative values count as 0.
+     */
+    public void record(long value)
+    {
+        if(value<0)
+            value=0;
+        this.buckets.incrementAndGet(bucketOf(value));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(value);
+        long current;
+        while(value>(current=this.max.get()))
+        {
+            if(this.max.compareAndSet(current,value))
+                break;
+        }
+    }
+
+    static int bucketOf(long value)
+    {
+        if(value<SUB_BUCKETS)
+            return (int)value;
+        int exponent=63-Long.numberOfLeadingZeros(value);
+        int mantissa=(int)(value>>>(exponent-SUB_BUCKET_BITS))&(SUB_BUCKETS-1);
+        return (exponent-SUB_BUCKET_BITS+1)*SUB_BUCKETS+mantissa;
+    }
+
+    /**
+     * Middle of the values that fall in the bucket.
+     */
+    static long midpoint(int bucket)
+    {
+        if(bucket<SUB_BUCKETS)
+            return bucket;
+        int shift=bucket/SUB_BUCKETS-1;
+        long lower=(long)(SUB_BUCKETS+bucket%SUB_BUCKETS)<<shift;
+        return lower+((1L<<shift)>>>1);
+    }
+
+    public long getCount()
+    {
+        return this.count.get();
+    }
+
+    /**
+     * Sum of the values recorded, e.g. the total time.
+     */
+    public long getSum()
+    {
+        return this.sum.get();
+    }
+
+    public long getMax()
+    {
+        return this.max.get();
+    }
+
+    public double getMean()
+    {
+        long count=this.count.get();
+        return count==0?0:(double)this.sum.get()/count;
+    }
+
+    /**
+     * Value under which the fraction of the values fall, to the middle of its bucket and never
+     * above the maximum. 0 while empty.
+     *
+     * @param fraction Between 0 and 1, e.g. 0.99 for the 99th percentile.
+     */
+    public long getPercentile(double fraction)
+    {
+        long total=0;
+        for(int i=0;i<BUCKETS;i++)
+            total+=this.buckets.get(i);
+        if(total==0)
+            return 0;
+        long rank=Math.max(1,(long)Math.ceil(fraction*total));
+        long seen=0;
+        for(int i=0;i<BUCKETS;i++)
+        {
+            seen+=this.buckets.get(i);
+            if(seen>=rank)
+                return Math.min(midpoint(i),this.max.get());
+        }
+        return this.max.get();
+    }
+
+    /**
+     * Starts over. Values recorded during the reset may be partly lost.
+     */
+    public void reset()
+    {
+        for(int i=0;i<BUCKETS;i++)
+            this.buckets.set(i,0);
+        this.count.set(0);
+        this.sum.set(0);
+        this.max.set(0);
+    }
+
+}
@@ -0,0 +1,232 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+/**
+ * Orientation of a sensor from its gyroscope, accelerometer and magnetometer, after S. Madgwick,
+ * "An efficient orientation filter for inertial and inertial/magnetic sensor arrays" (2010):
+ * the gyroscope rate is integrated, and corrected by one gradient descent step towards the
+ * orientation in which gravity and the magnetic field point where they are measured. Without a
+ * magnetometer reading, only gravity corrects the estimate and the heading drifts, which does not
+ * change the tilt.
+ *
+ * The orientation is a unit quaternion from the earth frame to the sensor frame. Updates do not
+ * allocate. Not thread safe.
+ */
+public class MadgwickFilter
+{
+
+    // Gain of the correction: gyroscope error it can make up for, in rad/s.
+    public final static double DEFAULT_BETA=0.1;
+
+    private final double beta;
+    private double q0=1;
+    private double q1;
+    private double q2;
+    private double q3;
+
+    public MadgwickFilter()
+    {
+        this(DEFAULT_BETA);
+    }
+
+    public MadgwickFilter(double beta)
+    {
+        this.beta=beta;
+    }
+
+    /**
+     * Starts from the tilt given by the accelerometer, heading 0, instead of converging to it.
+     */
+    public void initialize(double ax,double ay,double az)
+    {
+        double roll=Math.atan2(ay,az);
+        double pitch=Math.atan2(-ax,Math.sqrt(ay*ay+az*az));
+        double cr=Math.cos(roll*0.5);
+        double sr=Math.sin(roll*0.5);
+        double cp=Math.cos(pitch*0.5);
+        double sp=Math.sin(pitch*0.5);
+        this.q0=cr*cp;
+        this.q1=sr*cp;
+        this.q2=cr*sp;
+        this.q3=-sr*sp;
+    }
+
+    /**
+     * Integrates one sample.
+     *
+     * @param gx Gyroscope, in rad/s, like gy and gz.
+     * @param ax Accelerometer, in any unit, like ay and az. Ignored if all 0.
+     * @param mx Magnetometer, in any unit, in the axes of the accelerometer, like my and mz.
+     *           Ignored if all 0.
+     * @param dt Time since the previous sample, in seconds.
+     */
+    public void update(double gx,double gy,double gz,double ax,double ay,double az,double mx,double my,double mz,double dt)
+    {
+        if(mx==0&&my==0&&mz==0)
+        {
+            update(gx,gy,gz,ax,ay,az,dt);
+            return;
+        }
+        double q0=this.q0,q1=this.q1,q2=this.q2,q3=this.q3;
+        // Rate of change of the quaternion from the gyroscope.
+        double qDot0=0.5*(-q1*gx-q2*gy-q3*gz);
+        double qDot1=0.5*(q0*gx+q2*gz-q3*gy);
+        double qDot2=0.5*(q0*gy-q1*gz+q3*gx);
+        double qDot3=0.5*(q0*gz+q1*gy-q2*gx);
+        if(ax!=0||ay!=0||az!=0)
+        {
+            double norm=1/Math.sqrt(ax*ax+ay*ay+az*az);
+            ax*=norm;
+            ay*=norm;
+            az*=norm;
+            norm=1/Math.sqrt(mx*mx+my*my+mz*mz);
+            mx*=norm;
+            my*=norm;
+            mz*=norm;
+            double _2q0mx=2*q0*mx;
+            double _2q0my=2*q0*my;
+            double _2q0mz=2*q0*mz;
+            double _2q1mx=2*q1*mx;
+            double _2q0=2*q0;
+            double _2q1=2*q1;
+            double _2q2=2*q2;
+            double _2q3=2*q3;
+            double _2q0q2=2*q0*q2;
+            double _2q2q3=2*q2*q3;
+            double q0q0=q0*q0;
+            double q0q1=q0*q1;
+            double q0q2=q0*q2;
+            double q0q3=q0*q3;
+            double q1q1=q1*q1;
+            double q1q2=q1*q2;
+            double q1q3=q1*q3;
+            double q2q2=q2*q2;
+            double q2q3=q2*q3;
+            double q3q3=q3*q3;
+            // Direction of the earth magnetic field: horizontal and vertical parts.
+            double hx=mx*q0q0-_2q0my*q3+_2q0mz*q2+mx*q1q1+_2q1*my*q2+_2q1*mz*q3-mx*q2q2-mx*q3q3;
+            double hy=_2q0mx*q3+my*q0q0-_2q0mz*q1+_2q1mx*q2-my*q1q1+my*q2q2+_2q2*mz*q3-my*q3q3;
+            double _2bx=Math.sqrt(hx*hx+hy*hy);
+            double _2bz=-_2q0mx*q2+_2q0my*q1+mz*q0q0+_2q1mx*q3-mz*q1q1+_2q2*my*q3-mz*q2q2+mz*q3q3;
+            double _4bx=2*_2bx;
+            double _4bz=2*_2bz;
+            // Gradient of the error.
+            double s0=-_2q2*(2*q1q3-_2q0q2-ax)+_2q1*(2*q0q1+_2q2q3-ay)
+                    -_2bz*q2*(_2bx*(0.5-q2q2-q3q3)+_2bz*(q1q3-q0q2)-mx)
+                    +(-_2bx*q3+_2bz*q1)*(_2bx*(q1q2-q0q3)+_2bz*(q0q1+q2q3)-my)
+                    +_2bx*q2*(_2bx*(q0q2+q1q3)+_2bz*(0.5-q1q1-q2q2)-mz);
+            double s1=_2q3*(2*q1q3-_2q0q2-ax)+_2q0*(2*q0q1+_2q2q3-ay)
+                    -4*q1*(1-2*q1q1-2*q2q2-az)
+                    +_2bz*q3*(_2bx*(0.5-q2q2-q3q3)+_2bz*(q1q3-q0q2)-mx)
+                    +(_2bx*q2+_2bz*q0)*(_2bx*(q1q2-q0q3)+_2bz*(q0q1+q2q3)-my)
+                    +(_2bx*q3-_4bz*q1)*(_2bx*(q0q2+q1q3)+_2bz*(0.5-q1q1-q2q2)-mz);
+            double s2=-_2q0*(2*q1q3-_2q0q2-ax)+_2q3*(2*q0q1+_2q2q3-ay)
+                    -4*q2*(1-2*q1q1-2*q2q2-az)
+                    +(-_4bx*q2-_2bz*q0)*(_2bx*(0.5-q2q2-q3q3)+_2bz*(q1q3-q0q2)-mx)
+                    +(_2bx*q1+_2bz*q3)*(_2bx*(q1q2-q0q3)+_2bz*(q0q1+q2q3)-my)
+                    +(_2bx*q0-_4bz*q2)*(_2bx*(q0q2+q1q3)+_2bz*(0.5-q1q1-q2q2)-mz);
+            double s3=_2q1*(2*q1q3-_2q0q2-ax)+_2q2*(2*q0q1+_2q2q3-ay)
+                    +(-_4bx*q3+_2bz*q1)*(_2bx*(0.5-q2q2-q3q3)+_2bz*(q1q3-q0q2)-mx)
+                    +(-_2bx*q0+_2bz*q2)*(_2bx*(q1q2-q0q3)+_2bz*(q0q1+q2q3)-my)
+                    +_2bx*q1*(_2bx*(q0q2+q1q3)+_2bz*(0.5-q1q1-q2q2)-mz);
+            norm=Math.sqrt(s0*s0+s1*s1+s2*s2+s3*s3);
+            if(norm>0)
+            {
+                norm=this.beta/norm;
+                qDot0-=norm*s0;
+                qDot1-=norm*s1;
+                qDot2-=norm*s2;
+                qDot3-=norm*s3;
+            }
+        }
+        integrate(qDot0,qDot1,qDot2,qDot3,dt);
+    }
+
+    /**
+     * Integrates one sample without magnetometer.
+     */
+    public void update(double gx,double gy,double gz,double ax,double ay,double az,double dt)
+    {
+        double q0=this.q0,q1=this.q1,q2=this.q2,q3=this.q3;
+        double qDot0=0.5*(-q1*gx-q2*gy-q3*gz);
+        double qDot1=0.5*(q0*gx+q2*gz-q3*gy);
+        double qDot2=0.5*(q0*gy-q1*gz+q3*gx);
+        double qDot3=0.5*(q0*gz+q1*gy-q2*gx);
+        if(ax!=0||ay!=0||az!=0)
+        {
+            double norm=1/Math.sqrt(ax*ax+ay*ay+az*az);
+            ax*=norm;
+            ay*=norm;
+            az*=norm;
+            double _2q0=2*q0;
+            double _2q1=2*q1;
+            double _2q2=2*q2;
+            double _2q3=2*q3;
+            double _4q0=4*q0;
+            double _4q1=4*q1;
+            double _4q2=4*q2;
+            double _8q1=8*q1;
+            double _8q2=8*q2;
+            double q0q0=q0*q0;
+            double q1q1=q1*q1;
+            double q2q2=q2*q2;
+            double q3q3=q3*q3;
+            double s0=_4q0*q2q2+_2q2*ax+_4q0*q1q1-_2q1*ay;
+            double s1=_4q1*q3q3-_2q3*ax+4*q0q0*q1-_2q0*ay-_4q1+_8q1*q1q1+_8q1*q2q2+_4q1*az;
+            double s2=4*q0q0*q2+_2q0*ax+_4q2*q3q3-_2q3*ay-_4q2+_8q2*q1q1+_8q2*q2q2+_4q2*az;
+            double s3=4*q1q1*q3-_2q1*ax+4*q2q2*q3-_2q2*ay;
+            norm=Math.sqrt(s0*s0+s1*s1+s2*s2+s3*s3);
+            if(norm>0)
+            {
+                norm=this.beta/norm;
+                qDot0-=norm*s0;
+                qDot1-=norm*s1;
+                qDot2-=norm*s2;
+                qDot3-=norm*s3;
+            }
+        }
+        integrate(qDot0,qDot1,qDot2,qDot3,dt);
+    }
+
+    private void integrate(double qDot0,double qDot1,double qDot2,double qDot3,double dt)
+    {
+        double q0=this.q0+qDot0*dt;
+        double q1=this.q1+qDot1*dt;
+        double q2=this.q2+qDot2*dt;
+        double q3=this.q3+qDot3*dt;
+        double norm=1/Math.sqrt(q0*q0+q1*q1+q2*q2+q3*q3);
+        this.q0=q0*norm;
+        this.q1=q1*norm;
+        this.q2=q2*norm;
+        this.q3=q3*norm;
+    }
+
+    /**
+     * Writes the direction of gravity in the sensor frame, a unit vector, to the first 3 entries.
+     */
+    public void getGravity(double[] gravity)
+    {
+        gravity[0]=2*(this.q1*this.q3-this.q0*this.q2);
+        gravity[1]=2*(this.q0*this.q1+this.q2*this.q3);
+        gravity[2]=this.q0*this.q0-this.q1*this.q1-this.q2*this.q2+this.q3*this.q3;
+    }
+
+    /**
+     * Writes w, x, y, z to the first 4 entries.
+     */
+    public void getQuaternion(double[] quaternion)
+    {
+        quaternion[0]=this.q0;
+        quaternion[1]=this.q1;
+        quaternion[2]=this.q2;
+        quaternion[3]=this.q3;
+    }
+
+    public void reset()
+    {
+        this.q0=1;
+        this.q1=0;
+        this.q2=0;
+        this.q3=0;
+    }
+
+}
@@ -0,0 +1,123 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Named metrics of the pipeline: counters, {@link LogHistogram}s of durations in nanoseconds, and
+ * gauges read from other components when a snapshot is taken. Metrics are created on first use
+ * and then kept; look them up once and hold on to them on hot paths.
+ *
+ * Names are dotted, e.g. "stream.B0:B4:48:C0:5D:81.aa81.interval", and the snapshot lists them
+ * in order.
+ */
+public class MetricsRegistry
+{
+
+    /**
+     * A value owned by another component, read when a snapshot is taken.
+     */
+    public interface Gauge
+    {
+        long get();
+    }
+
+    private final ConcurrentHashMap<String,AtomicLong> counters=new ConcurrentHashMap<String,AtomicLong>();
+    private final ConcurrentHashMap<String,LogHistogram> histograms=new ConcurrentHashMap<String,LogHistogram>();
+    private final ConcurrentHashMap<String,Gauge> gauges=new ConcurrentHashMap<String,Gauge>();
+
+    public AtomicLong counter(String name)
+    {
+        AtomicLong counter=this.counters.get(name);
+        if(counter==null)
+        {
+            counter=new AtomicLong();
+            AtomicLong existing=this.counters.putIfAbsent(name,counter);
+            if(existing!=null)
+                counter=existing;
+        }
+        return counter;
+    }
+
+    public LogHistogram histogram(String name)
+    {
+        LogHistogram histogram=this.histograms.get(name);
+        if(histogram==null)
+        {
+            histogram=new LogHistogram();
+            LogHistogram existing=this.histograms.putIfAbsent(name,histogram);
+            if(existing!=null)
+                histogram=existing;
+        }
+        return histogram;
+    }
+
+    /**
+     * Registers a gauge, replacing any of the same name.
+     */
+    public void gauge(String name,Gauge gauge)
+    {
+        this.gauges.put(name,gauge);
+    }
+
+    public void removeGauge(String name)
+    {
+        this.gauges.remove(name);
+    }
+
+    /**
+     * Zeroes every counter and histogram. Gauges belong to their components.
+     */
+    public void reset()
+    {
+        for(AtomicLong counter:this.counters.values())
+            counter.set(0);
+        for(LogHistogram histogram:this.histograms.values())
+            histogram.reset();
+    }
+
+    /**
+     * Writes a snapshot of every metric, one per line, durations in milliseconds.
+     */
+    public void writeTo(Appendable out) throws IOException
+    {
+        TreeMap<String,String> lines=new TreeMap<String,String>();
+        for(Map.Entry<String,AtomicLong> entry:this.counters.entrySet())
+            lines.put(entry.getKey(),Long.toString(entry.getValue().get()));
+        for(Map.Entry<String,Gauge> entry:this.gauges.entrySet())
+            lines.put(entry.getKey(),Long.toString(entry.getValue().get()));
+        for(Map.Entry<String,LogHistogram> entry:this.histograms.entrySet())
+        {
+            LogHistogram histogram=entry.getValue();
+            lines.put(entry.getKey(),String.format(Locale.ROOT,
+                    "count %d, mean %.3f ms, p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+                    histogram.getCount(),histogram.getMean()/1e6,histogram.getPercentile(0.5)/1e6,
+                    histogram.getPercentile(0.99)/1e6,histogram.getMax()/1e6));
+        }
+        for(Map.Entry<String,String> line:lines.entrySet())
+            out.append(line.getKey()).append(": ").append(line.getValue()).append('\n');
+    }
+
+    /**
+     * Gives the snapshot of {@link #writeTo} as a string.
+     */
+    public String snapshot()
+    {
+        StringBuilder builder=new StringBuilder();
+        try
+        {
+            writeTo(builder);
+        }
+        catch(IOException e)
+        {
+            // A StringBuilder does not throw.
+            throw new AssertionError(e);
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,145 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fall detection on the movement stream of every device: each notification is decoded, fused
+ * into the orientation of the device by a {@link MadgwickFilter} and fed to a
+ * {@link FallDetector}, all without allocating. Registered as a direct notification listener,
+ * it runs on the transport thread, so an event is reported while handling the notification that
+ * completes it, with no queue in between.
+ *
+ * The time spent on each notification is recorded as "latency.motion", and the events as
+ * "motion.falls" and "motion.impacts".
+ */
+public class MotionFusion implements NotificationListener
+{
+
+    /**
+     * Receives the falls and impacts. Called on the thread of the notification: must return
+     * quickly.
+     */
+    public interface Listener
+    {
+        /**
+         * @param event {@link FallDetector.Event#IMPACT} or {@link FallDetector.Event#FALL}.
+         * @param detector Detector of the device, giving the details of the event. Only valid
+         *                 during the call.
+         */
+        void onMotionEvent(String address,FallDetector.Event event,FallDetector detector);
+    }
+
+    // Time without samples after which the orientation starts over from the accelerometer.
+    public final static long MAX_GAP_MILLIS=500;
+
+    private final static UUID MOVEMENT_DATA=SensorDescriptor.MOVEMENT.getDataUuid();
+    private final static long MAX_GAP_NANOS=TimeUnit.MILLISECONDS.toNanos(MAX_GAP_MILLIS);
+
+    /**
+     * Motion state of one device.
+     */
+    private static class Motion
+    {
+        final SensorSample sample=new SensorSample();
+        final MadgwickFilter filter=new MadgwickFilter();
+        final FallDetector detector=new FallDetector();
+        final double[] gravity=new double[3];
+        long lastNanos;
+    }
+
+    private final ConcurrentHashMap<String,Motion> motions=new ConcurrentHashMap<String,Motion>();
+    private final LogHistogram latency;
+    private final AtomicLong falls;
+    private final AtomicLong impacts;
+    private volatile Listener listener;
+
+    public MotionFusion(MetricsRegistry metrics)
+    {
+        this.latency=metrics.histogram("latency.motion");
+        this.falls=metrics.counter("motion.falls");
+        this.impacts=metrics.counter("motion.impacts");
+    }
+
+    public void setListener(Listener listener)
+    {
+        this.listener=listener;
+    }
+
+    @Override
+    public void onNotification(String deviceAddress,UUID characteristicUuid,byte[] value,long timestampNanos,long sequence)
+    {
+        if(!MOVEMENT_DATA.equals(characteristicUuid))
+            return;
+        long start=System.nanoTime();
+        Motion motion=getMotion(deviceAddress);
+        SensorTagDecoder.decodeMovement(value,SensorDescriptor.MOVEMENT_ACCELEROMETER_RANGE,motion.sample);
+        update(deviceAddress,motion,timestampNanos);
+        this.latency.record(System.nanoTime()-start);
+    }
+
+    /**
+     * Takes one decoded movement sample, e.g. replayed from a log.
+     *
+     * @param sample Accelerometer in G, gyroscope in degrees per second and magnetometer, as
+     *               {@link SensorTagDecoder#decodeMovement} gives them.
+     * @return The event the sample completes, if any.
+     */
+    public FallDetector.Event update(String address,long timestampNanos,SensorSample sample)
+    {
+        Motion motion=getMotion(address);
+        motion.sample.copyFrom(sample);
+        return update(address,motion,timestampNanos);
+    }
+
+    /**
+     * Forgets a device, e.g. once it is gone for good.
+     */
+    public void remove(String address)
+    {
+        this.motions.remove(address);
+    }
+
+    private Motion getMotion(String address)
+    {
+        Motion motion=this.motions.get(address);
+        if(motion==null)
+        {
+            motion=new Motion();
+            Motion existing=this.motions.putIfAbsent(address,motion);
+            if(existing!=null)
+                motion=existing;
+        }
+        return motion;
+    }
+
+    private FallDetector.Event update(String address,Motion motion,long timestampNanos)
+    {
+        double[] v=motion.sample.values;
+        double ax=v[0],ay=v[1],az=v[2];
+        double gx=v[3],gy=v[4],gz=v[5];
+        long last=motion.lastNanos;
+        motion.lastNanos=timestampNanos;
+        if(last==0||timestampNanos<=last||timestampNanos-last>MAX_GAP_NANOS)
+            motion.filter.initialize(ax,ay,az);
+        else
+        {
+            // The magnetometer (AK8963) has x and y swapped and z reversed from the accelerometer.
+            motion.filter.update(Math.toRadians(gx),Math.toRadians(gy),Math.toRadians(gz),ax,ay,az,
+                    v[7],v[6],-v[8],(timestampNanos-last)/1e9);
+        }
+        motion.filter.getGravity(motion.gravity);
+        FallDetector.Event event=motion.detector.update(timestampNanos,Math.sqrt(ax*ax+ay*ay+az*az),
+                Math.sqrt(gx*gx+gy*gy+gz*gz),motion.gravity);
+        if(event==FallDetector.Event.NONE)
+            return event;
+        (event==FallDetector.Event.FALL?this.falls:this.impacts).incrementAndGet();
+        Listener listener=this.listener;
+        if(listener!=null)
+            listener.onMotionEvent(address,event,motion.detector);
+        return event;
+    }
+
+}
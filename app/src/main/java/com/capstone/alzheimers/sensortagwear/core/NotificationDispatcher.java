@@ -0,0 +1,119 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+/**
+ * Delivers notifications to the registered listeners, each on the executor it was registered
+ * with. Listeners registered without an executor are called directly on the dispatching thread,
+ * which costs no thread hop.
+ *
+ * Deliveries on an executor go through a bounded {@link StageQueue} per listener, dropping the
+ * oldest notification of the lowest priority when the listener falls behind, so that a stalled
+ * executor does not queue notifications without end. A listener that needs another policy or its
+ * own metrics registers its own queue, without an executor.
+ *
+ * The value of a notification is handed to every listener as is, not copied; queued deliveries
+ * keep the array until they run, as the {@link NotificationListener} contract allows.
+ *
+ * The time from dispatch to delivery on an executor can be recorded in a histogram.
+ */
+public class NotificationDispatcher
+{
+
+    // Copied on write, so that dispatching needs neither a lock nor an iterator.
+    private volatile Registration[] registrations=new Registration[0];
+    private volatile LogHistogram deliveryLatency;
+    // Drops of the queues of removed listeners.
+    private long removedDropped;
+
+    /**
+     * Registers a listener.
+     *
+     * @param executor Executor to deliver on, or null to deliver on the dispatching thread.
+     */
+    public synchronized void addListener(NotificationListener listener,Executor executor)
+    {
+        NotificationListener target=listener;
+        if(executor!=null)
+        {
+            StageQueue queue=new StageQueue("delivery",StageQueue.Policy.DROP_OLDEST,StageQueue.DEFAULT_CAPACITY,
+                    executor,listener);
+            queue.setWaitLatency(this.deliveryLatency);
+            target=queue;
+        }
+        Registration[] current=this.registrations;
+        Registration[] updated=Arrays.copyOf(current,current.length+1);
+        updated[current.length]=new Registration(listener,target);
+        this.registrations=updated;
+    }
+
+    public synchronized void removeListener(NotificationListener listener)
+    {
+        Registration[] current=this.registrations;
+        Registration[] updated=new Registration[current.length];
+        int count=0;
+        for(Registration registration:current)
+        {
+            if(registration.listener!=listener)
+                updated[count++]=registration;
+            else if(registration.target instanceof StageQueue)
+                this.removedDropped+=((StageQueue)registration.target).getDroppedCount();
+        }
+        this.registrations=Arrays.copyOf(updated,count);
+    }
+
+    /**
+     * Records the delay of deliveries on an executor, in nanoseconds, null to stop.
+     */
+    public synchronized void setDeliveryLatency(LogHistogram histogram)
+    {
+        this.deliveryLatency=histogram;
+        for(Registration registration:this.registrations)
+        {
+            if(registration.target instanceof StageQueue)
+                ((StageQueue)registration.target).setWaitLatency(histogram);
+        }
+    }
+
+    /**
+     * Number of notifications dropped on the way to listeners on an executor.
+     */
+    public synchronized long getDroppedCount()
+    {
+        long dropped=this.removedDropped;
+        for(Registration registration:this.registrations)
+        {
+            if(registration.target instanceof StageQueue)
+                dropped+=((StageQueue)registration.target).getDroppedCount();
+        }
+        return dropped;
+    }
+
+    public boolean hasListeners()
+    {
+        return this.registrations.length>0;
+    }
+
+    public void dispatch(String deviceAddress,UUID characteristicUuid,byte[] value,long timestampNanos,long sequence)
+    {
+        Registration[] registrations=this.registrations;
+        for(int i=0;i<registrations.length;i++)
+            registrations[i].target.onNotification(deviceAddress,characteristicUuid,value,timestampNanos,sequence);
+    }
+
+    private static class Registration
+    {
+        final NotificationListener listener;
+        // The listener itself, or its queue.
+        final NotificationListener target;
+
+        Registration(NotificationListener listener,NotificationListener target)
+        {
+            this.listener=listener;
+            this.target=target;
+        }
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.util.UUID;
+
+/**
+ * Receives characteristic notifications in process, without going through a broadcast Intent.
+ */
+public interface NotificationListener
+{
+
+    /**
+     * Gets called for every notification.
+     *
+     * @param deviceAddress Address of the notifying device.
+     * @param characteristicUuid UUID of the notifying characteristic.
+     * @param value Raw payload, not copied. It is handed off: the transport gives a new array for
+     *              every notification and no one writes to it afterwards, so it may be kept, and
+     *              queued, without copying. It is shared between listeners, so it must not be
+     *              modified.
+     * @param timestampNanos Time the transport received the notification, on its monotonic clock.
+     * @param sequence Number of the notification in its stream, from 0. Numbers are given as the
+     *                 notifications enter the engine, so a number skipped by a listener is a
+     *                 notification lost on the way to it.
+     */
+    void onNotification(String deviceAddress,UUID characteristicUuid,byte[] value,long timestampNanos,long sequence);
+
+}
@@ -0,0 +1,118 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+/**
+ * Counts of the values in a sliding window, for approximate quantiles in a fixed array: values can
+ * be added and removed again in constant time. The buckets are log-linear in the distance to a
+ * reference value, like those of {@link LogHistogram} but on both sides of it, so a quantile is
+ * known to within about 6 % of its distance to the reference. With the first value of a stream
+ * as the reference, a barometer reading near 1000 hPa is still resolved to a fraction of a hPa.
+ *
+ * Distances under 2^{@link #MIN_EXPONENT} are not told apart, those from 2^{@link #MAX_EXPONENT}
+ * on all count in the last bucket. Not thread safe.
+ */
+public class QuantileSketch
+{
+
+    public final static int MIN_EXPONENT=-10;
+    public final static int MAX_EXPONENT=18;
+    // Buckets per power of two, as a number of mantissa bits.
+    private final static int SUB_BUCKET_BITS=3;
+    private final static int SUB_BUCKETS=1<<SUB_BUCKET_BITS;
+    private final static int SIDE_BUCKETS=(MAX_EXPONENT-MIN_EXPONENT)*SUB_BUCKETS;
+    // Bucket of the values nearest to the reference, with SIDE_BUCKETS below and above.
+    private final static int CENTER=SIDE_BUCKETS;
+    private final static int BUCKETS=2*SIDE_BUCKETS+1;
+    private final static double MIN_DISTANCE=Math.scalb(1.0,MIN_EXPONENT);
+    // Bytes held by the counters of a sketch.
+    public final static int MEMORY_BYTES=4*BUCKETS;
+
+    private final double reference;
+    private final int[] buckets=new int[BUCKETS];
+    private int count;
+
+    public QuantileSketch(double reference)
+    {
+        this.reference=reference;
+    }
+
+    public void add(double value)
+    {
+        this.buckets[bucketOf(value)]++;
+        this.count++;
+    }
+
+    /**
+     * Removes a value added before.
+     */
+    public void remove(double value)
+    {
+        this.buckets[bucketOf(value)]--;
+        this.count--;
+    }
+
+    private int bucketOf(double value)
+    {
+        double distance=value-this.reference;
+        double magnitude=Math.abs(distance);
+        // Also NaN.
+        if(!(magnitude>=MIN_DISTANCE))
+            return CENTER;
+        int exponent=Math.getExponent(magnitude);
+        int bucket;
+        if(exponent>=MAX_EXPONENT)
+            bucket=SIDE_BUCKETS-1;
+        else
+        {
+            int mantissa=(int)(Double.doubleToRawLongBits(magnitude)>>>(52-SUB_BUCKET_BITS))&(SUB_BUCKETS-1);
+            bucket=(exponent-MIN_EXPONENT)*SUB_BUCKETS+mantissa;
+        }
+        return distance>0?CENTER+1+bucket:CENTER-1-bucket;
+    }
+
+    /**
+     * Middle of the values that fall in the bucket.
+     */
+    private double midpoint(int bucket)
+    {
+        if(bucket==CENTER)
+            return this.reference;
+        int side=bucket>CENTER?bucket-CENTER-1:CENTER-1-bucket;
+        double lower=Math.scalb(1.0+(side%SUB_BUCKETS)/(double)SUB_BUCKETS,side/SUB_BUCKETS+MIN_EXPONENT);
+        double distance=lower*(1.0+0.5/(SUB_BUCKETS+side%SUB_BUCKETS));
+        return bucket>CENTER?this.reference+distance:this.reference-distance;
+    }
+
+    public int getCount()
+    {
+        return this.count;
+    }
+
+    /**
+     * Value under which the fraction of the values fall, to the middle of its bucket. NaN while
+     * empty. Walks the buckets: meant for reading, not for every sample.
+     *
+     * @param fraction Between 0 and 1, e.g. 0.5 for the median.
+     */
+    public double getQuantile(double fraction)
+    {
+        if(this.count==0)
+            return Double.NaN;
+        long rank=Math.max(1,(long)Math.ceil(fraction*this.count));
+        long seen=0;
+        for(int i=0;i<BUCKETS;i++)
+        {
+            seen+=this.buckets[i];
+            if(seen>=rank)
+                return midpoint(i);
+        }
+        return midpoint(BUCKETS-1);
+    }
+
+    public void clear()
+    {
+        for(int i=0;i<BUCKETS;i++)
+            this.buckets[i]=0;
+        this.count=0;
+    }
+
+}
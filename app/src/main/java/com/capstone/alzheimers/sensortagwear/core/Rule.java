@@ -0,0 +1,307 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A pattern of events across the streams of several devices, e.g. "the door opens at night, then
+ * no bed motion for 5 minutes". A rule is a sequence of steps, each on a {@link Condition}:
+ * {@link #when} the condition starts to hold, {@link #then} it starts to hold within some time of
+ * the previous step, or it stays {@link #absent} for some time after the previous step. A rule
+ * that starts with an absence matches whenever the condition has not held for that long, e.g. for
+ * inactivity. Matches can be limited to a time of day with {@link #between}.
+ *
+ * Rules are declared with the chained methods, then compiled by {@link RuleEngine#add}, after
+ * which they must not change.
+ */
+public class Rule
+{
+
+    public enum Comparison
+    {
+        ABOVE,
+        BELOW
+    }
+
+    /**
+     * Aggregate of a value over a window, from the {@link AggregateStore}.
+     */
+    public enum Statistic
+    {
+        MIN,
+        MAX,
+        MEAN,
+        STANDARD_DEVIATION
+    }
+
+    /**
+     * A threshold on a stream of one device: on a value of each sample, the magnitude of three
+     * of them, or an aggregate of a value over a window. Equal conditions are evaluated once per
+     * sample, however many rules use them.
+     */
+    public final static class Condition
+    {
+        private final String address;
+        private final SensorDescriptor sensor;
+        private final int index;
+        private final boolean magnitude;
+        // Null for the values of the sample itself.
+        private final Statistic statistic;
+        private final long windowMillis;
+        private final Comparison comparison;
+        private final double threshold;
+
+        private Condition(String address,SensorDescriptor sensor,int index,boolean magnitude,Statistic statistic,
+                          long windowMillis,Comparison comparison,double threshold)
+        {
+            if(index<0||index+(magnitude?3:1)>SensorSample.MAX_VALUES)
+                throw new IllegalArgumentException("index "+index);
+            this.address=address;
+            this.sensor=sensor;
+            this.index=index;
+            this.magnitude=magnitude;
+            this.statistic=statistic;
+            this.windowMillis=windowMillis;
+            this.comparison=comparison;
+            this.threshold=threshold;
+        }
+
+        /**
+         * A value of each sample against the threshold, e.g. index 0 of {@link SensorDescriptor#KEYS}
+         * above 0 for a key press.
+         */
+        public static Condition value(String address,SensorDescriptor sensor,int index,Comparison comparison,
+                                      double threshold)
+        {
+            return new Condition(address,sensor,index,false,null,0,comparison,threshold);
+        }
+
+        /**
+         * The magnitude of the three values from index, e.g. the gyroscope of
+         * {@link SensorDescriptor#MOVEMENT} from 3, against the threshold.
+         */
+        public static Condition magnitude(String address,SensorDescriptor sensor,int index,Comparison comparison,
+                                          double threshold)
+        {
+            return new Condition(address,sensor,index,true,null,0,comparison,threshold);
+        }
+
+        /**
+         * An aggregate of a value over one of the windows of the {@link AggregateStore} against the
+         * threshold, e.g. its standard deviation over 10 s for motion, or its minimum over 10 min
+         * for a level held that long.
+         */
+        public static Condition aggregate(String address,SensorDescriptor sensor,int index,Statistic statistic,
+                                          long windowMillis,Comparison comparison,double threshold)
+        {
+            return new Condition(address,sensor,index,false,statistic,windowMillis,comparison,threshold);
+        }
+
+        public String getAddress()
+        {
+            return this.address;
+        }
+
+        public SensorDescriptor getSensor()
+        {
+            return this.sensor;
+        }
+
+        public UUID getDataUuid()
+        {
+            return this.sensor.getDataUuid();
+        }
+
+        public int getIndex()
+        {
+            return this.index;
+        }
+
+        public boolean isMagnitude()
+        {
+            return this.magnitude;
+        }
+
+        public Statistic getStatistic()
+        {
+            return this.statistic;
+        }
+
+        public long getWindowMillis()
+        {
+            return this.windowMillis;
+        }
+
+        /**
+         * Whether the value of the condition passes the threshold.
+         */
+        public boolean test(double value)
+        {
+            return this.comparison==Comparison.ABOVE?value>this.threshold:value<this.threshold;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if(!(o instanceof Condition))
+                return false;
+            Condition other=(Condition)o;
+            return this.address.equals(other.address)&&this.sensor==other.sensor&&this.index==other.index
+                    &&this.magnitude==other.magnitude&&this.statistic==other.statistic
+                    &&this.windowMillis==other.windowMillis&&this.comparison==other.comparison
+                    &&Double.compare(this.threshold,other.threshold)==0;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int hash=this.address.hashCode()*31+this.sensor.ordinal();
+            hash=hash*31+this.index*2+(this.magnitude?1:0);
+            hash=hash*31+(this.statistic==null?0:this.statistic.ordinal()+1);
+            hash=hash*31+(int)(this.windowMillis^(this.windowMillis>>>32));
+            hash=hash*31+this.comparison.ordinal();
+            long bits=Double.doubleToLongBits(this.threshold);
+            return hash*31+(int)(bits^(bits>>>32));
+        }
+
+        @Override
+        public String toString()
+        {
+            return this.address+" "+this.sensor+"["+this.index+"]"
+                    +(this.magnitude?" magnitude":"")
+                    +(this.statistic==null?"":" "+this.statistic+" over "+this.windowMillis+" ms")
+                    +" "+this.comparison+" "+this.threshold;
+        }
+    }
+
+    /**
+     * One step of a rule.
+     */
+    public final static class Step
+    {
+        private final Condition condition;
+        private final boolean absent;
+        private final long millis;
+
+        private Step(Condition condition,boolean absent,long millis)
+        {
+            this.condition=condition;
+            this.absent=absent;
+            this.millis=millis;
+        }
+
+        public Condition getCondition()
+        {
+            return this.condition;
+        }
+
+        /**
+         * Whether the step waits for the condition not to hold, rather than to start holding.
+         */
+        public boolean isAbsent()
+        {
+            return this.absent;
+        }
+
+        /**
+         * For an absence, how long it must last; otherwise the time allowed since the previous
+         * step, 0 for no limit.
+         */
+        public long getMillis()
+        {
+            return this.millis;
+        }
+    }
+
+    private final static int MINUTES_PER_DAY=24*60;
+
+    private final String name;
+    private final List<Step> steps=new ArrayList<Step>();
+    // Minutes of the day between which the rule matches, the whole day if equal.
+    private int fromMinute;
+    private int toMinute;
+
+    public Rule(String name)
+    {
+        this.name=name;
+    }
+
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /**
+     * First step: the condition starts to hold.
+     */
+    public Rule when(Condition condition)
+    {
+        if(!this.steps.isEmpty())
+            throw new IllegalStateException("when() must be the first step of "+this.name);
+        this.steps.add(new Step(condition,false,0));
+        return this;
+    }
+
+    /**
+     * Next step: the condition starts to hold within the time after the previous step.
+     *
+     * @param withinMillis 0 for no limit.
+     */
+    public Rule then(Condition condition,long withinMillis)
+    {
+        if(this.steps.isEmpty())
+            throw new IllegalStateException("then() needs a previous step in "+this.name);
+        this.steps.add(new Step(condition,false,withinMillis));
+        return this;
+    }
+
+    /**
+     * Next step, or first step: the condition does not hold for the time.
+     */
+    public Rule absent(Condition condition,long forMillis)
+    {
+        if(forMillis<=0)
+            throw new IllegalArgumentException("absence of "+forMillis+" ms in "+this.name);
+        this.steps.add(new Step(condition,true,forMillis));
+        return this;
+    }
+
+    /**
+     * Only matches from one minute of the day to another, in local time, e.g. 22 * 60 to 6 * 60 for
+     * the night.
+     */
+    public Rule between(int fromMinute,int toMinute)
+    {
+        if(fromMinute<0||fromMinute>=MINUTES_PER_DAY||toMinute<0||toMinute>=MINUTES_PER_DAY)
+            throw new IllegalArgumentException("between "+fromMinute+" and "+toMinute);
+        this.fromMinute=fromMinute;
+        this.toMinute=toMinute;
+        return this;
+    }
+
+    public List<Step> getSteps()
+    {
+        return Collections.unmodifiableList(this.steps);
+    }
+
+    /**
+     * Whether the rule may match at the minute of the day.
+     */
+    public boolean isActiveAt(int minuteOfDay)
+    {
+        if(this.fromMinute==this.toMinute)
+            return true;
+        if(this.fromMinute<this.toMinute)
+            return minuteOfDay>=this.fromMinute&&minuteOfDay<this.toMinute;
+        return minuteOfDay>=this.fromMinute||minuteOfDay<this.toMinute;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.name;
+    }
+
+}
@@ -0,0 +1,387 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.UUID;
+
+/**
+ * Matches {@link Rule}s on the samples of every device, incrementally. Each rule is compiled into
+ * a state machine: its current step, and a deadline on a {@link TimerWheel} for the time limits
+ * and absences. Conditions are indexed by stream, and equal conditions shared between rules, so a
+ * sample only evaluates the distinct conditions on its own stream. Only the rules waiting on a
+ * condition, or starting with it when it starts to hold, are then stepped. The cost of a sample
+ * does not grow with the rules on other streams.
+ *
+ * A rule has one match in progress at a time. When its first condition starts to hold again, the
+ * match starts over from there. Timestamps are wall-clock milliseconds, as in the {@link SampleLog},
+ * for the time of day of {@link Rule#between}; absences expire from {@link #advance}, to be
+ * called regularly.
+ *
+ * Not thread safe: rules, samples and time must all come from one thread.
+ */
+public class RuleEngine
+{
+
+    public interface Listener
+    {
+        void onRuleMatched(Rule rule,long timestamp);
+    }
+
+    public final static long DEFAULT_TICK_MILLIS=250;
+    public final static int DEFAULT_WHEEL_SIZE=1024;
+
+    private final static long MILLIS_PER_MINUTE=60*1000;
+    private final static int MINUTES_PER_DAY=24*60;
+
+    /**
+     * A distinct condition, evaluated once per sample of its stream.
+     */
+    private static class Node
+    {
+        final Rule.Condition condition;
+        // Window of the aggregate in the store, -1 for the values of the sample.
+        final int window;
+        boolean holds;
+        // Runs whose first step is this condition starting to hold, whatever their current step.
+        final List<Run> starting=new ArrayList<Run>();
+        // Runs whose current step is on this condition, other than a first step in starting.
+        final List<Run> waiting=new ArrayList<Run>();
+
+        Node(Rule.Condition condition,int window)
+        {
+            this.condition=condition;
+            this.window=window;
+        }
+    }
+
+    /**
+     * The state machine of one rule.
+     */
+    private final class Run implements Runnable
+    {
+        final Rule rule;
+        final Rule.Step[] steps;
+        final Node[] nodes;
+        final TimerWheel.Timeout timeout;
+        int step;
+        long deadline;
+        // Sample that brought the run to its step, which the step does not look at again.
+        long enteredSample=-1;
+        // Node in whose waiting list the run is, and where.
+        Node waitingNode;
+        int waitingIndex=-1;
+
+        Run(Rule rule,Rule.Step[] steps,Node[] nodes)
+        {
+            this.rule=rule;
+            this.steps=steps;
+            this.nodes=nodes;
+            this.timeout=RuleEngine.this.wheel.schedule(this,0);
+            RuleEngine.this.wheel.cancel(this.timeout);
+        }
+
+        @Override
+        public void run()
+        {
+            expire(this);
+        }
+    }
+
+    private final TimerWheel wheel;
+    private final AggregateStore aggregates;
+    private final TimeZone timeZone;
+    private final WindowStats stats=new WindowStats();
+    private final HashMap<Rule.Condition,Node> nodes=new HashMap<Rule.Condition,Node>();
+    // Device address to (data UUID to conditions) map.
+    private final HashMap<String,HashMap<UUID,Node[]>> streams=new HashMap<String,HashMap<UUID,Node[]>>();
+    private final List<Run> runs=new ArrayList<Run>();
+    private Listener listener;
+    private long now;
+    private long samples;
+    private long matches;
+
+    /**
+     * @param aggregates Store the aggregate conditions read, recorded before each sample is
+     *                   given here; null if no rule uses them.
+     * @param timeZone For the time of day of the rules.
+     */
+    public RuleEngine(AggregateStore aggregates,TimeZone timeZone,long nowMillis)
+    {
+        this.wheel=new TimerWheel(DEFAULT_WHEEL_SIZE,DEFAULT_TICK_MILLIS,nowMillis);
+        this.aggregates=aggregates;
+        this.timeZone=timeZone;
+        this.now=nowMillis;
+    }
+
+    public void setListener(Listener listener)
+    {
+        this.listener=listener;
+    }
+
+    /**
+     * Compiles a rule and starts matching it.
+     *
+     * @throws IllegalArgumentException If the rule has no step, or an aggregate over a window the
+     *                                  store does not keep.
+     */
+    public void add(Rule rule)
+    {
+        List<Rule.Step> steps=rule.getSteps();
+        if(steps.isEmpty())
+            throw new IllegalArgumentException("No steps in "+rule);
+        Node[] nodes=new Node[steps.size()];
+        for(int i=0;i<nodes.length;i++)
+            nodes[i]=node(steps.get(i).getCondition());
+        Run run=new Run(rule,steps.toArray(new Rule.Step[nodes.length]),nodes);
+        if(!run.steps[0].isAbsent())
+            nodes[0].starting.add(run);
+        this.runs.add(run);
+        reset(run,this.now);
+    }
+
+    private Node node(Rule.Condition condition)
+    {
+        Node node=this.nodes.get(condition);
+        if(node!=null)
+            return node;
+        int window=-1;
+        if(condition.getStatistic()!=null)
+        {
+            if(this.aggregates!=null)
+                window=this.aggregates.windowOf(condition.getWindowMillis());
+            if(window<0)
+                throw new IllegalArgumentException("No "+condition.getWindowMillis()+" ms window for "+condition);
+        }
+        node=new Node(condition,window);
+        this.nodes.put(condition,node);
+        HashMap<UUID,Node[]> device=this.streams.get(condition.getAddress());
+        if(device==null)
+        {
+            device=new HashMap<UUID,Node[]>();
+            this.streams.put(condition.getAddress(),device);
+        }
+        Node[] stream=device.get(condition.getDataUuid());
+        Node[] grown=new Node[stream==null?1:stream.length+1];
+        if(stream!=null)
+            System.arraycopy(stream,0,grown,0,stream.length);
+        grown[grown.length-1]=node;
+        device.put(condition.getDataUuid(),grown);
+        return node;
+    }
+
+    public int getRuleCount()
+    {
+        return this.runs.size();
+    }
+
+    /**
+     * Number of distinct conditions evaluated.
+     */
+    public int getConditionCount()
+    {
+        return this.nodes.size();
+    }
+
+    public long getMatchCount()
+    {
+        return this.matches;
+    }
+
+    /**
+     * Takes the decoded sample of a stream, after it was recorded in the aggregate store.
+     */
+    public void onSample(String address,UUID dataUuid,long timestamp,SensorSample sample)
+    {
+        advance(timestamp);
+        HashMap<UUID,Node[]> device=this.streams.get(address);
+        if(device==null)
+            return;
+        Node[] stream=device.get(dataUuid);
+        if(stream==null)
+            return;
+        long current=++this.samples;
+        for(Node node:stream)
+        {
+            boolean holds=evaluate(node,address,dataUuid,sample);
+            boolean started=holds&&!node.holds;
+            node.holds=holds;
+            if(!holds)
+                continue;
+            // Backwards: a run leaving the list is replaced by the last one, already seen.
+            List<Run> waiting=node.waiting;
+            for(int i=waiting.size()-1;i>=0;i--)
+            {
+                Run run=waiting.get(i);
+                if(run.enteredSample!=current)
+                    onHolds(run,timestamp,started,current);
+            }
+            if(!started)
+                continue;
+            List<Run> starting=node.starting;
+            for(int i=0;i<starting.size();i++)
+            {
+                Run run=starting.get(i);
+                if(run.enteredSample!=current)
+                    enter(run,1,timestamp,current);
+            }
+        }
+    }
+
+    /**
+     * Expires the time limits and absences up to the time. Called by every sample; to be called
+     * regularly as well, for absences to expire when no sample comes.
+     */
+    public void advance(long nowMillis)
+    {
+        if(nowMillis>this.now)
+            this.now=nowMillis;
+        this.wheel.advance(nowMillis);
+    }
+
+    private boolean evaluate(Node node,String address,UUID dataUuid,SensorSample sample)
+    {
+        Rule.Condition condition=node.condition;
+        int index=condition.getIndex();
+        double value;
+        if(node.window>=0)
+        {
+            WindowAggregator aggregator=this.aggregates.getAggregator(address,dataUuid);
+            if(aggregator==null||index>=aggregator.getWidth()||!aggregator.getStats(node.window,index,this.stats))
+                return false;
+            switch(condition.getStatistic())
+            {
+                case MIN:
+                    value=this.stats.min;
+                    break;
+                case MAX:
+                    value=this.stats.max;
+                    break;
+                case MEAN:
+                    value=this.stats.mean;
+                    break;
+                default:
+                    value=this.stats.getStandardDeviation();
+                    break;
+            }
+        }
+        else if(condition.isMagnitude())
+        {
+            if(sample.count<index+3)
+                return false;
+            double x=sample.values[index],y=sample.values[index+1],z=sample.values[index+2];
+            value=Math.sqrt(x*x+y*y+z*z);
+        }
+        else
+        {
+            if(sample.count<=index)
+                return false;
+            value=sample.values[index];
+        }
+        return condition.test(value);
+    }
+
+    /**
+     * The condition of the current step holds on a sample.
+     */
+    private void onHolds(Run run,long timestamp,boolean started,long current)
+    {
+        if(run.steps[run.step].isAbsent())
+        {
+            // A first absence starts over, a later one fails the match.
+            if(run.step==0)
+                enter(run,0,timestamp,current);
+            else
+                reset(run,timestamp);
+        }
+        else if(started)
+            enter(run,run.step+1,timestamp,current);
+    }
+
+    /**
+     * The deadline of the current step passed.
+     */
+    private void expire(Run run)
+    {
+        if(run.steps[run.step].isAbsent())
+            enter(run,run.step+1,run.deadline,this.samples);
+        else
+            reset(run,run.deadline);
+    }
+
+    private void enter(Run run,int step,long timestamp,long current)
+    {
+        leave(run);
+        run.enteredSample=current;
+        if(step==run.steps.length)
+        {
+            match(run,timestamp);
+            reset(run,timestamp);
+            return;
+        }
+        run.step=step;
+        Rule.Step s=run.steps[step];
+        if(step>0||s.isAbsent())
+            join(run,run.nodes[step]);
+        if(s.isAbsent()||step>0&&s.getMillis()>0)
+        {
+            run.deadline=timestamp+s.getMillis();
+            this.wheel.reschedule(run.timeout,Math.max(0,run.deadline-this.now));
+        }
+        else
+            this.wheel.cancel(run.timeout);
+    }
+
+    private void reset(Run run,long timestamp)
+    {
+        if(run.steps[0].isAbsent())
+        {
+            enter(run,0,timestamp,run.enteredSample);
+            return;
+        }
+        leave(run);
+        this.wheel.cancel(run.timeout);
+        run.step=0;
+    }
+
+    private void match(Run run,long timestamp)
+    {
+        if(!run.rule.isActiveAt(minuteOfDay(timestamp)))
+            return;
+        this.matches++;
+        Listener listener=this.listener;
+        if(listener!=null)
+            listener.onRuleMatched(run.rule,timestamp);
+    }
+
+    private int minuteOfDay(long timestamp)
+    {
+        long minutes=(timestamp+this.timeZone.getOffset(timestamp))/MILLIS_PER_MINUTE;
+        return (int)(((minutes%MINUTES_PER_DAY)+MINUTES_PER_DAY)%MINUTES_PER_DAY);
+    }
+
+    private void join(Run run,Node node)
+    {
+        run.waitingNode=node;
+        run.waitingIndex=node.waiting.size();
+        node.waiting.add(run);
+    }
+
+    private void leave(Run run)
+    {
+        Node node=run.waitingNode;
+        if(node==null)
+            return;
+        List<Run> waiting=node.waiting;
+        Run last=waiting.remove(waiting.size()-1);
+        if(last!=run)
+        {
+            waiting.set(run.waitingIndex,last);
+            last.waitingIndex=run.waitingIndex;
+        }
+        run.waitingNode=null;
+        run.waitingIndex=-1;
+    }
+
+}
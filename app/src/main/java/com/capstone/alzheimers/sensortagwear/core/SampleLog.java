@@ -0,0 +1,436 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durable, append-only log of decoded samples, split into fixed-size segment files written through
+ * a {@link MappedByteBuffer}. Every record has the same width:
+ *
+ * <pre>
+ *  0  int    checksum of bytes 4 to 63
+ *  4  byte   record version, 0 for unused space
+ *  5  byte   number of values
+ *  6  short  sensor id, the 16-bit UUID of the data characteristic
+ *  8  long   timestamp
+ * 16  long   device id, the 48-bit Bluetooth address
+ * 24  float  values[9]
+ * 60  int    reserved
+ * </pre>
+ *
+ * {@link #append} only copies the record into an in-memory staging buffer; a writer thread moves
+ * staged records to the mapped segment, so the caller never waits for the disk. When the staging
+ * buffer is full, records are dropped and counted. Segments are rotated when full, and the oldest
+ * ones are deleted once the log exceeds its size limit. On open, the tail of the last segment is
+ * scanned and everything after the last record with a valid checksum is cleared, so a crash loses
+ * at most the records that were not written out yet.
+ */
+public class SampleLog
+{
+
+    /**
+     * Receives the records of the log, oldest first.
+     */
+    public interface Visitor
+    {
+        /**
+         * @param values Reused between calls: copy what must be kept.
+         */
+        void onRecord(long timestamp,long deviceId,int sensorId,int count,float[] values);
+    }
+
+    public final static int RECORD_BYTES=64;
+    public final static int MAX_VALUES=9;
+    public final static int DEFAULT_SEGMENT_BYTES=4*1024*1024;
+    public final static long DEFAULT_MAX_BYTES=64L*1024*1024;
+    public final static int DEFAULT_STAGING_RECORDS=4096;
+    public final static long DEFAULT_FLUSH_INTERVAL_MILLIS=1000;
+
+    private final static byte VERSION=1;
+    private final static String PREFIX="segment-";
+    private final static String SUFFIX=".log";
+
+    private final File directory;
+    private final int segmentBytes;
+    private final long maxBytes;
+    private final long flushIntervalMillis;
+
+    // Appenders write to staging under the lock; the writer swaps it with its own buffer.
+    private final Object lock=new Object();
+    private ByteBuffer staging;
+    private ByteBuffer draining;
+    private long staged;
+    private long written;
+    private boolean closed;
+    private final AtomicLong dropped=new AtomicLong();
+
+    // Writer thread only.
+    private final ArrayList<File> segments=new ArrayList<File>();
+    private RandomAccessFile segmentFile;
+    private MappedByteBuffer segment;
+    private int segmentIndex;
+    private final Thread writer;
+    private volatile IOException failure;
+
+    public SampleLog(File directory) throws IOException
+    {
+        this(directory,DEFAULT_SEGMENT_BYTES,DEFAULT_MAX_BYTES,DEFAULT_STAGING_RECORDS,DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Opens the log in the directory, recovering the tail of the last segment, and starts the
+     * writer thread.
+     *
+     * @param segmentBytes Size of one segment file, rounded down to whole records.
+     * @param maxBytes Size above which the oldest segments are deleted.
+     * @param stagingRecords Records that can wait for the writer before new ones are dropped.
+     * @param flushIntervalMillis Longest time a record waits for the writer.
+     */
+    public SampleLog(File directory,int segmentBytes,long maxBytes,int stagingRecords,long flushIntervalMillis) throws IOException
+    {
+        if(segmentBytes<RECORD_BYTES||stagingRecords<=0)
+            throw new IllegalArgumentException("segment "+segmentBytes+" bytes, staging "+stagingRecords+" records");
+        if(!directory.isDirectory()&&!directory.mkdirs())
+            throw new IOException("Cannot create "+directory);
+        this.directory=directory;
+        this.segmentBytes=segmentBytes/RECORD_BYTES*RECORD_BYTES;
+        this.maxBytes=maxBytes;
+        this.flushIntervalMillis=flushIntervalMillis;
+        this.staging=ByteBuffer.allocate(stagingRecords*RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        this.draining=ByteBuffer.allocate(stagingRecords*RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        this.segments.addAll(Arrays.asList(listSegments(directory)));
+        recover();
+        this.writer=new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                writeLoop();
+            }
+        },"SampleLog");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Gives the device id of a Bluetooth address such as "B0:B4:48:C0:5D:81".
+     */
+    public static long deviceId(String address)
+    {
+        long id=0;
+        for(int i=0;i<address.length();i++)
+        {
+            int digit=Character.digit(address.charAt(i),16);
+            if(digit>=0)
+                id=(id<<4)|digit;
+        }
+        return id;
+    }
+
+    /**
+     * Gives the Bluetooth address of a device id.
+     */
+    public static String address(long deviceId)
+    {
+        return String.format(Locale.US,"%02X:%02X:%02X:%02X:%02X:%02X",
+                (deviceId>>40)&0xFF,(deviceId>>32)&0xFF,(deviceId>>24)&0xFF,
+                (deviceId>>16)&0xFF,(deviceId>>8)&0xFF,deviceId&0xFF);
+    }
+
+    /**
+     * Gives the sensor id of a data characteristic: the 16-bit part of its UUID, e.g. 0xAA71 for
+     * the luxometer.
+     */
+    public static int sensorId(UUID dataUuid)
+    {
+        return (int)(dataUuid.getMostSignificantBits()>>>32)&0xFFFF;
+    }
+
+    /**
+     * Queues a sample for writing. Never waits for the disk.
+     *
+     * @return False if the sample was dropped because the writer is behind or the log is closed.
+     */
+    public boolean append(long timestamp,long deviceId,int sensorId,SensorSample sample)
+    {
+        int count=Math.min(sample.count,MAX_VALUES);
+        synchronized(this.lock)
+        {
+            if(this.closed||this.staging.remaining()<RECORD_BYTES)
+            {
+                this.dropped.incrementAndGet();
+                return false;
+            }
+            ByteBuffer buffer=this.staging;
+            int start=buffer.position();
+            buffer.putInt(0);
+            buffer.put(VERSION);
+            buffer.put((byte)count);
+            buffer.putShort((short)sensorId);
+            buffer.putLong(timestamp);
+            buffer.putLong(deviceId);
+            for(int i=0;i<MAX_VALUES;i++)
+                buffer.putFloat(i<count?(float)sample.values[i]:0f);
+            buffer.putInt(0);
+            buffer.putInt(start,checksum(buffer,start));
+            this.staged++;
+        }
+        return true;
+    }
+
+    /**
+     * Waits until every sample appended so far is in the mapped segment.
+     */
+    public void flush() throws IOException,InterruptedException
+    {
+        synchronized(this.lock)
+        {
+            long target=this.staged;
+            this.lock.notifyAll();
+            while(this.written<target&&this.failure==null)
+                this.lock.wait();
+        }
+        if(this.failure!=null)
+            throw this.failure;
+    }
+
+    /**
+     * Writes out the staged samples, forces them to disk and stops the writer.
+     */
+    public void close() throws IOException,InterruptedException
+    {
+        synchronized(this.lock)
+        {
+            if(this.closed)
+                return;
+            this.closed=true;
+            this.lock.notifyAll();
+        }
+        this.writer.join();
+        if(this.failure!=null)
+            throw this.failure;
+    }
+
+    /**
+     * Number of samples dropped because the writer was behind.
+     */
+    public long getDroppedCount()
+    {
+        return this.dropped.get();
+    }
+
+    /**
+     * Number of samples written to the mapped segments.
+     */
+    public long getWrittenCount()
+    {
+        synchronized(this.lock)
+        {
+            return this.written;
+        }
+    }
+
+    /**
+     * Reads every valid record of the logs in the directory, oldest first. Records still staged
+     * in a log that is open are not seen.
+     */
+    public static void replay(File directory,Visitor visitor) throws IOException
+    {
+        float[] values=new float[MAX_VALUES];
+        for(File file:listSegments(directory))
+        {
+            RandomAccessFile segmentFile=new RandomAccessFile(file,"r");
+            try
+            {
+                FileChannel channel=segmentFile.getChannel();
+                ByteBuffer buffer=channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+                for(int offset=0;offset+RECORD_BYTES<=buffer.limit()&&isValid(buffer,offset);offset+=RECORD_BYTES)
+                {
+                    int count=buffer.get(offset+5);
+                    for(int i=0;i<MAX_VALUES;i++)
+                        values[i]=buffer.getFloat(offset+24+4*i);
+                    visitor.onRecord(buffer.getLong(offset+8),buffer.getLong(offset+16),buffer.getShort(offset+6)&0xFFFF,count,values);
+                }
+            }
+            finally
+            {
+                segmentFile.close();
+            }
+        }
+    }
+
+    private void writeLoop()
+    {
+        try
+        {
+            while(true)
+            {
+                long target;
+                boolean closing;
+                synchronized(this.lock)
+                {
+                    if(!this.closed&&this.staged==this.written)
+                        this.lock.wait(this.flushIntervalMillis);
+                    ByteBuffer full=this.staging;
+                    this.staging=this.draining;
+                    this.draining=full;
+                    target=this.staged;
+                    closing=this.closed;
+                }
+                this.draining.flip();
+                write(this.draining);
+                this.draining.clear();
+                if(closing)
+                    this.segment.force();
+                synchronized(this.lock)
+                {
+                    this.written=target;
+                    this.lock.notifyAll();
+                    if(closing&&this.staged==this.written)
+                        break;
+                }
+            }
+        }
+        catch(IOException e)
+        {
+            fail(e);
+        }
+        catch(InterruptedException e)
+        {
+            fail(new IOException("Interrupted"));
+        }
+        finally
+        {
+            try
+            {
+                if(this.segmentFile!=null)
+                    this.segmentFile.close();
+            }
+            catch(IOException e)
+            {
+                fail(e);
+            }
+        }
+    }
+
+    private void fail(IOException e)
+    {
+        synchronized(this.lock)
+        {
+            if(this.failure==null)
+                this.failure=e;
+            this.closed=true;
+            this.lock.notifyAll();
+        }
+    }
+
+    /**
+     * Copies whole records into the segments, rotating as they fill up. Writer thread only.
+     */
+    private void write(ByteBuffer records) throws IOException
+    {
+        while(records.hasRemaining())
+        {
+            if(!this.segment.hasRemaining())
+                rotate();
+            int length=Math.min(records.remaining(),this.segment.remaining());
+            int limit=records.limit();
+            records.limit(records.position()+length);
+            this.segment.put(records);
+            records.limit(limit);
+        }
+    }
+
+    /**
+     * Forces the full segment to disk, opens the next one and applies the retention.
+     */
+    private void rotate() throws IOException
+    {
+        this.segment.force();
+        this.segmentFile.close();
+        openSegment(this.segmentIndex+1,false);
+        long total=(long)this.segments.size()*this.segmentBytes;
+        while(total>this.maxBytes&&this.segments.size()>1)
+        {
+            File oldest=this.segments.remove(0);
+            if(!oldest.delete())
+                throw new IOException("Cannot delete "+oldest);
+            total-=this.segmentBytes;
+        }
+    }
+
+    /**
+     * Reopens the last segment after its last valid record, clearing anything written after it.
+     */
+    private void recover() throws IOException
+    {
+        if(this.segments.isEmpty())
+        {
+            openSegment(1,false);
+            return;
+        }
+        File last=this.segments.get(this.segments.size()-1);
+        String name=last.getName();
+        openSegment(Integer.parseInt(name.substring(PREFIX.length(),name.length()-SUFFIX.length())),true);
+        int offset=0;
+        while(offset+RECORD_BYTES<=this.segment.limit()&&isValid(this.segment,offset))
+            offset+=RECORD_BYTES;
+        for(int i=offset;i<this.segment.limit();i++)
+            this.segment.put(i,(byte)0);
+        this.segment.position(offset);
+    }
+
+    private void openSegment(int index,boolean existing) throws IOException
+    {
+        File file=new File(this.directory,String.format(Locale.US,"%s%08d%s",PREFIX,index,SUFFIX));
+        this.segmentFile=new RandomAccessFile(file,"rw");
+        this.segmentFile.setLength(this.segmentBytes);
+        this.segment=this.segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE,0,this.segmentBytes);
+        this.segment.order(ByteOrder.LITTLE_ENDIAN);
+        this.segmentIndex=index;
+        if(!existing)
+            this.segments.add(file);
+    }
+
+    private static File[] listSegments(File directory)
+    {
+        File[] files=directory.listFiles(new FilenameFilter()
+        {
+            @Override
+            public boolean accept(File dir,String name)
+            {
+                return name.startsWith(PREFIX)&&name.endsWith(SUFFIX);
+            }
+        });
+        if(files==null)
+            return new File[0];
+        // Fixed-width indexes sort by name.
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static boolean isValid(ByteBuffer buffer,int offset)
+    {
+        return buffer.get(offset+4)==VERSION&&buffer.getInt(offset)==checksum(buffer,offset);
+    }
+
+    private static int checksum(ByteBuffer buffer,int offset)
+    {
+        int hash=0x811C9DC5;
+        for(int i=4;i<RECORD_BYTES;i+=4)
+            hash=(hash^buffer.getInt(offset+i))*0x01000193;
+        return hash^(hash>>>15);
+    }
+
+}
@@ -0,0 +1,212 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-capacity history of one sensor stream, kept in primitive columns: one {@code long} timestamp
+ * and {@code width} {@code float} values per sample, with no object per sample. Once full, each new
+ * sample overwrites the oldest.
+ *
+ * One thread writes, any number of threads read without locking. Each slot has a stamp, the write
+ * count of its sample, cleared while the writer overwrites the slot. A read copies a sample between
+ * two reads of its stamp and keeps it only if both match; samples the writer overwrote during the
+ * copy are dropped from the result, so readers only ever see whole samples. The columns are atomic
+ * arrays, written with release stores and read with acquire loads: with plain arrays, nothing
+ * would keep the second read of a stamp from happening before the reads of the values it guards.
+ */
+public class SampleRingBuffer
+{
+
+    private final int capacity;
+    private final int mask;
+    private final int width;
+    private final AtomicLongArray timestamps;
+    // Float.floatToRawIntBits of the values.
+    private final AtomicIntegerArray values;
+    // Per slot: 1 + the index of the sample it holds, 0 while empty or being overwritten.
+    private final AtomicLongArray stamps;
+    // Number of samples ever written. Published after each sample is complete.
+    private final AtomicLong written=new AtomicLong();
+
+    /**
+     * @param capacity Number of samples kept, rounded up to a power of two.
+     * @param width Number of values per sample, at most {@link SensorSample#MAX_VALUES}.
+     */
+    public SampleRingBuffer(int capacity,int width)
+    {
+        if(capacity<=0||width<=0||width>SensorSample.MAX_VALUES)
+            throw new IllegalArgumentException("capacity "+capacity+", width "+width);
+        int size=Integer.highestOneBit(capacity);
+        if(size<capacity)
+            size<<=1;
+        this.capacity=size;
+        this.mask=size-1;
+        this.width=width;
+        this.timestamps=new AtomicLongArray(size);
+        this.values=new AtomicIntegerArray(size*width);
+        this.stamps=new AtomicLongArray(size);
+    }
+
+    public int getCapacity()
+    {
+        return this.capacity;
+    }
+
+    public int getWidth()
+    {
+        return this.width;
+    }
+
+    /**
+     * Bytes held by the columns, which is all this buffer will ever use.
+     */
+    public long getMemoryBytes()
+    {
+        return this.capacity*(16L+4L*this.width);
+    }
+
+    /**
+     * Number of samples ever written, including the overwritten ones.
+     */
+    public long getWriteCount()
+    {
+        return this.written.get();
+    }
+
+    /**
+     * Number of samples currently held.
+     */
+    public int size()
+    {
+        return (int)Math.min(this.written.get(),this.capacity);
+    }
+
+    /**
+     * Appends a sample. Values beyond the width are ignored, missing ones are stored as NaN.
+     * Only one thread may call this.
+     */
+    public void add(long timestamp,SensorSample sample)
+    {
+        long index=this.written.get();
+        int slot=(int)index&this.mask;
+        // Cleared first: the ordered stores below cannot be seen before it, so a reader that sees
+        // any of them sees the stamp change too.
+        this.stamps.lazySet(slot,0);
+        this.timestamps.lazySet(slot,timestamp);
+        int offset=slot*this.width;
+        for(int i=0;i<this.width;i++)
+            this.values.lazySet(offset+i,Float.floatToRawIntBits(i<sample.count?(float)sample.values[i]:Float.NaN));
+        this.stamps.lazySet(slot,index+1);
+        this.written.lazySet(index+1);
+    }
+
+    /**
+     * Copies the latest sample into the given sample. Returns its timestamp, or -1 if empty.
+     */
+    public long latest(SensorSample sample)
+    {
+        while(true)
+        {
+            long index=this.written.get()-1;
+            if(index<0)
+                return -1;
+            int slot=(int)index&this.mask;
+            if(this.stamps.get(slot)!=index+1)
+                continue;
+            long timestamp=this.timestamps.get(slot);
+            sample.count=this.width;
+            for(int i=0;i<this.width;i++)
+                sample.values[i]=Float.intBitsToFloat(this.values.get(slot*this.width+i));
+            // Retry if the writer went all the way around meanwhile.
+            if(this.stamps.get(slot)==index+1)
+                return timestamp;
+        }
+    }
+
+    /**
+     * Copies the latest samples, oldest first, as many as fit in the arrays.
+     *
+     * @param values Receives {@code width} values per sample.
+     * @return Number of samples copied.
+     */
+    public int snapshot(long[] timestamps,float[] values)
+    {
+        return copy(-1,Math.min(timestamps.length,values.length/this.width),timestamps,values);
+    }
+
+    /**
+     * Copies the samples with {@code from <= timestamp < to}, oldest first, as many as fit in the
+     * arrays starting from the oldest. Timestamps must have been written in non-decreasing order.
+     *
+     * @return Number of samples copied.
+     */
+    public int read(long from,long to,long[] timestamps,float[] values)
+    {
+        int max=Math.min(timestamps.length,values.length/this.width);
+        long end=this.written.get();
+        long first=Math.max(0,end-this.capacity+1);
+        long start=search(first,end,from);
+        long stop=search(start,end,to);
+        long count=Math.min(stop-start,max);
+        if(count<=0)
+            return 0;
+        return copy(start,(int)count,timestamps,values);
+    }
+
+    /**
+     * First index in [low, high) whose timestamp is at least the given one, or high.
+     */
+    private long search(long low,long high,long timestamp)
+    {
+        while(low<high)
+        {
+            long middle=(low+high)>>>1;
+            if(this.timestamps.get((int)middle&this.mask)<timestamp)
+                low=middle+1;
+            else
+                high=middle;
+        }
+        return low;
+    }
+
+    /**
+     * Copies count samples from the given index, or the latest ones if it is negative, and drops
+     * those overwritten in the meantime. The writer overwrites the oldest first, so those are the
+     * first ones.
+     */
+    private int copy(long start,int count,long[] timestamps,float[] values)
+    {
+        long end=this.written.get();
+        if(start<0)
+            start=Math.max(Math.max(0,end-this.capacity+1),end-count);
+        count=(int)Math.min(count,end-start);
+        if(count<=0)
+            return 0;
+        int dropped=0;
+        for(int i=0;i<count;i++)
+        {
+            int slot=(int)(start+i)&this.mask;
+            long stamp=start+i+1;
+            if(this.stamps.get(slot)!=stamp)
+            {
+                dropped=i+1;
+                continue;
+            }
+            timestamps[i]=this.timestamps.get(slot);
+            for(int j=0,from=slot*this.width,to=i*this.width;j<this.width;j++)
+                values[to+j]=Float.intBitsToFloat(this.values.get(from+j));
+            if(this.stamps.get(slot)!=stamp)
+                dropped=i+1;
+        }
+        if(dropped>0)
+        {
+            count-=dropped;
+            System.arraycopy(timestamps,dropped,timestamps,0,count);
+            System.arraycopy(values,dropped*this.width,values,0,count*this.width);
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory history of every sensor of every device: one {@link SampleRingBuffer} per device and
+ * data characteristic, all with the same capacity. A buffer is created on the first sample of its
+ * stream, sized to that sample's number of values, and never grows afterwards.
+ *
+ * Each stream must be recorded from a single thread at a time; it can be read from any thread.
+ */
+public class SampleStore
+{
+
+    private final int capacity;
+    private final ConcurrentHashMap<String,ConcurrentHashMap<UUID,SampleRingBuffer>> buffers=
+            new ConcurrentHashMap<String,ConcurrentHashMap<UUID,SampleRingBuffer>>();
+
+    /**
+     * @param capacity Number of samples kept per stream.
+     */
+    public SampleStore(int capacity)
+    {
+        this.capacity=capacity;
+    }
+
+    /**
+     * Capacity needed to keep a window of history for a stream sampled at the given period.
+     */
+    public static int capacityFor(long windowMillis,long periodMillis)
+    {
+        return (int)Math.min(Integer.MAX_VALUE>>2,(windowMillis+periodMillis-1)/periodMillis);
+    }
+
+    public void record(String address,UUID dataUuid,long timestamp,SensorSample sample)
+    {
+        if(sample.isEmpty())
+            return;
+        ConcurrentHashMap<UUID,SampleRingBuffer> device=this.buffers.get(address);
+        if(device==null)
+        {
+            device=new ConcurrentHashMap<UUID,SampleRingBuffer>();
+            ConcurrentHashMap<UUID,SampleRingBuffer> existing=this.buffers.putIfAbsent(address,device);
+            if(existing!=null)
+                device=existing;
+        }
+        SampleRingBuffer buffer=device.get(dataUuid);
+        if(buffer==null)
+        {
+            buffer=new SampleRingBuffer(this.capacity,sample.count);
+            SampleRingBuffer existing=device.putIfAbsent(dataUuid,buffer);
+            if(existing!=null)
+                buffer=existing;
+        }
+        buffer.add(timestamp,sample);
+    }
+
+    /**
+     * Gives the buffer of a stream, or null if it has no sample yet.
+     */
+    public SampleRingBuffer getBuffer(String address,UUID dataUuid)
+    {
+        ConcurrentHashMap<UUID,SampleRingBuffer> device=this.buffers.get(address);
+        return device==null?null:device.get(dataUuid);
+    }
+
+    public Set<String> getDevices()
+    {
+        return Collections.unmodifiableSet(this.buffers.keySet());
+    }
+
+    public Set<UUID> getStreams(String address)
+    {
+        ConcurrentHashMap<UUID,SampleRingBuffer> device=this.buffers.get(address);
+        return device==null?Collections.<UUID>emptySet():Collections.unmodifiableSet(device.keySet());
+    }
+
+    /**
+     * Bytes held by all the buffers.
+     */
+    public long getMemoryBytes()
+    {
+        long bytes=0;
+        for(ConcurrentHashMap<UUID,SampleRingBuffer> device:this.buffers.values())
+            for(SampleRingBuffer buffer:device.values())
+                bytes+=buffer.getMemoryBytes();
+        return bytes;
+    }
+
+    public void clear()
+    {
+        this.buffers.clear();
+    }
+
+}
@@ -0,0 +1,473 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Sends the decoded samples to the paired phone in compressed batches rather than one message per
+ * sample. A batch is sent once it holds {@code batchSamples} samples or every
+ * {@code flushIntervalMillis}, whichever comes first.
+ *
+ * {@link #offer} only copies the sample into a staging buffer under a short lock; batching,
+ * compression and the blocking sends run on the given executor. Batches that cannot be sent are
+ * kept and retried before the next one, up to {@link #MAX_PENDING_MESSAGES}; beyond that the oldest
+ * are dropped. Samples offered while the staging buffer is full are dropped as well, and counted.
+ *
+ * Message format, little endian: version byte, sample count (int), uncompressed length (int), then
+ * the deflated body. The body holds the number of streams (int), then for each stream its device
+ * id (long), sensor id (short), encoded length (int) and its samples as {@link SeriesCodec} blocks.
+ * See {@link #decode}.
+ */
+public class SampleUplink
+{
+
+    public final static String PATH="/sensortag/samples";
+    public final static int DEFAULT_BATCH_SAMPLES=1000;
+    public final static long DEFAULT_FLUSH_INTERVAL_MILLIS=10000;
+    public final static int MAX_PENDING_MESSAGES=16;
+
+    private final static byte VERSION=2;
+    private final static int HEADER_BYTES=9;
+    private final static int MAX_RECORD_BYTES=8+8+2+1+4*SensorSample.MAX_VALUES;
+
+    /**
+     * Batch waiting for the channel.
+     */
+    private static class Message
+    {
+        final byte[] payload;
+        final int samples;
+
+        Message(byte[] payload,int samples)
+        {
+            this.payload=payload;
+            this.samples=samples;
+        }
+    }
+
+    private final UplinkChannel channel;
+    private final ScheduledExecutorService executor;
+    private final int batchSamples;
+    private final long flushIntervalMillis;
+
+    // Offering threads write to staging under the lock; the flush swaps it with its own buffer.
+    private final Object lock=new Object();
+    private ByteBuffer staging;
+    private ByteBuffer encoding;
+    private int stagedSamples;
+    private boolean flushRequested;
+
+    // Executor only. Created by the first batch and ended by stop(), as it holds native memory.
+    private Deflater deflater;
+    // Encoders of the streams seen so far, keyed by device id and sensor id, reused across batches.
+    private final HashMap<Long,SeriesEncoder> streams=new HashMap<Long,SeriesEncoder>();
+    private final SensorSample record=new SensorSample();
+    private ByteBuffer body=ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+    private byte[] compressed=new byte[1024];
+    private final ArrayDeque<Message> pending=new ArrayDeque<Message>();
+    private ScheduledFuture<?> periodicFlush;
+
+    // Metrics.
+    private final AtomicLong samplesSent=new AtomicLong();
+    private final AtomicLong bytesSent=new AtomicLong();
+    private final AtomicLong messagesSent=new AtomicLong();
+    private final AtomicLong sendFailures=new AtomicLong();
+    private final AtomicLong samplesDropped=new AtomicLong();
+    private final AtomicLong flushFailures=new AtomicLong();
+    private volatile RuntimeException failure;
+    private volatile long startNanos;
+
+    /**
+     * Flushes, keeping any failure: an exception escaping a periodic task would cancel it, and
+     * with it every later batch.
+     */
+    private final Runnable flush=new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            try
+            {
+                flushNow();
+            }
+            catch(RuntimeException e)
+            {
+                flushFailures.incrementAndGet();
+                failure=e;
+            }
+        }
+    };
+
+    /**
+     * Flushes one last time, then releases the deflater. A batch flushed afterwards, from a sample
+     * offered late, creates a new one.
+     */
+    private final Runnable lastFlush=new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            flush.run();
+            if(deflater!=null)
+            {
+                deflater.end();
+                deflater=null;
+            }
+        }
+    };
+
+    /**
+     * @param executor Runs the compression and the blocking sends. Should not be shared with
+     *                 anything time-sensitive such as the GATT operation timeouts.
+     */
+    public SampleUplink(UplinkChannel channel,ScheduledExecutorService executor,int batchSamples,long flushIntervalMillis)
+    {
+        if(batchSamples<=0||flushIntervalMillis<=0)
+            throw new IllegalArgumentException("batch "+batchSamples+", interval "+flushIntervalMillis);
+        this.channel=channel;
+        this.executor=executor;
+        this.batchSamples=batchSamples;
+        this.flushIntervalMillis=flushIntervalMillis;
+        // Room for a second batch while the first one waits for the executor.
+        this.staging=ByteBuffer.allocate(2*batchSamples*MAX_RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        this.encoding=ByteBuffer.allocate(2*batchSamples*MAX_RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Starts the periodic flush.
+     */
+    public synchronized void start()
+    {
+        if(this.periodicFlush!=null)
+            return;
+        this.startNanos=System.nanoTime();
+        this.periodicFlush=this.executor.scheduleWithFixedDelay(this.flush,this.flushIntervalMillis,
+                this.flushIntervalMillis,TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic flush, sends what is staged one last time and releases the compressor.
+     */
+    public synchronized void stop()
+    {
+        if(this.periodicFlush==null)
+            return;
+        this.periodicFlush.cancel(false);
+        this.periodicFlush=null;
+        this.executor.execute(this.lastFlush);
+    }
+
+    /**
+     * Queues a sample for the next batch. Never waits for the channel. Empty samples, e.g. from a
+     * barometer still without its calibration, are not sent.
+     *
+     * @return False if the sample was empty, or dropped because the staging buffer is full.
+     */
+    public boolean offer(long timestamp,long deviceId,int sensorId,SensorSample sample)
+    {
+        if(sample.isEmpty())
+            return false;
+        int count=Math.min(sample.count,SensorSample.MAX_VALUES);
+        boolean requestFlush;
+        synchronized(this.lock)
+        {
+            ByteBuffer buffer=this.staging;
+            if(buffer.remaining()<MAX_RECORD_BYTES)
+            {
+                this.samplesDropped.incrementAndGet();
+                return false;
+            }
+            buffer.putLong(timestamp);
+            buffer.putLong(deviceId);
+            buffer.putShort((short)sensorId);
+            buffer.put((byte)count);
+            for(int i=0;i<count;i++)
+                buffer.putFloat((float)sample.values[i]);
+            this.stagedSamples++;
+            requestFlush=this.stagedSamples>=this.batchSamples&&!this.flushRequested;
+            if(requestFlush)
+                this.flushRequested=true;
+        }
+        if(requestFlush)
+            this.executor.execute(this.flush);
+        return true;
+    }
+
+    /**
+     * Compresses the staged samples into a message and sends it after any pending one. Runs on the
+     * executor.
+     */
+    private void flushNow()
+    {
+        int samples;
+        synchronized(this.lock)
+        {
+            ByteBuffer full=this.staging;
+            this.staging=this.encoding;
+            this.encoding=full;
+            samples=this.stagedSamples;
+            this.stagedSamples=0;
+            this.flushRequested=false;
+        }
+        if(samples>0)
+        {
+            try
+            {
+                queue(new Message(compress(this.encoding,samples),samples));
+            }
+            catch(RuntimeException e)
+            {
+                this.samplesDropped.addAndGet(samples);
+                throw e;
+            }
+            finally
+            {
+                this.encoding.clear();
+            }
+        }
+        while(!this.pending.isEmpty())
+        {
+            Message message=this.pending.peekFirst();
+            if(!this.channel.send(PATH,message.payload))
+            {
+                this.sendFailures.incrementAndGet();
+                return;
+            }
+            this.pending.removeFirst();
+            this.messagesSent.incrementAndGet();
+            this.samplesSent.addAndGet(message.samples);
+            this.bytesSent.addAndGet(message.payload.length);
+        }
+    }
+
+    private void queue(Message message)
+    {
+        if(this.pending.size()==MAX_PENDING_MESSAGES)
+            this.samplesDropped.addAndGet(this.pending.removeFirst().samples);
+        this.pending.addLast(message);
+    }
+
+    private byte[] compress(ByteBuffer records,int samples)
+    {
+        ByteBuffer body=encodeStreams(records);
+        int length=body.position();
+        if(this.deflater==null)
+            this.deflater=new Deflater(Deflater.BEST_SPEED);
+        this.deflater.reset();
+        this.deflater.setInput(body.array(),0,length);
+        this.deflater.finish();
+        int size=HEADER_BYTES;
+        while(!this.deflater.finished())
+        {
+            if(size==this.compressed.length)
+                this.compressed=Arrays.copyOf(this.compressed,size*2);
+            size+=this.deflater.deflate(this.compressed,size,this.compressed.length-size);
+        }
+        ByteBuffer header=ByteBuffer.wrap(this.compressed,0,HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(VERSION);
+        header.putInt(samples);
+        header.putInt(length);
+        return Arrays.copyOf(this.compressed,size);
+    }
+
+    /**
+     * Splits the staged records by stream and encodes each stream as one block.
+     */
+    private ByteBuffer encodeStreams(ByteBuffer records)
+    {
+        for(SeriesEncoder encoder:this.streams.values())
+            encoder.clear();
+        int end=records.position();
+        records.flip();
+        // Encoders first, as wide as the widest sample of their stream in the batch: the width of
+        // a stream can change, e.g. once a calibration arrives. Narrower samples are padded with NaN.
+        while(records.position()<end)
+        {
+            records.position(records.position()+8);
+            long deviceId=records.getLong();
+            int sensorId=records.getShort()&0xFFFF;
+            int count=records.get();
+            records.position(records.position()+4*count);
+            Long key=(deviceId<<16)|sensorId;
+            SeriesEncoder encoder=this.streams.get(key);
+            if(encoder==null||encoder.getWidth()<count)
+            {
+                // Blocks of two batches: one block per stream and batch in general. The staging
+                // buffer is sized for two batches of the widest records, so it can hold more of
+                // narrow ones, and a stream with those then takes several blocks, all decoded.
+                this.streams.put(key,new SeriesEncoder(count,2*this.batchSamples));
+            }
+        }
+        records.position(0);
+        while(records.position()<end)
+        {
+            long timestamp=records.getLong();
+            long deviceId=records.getLong();
+            int sensorId=records.getShort()&0xFFFF;
+            int count=records.get();
+            this.record.count=count;
+            for(int i=0;i<count;i++)
+                this.record.values[i]=records.getFloat();
+            this.streams.get((deviceId<<16)|sensorId).append(timestamp,this.record);
+        }
+        int active=0;
+        int needed=4;
+        for(SeriesEncoder encoder:this.streams.values())
+        {
+            encoder.flush();
+            if(encoder.getSampleCount()>0)
+            {
+                active++;
+                needed+=14+encoder.size();
+            }
+        }
+        if(this.body.capacity()<needed)
+            this.body=ByteBuffer.allocate(Math.max(needed,2*this.body.capacity())).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer body=this.body;
+        body.clear();
+        body.putInt(active);
+        for(Map.Entry<Long,SeriesEncoder> entry:this.streams.entrySet())
+        {
+            SeriesEncoder encoder=entry.getValue();
+            if(encoder.getSampleCount()==0)
+                continue;
+            long key=entry.getKey();
+            body.putLong(key>>>16);
+            body.putShort((short)key);
+            body.putInt(encoder.size());
+            body.put(encoder.toByteArray());
+        }
+        return body;
+    }
+
+    /**
+     * Reads the samples of a message, for the receiving side, stream by stream.
+     *
+     * @return Number of samples, or -1 if the message is not in a known format.
+     */
+    public static int decode(byte[] message,SampleLog.Visitor visitor)
+    {
+        ByteBuffer header=ByteBuffer.wrap(message).order(ByteOrder.LITTLE_ENDIAN);
+        if(message.length<HEADER_BYTES||header.get()!=VERSION)
+            return -1;
+        int samples=header.getInt();
+        byte[] body=new byte[header.getInt()];
+        Inflater inflater=new Inflater();
+        try
+        {
+            inflater.setInput(message,HEADER_BYTES,message.length-HEADER_BYTES);
+            if(inflater.inflate(body)!=body.length)
+                return -1;
+        }
+        catch(DataFormatException e)
+        {
+            return -1;
+        }
+        finally
+        {
+            inflater.end();
+        }
+        ByteBuffer buffer=ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN);
+        int streams=buffer.getInt();
+        long[] timestamps=new long[0];
+        float[] values=new float[0];
+        float[] row=new float[SensorSample.MAX_VALUES];
+        for(int i=0;i<streams;i++)
+        {
+            long deviceId=buffer.getLong();
+            int sensorId=buffer.getShort()&0xFFFF;
+            int end=buffer.getInt()+buffer.position();
+            while(buffer.position()<end)
+            {
+                int offset=buffer.position();
+                int count=SeriesCodec.blockCount(body,offset);
+                if(timestamps.length<count)
+                {
+                    timestamps=new long[count];
+                    values=new float[count*SensorSample.MAX_VALUES];
+                }
+                int width=body[offset+SeriesCodec.varintLength(count)];
+                buffer.position(offset+SeriesCodec.decodeBlock(body,offset,timestamps,values,0));
+                for(int j=0;j<count;j++)
+                {
+                    System.arraycopy(values,j*width,row,0,width);
+                    visitor.onRecord(timestamps[j],deviceId,sensorId,width,row);
+                }
+            }
+        }
+        return samples;
+    }
+
+    public long getSamplesSent()
+    {
+        return this.samplesSent.get();
+    }
+
+    public long getMessagesSent()
+    {
+        return this.messagesSent.get();
+    }
+
+    public long getBytesSent()
+    {
+        return this.bytesSent.get();
+    }
+
+    public long getSendFailures()
+    {
+        return this.sendFailures.get();
+    }
+
+    public long getSamplesDropped()
+    {
+        return this.samplesDropped.get();
+    }
+
+    /**
+     * Number of flushes that failed with an exception, from the codec or the channel. The samples
+     * of a batch that could not be encoded are counted as dropped; a message the channel failed
+     * on is retried.
+     */
+    public long getFlushFailures()
+    {
+        return this.flushFailures.get();
+    }
+
+    /**
+     * Last exception of a flush, null if none.
+     */
+    public RuntimeException getFailure()
+    {
+        return this.failure;
+    }
+
+    /**
+     * Average message bytes per sample sent, header included.
+     */
+    public double getBytesPerSample()
+    {
+        long samples=this.samplesSent.get();
+        return samples==0?0:(double)this.bytesSent.get()/samples;
+    }
+
+    /**
+     * Average number of messages sent per minute since {@link #start()}.
+     */
+    public double getMessagesPerMinute()
+    {
+        long elapsed=System.nanoTime()-this.startNanos;
+        return elapsed<=0?0:this.messagesSent.get()*TimeUnit.MINUTES.toNanos(1)/(double)elapsed;
+    }
+
+}
@@ -0,0 +1,183 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import com.capstone.alzheimers.sensortagwear.SensorTagGattAttributes;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.UUID;
+
+/**
+ * The sensors of the SensorTag: the UUIDs of their service and characteristics, parsed once, the
+ * period they are configured with by default, the value that turns them on and the priority of
+ * their stream. Looked up by service or data UUID in a hash map, without going through strings.
+ */
+public enum SensorDescriptor
+{
+
+    IR_TEMPERATURE(SensorTagGattAttributes.UUID_IRT_SERV,SensorTagGattAttributes.UUID_IRT_DATA,
+            SensorTagGattAttributes.UUID_IRT_CONF,SensorTagGattAttributes.UUID_IRT_PERI,null,10,new byte[]{1},Priority.LOW),
+    ACCELEROMETER(SensorTagGattAttributes.UUID_ACC_SERV,SensorTagGattAttributes.UUID_ACC_DATA,
+            SensorTagGattAttributes.UUID_ACC_CONF,SensorTagGattAttributes.UUID_ACC_PERI,null,10,new byte[]{1},Priority.HIGH),
+    HUMIDITY(SensorTagGattAttributes.UUID_HUM_SERV,SensorTagGattAttributes.UUID_HUM_DATA,
+            SensorTagGattAttributes.UUID_HUM_CONF,SensorTagGattAttributes.UUID_HUM_PERI,null,10,new byte[]{1},Priority.LOW),
+    MAGNETOMETER(SensorTagGattAttributes.UUID_MAG_SERV,SensorTagGattAttributes.UUID_MAG_DATA,
+            SensorTagGattAttributes.UUID_MAG_CONF,SensorTagGattAttributes.UUID_MAG_PERI,null,10,new byte[]{1},Priority.NORMAL),
+    BAROMETER(SensorTagGattAttributes.UUID_BAR_SERV,SensorTagGattAttributes.UUID_BAR_DATA,
+            SensorTagGattAttributes.UUID_BAR_CONF,SensorTagGattAttributes.UUID_BAR_PERI,SensorTagGattAttributes.UUID_BAR_CALI,
+            10,new byte[]{1},Priority.LOW),
+    // Enable x, y and z.
+    GYROSCOPE(SensorTagGattAttributes.UUID_GYR_SERV,SensorTagGattAttributes.UUID_GYR_DATA,
+            SensorTagGattAttributes.UUID_GYR_CONF,SensorTagGattAttributes.UUID_GYR_PERI,null,10,new byte[]{7},Priority.HIGH),
+    LUXOMETER(SensorTagGattAttributes.UUID_OPT_SERV,SensorTagGattAttributes.UUID_OPT_DATA,
+            SensorTagGattAttributes.UUID_OPT_CONF,SensorTagGattAttributes.UUID_OPT_PERI,null,10,new byte[]{1},Priority.LOW),
+    // All 9 axes (bits 0-6), wake-on-motion (bit 7) off, accelerometer range 8G.
+    MOVEMENT(SensorTagGattAttributes.UUID_MOV_SERV,SensorTagGattAttributes.UUID_MOV_DATA,
+            SensorTagGattAttributes.UUID_MOV_CONF,SensorTagGattAttributes.UUID_MOV_PERI,null,10,new byte[]{0x7F,0x02},Priority.HIGH),
+    // No configuration and no period: the keys always notify, on change.
+    KEYS(SensorTagGattAttributes.UUID_KEY_SERV,SensorTagGattAttributes.UUID_KEY_DATA,null,null,null,0,null,Priority.HIGH);
+
+    /**
+     * Importance of a stream when notifications have to be shed: a stream is never shed while one
+     * of lower priority can be instead. Motion and keys carry the events, the others change slowly.
+     */
+    public enum Priority
+    {
+        LOW,
+        NORMAL,
+        HIGH
+    }
+
+    // Accelerometer range in G selected by the configuration of MOVEMENT.
+    public final static int MOVEMENT_ACCELEROMETER_RANGE=8;
+
+    private final static HashMap<UUID,SensorDescriptor> byService=new HashMap<UUID,SensorDescriptor>();
+    private final static HashMap<UUID,SensorDescriptor> byData=new HashMap<UUID,SensorDescriptor>();
+
+    static
+    {
+        for(SensorDescriptor descriptor:values())
+        {
+            byService.put(descriptor.serviceUuid,descriptor);
+            byData.put(descriptor.dataUuid,descriptor);
+        }
+    }
+
+    private final UUID serviceUuid;
+    private final UUID dataUuid;
+    private final UUID configUuid;
+    private final UUID periodUuid;
+    private final UUID calibrationUuid;
+    private final byte defaultPeriod;
+    private final byte[] configValue;
+    private final Priority priority;
+
+    SensorDescriptor(String serviceUuid,String dataUuid,String configUuid,String periodUuid,
+                     String calibrationUuid,int defaultPeriod,byte[] configValue,Priority priority)
+    {
+        this.serviceUuid=UUID.fromString(serviceUuid);
+        this.dataUuid=UUID.fromString(dataUuid);
+        this.configUuid=parse(configUuid);
+        this.periodUuid=parse(periodUuid);
+        this.calibrationUuid=parse(calibrationUuid);
+        this.defaultPeriod=(byte)defaultPeriod;
+        this.configValue=configValue;
+        this.priority=priority;
+    }
+
+    private static UUID parse(String uuid)
+    {
+        return uuid==null?null:UUID.fromString(uuid);
+    }
+
+    /**
+     * Gives the sensor of a service, or null if the service is not a sensor.
+     */
+    public static SensorDescriptor forService(UUID serviceUuid)
+    {
+        return byService.get(serviceUuid);
+    }
+
+    /**
+     * Gives the sensor notifying on a characteristic, or null.
+     */
+    public static SensorDescriptor forData(UUID dataUuid)
+    {
+        return byData.get(dataUuid);
+    }
+
+    /**
+     * Gives the priority of the stream of a characteristic, NORMAL if it is not a sensor.
+     */
+    public static Priority priorityOf(UUID dataUuid)
+    {
+        SensorDescriptor descriptor=byData.get(dataUuid);
+        return descriptor==null?Priority.NORMAL:descriptor.priority;
+    }
+
+    public Priority getPriority()
+    {
+        return this.priority;
+    }
+
+    public String getDisplayName()
+    {
+        return SensorTagGattAttributes.lookup(this.serviceUuid,name());
+    }
+
+    public UUID getServiceUuid()
+    {
+        return this.serviceUuid;
+    }
+
+    public UUID getDataUuid()
+    {
+        return this.dataUuid;
+    }
+
+    /**
+     * Configuration characteristic, null if the sensor is always on.
+     */
+    public UUID getConfigUuid()
+    {
+        return this.configUuid;
+    }
+
+    /**
+     * Period characteristic, null if the sensor only notifies on change.
+     */
+    public UUID getPeriodUuid()
+    {
+        return this.periodUuid;
+    }
+
+    /**
+     * Calibration characteristic, null if the sensor has none. Only the CC2541 has it.
+     */
+    public UUID getCalibrationUuid()
+    {
+        return this.calibrationUuid;
+    }
+
+    public boolean hasPeriod()
+    {
+        return this.periodUuid!=null;
+    }
+
+    /**
+     * Period configured by default, in tens of milliseconds, 0 if the sensor has no period.
+     */
+    public byte getDefaultPeriod()
+    {
+        return this.defaultPeriod;
+    }
+
+    /**
+     * Value written to the configuration characteristic to turn the sensor on, null if it has
+     * none. A copy: the characteristic keeps the array written to it.
+     */
+    public byte[] getConfigValue()
+    {
+        return this.configValue==null?null:Arrays.copyOf(this.configValue,this.configValue.length);
+    }
+
+}
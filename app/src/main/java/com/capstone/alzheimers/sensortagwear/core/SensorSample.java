@@ -0,0 +1,50 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+/**
+ * Reusable, mutable holder for one decoded reading. Decoders write into it instead of
+ * allocating a new object per notification.
+ */
+public class SensorSample
+{
+
+    // Enough for the movement sensor: accelerometer, gyroscope and magnetometer, 3 axes each.
+    public final static int MAX_VALUES=9;
+
+    // Number of valid entries in values, 0 until the first reading.
+    public int count;
+    public final double[] values=new double[MAX_VALUES];
+
+    public void set(double x)
+    {
+        this.values[0]=x;
+        this.count=1;
+    }
+
+    public void set(double x,double y,double z)
+    {
+        this.values[0]=x;
+        this.values[1]=y;
+        this.values[2]=z;
+        this.count=3;
+    }
+
+    public double get(int index)
+    {
+        return this.values[index];
+    }
+
+    public boolean isEmpty()
+    {
+        return this.count==0;
+    }
+
+    /**
+     * Copies another sample into this one.
+     */
+    public void copyFrom(SensorSample other)
+    {
+        System.arraycopy(other.values,0,this.values,0,other.count);
+        this.count=other.count;
+    }
+
+}
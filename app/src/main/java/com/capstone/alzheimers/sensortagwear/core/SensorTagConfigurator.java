@@ -0,0 +1,46 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Turns on every SensorTag sensor a device has, enables its notifications and sets its period,
+ * as its {@link SensorDescriptor} says, without creating any Android-side Sensor. Used to run the pipeline headless.
+ */
+public class SensorTagConfigurator implements SensorTagEngine.Configurator
+{
+
+    private final SensorTagEngine engine;
+    // Period in tens of milliseconds, 0 for each sensor's optimal period.
+    private final byte period;
+
+    public SensorTagConfigurator(SensorTagEngine engine,byte period)
+    {
+        this.engine=engine;
+        this.period=period;
+    }
+
+    @Override
+    public void configureSensors(String address)
+    {
+        List<UUID> services=this.engine.getServices(address);
+        if(services==null)
+            return;
+        for(UUID serviceUuid:services)
+        {
+            SensorDescriptor sensor=SensorDescriptor.forService(serviceUuid);
+            if(sensor==null)
+                continue;
+            if(sensor.getConfigUuid()!=null)
+                this.engine.writeCharacteristic(address,serviceUuid,sensor.getConfigUuid(),sensor.getConfigValue(),null);
+            this.engine.enableNotifications(address,serviceUuid,sensor.getDataUuid(),null);
+            if(sensor.hasPeriod())
+            {
+                byte value=this.period!=0?this.period:sensor.getDefaultPeriod();
+                this.engine.writeCharacteristic(address,serviceUuid,sensor.getPeriodUuid(),new byte[]{value},null);
+                this.engine.setStreamPeriod(address,sensor.getDataUuid(),(value&0xFF)*10L);
+            }
+        }
+    }
+
+}
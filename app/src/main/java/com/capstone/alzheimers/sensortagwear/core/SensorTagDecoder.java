@@ -0,0 +1,217 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+/**
+ * Primitive decoding of the SensorTag payload formats. Nothing here allocates, so these can run
+ * on every notification.
+ */
+public final class SensorTagDecoder
+{
+
+    private SensorTagDecoder()
+    {
+    }
+
+    /**
+     * Gyroscope, Magnetometer, Barometer, IR temperature all store 16 bit two's complement values as LSB MSB, which cannot be directly parsed
+     * as getIntValue(FORMAT_SINT16, offset) because the bytes are stored as little-endian.
+     *
+     * This function extracts these 16 bit two's complement values.
+     * */
+    public static int shortSignedAtOffset(byte[] c,int offset)
+    {
+        return (c[offset+1]<<8)|(c[offset]&0xFF); // Interpret MSB as signed
+    }
+
+    public static int shortUnsignedAtOffset(byte[] c,int offset)
+    {
+        return ((c[offset+1]&0xFF)<<8)|(c[offset]&0xFF);
+    }
+
+    public static int twentyFourBitUnsignedAtOffset(byte[] c,int offset)
+    {
+        return ((c[offset+2]&0xFF)<<16)|((c[offset+1]&0xFF)<<8)|(c[offset]&0xFF);
+    }
+
+    /**
+     * Converts the luxometer's 16 bit SFLOAT (4 bit exponent, 12 bit mantissa) to lux.
+     * The mantissa is at most 12 bits and the exponent at most 15, so the shift cannot overflow.
+     */
+    public static double sfloatToLux(int sfloat)
+    {
+        // bits [1..0] are status bits and need to be cleared according
+        // to the user guide, but the iOS code doesn't bother. It should
+        // have minimal impact.
+        int mantissa=sfloat&0x0FFF;
+        int exponent=(sfloat>>12)&0x0F;
+        return (mantissa<<exponent)/100.0;
+    }
+
+    /**
+     * IR temperature (TMP007, CC2650): object then ambient temperature, 14 bits each in the upper bits.
+     * Sample: ambient, object in degrees Celsius.
+     */
+    public static void decodeIrTemperature(byte[] value,SensorSample sample)
+    {
+        double object=(shortUnsignedAtOffset(value,0)>>2)*0.03125;
+        double ambient=(shortUnsignedAtOffset(value,2)>>2)*0.03125;
+        sample.values[0]=ambient;
+        sample.values[1]=object;
+        sample.count=2;
+    }
+
+    /**
+     * IR temperature (TMP006, CC2541): signed thermopile voltage then ambient temperature in 1/128 C.
+     * The object temperature follows from both by the Stefan-Boltzmann model of the TMP006 user guide.
+     * Sample: ambient, object in degrees Celsius.
+     */
+    public static void decodeIrTemperatureTmp006(byte[] value,SensorSample sample)
+    {
+        final double s0=5.593E-14;
+        final double a1=1.75E-3;
+        final double a2=-1.678E-5;
+        final double b0=-2.94E-5;
+        final double b1=-5.7E-7;
+        final double b2=4.63E-9;
+        final double c2=13.4;
+        final double tRef=298.15;
+        double ambient=shortUnsignedAtOffset(value,2)/128.0;
+        // Thermopile voltage in V, 156.25 nV per bit.
+        double voltage=shortSignedAtOffset(value,0)*0.00000015625;
+        double die=ambient+273.15;
+        double delta=die-tRef;
+        double s=s0*(1+a1*delta+a2*delta*delta);
+        double offset=b0+b1*delta+b2*delta*delta;
+        double seebeck=(voltage-offset)+c2*(voltage-offset)*(voltage-offset);
+        double object=Math.pow(die*die*die*die+seebeck/s,0.25)-273.15;
+        sample.values[0]=ambient;
+        sample.values[1]=object;
+        sample.count=2;
+    }
+
+    /**
+     * Humidity (HDC1000, CC2650): raw temperature then raw humidity. The 2 lowest humidity bits are status.
+     * Sample: temperature in degrees Celsius, relative humidity in %.
+     */
+    public static void decodeHumidity(byte[] value,SensorSample sample)
+    {
+        double temperature=shortUnsignedAtOffset(value,0)*(165.0/65536.0)-40.0;
+        double humidity=(shortUnsignedAtOffset(value,2)&~0x0003)*(100.0/65536.0);
+        sample.values[0]=temperature;
+        sample.values[1]=humidity;
+        sample.count=2;
+    }
+
+    /**
+     * Humidity (SHT21, CC2541): raw temperature then raw humidity. The 2 lowest bits of each are status.
+     * Sample: temperature in degrees Celsius, relative humidity in %.
+     */
+    public static void decodeHumiditySht21(byte[] value,SensorSample sample)
+    {
+        double temperature=-46.85+(shortUnsignedAtOffset(value,0)&~0x0003)*(175.72/65536.0);
+        double humidity=-6.0+(shortUnsignedAtOffset(value,2)&~0x0003)*(125.0/65536.0);
+        sample.values[0]=temperature;
+        sample.values[1]=humidity;
+        sample.count=2;
+    }
+
+    /**
+     * Barometer (BMP280): 24 bit temperature in 0.01 C then 24 bit pressure in 0.01 hPa.
+     * Sample: temperature in degrees Celsius, pressure in hPa.
+     */
+    public static void decodeBarometer(byte[] value,SensorSample sample)
+    {
+        sample.values[0]=twentyFourBitUnsignedAtOffset(value,0)/100.0;
+        sample.values[1]=twentyFourBitUnsignedAtOffset(value,3)/100.0;
+        sample.count=2;
+    }
+
+    /**
+     * Parses the 8 barometer calibration coefficients (T5400): c1..c4 unsigned, c5..c8 signed.
+     */
+    public static void parseBarometerCalibration(byte[] value,long[] coefficients)
+    {
+        for(int i=0;i<8;i++)
+            coefficients[i]=i<4?shortUnsignedAtOffset(value,2*i):shortSignedAtOffset(value,2*i);
+    }
+
+    /**
+     * Barometer (T5400) with calibration: signed raw temperature then unsigned raw pressure.
+     * Sample: temperature in degrees Celsius, pressure in hPa.
+     */
+    public static void decodeBarometer(byte[] value,long[] c,SensorSample sample)
+    {
+        int tr=shortSignedAtOffset(value,0);
+        int pr=shortUnsignedAtOffset(value,2);
+        double temperature=(c[0]*tr/256.0+c[1]*64.0)/65536.0;
+        double sensitivity=c[2]+c[3]*tr/131072.0+((c[4]*tr/32768.0)*tr)/524288.0;
+        double offset=c[5]*16384.0+c[6]*tr/8.0+((c[7]*tr/32768.0)*tr)/16.0;
+        double pascal=(sensitivity*pr+offset)/16384.0;
+        sample.values[0]=temperature;
+        sample.values[1]=pascal/100.0;
+        sample.count=2;
+    }
+
+    /**
+     * Accelerometer (KXTJ9, 4G range): one signed byte per axis.
+     * Sample: x, y, z in G.
+     */
+    public static void decodeAccelerometer(byte[] value,SensorSample sample)
+    {
+        sample.set(value[0]/64.0,value[1]/64.0,-value[2]/64.0);
+    }
+
+    /**
+     * Magnetometer (MAG3110): signed 16 bit x, y, z.
+     * Sample: x, y, z in micro Tesla.
+     */
+    public static void decodeMagnetometer(byte[] value,SensorSample sample)
+    {
+        final double scale=2000.0/65536.0;
+        sample.set(-shortSignedAtOffset(value,0)*scale,-shortSignedAtOffset(value,2)*scale,shortSignedAtOffset(value,4)*scale);
+    }
+
+    /**
+     * Gyroscope (IMU3000): signed 16 bit y, x, z.
+     * Sample: x, y, z in degrees per second.
+     */
+    public static void decodeGyroscope(byte[] value,SensorSample sample)
+    {
+        final double scale=500.0/65536.0;
+        sample.set(shortSignedAtOffset(value,2)*scale,-shortSignedAtOffset(value,0)*scale,shortSignedAtOffset(value,4)*scale);
+    }
+
+    /**
+     * Movement (MPU9250): signed 16 bit gyroscope x, y, z, accelerometer x, y, z, magnetometer x, y, z.
+     * Sample: accelerometer in G, gyroscope in degrees per second, magnetometer in micro Tesla.
+     *
+     * @param accelerometerRange Range in G selected by the configuration (2, 4, 8 or 16).
+     */
+    public static void decodeMovement(byte[] value,int accelerometerRange,SensorSample sample)
+    {
+        final double gyroscopeScale=500.0/65536.0;
+        final double accelerometerScale=accelerometerRange/32768.0;
+        final double magnetometerScale=4912.0/32768.0;
+        double[] v=sample.values;
+        v[0]=shortSignedAtOffset(value,6)*accelerometerScale;
+        v[1]=shortSignedAtOffset(value,8)*accelerometerScale;
+        v[2]=shortSignedAtOffset(value,10)*accelerometerScale;
+        v[3]=shortSignedAtOffset(value,0)*gyroscopeScale;
+        v[4]=shortSignedAtOffset(value,2)*gyroscopeScale;
+        v[5]=shortSignedAtOffset(value,4)*gyroscopeScale;
+        v[6]=shortSignedAtOffset(value,12)*magnetometerScale;
+        v[7]=shortSignedAtOffset(value,14)*magnetometerScale;
+        v[8]=shortSignedAtOffset(value,16)*magnetometerScale;
+        sample.count=9;
+    }
+
+    /**
+     * Simple keys: bit 0 user button, bit 1 power button, bit 2 reed relay.
+     * Sample: 1 when pressed (or magnet present), 0 otherwise.
+     */
+    public static void decodeKeys(byte[] value,SensorSample sample)
+    {
+        int keys=value[0];
+        sample.set(keys&0x01,(keys>>1)&0x01,(keys>>2)&0x01);
+    }
+
+}
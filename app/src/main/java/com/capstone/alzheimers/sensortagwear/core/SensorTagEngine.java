@@ -0,0 +1,521 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connection, configuration and notification pipeline for any number of SensorTags, independent
+ * of the platform: all Bluetooth access goes through a {@link GattTransport}. Owns the per-device
+ * GATT operation queues, the multi-device bring-up and the in-process notification dispatch.
+ *
+ * Each device is brought up with the {@link ConnectionProfile#HIGH_THROUGHPUT} profile. Once it is
+ * ready, its profile follows the notification rate of its streams, see {@link #setStreamPeriod}.
+ *
+ * Every notification is numbered in its stream and counted in the {@link MetricsRegistry} of the
+ * engine, with the gaps in the stream, and the time its delivery to a listener executor takes is
+ * recorded as "latency.delivery".
+ *
+ * Services are discovered once per device and firmware: on reconnection, the layout the transport
+ * kept from the previous connection is used as is if the {@link GattLayoutCache} has it with the
+ * firmware revision the device reports. The time from connection until the services are known is
+ * recorded as "latency.discovery", and the reconnections that skipped discovery as "layout.hits".
+ */
+public class SensorTagEngine
+{
+
+    /**
+     * Configures the sensors of a device once its services are discovered. Every GATT operation
+     * queued from here is part of the bring-up.
+     */
+    public interface Configurator
+    {
+        void configureSensors(String address);
+    }
+
+    private final GattTransport transport;
+    private final ScheduledExecutorService timer;
+    // One GATT operation queue per device. Read from the transport threads.
+    private final ConcurrentHashMap<String,GattOperationQueue> operationQueues=new ConcurrentHashMap<String,GattOperationQueue>();
+    private final ConcurrentHashMap<String,DeviceLink> links=new ConcurrentHashMap<String,DeviceLink>();
+    private final ConnectionOrchestrator orchestrator;
+    private final NotificationDispatcher dispatcher=new NotificationDispatcher();
+    private final MetricsRegistry metrics=new MetricsRegistry();
+    private final LogHistogram discoveryLatency=this.metrics.histogram("latency.discovery");
+    private final AtomicLong layoutHits=this.metrics.counter("layout.hits");
+    private final AtomicLong layoutMisses=this.metrics.counter("layout.misses");
+    // Time each device connected, until its services are known.
+    private final ConcurrentHashMap<String,Long> connectedNanos=new ConcurrentHashMap<String,Long>();
+    private volatile GattLayoutCache layoutCache=new GattLayoutCache();
+    private volatile Configurator configurator;
+    private volatile Executor configuratorExecutor;
+    // Sees every transport event after the engine, e.g. to broadcast them.
+    private volatile GattTransport.Callback observer;
+
+    public SensorTagEngine(GattTransport transport,ScheduledExecutorService timer)
+    {
+        this.transport=transport;
+        this.timer=timer;
+        this.orchestrator=new ConnectionOrchestrator(this.orchestratorHost,timer,
+                ConnectionOrchestrator.DEFAULT_MAX_CONCURRENT,ConnectionOrchestrator.DEFAULT_STAGE_TIMEOUT_MILLIS);
+        this.dispatcher.setDeliveryLatency(this.metrics.histogram("latency.delivery"));
+        this.metrics.gauge("delivery.dropped",new MetricsRegistry.Gauge()
+        {
+            @Override
+            public long get()
+            {
+                return SensorTagEngine.this.dispatcher.getDroppedCount();
+            }
+        });
+        transport.setCallback(this.transportCallback);
+    }
+
+    public GattTransport getTransport()
+    {
+        return this.transport;
+    }
+
+    /**
+     * Gives the metrics of the pipeline, to add to or to dump.
+     */
+    public MetricsRegistry getMetrics()
+    {
+        return this.metrics;
+    }
+
+    /**
+     * Sets the cache of the device layouts, e.g. one persisted to a file, or null to discover
+     * the services on every connection. In memory by default.
+     */
+    public void setLayoutCache(GattLayoutCache layoutCache)
+    {
+        this.layoutCache=layoutCache;
+    }
+
+    public GattLayoutCache getLayoutCache()
+    {
+        return this.layoutCache;
+    }
+
+    public void setObserver(GattTransport.Callback observer)
+    {
+        this.observer=observer;
+    }
+
+    public boolean connect(String address)
+    {
+        return this.transport.connect(address);
+    }
+
+    public void disconnect(String address)
+    {
+        this.transport.disconnect(address);
+    }
+
+    public void disconnectAll()
+    {
+        for(String address:this.transport.getAddresses())
+            this.transport.disconnect(address);
+    }
+
+    /**
+     * Releases every connection and fails every pending operation.
+     */
+    public void close()
+    {
+        this.transport.closeAll();
+        for(GattOperationQueue queue:this.operationQueues.values())
+            queue.cancelAll();
+        this.operationQueues.clear();
+        this.links.clear();
+        this.connectedNanos.clear();
+        this.orchestrator.cancelAll();
+    }
+
+    /**
+     * Connects, discovers and configures several devices at once, with at most
+     * {@code maxConcurrent} of them in bring-up at the same time.
+     *
+     * @param configuratorExecutor Executor the configurator runs on, or null to run it on the
+     *                             transport thread.
+     */
+    public void bringUp(Collection<String> addresses,int maxConcurrent,Configurator configurator,
+                        Executor configuratorExecutor,ConnectionOrchestrator.ProgressListener listener)
+    {
+        this.configurator=configurator;
+        this.configuratorExecutor=configuratorExecutor;
+        this.orchestrator.setMaxConcurrent(maxConcurrent);
+        this.orchestrator.setProgressListener(listener);
+        this.orchestrator.bringUp(addresses);
+    }
+
+    public ConnectionOrchestrator.Stage getStage(String address)
+    {
+        return this.orchestrator.getStage(address);
+    }
+
+    /**
+     * Records the notification period of a stream, 0 once it stopped or if it only notifies on
+     * change. The connection profile of a ready device is updated to the new rate.
+     */
+    public void setStreamPeriod(String address,UUID characteristicUuid,long periodMillis)
+    {
+        getLink(address).setPeriod(characteristicUuid,periodMillis);
+        if(this.orchestrator.getStage(address)==ConnectionOrchestrator.Stage.READY)
+            applyProfile(address);
+    }
+
+    /**
+     * Gives the link of a device: its connection profile and measurements.
+     */
+    public DeviceLink getLink(String address)
+    {
+        DeviceLink link=this.links.get(address);
+        if(link==null)
+        {
+            link=new DeviceLink(getOperationQueue(address),this.metrics,address);
+            DeviceLink existing=this.links.putIfAbsent(address,link);
+            if(existing!=null)
+                link=existing;
+        }
+        return link;
+    }
+
+    public List<UUID> getServices(String address)
+    {
+        return this.transport.getServices(address);
+    }
+
+    public boolean hasService(String address,UUID serviceUuid)
+    {
+        List<UUID> services=this.transport.getServices(address);
+        return services!=null&&services.contains(serviceUuid);
+    }
+
+    /**
+     * Queues a write. It starts as soon as the previous operation on this device has completed.
+     */
+    public void writeCharacteristic(final String address,final UUID serviceUuid,final UUID characteristicUuid,
+                                    final byte[] value,GattOperation.Callback callback)
+    {
+        getOperationQueue(address).enqueue(new GattOperation(GattOperation.Type.WRITE_CHARACTERISTIC,
+                characteristicUuid,GattOperationQueue.DEFAULT_TIMEOUT_MILLIS,callback)
+        {
+            @Override
+            protected boolean start()
+            {
+                return transport.writeCharacteristic(address,serviceUuid,characteristicUuid,value);
+            }
+        });
+    }
+
+    /**
+     * Queues a read. The value is available from {@link GattOperation#getValue()} on completion.
+     */
+    public void readCharacteristic(final String address,final UUID serviceUuid,final UUID characteristicUuid,
+                                   GattOperation.Callback callback)
+    {
+        getOperationQueue(address).enqueue(new GattOperation(GattOperation.Type.READ_CHARACTERISTIC,
+                characteristicUuid,GattOperationQueue.DEFAULT_TIMEOUT_MILLIS,callback)
+        {
+            @Override
+            protected boolean start()
+            {
+                return transport.readCharacteristic(address,serviceUuid,characteristicUuid);
+            }
+        });
+    }
+
+    /**
+     * Queues the descriptor write that enables the characteristic's notifications.
+     */
+    public void enableNotifications(final String address,final UUID serviceUuid,final UUID characteristicUuid,
+                                    GattOperation.Callback callback)
+    {
+        getOperationQueue(address).enqueue(new GattOperation(GattOperation.Type.WRITE_DESCRIPTOR,
+                characteristicUuid,GattOperationQueue.DEFAULT_TIMEOUT_MILLIS,callback)
+        {
+            @Override
+            protected boolean start()
+            {
+                return transport.setNotification(address,serviceUuid,characteristicUuid,true);
+            }
+        });
+    }
+
+    /**
+     * Registers an in-process listener for characteristic notifications.
+     *
+     * @param executor Executor to deliver on, through a bounded queue, or null to deliver directly
+     *                 on the transport thread, in which case the listener must return quickly.
+     */
+    public void addNotificationListener(NotificationListener listener,Executor executor)
+    {
+        this.dispatcher.addListener(listener,executor);
+    }
+
+    public void removeNotificationListener(NotificationListener listener)
+    {
+        this.dispatcher.removeListener(listener);
+    }
+
+    /**
+     * Gives the operation queue of a device, creating it on first use.
+     */
+    private GattOperationQueue getOperationQueue(String address)
+    {
+        GattOperationQueue queue=this.operationQueues.get(address);
+        if(queue==null)
+        {
+            queue=new GattOperationQueue(this.timer);
+            GattOperationQueue existing=this.operationQueues.putIfAbsent(address,queue);
+            if(existing!=null)
+                queue=existing;
+        }
+        return queue;
+    }
+
+    /**
+     * Requests the steady-state profile of a device, if it changed.
+     */
+    private void applyProfile(String address)
+    {
+        DeviceLink link=getLink(address);
+        requestProfile(address,link,ConnectionProfile.forRate(link.getExpectedRate()));
+    }
+
+    private void requestProfile(String address,DeviceLink link,ConnectionProfile profile)
+    {
+        synchronized(link)
+        {
+            if(link.getProfile()==profile)
+                return;
+            if(this.transport.requestConnectionPriority(address,profile))
+                link.setProfile(profile);
+        }
+    }
+
+    private void completeOperation(String address,GattOperation.Type type,UUID uuid,int status,byte[] value)
+    {
+        GattOperationQueue queue=this.operationQueues.get(address);
+        if(queue!=null)
+            queue.onComplete(type,uuid,status,value);
+    }
+
+    /**
+     * Gets the services of a device that just connected: from the layout kept by the transport if
+     * the cache has the same one and the firmware revision did not change, else by discovery.
+     */
+    private void resolveServices(final String address)
+    {
+        this.connectedNanos.put(address,System.nanoTime());
+        final GattLayoutCache cache=this.layoutCache;
+        final GattLayoutCache.Layout layout=cache==null?null:cache.get(address);
+        if(layout==null||!layout.matches(this.transport,address))
+        {
+            discoverServices(address);
+            return;
+        }
+        readCharacteristic(address,GattLayoutCache.FIRMWARE_SERVICE,GattLayoutCache.FIRMWARE_REVISION,new GattOperation.Callback()
+        {
+            @Override
+            public void onComplete(GattOperation operation,int status)
+            {
+                if(status==GattOperation.STATUS_CANCELLED)
+                    return; // Disconnected.
+                if(status!=GattOperation.STATUS_SUCCESS)
+                {
+                    // The stack may have lost the layout: discovery will tell.
+                    discoverServices(address);
+                    return;
+                }
+                if(!layout.getFirmwareRevision().equals(GattLayoutCache.firmwareRevision(operation.getValue())))
+                {
+                    cache.invalidate(address);
+                    discoverServices(address);
+                    return;
+                }
+                layoutHits.incrementAndGet();
+                onServicesKnown(address,true);
+            }
+        });
+    }
+
+    private void discoverServices(String address)
+    {
+        this.layoutMisses.incrementAndGet();
+        if(!this.transport.discoverServices(address))
+            onServicesKnown(address,false);
+    }
+
+    /**
+     * Caches the layout of a device just discovered, with its firmware revision, read first
+     * thing in the bring-up. Devices without a firmware revision are not cached.
+     */
+    private void cacheLayout(final String address)
+    {
+        final GattLayoutCache cache=this.layoutCache;
+        if(cache==null||!this.transport.hasCharacteristic(address,GattLayoutCache.FIRMWARE_SERVICE,GattLayoutCache.FIRMWARE_REVISION))
+            return;
+        readCharacteristic(address,GattLayoutCache.FIRMWARE_SERVICE,GattLayoutCache.FIRMWARE_REVISION,new GattOperation.Callback()
+        {
+            @Override
+            public void onComplete(GattOperation operation,int status)
+            {
+                if(status!=GattOperation.STATUS_SUCCESS)
+                    return;
+                GattLayoutCache.Layout layout=GattLayoutCache.capture(transport,address,
+                        GattLayoutCache.firmwareRevision(operation.getValue()));
+                if(layout!=null)
+                    cache.put(address,layout);
+            }
+        });
+    }
+
+    private void onServicesKnown(String address,boolean success)
+    {
+        Long connected=this.connectedNanos.remove(address);
+        if(success&&connected!=null)
+            this.discoveryLatency.record(System.nanoTime()-connected);
+        // Observer first: it may have to prepare for the configuration that follows.
+        GattTransport.Callback observer=this.observer;
+        if(observer!=null)
+            observer.onServicesDiscovered(address,success);
+        this.orchestrator.onServicesDiscovered(address,success);
+    }
+
+    private void configure(final String address)
+    {
+        final Configurator configurator=this.configurator;
+        Runnable configure=new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if(configurator!=null)
+                    configurator.configureSensors(address);
+                // Configuration is done once every operation queued by the configurator is acknowledged,
+                // and has failed if any of them failed, timed out or was refused.
+                getOperationQueue(address).enqueueBarrier(new GattOperation.Callback()
+                {
+                    @Override
+                    public void onComplete(GattOperation operation,int status)
+                    {
+                        orchestrator.onConfigured(address,status==GattOperation.STATUS_SUCCESS);
+                        if(status==GattOperation.STATUS_SUCCESS)
+                            applyProfile(address);
+                    }
+                });
+            }
+        };
+        Executor executor=this.configuratorExecutor;
+        if(executor==null)
+            configure.run();
+        else
+            executor.execute(configure);
+    }
+
+    // Transport side of the multi-device bring-up.
+    private final ConnectionOrchestrator.Host orchestratorHost=new ConnectionOrchestrator.Host()
+    {
+        @Override
+        public boolean connect(String address)
+        {
+            return transport.connect(address);
+        }
+
+        @Override
+        public void configure(String address)
+        {
+            SensorTagEngine.this.configure(address);
+        }
+
+        @Override
+        public void abort(String address)
+        {
+            transport.disconnect(address);
+        }
+    };
+
+    private final GattTransport.Callback transportCallback=new GattTransport.Callback()
+    {
+        @Override
+        public void onConnectionStateChange(String address,boolean connected)
+        {
+            DeviceLink link=getLink(address);
+            if(connected)
+            {
+                // Bring-up is a string of GATT round trips: shortest interval.
+                link.resetStats();
+                getOperationQueue(address).resetLatency();
+                requestProfile(address,link,ConnectionProfile.HIGH_THROUGHPUT);
+                orchestrator.onConnected(address);
+            }
+            else
+            {
+                link.setProfile(null);
+                GattOperationQueue queue=operationQueues.get(address);
+                if(queue!=null)
+                    queue.cancelAll();
+                orchestrator.onDisconnected(address);
+            }
+            GattTransport.Callback observer=SensorTagEngine.this.observer;
+            if(observer!=null)
+                observer.onConnectionStateChange(address,connected);
+            if(connected)
+                resolveServices(address);
+            else
+                connectedNanos.remove(address);
+        }
+
+        @Override
+        public void onServicesDiscovered(String address,boolean success)
+        {
+            if(success)
+                cacheLayout(address);
+            onServicesKnown(address,success);
+        }
+
+        @Override
+        public void onCharacteristicWrite(String address,UUID characteristicUuid,int status)
+        {
+            completeOperation(address,GattOperation.Type.WRITE_CHARACTERISTIC,characteristicUuid,status,null);
+            GattTransport.Callback observer=SensorTagEngine.this.observer;
+            if(observer!=null)
+                observer.onCharacteristicWrite(address,characteristicUuid,status);
+        }
+
+        @Override
+        public void onCharacteristicRead(String address,UUID characteristicUuid,byte[] value,int status)
+        {
+            completeOperation(address,GattOperation.Type.READ_CHARACTERISTIC,characteristicUuid,status,value);
+            GattTransport.Callback observer=SensorTagEngine.this.observer;
+            if(observer!=null)
+                observer.onCharacteristicRead(address,characteristicUuid,value,status);
+        }
+
+        @Override
+        public void onDescriptorWrite(String address,UUID characteristicUuid,int status)
+        {
+            completeOperation(address,GattOperation.Type.WRITE_DESCRIPTOR,characteristicUuid,status,null);
+            GattTransport.Callback observer=SensorTagEngine.this.observer;
+            if(observer!=null)
+                observer.onDescriptorWrite(address,characteristicUuid,status);
+        }
+
+        @Override
+        public void onCharacteristicChanged(String address,UUID characteristicUuid,byte[] value,long timestampNanos)
+        {
+            long sequence=getLink(address).onNotification(characteristicUuid,value.length,timestampNanos);
+            dispatcher.dispatch(address,characteristicUuid,value,timestampNanos,sequence);
+            GattTransport.Callback observer=SensorTagEngine.this.observer;
+            if(observer!=null)
+                observer.onCharacteristicChanged(address,characteristicUuid,value,timestampNanos);
+        }
+    };
+
+}
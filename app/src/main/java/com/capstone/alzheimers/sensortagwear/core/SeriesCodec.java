@@ -0,0 +1,226 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+/**
+ * Lossless codec for blocks of samples from one sensor stream, in the style of Gorilla: timestamps
+ * as delta-of-deltas, values as the XOR with the previous value of the same column, all written as
+ * varints. Streams sampled at a fixed period cost about one byte per block for their timestamps,
+ * and slowly changing values a byte or two each.
+ *
+ * A block is self-contained, so each one can be decoded on its own. Layout:
+ *
+ * <pre>
+ * varint         sample count
+ * byte           width, values per sample
+ * zigzag varint  first timestamp
+ * zigzag varint  first delta, if more than one sample
+ * timestamps     zigzag varint delta-of-deltas; a zero is followed by the varint length of the run
+ *                of zeros it starts
+ * per column     byte shift, raw float bits of the first value, then the varint XOR of each value
+ *                with the previous one shifted right by the shift, the trailing zero bits they all
+ *                share
+ * </pre>
+ *
+ * Values are read and written in rows of {@code width} floats, as in {@link SampleRingBuffer}.
+ */
+public final class SeriesCodec
+{
+
+    private SeriesCodec()
+    {
+    }
+
+    /**
+     * Upper bound of the size of an encoded block.
+     */
+    public static int maxEncodedBytes(int count,int width)
+    {
+        return 5+1+10+10+10*count+width*(1+4+5*count);
+    }
+
+    /**
+     * Encodes count samples, starting at sample offset, into out at outOffset.
+     *
+     * @param out Must have {@link #maxEncodedBytes} bytes from outOffset.
+     * @return Number of bytes written.
+     */
+    public static int encodeBlock(long[] timestamps,float[] values,int offset,int count,int width,byte[] out,int outOffset)
+    {
+        int position=writeVarint(out,outOffset,count);
+        out[position++]=(byte)width;
+        if(count==0)
+            return position-outOffset;
+        // Timestamps.
+        position=writeVarint(out,position,zigzag(timestamps[offset]));
+        if(count>1)
+        {
+            long delta=timestamps[offset+1]-timestamps[offset];
+            position=writeVarint(out,position,zigzag(delta));
+            int i=2;
+            while(i<count)
+            {
+                long next=timestamps[offset+i]-timestamps[offset+i-1];
+                long deltaOfDelta=next-delta;
+                delta=next;
+                if(deltaOfDelta!=0)
+                {
+                    position=writeVarint(out,position,zigzag(deltaOfDelta));
+                    i++;
+                    continue;
+                }
+                int run=1;
+                while(i+run<count&&timestamps[offset+i+run]-timestamps[offset+i+run-1]==delta)
+                    run++;
+                out[position++]=0;
+                position=writeVarint(out,position,run);
+                i+=run;
+            }
+        }
+        // Values, column by column.
+        for(int column=0;column<width;column++)
+        {
+            int first=(offset*width)+column;
+            int shift=32;
+            int previous=Float.floatToRawIntBits(values[first]);
+            for(int i=1;i<count;i++)
+            {
+                int bits=Float.floatToRawIntBits(values[first+i*width]);
+                int xor=bits^previous;
+                if(xor!=0)
+                    shift=Math.min(shift,Integer.numberOfTrailingZeros(xor));
+                previous=bits;
+            }
+            if(shift==32)
+                shift=0;
+            out[position++]=(byte)shift;
+            previous=Float.floatToRawIntBits(values[first]);
+            out[position++]=(byte)previous;
+            out[position++]=(byte)(previous>>8);
+            out[position++]=(byte)(previous>>16);
+            out[position++]=(byte)(previous>>24);
+            for(int i=1;i<count;i++)
+            {
+                int bits=Float.floatToRawIntBits(values[first+i*width]);
+                position=writeVarint(out,position,((bits^previous)>>>shift)&0xFFFFFFFFL);
+                previous=bits;
+            }
+        }
+        return position-outOffset;
+    }
+
+    /**
+     * Gives the number of samples of the block at inOffset without decoding it.
+     */
+    public static int blockCount(byte[] in,int inOffset)
+    {
+        return (int)readVarint(in,new int[]{inOffset});
+    }
+
+    /**
+     * Number of bytes of the varint encoding of a non-negative value, e.g. of the sample count that
+     * starts a block and is followed by its width.
+     */
+    public static int varintLength(long value)
+    {
+        int length=1;
+        while((value&~0x7FL)!=0)
+        {
+            value>>>=7;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Decodes the block at inOffset into the arrays, starting at sample outOffset.
+     *
+     * @return Number of bytes read.
+     */
+    public static int decodeBlock(byte[] in,int inOffset,long[] timestamps,float[] values,int outOffset)
+    {
+        int[] position=new int[]{inOffset};
+        int count=(int)readVarint(in,position);
+        int width=in[position[0]++];
+        if(count==0)
+            return position[0]-inOffset;
+        long timestamp=unzigzag(readVarint(in,position));
+        timestamps[outOffset]=timestamp;
+        if(count>1)
+        {
+            long delta=unzigzag(readVarint(in,position));
+            timestamp+=delta;
+            timestamps[outOffset+1]=timestamp;
+            int i=2;
+            while(i<count)
+            {
+                long deltaOfDelta=unzigzag(readVarint(in,position));
+                if(deltaOfDelta!=0)
+                {
+                    delta+=deltaOfDelta;
+                    timestamp+=delta;
+                    timestamps[outOffset+i++]=timestamp;
+                    continue;
+                }
+                int run=(int)readVarint(in,position);
+                for(int j=0;j<run;j++)
+                {
+                    timestamp+=delta;
+                    timestamps[outOffset+i++]=timestamp;
+                }
+            }
+        }
+        for(int column=0;column<width;column++)
+        {
+            int first=outOffset*width+column;
+            int shift=in[position[0]++];
+            int p=position[0];
+            int previous=(in[p]&0xFF)|(in[p+1]&0xFF)<<8|(in[p+2]&0xFF)<<16|(in[p+3]&0xFF)<<24;
+            position[0]=p+4;
+            values[first]=Float.intBitsToFloat(previous);
+            for(int i=1;i<count;i++)
+            {
+                previous^=(int)readVarint(in,position)<<shift;
+                values[first+i*width]=Float.intBitsToFloat(previous);
+            }
+        }
+        return position[0]-inOffset;
+    }
+
+    private static long zigzag(long value)
+    {
+        return (value<<1)^(value>>63);
+    }
+
+    private static long unzigzag(long value)
+    {
+        return (value>>>1)^-(value&1);
+    }
+
+    private static int writeVarint(byte[] out,int position,long value)
+    {
+        while((value&~0x7FL)!=0)
+        {
+            out[position++]=(byte)((value&0x7F)|0x80);
+            value>>>=7;
+        }
+        out[position++]=(byte)value;
+        return position;
+    }
+
+    private static long readVarint(byte[] in,int[] position)
+    {
+        int p=position[0];
+        long value=0;
+        int shift=0;
+        byte b;
+        do
+        {
+            b=in[p++];
+            value|=(long)(b&0x7F)<<shift;
+            shift+=7;
+        }
+        while(b<0);
+        position[0]=p;
+        return value;
+    }
+
+}
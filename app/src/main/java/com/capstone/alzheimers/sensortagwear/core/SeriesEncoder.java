@@ -0,0 +1,155 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.util.Arrays;
+
+/**
+ * Streaming encoder for one sensor stream: samples are buffered until a block is full, then encoded
+ * with {@link SeriesCodec} and appended to a growing byte array. An index of the offset and first
+ * timestamp of each block gives random access by block or by time.
+ */
+public class SeriesEncoder
+{
+
+    public final static int DEFAULT_BLOCK_SAMPLES=256;
+
+    private final int width;
+    private final int blockSamples;
+    // Block being filled.
+    private final long[] timestamps;
+    private final float[] values;
+    private int buffered;
+    // Encoded blocks and their index.
+    private byte[] data=new byte[1024];
+    private int size;
+    private int[] blockOffsets=new int[16];
+    private long[] blockTimestamps=new long[16];
+    private int blocks;
+    private long samples;
+
+    public SeriesEncoder(int width,int blockSamples)
+    {
+        if(width<=0||width>SensorSample.MAX_VALUES||blockSamples<=0)
+            throw new IllegalArgumentException("width "+width+", block "+blockSamples);
+        this.width=width;
+        this.blockSamples=blockSamples;
+        this.timestamps=new long[blockSamples];
+        this.values=new float[blockSamples*width];
+    }
+
+    public int getWidth()
+    {
+        return this.width;
+    }
+
+    public void append(long timestamp,SensorSample sample)
+    {
+        int offset=this.buffered*this.width;
+        for(int i=0;i<this.width;i++)
+            this.values[offset+i]=i<sample.count?(float)sample.values[i]:Float.NaN;
+        this.timestamps[this.buffered++]=timestamp;
+        this.samples++;
+        if(this.buffered==this.blockSamples)
+            flush();
+    }
+
+    /**
+     * Encodes the samples of the current block even if it is not full.
+     */
+    public void flush()
+    {
+        if(this.buffered==0)
+            return;
+        int needed=this.size+SeriesCodec.maxEncodedBytes(this.buffered,this.width);
+        if(needed>this.data.length)
+            this.data=Arrays.copyOf(this.data,Math.max(needed,this.data.length*2));
+        if(this.blocks==this.blockOffsets.length)
+        {
+            this.blockOffsets=Arrays.copyOf(this.blockOffsets,this.blocks*2);
+            this.blockTimestamps=Arrays.copyOf(this.blockTimestamps,this.blocks*2);
+        }
+        this.blockOffsets[this.blocks]=this.size;
+        this.blockTimestamps[this.blocks]=this.timestamps[0];
+        this.blocks++;
+        this.size+=SeriesCodec.encodeBlock(this.timestamps,this.values,0,this.buffered,this.width,this.data,this.size);
+        this.buffered=0;
+    }
+
+    /**
+     * Number of samples appended, encoded or not.
+     */
+    public long getSampleCount()
+    {
+        return this.samples;
+    }
+
+    /**
+     * Number of encoded bytes.
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    public int getBlockCount()
+    {
+        return this.blocks;
+    }
+
+    public int getBlockOffset(int block)
+    {
+        return this.blockOffsets[block];
+    }
+
+    public long getBlockTimestamp(int block)
+    {
+        return this.blockTimestamps[block];
+    }
+
+    /**
+     * Gives the last block starting at or before the timestamp, i.e. the one that would hold it, or
+     * -1 if the timestamp is before the first block.
+     */
+    public int findBlock(long timestamp)
+    {
+        int low=0;
+        int high=this.blocks-1;
+        while(low<=high)
+        {
+            int middle=(low+high)>>>1;
+            if(this.blockTimestamps[middle]<=timestamp)
+                low=middle+1;
+            else
+                high=middle-1;
+        }
+        return high;
+    }
+
+    /**
+     * Decodes one block into the arrays, which must hold the block size.
+     *
+     * @return Number of samples decoded.
+     */
+    public int decodeBlock(int block,long[] timestamps,float[] values)
+    {
+        int offset=this.blockOffsets[block];
+        SeriesCodec.decodeBlock(this.data,offset,timestamps,values,0);
+        return SeriesCodec.blockCount(this.data,offset);
+    }
+
+    /**
+     * Gives the encoded blocks, back to back.
+     */
+    public byte[] toByteArray()
+    {
+        return Arrays.copyOf(this.data,this.size);
+    }
+
+    public void clear()
+    {
+        this.buffered=0;
+        this.size=0;
+        this.blocks=0;
+        this.samples=0;
+    }
+
+}
@@ -0,0 +1,580 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import com.capstone.alzheimers.sensortagwear.SensorTagGattAttributes;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory {@link GattTransport} emulating any number of CC2650 SensorTags. Every request is
+ * acknowledged after a configurable latency (with +/-25% jitter), and each sensor notifies at the
+ * period written to its period characteristic once it is turned on and its notifications are
+ * enabled. Payloads follow the SensorTag formats and vary slowly over time.
+ *
+ * Like a BluetoothGatt reconnected with connect(), a tag keeps its discovered services from one
+ * connection to the next, until {@link #closeAll()}.
+ */
+public class SimulatedGattTransport implements GattTransport
+{
+
+    // Typical values for a watch talking to a SensorTag.
+    public final static long DEFAULT_CONNECT_MICROS=150000;
+    public final static long DEFAULT_DISCOVERY_MICROS=400000;
+    public final static long DEFAULT_ACK_MICROS=15000;
+    public final static String DEFAULT_FIRMWARE_REVISION="1.30 (Jun 17 2015)";
+
+    private final static UUID FIRMWARE_SERVICE=UUID.fromString(SensorTagGattAttributes.UUID_DEVINFO_SERV);
+    private final static UUID FIRMWARE_REVISION=UUID.fromString(SensorTagGattAttributes.UUID_DEVINFO_FWREV);
+
+    // Services of a CC2650 SensorTag.
+    private final static String[] SERVICES=new String[]{
+            SensorTagGattAttributes.UUID_DEVINFO_SERV,
+            SensorTagGattAttributes.UUID_IRT_SERV,
+            SensorTagGattAttributes.UUID_HUM_SERV,
+            SensorTagGattAttributes.UUID_BAR_SERV,
+            SensorTagGattAttributes.UUID_OPT_SERV,
+            SensorTagGattAttributes.UUID_MOV_SERV,
+            SensorTagGattAttributes.UUID_KEY_SERV};
+
+    private final ScheduledExecutorService scheduler;
+    private final long connectMicros;
+    private final long discoveryMicros;
+    private final long ackMicros;
+    private final ConcurrentHashMap<String,Tag> tags=new ConcurrentHashMap<String,Tag>();
+    private final AtomicLong notificationsSent=new AtomicLong();
+    private volatile Callback callback;
+
+    public SimulatedGattTransport(ScheduledExecutorService scheduler)
+    {
+        this(scheduler,DEFAULT_CONNECT_MICROS,DEFAULT_DISCOVERY_MICROS,DEFAULT_ACK_MICROS);
+    }
+
+    public SimulatedGattTransport(ScheduledExecutorService scheduler,long connectMicros,long discoveryMicros,long ackMicros)
+    {
+        this.scheduler=scheduler;
+        this.connectMicros=connectMicros;
+        this.discoveryMicros=discoveryMicros;
+        this.ackMicros=ackMicros;
+    }
+
+    /**
+     * Adds simulated tags and gives their addresses.
+     */
+    public List<String> addTags(int count)
+    {
+        List<String> addresses=new ArrayList<String>();
+        for(int i=0;i<count;i++)
+        {
+            int index=this.tags.size()+1;
+            String address=String.format(Locale.US,"5E:00:00:00:%02X:%02X",(index>>8)&0xFF,index&0xFF);
+            this.tags.put(address,new Tag(address,index));
+            addresses.add(address);
+        }
+        return addresses;
+    }
+
+    /**
+     * Gives the profile last requested for a tag. Only recorded: it does not change the timing.
+     */
+    public ConnectionProfile getProfile(String address)
+    {
+        Tag tag=this.tags.get(address);
+        if(tag==null)
+            return null;
+        synchronized(tag)
+        {
+            return tag.profile;
+        }
+    }
+
+    /**
+     * Changes the firmware revision a tag reports, as a firmware update would.
+     */
+    public void setFirmwareRevision(String address,String firmwareRevision)
+    {
+        Tag tag=this.tags.get(address);
+        if(tag==null)
+            return;
+        synchronized(tag)
+        {
+            tag.firmwareRevision=firmwareRevision;
+        }
+    }
+
+    /**
+     * Number of notifications emitted by all tags so far.
+     */
+    public long getNotificationsSent()
+    {
+        return this.notificationsSent.get();
+    }
+
+    @Override
+    public void setCallback(Callback callback)
+    {
+        this.callback=callback;
+    }
+
+    @Override
+    public boolean connect(final String address)
+    {
+        final Tag tag=this.tags.get(address);
+        if(tag==null)
+            return false;
+        after(this.connectMicros,new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                synchronized(tag)
+                {
+                    tag.connected=true;
+                }
+                callback.onConnectionStateChange(address,true);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean discoverServices(final String address)
+    {
+        final Tag tag=this.tags.get(address);
+        if(tag==null)
+            return false;
+        synchronized(tag)
+        {
+            if(!tag.connected)
+                return false;
+            tag.discovered=false;
+        }
+        after(this.discoveryMicros,new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                synchronized(tag)
+                {
+                    if(!tag.connected)
+                        return;
+                    tag.discovered=true;
+                }
+                callback.onServicesDiscovered(address,true);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public void disconnect(final String address)
+    {
+        final Tag tag=this.tags.get(address);
+        if(tag==null)
+            return;
+        synchronized(tag)
+        {
+            if(!tag.connected)
+                return;
+            tag.reset();
+        }
+        after(this.ackMicros,new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                callback.onConnectionStateChange(address,false);
+            }
+        });
+    }
+
+    @Override
+    public void closeAll()
+    {
+        for(Tag tag:this.tags.values())
+        {
+            synchronized(tag)
+            {
+                tag.reset();
+                tag.discovered=false;
+            }
+        }
+    }
+
+    @Override
+    public List<String> getAddresses()
+    {
+        return new ArrayList<String>(this.tags.keySet());
+    }
+
+    @Override
+    public List<UUID> getServices(String address)
+    {
+        Tag tag=this.tags.get(address);
+        if(tag==null)
+            return null;
+        synchronized(tag)
+        {
+            return tag.discovered?tag.services:null;
+        }
+    }
+
+    @Override
+    public List<UUID> getCharacteristics(String address,UUID serviceUuid)
+    {
+        Tag tag=this.tags.get(address);
+        if(tag==null)
+            return null;
+        synchronized(tag)
+        {
+            return tag.discovered?tag.characteristics.get(serviceUuid):null;
+        }
+    }
+
+    @Override
+    public boolean hasCharacteristic(String address,UUID serviceUuid,UUID characteristicUuid)
+    {
+        List<UUID> characteristics=getCharacteristics(address,serviceUuid);
+        return characteristics!=null&&characteristics.contains(characteristicUuid);
+    }
+
+    @Override
+    public boolean writeCharacteristic(final String address,UUID serviceUuid,final UUID characteristicUuid,final byte[] value)
+    {
+        final Stream stream=connectedStream(address,serviceUuid,characteristicUuid);
+        if(stream==null)
+            return false;
+        after(this.ackMicros,new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                synchronized(stream.tag)
+                {
+                    if(characteristicUuid.equals(stream.config))
+                        stream.enabled=value.length>0&&value[0]!=0;
+                    else if(characteristicUuid.equals(stream.period)&&value.length>0)
+                        stream.periodMicros=(value[0]&0xFF)*10000L;
+                    stream.update();
+                }
+                callback.onCharacteristicWrite(address,characteristicUuid,0);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean readCharacteristic(final String address,UUID serviceUuid,final UUID characteristicUuid)
+    {
+        if(FIRMWARE_SERVICE.equals(serviceUuid)&&FIRMWARE_REVISION.equals(characteristicUuid))
+            return readFirmwareRevision(address);
+        final Stream stream=connectedStream(address,serviceUuid,characteristicUuid);
+        if(stream==null)
+            return false;
+        after(this.ackMicros,new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                byte[] value;
+                synchronized(stream.tag)
+                {
+                    if(characteristicUuid.equals(stream.period))
+                        value=new byte[]{(byte)(stream.periodMicros/10000)};
+                    else if(characteristicUuid.equals(stream.config))
+                        value=new byte[]{(byte)(stream.enabled?1:0)};
+                    else
+                        value=stream.payload();
+                }
+                callback.onCharacteristicRead(address,characteristicUuid,value,0);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean setNotification(final String address,UUID serviceUuid,final UUID characteristicUuid,final boolean enabled)
+    {
+        final Stream stream=connectedStream(address,serviceUuid,characteristicUuid);
+        if(stream==null||!characteristicUuid.equals(stream.data))
+            return false;
+        after(this.ackMicros,new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                synchronized(stream.tag)
+                {
+                    stream.notifying=enabled;
+                    stream.update();
+                }
+                callback.onDescriptorWrite(address,characteristicUuid,0);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean requestConnectionPriority(String address,ConnectionProfile profile)
+    {
+        Tag tag=this.tags.get(address);
+        if(tag==null)
+            return false;
+        synchronized(tag)
+        {
+            if(!tag.connected)
+                return false;
+            tag.profile=profile;
+        }
+        return true;
+    }
+
+    private boolean readFirmwareRevision(final String address)
+    {
+        final Tag tag=this.tags.get(address);
+        if(tag==null)
+            return false;
+        synchronized(tag)
+        {
+            if(!tag.connected)
+                return false;
+        }
+        after(this.ackMicros,new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                byte[] value;
+                synchronized(tag)
+                {
+                    value=tag.firmwareRevision.getBytes(Charset.forName("UTF-8"));
+                }
+                callback.onCharacteristicRead(address,FIRMWARE_REVISION,value,0);
+            }
+        });
+        return true;
+    }
+
+    private Stream connectedStream(String address,UUID serviceUuid,UUID characteristicUuid)
+    {
+        Tag tag=this.tags.get(address);
+        if(tag==null)
+            return null;
+        synchronized(tag)
+        {
+            if(!tag.connected)
+                return null;
+        }
+        Stream stream=tag.streams.get(serviceUuid);
+        return stream!=null&&stream.has(characteristicUuid)?stream:null;
+    }
+
+    private void after(long micros,Runnable task)
+    {
+        long jittered=(long)(micros*(0.75+0.5*ThreadLocalRandom.current().nextDouble()));
+        this.scheduler.schedule(task,jittered,TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * One simulated SensorTag.
+     */
+    private class Tag
+    {
+        final String address;
+        final List<UUID> services;
+        final HashMap<UUID,Stream> streams=new HashMap<UUID,Stream>();
+        final HashMap<UUID,List<UUID>> characteristics=new HashMap<UUID,List<UUID>>();
+        final Random random;
+        boolean connected;
+        boolean discovered;
+        String firmwareRevision=DEFAULT_FIRMWARE_REVISION;
+        ConnectionProfile profile=ConnectionProfile.BALANCED;
+
+        Tag(String address,int index)
+        {
+            this.address=address;
+            this.random=new Random(index);
+            List<UUID> services=new ArrayList<UUID>();
+            for(String service:SERVICES)
+            {
+                UUID serviceUuid=UUID.fromString(service);
+                services.add(serviceUuid);
+                SensorDescriptor sensor=SensorDescriptor.forService(serviceUuid);
+                List<UUID> characteristics=new ArrayList<UUID>();
+                if(sensor!=null)
+                {
+                    this.streams.put(serviceUuid,new Stream(this,sensor));
+                    characteristics.add(sensor.getDataUuid());
+                    if(sensor.getConfigUuid()!=null)
+                        characteristics.add(sensor.getConfigUuid());
+                    if(sensor.getPeriodUuid()!=null)
+                        characteristics.add(sensor.getPeriodUuid());
+                }
+                else if(serviceUuid.equals(FIRMWARE_SERVICE))
+                    characteristics.add(FIRMWARE_REVISION);
+                this.characteristics.put(serviceUuid,Collections.unmodifiableList(characteristics));
+            }
+            this.services=Collections.unmodifiableList(services);
+        }
+
+        /**
+         * Disconnects. The services stay discovered.
+         */
+        void reset()
+        {
+            this.connected=false;
+            for(Stream stream:this.streams.values())
+            {
+                stream.enabled=false;
+                stream.notifying=false;
+                stream.update();
+            }
+        }
+    }
+
+    /**
+     * One sensor of a simulated tag.
+     */
+    private class Stream implements Runnable
+    {
+        final Tag tag;
+        final SensorDescriptor sensor;
+        final UUID data;
+        final UUID config;
+        final UUID period;
+        boolean enabled;
+        boolean notifying;
+        long periodMicros=1000000;
+        long sequence;
+        ScheduledFuture<?> task;
+        long taskPeriodMicros;
+
+        Stream(Tag tag,SensorDescriptor sensor)
+        {
+            this.tag=tag;
+            this.sensor=sensor;
+            this.data=sensor.getDataUuid();
+            this.config=sensor.getConfigUuid();
+            this.period=sensor.getPeriodUuid();
+            // Keys have no configuration: they notify as soon as notifications are enabled.
+            this.enabled=this.config==null;
+        }
+
+        boolean has(UUID characteristicUuid)
+        {
+            return characteristicUuid.equals(this.data)||characteristicUuid.equals(this.config)||characteristicUuid.equals(this.period);
+        }
+
+        /**
+         * Starts, restarts or stops the notifications to match the state. Called with the tag locked.
+         */
+        void update()
+        {
+            boolean streaming=this.tag.connected&&this.enabled&&this.notifying&&this.period!=null;
+            if(this.task!=null&&(!streaming||this.taskPeriodMicros!=this.periodMicros))
+            {
+                this.task.cancel(false);
+                this.task=null;
+            }
+            if(streaming&&this.task==null)
+            {
+                this.taskPeriodMicros=this.periodMicros;
+                this.task=scheduler.scheduleAtFixedRate(this,this.periodMicros,this.periodMicros,TimeUnit.MICROSECONDS);
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            byte[] value;
+            synchronized(this.tag)
+            {
+                if(this.task==null)
+                    return;
+                value=payload();
+            }
+            notificationsSent.incrementAndGet();
+            callback.onCharacteristicChanged(this.tag.address,this.data,value,System.nanoTime());
+        }
+
+        /**
+         * Builds the next payload in the sensor's format. Called with the tag locked.
+         */
+        byte[] payload()
+        {
+            double t=this.sequence++*0.01;
+            double noise=this.tag.random.nextGaussian();
+            switch(this.sensor)
+            {
+                case LUXOMETER:
+                    return luxPayload(300+200*Math.sin(t)+5*noise);
+                case IR_TEMPERATURE:
+                    return pack16(temperatureRaw(30+2*Math.sin(t)+0.1*noise),temperatureRaw(24+0.1*noise));
+                case HUMIDITY:
+                    return pack16((int)((24+0.1*noise+40)/165*65536),(int)((45+5*Math.sin(t))/100*65536));
+                case BAROMETER:
+                    return pack24((int)(2400+10*noise),(int)(101325+50*Math.sin(t)));
+                case MOVEMENT:
+                    return movementPayload(noise);
+                default:
+                    return new byte[]{0};
+            }
+        }
+
+        private byte[] movementPayload(double noise)
+        {
+            // Tag lying flat: 1G on z at the 8G range, small gyroscope noise, earth magnetic field.
+            int[] raw=new int[]{(int)(40*noise),(int)(-30*noise),(int)(20*noise),
+                    (int)(80*noise),(int)(-60*noise),4096+(int)(40*noise),
+                    150,-40,(int)(300+5*noise)};
+            byte[] value=new byte[18];
+            for(int i=0;i<raw.length;i++)
+            {
+                value[2*i]=(byte)raw[i];
+                value[2*i+1]=(byte)(raw[i]>>8);
+            }
+            return value;
+        }
+    }
+
+    private static int temperatureRaw(double celsius)
+    {
+        return ((int)(celsius/0.03125))<<2;
+    }
+
+    private static byte[] luxPayload(double lux)
+    {
+        // SFLOAT: smallest exponent that fits the mantissa in 12 bits.
+        int mantissa=(int)Math.max(0,lux*100);
+        int exponent=0;
+        while(mantissa>0x0FFF)
+        {
+            mantissa>>=1;
+            exponent++;
+        }
+        int sfloat=(exponent<<12)|mantissa;
+        return new byte[]{(byte)sfloat,(byte)(sfloat>>8)};
+    }
+
+    private static byte[] pack16(int first,int second)
+    {
+        return new byte[]{(byte)first,(byte)(first>>8),(byte)second,(byte)(second>>8)};
+    }
+
+    private static byte[] pack24(int first,int second)
+    {
+        return new byte[]{(byte)first,(byte)(first>>8),(byte)(first>>16),(byte)second,(byte)(second>>8),(byte)(second>>16)};
+    }
+
+}
@@ -0,0 +1,507 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+/**
+ * Bounded hop between two stages of the pipeline: notifications offered on one thread are
+ * delivered to the next stage's listener on its executor, in batches, with at most a fixed number
+ * waiting in between. What happens when the queue is full is the {@link Policy} of the queue; a
+ * slow consumer then costs notifications, counted, instead of memory and latency for everyone.
+ *
+ * Waiting notifications are kept in one lane per {@link SensorDescriptor.Priority}. A notification
+ * is never shed while one of lower priority is waiting: lux readings go before keys or motion do.
+ * They are delivered by the {@link Order} of the queue: highest priority first, or as offered.
+ *
+ * The notification slots are allocated once, so neither offering nor delivering allocates, except
+ * for the first notification of each stream when conflating. A slot keeps the offered value array
+ * itself, which the {@link NotificationListener} contract hands off.
+ */
+public class StageQueue implements NotificationListener
+{
+
+    public enum Policy
+    {
+        // The producer waits for room. Not for the GATT callback thread, which must never wait.
+        BLOCK,
+        // The oldest waiting notification of the lowest priority makes room.
+        DROP_OLDEST,
+        // The newest waiting notification of a lower priority makes room, or the new one is dropped.
+        DROP_NEWEST,
+        // A stream has at most one notification waiting, replaced by each new one. When full, as
+        // DROP_OLDEST.
+        CONFLATE
+    }
+
+    public enum Order
+    {
+        // Highest priority first, in order within a priority.
+        PRIORITY,
+        // In the order offered, whatever the priority: the priority only chooses what is shed. A
+        // conflated notification takes the place of the one it replaces.
+        ARRIVAL
+    }
+
+    public final static int DEFAULT_CAPACITY=1024;
+    // Notifications delivered per task on the executor, so that other tasks get their turn.
+    public final static int DEFAULT_BATCH=64;
+
+    private final static SensorDescriptor.Priority[] PRIORITIES=SensorDescriptor.Priority.values();
+
+    /**
+     * A waiting notification.
+     */
+    private static class Slot
+    {
+        String address;
+        UUID uuid;
+        byte[] value;
+        long timestampNanos;
+        long sequence;
+        long offeredNanos;
+        // Rank among the notifications offered, for Order.ARRIVAL.
+        long arrival;
+        // Stream of the slot when conflating.
+        Stream stream;
+    }
+
+    /**
+     * A stream when conflating: the slot of its waiting notification, if any.
+     */
+    private static class Stream
+    {
+        Slot slot;
+    }
+
+    /**
+     * Waiting slots of one priority, oldest first, in a ring.
+     */
+    private static class Lane
+    {
+        final Slot[] slots;
+        int head;
+        int size;
+
+        Lane(int capacity)
+        {
+            this.slots=new Slot[capacity];
+        }
+
+        void addLast(Slot slot)
+        {
+            this.slots[(this.head+this.size)%this.slots.length]=slot;
+            this.size++;
+        }
+
+        Slot peekFirst()
+        {
+            return this.slots[this.head];
+        }
+
+        Slot removeFirst()
+        {
+            Slot slot=this.slots[this.head];
+            this.slots[this.head]=null;
+            this.head=(this.head+1)%this.slots.length;
+            this.size--;
+            return slot;
+        }
+
+        Slot removeLast()
+        {
+            this.size--;
+            int index=(this.head+this.size)%this.slots.length;
+            Slot slot=this.slots[index];
+            this.slots[index]=null;
+            return slot;
+        }
+    }
+
+    private final String name;
+    private final Policy policy;
+    private final Order order;
+    private final int capacity;
+    private final int batch;
+    private final Executor executor;
+    private final NotificationListener listener;
+    private final Lane[] lanes=new Lane[PRIORITIES.length];
+    // Free slots, a stack.
+    private final Slot[] free;
+    private int freeCount;
+    private final HashMap<String,HashMap<UUID,Stream>> streams=new HashMap<String,HashMap<UUID,Stream>>();
+    private int size;
+    private int maxSize;
+    private long arrivals;
+    private boolean scheduled;
+    private long delivered;
+    private long conflated;
+    private final long[] dropped=new long[PRIORITIES.length];
+    private volatile LogHistogram waitLatency;
+
+    /**
+     * Delivers one batch, then hands the executor over to the next batch if there is more.
+     */
+    private final Runnable drain=new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            drain();
+        }
+    };
+
+    /**
+     * @param name Name of the queue in the metrics.
+     * @param executor Executor of the consuming stage.
+     * @param listener The consuming stage.
+     */
+    public StageQueue(String name,Policy policy,int capacity,Executor executor,NotificationListener listener)
+    {
+        this(name,policy,capacity,DEFAULT_BATCH,executor,listener);
+    }
+
+    public StageQueue(String name,Policy policy,int capacity,int batch,Executor executor,NotificationListener listener)
+    {
+        this(name,policy,Order.PRIORITY,capacity,batch,executor,listener);
+    }
+
+    public StageQueue(String name,Policy policy,Order order,int capacity,int batch,Executor executor,NotificationListener listener)
+    {
+        if(capacity<=0||batch<=0)
+            throw new IllegalArgumentException("capacity "+capacity+", batch "+batch);
+        this.name=name;
+        this.policy=policy;
+        this.order=order;
+        this.capacity=capacity;
+        this.batch=batch;
+        this.executor=executor;
+        this.listener=listener;
+        for(int i=0;i<this.lanes.length;i++)
+            this.lanes[i]=new Lane(capacity);
+        this.free=new Slot[capacity];
+        for(int i=0;i<capacity;i++)
+            this.free[i]=new Slot();
+        this.freeCount=capacity;
+    }
+
+    public String getName()
+    {
+        return this.name;
+    }
+
+    public Policy getPolicy()
+    {
+        return this.policy;
+    }
+
+    public Order getOrder()
+    {
+        return this.order;
+    }
+
+    public NotificationListener getListener()
+    {
+        return this.listener;
+    }
+
+    /**
+     * Records the time notifications wait in the queue, in nanoseconds, null to stop.
+     */
+    public void setWaitLatency(LogHistogram histogram)
+    {
+        this.waitLatency=histogram;
+    }
+
+    @Override
+    public void onNotification(String deviceAddress,UUID characteristicUuid,byte[] value,long timestampNanos,long sequence)
+    {
+        offer(deviceAddress,characteristicUuid,value,timestampNanos,sequence);
+    }
+
+    /**
+     * Queues a notification for the next stage.
+     *
+     * @return False if it was dropped.
+     */
+    public boolean offer(String address,UUID uuid,byte[] value,long timestampNanos,long sequence)
+    {
+        SensorDescriptor.Priority priority=SensorDescriptor.priorityOf(uuid);
+        long now=System.nanoTime();
+        boolean schedule;
+        synchronized(this)
+        {
+            Stream stream=null;
+            if(this.policy==Policy.CONFLATE)
+            {
+                stream=stream(address,uuid);
+                if(stream.slot!=null)
+                {
+                    set(stream.slot,address,uuid,value,timestampNanos,sequence);
+                    this.conflated++;
+                    return true;
+                }
+            }
+            if(this.size==this.capacity&&!makeRoom(priority))
+            {
+                this.dropped[priority.ordinal()]++;
+                return false;
+            }
+            Slot slot=this.free[--this.freeCount];
+            this.free[this.freeCount]=null;
+            set(slot,address,uuid,value,timestampNanos,sequence);
+            slot.offeredNanos=now;
+            slot.arrival=this.arrivals++;
+            slot.stream=stream;
+            if(stream!=null)
+                stream.slot=slot;
+            this.lanes[priority.ordinal()].addLast(slot);
+            this.size++;
+            this.maxSize=Math.max(this.maxSize,this.size);
+            schedule=!this.scheduled;
+            this.scheduled=true;
+        }
+        if(schedule)
+            this.executor.execute(this.drain);
+        return true;
+    }
+
+    /**
+     * Frees a slot for a notification of the priority, by the policy, with the lock held.
+     *
+     * @return False if the notification must be dropped instead.
+     */
+    private boolean makeRoom(SensorDescriptor.Priority priority)
+    {
+        if(this.policy==Policy.BLOCK)
+        {
+            while(this.size==this.capacity)
+            {
+                try
+                {
+                    wait();
+                }
+                catch(InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+        // The lowest priority waiting, if not above the new notification's.
+        int lowest=0;
+        while(this.lanes[lowest].size==0)
+            lowest++;
+        if(lowest>priority.ordinal()||this.policy==Policy.DROP_NEWEST&&lowest==priority.ordinal())
+            return false;
+        Lane lane=this.lanes[lowest];
+        release(this.policy==Policy.DROP_NEWEST?lane.removeLast():lane.removeFirst());
+        this.size--;
+        this.dropped[lowest]++;
+        return true;
+    }
+
+    private Stream stream(String address,UUID uuid)
+    {
+        HashMap<UUID,Stream> device=this.streams.get(address);
+        if(device==null)
+        {
+            device=new HashMap<UUID,Stream>();
+            this.streams.put(address,device);
+        }
+        Stream stream=device.get(uuid);
+        if(stream==null)
+        {
+            stream=new Stream();
+            device.put(uuid,stream);
+        }
+        return stream;
+    }
+
+    private static void set(Slot slot,String address,UUID uuid,byte[] value,long timestampNanos,long sequence)
+    {
+        slot.address=address;
+        slot.uuid=uuid;
+        slot.value=value;
+        slot.timestampNanos=timestampNanos;
+        slot.sequence=sequence;
+    }
+
+    private void release(Slot slot)
+    {
+        if(slot.stream!=null)
+        {
+            slot.stream.slot=null;
+            slot.stream=null;
+        }
+        slot.address=null;
+        slot.uuid=null;
+        slot.value=null;
+        this.free[this.freeCount++]=slot;
+    }
+
+    /**
+     * Lane of the next notification to deliver by the order, -1 if none is waiting, with the lock held.
+     */
+    private int nextLane()
+    {
+        int next=-1;
+        for(int lane=this.lanes.length-1;lane>=0;lane--)
+        {
+            if(this.lanes[lane].size==0)
+                continue;
+            if(this.order==Order.PRIORITY)
+                return lane;
+            if(next<0||this.lanes[lane].peekFirst().arrival<this.lanes[next].peekFirst().arrival)
+                next=lane;
+        }
+        return next;
+    }
+
+    private void drain()
+    {
+        LogHistogram latency=this.waitLatency;
+        for(int i=0;i<this.batch;i++)
+        {
+            String address;
+            UUID uuid;
+            byte[] value;
+            long timestampNanos;
+            long sequence;
+            long offeredNanos;
+            synchronized(this)
+            {
+                int lane=nextLane();
+                if(lane<0)
+                {
+                    this.scheduled=false;
+                    return;
+                }
+                Slot slot=this.lanes[lane].removeFirst();
+                address=slot.address;
+                uuid=slot.uuid;
+                value=slot.value;
+                timestampNanos=slot.timestampNanos;
+                sequence=slot.sequence;
+                offeredNanos=slot.offeredNanos;
+                release(slot);
+                this.size--;
+                this.delivered++;
+                if(this.policy==Policy.BLOCK)
+                    notifyAll();
+            }
+            if(latency!=null)
+                latency.record(System.nanoTime()-offeredNanos);
+            this.listener.onNotification(address,uuid,value,timestampNanos,sequence);
+        }
+        synchronized(this)
+        {
+            if(this.size==0)
+            {
+                this.scheduled=false;
+                return;
+            }
+        }
+        this.executor.execute(this.drain);
+    }
+
+    /**
+     * Number of notifications waiting.
+     */
+    public synchronized int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Largest number of notifications that waited at once.
+     */
+    public synchronized int getMaxSize()
+    {
+        return this.maxSize;
+    }
+
+    public synchronized long getDeliveredCount()
+    {
+        return this.delivered;
+    }
+
+    /**
+     * Notifications replaced by a newer one of their stream while waiting.
+     */
+    public synchronized long getConflatedCount()
+    {
+        return this.conflated;
+    }
+
+    public synchronized long getDroppedCount()
+    {
+        long dropped=0;
+        for(long count:this.dropped)
+            dropped+=count;
+        return dropped;
+    }
+
+    public synchronized long getDroppedCount(SensorDescriptor.Priority priority)
+    {
+        return this.dropped[priority.ordinal()];
+    }
+
+    /**
+     * Adds the depth, drops and wait of the queue to the metrics, as "queue.<name>.*" and
+     * "latency.queue.<name>".
+     */
+    public void registerMetrics(MetricsRegistry metrics)
+    {
+        String prefix="queue."+this.name+".";
+        setWaitLatency(metrics.histogram("latency.queue."+this.name));
+        metrics.gauge(prefix+"depth",new MetricsRegistry.Gauge()
+        {
+            @Override
+            public long get()
+            {
+                return size();
+            }
+        });
+        metrics.gauge(prefix+"max_depth",new MetricsRegistry.Gauge()
+        {
+            @Override
+            public long get()
+            {
+                return getMaxSize();
+            }
+        });
+        metrics.gauge(prefix+"conflated",new MetricsRegistry.Gauge()
+        {
+            @Override
+            public long get()
+            {
+                return getConflatedCount();
+            }
+        });
+        for(final SensorDescriptor.Priority priority:PRIORITIES)
+        {
+            metrics.gauge(prefix+"dropped."+priority.name().toLowerCase(),new MetricsRegistry.Gauge()
+            {
+                @Override
+                public long get()
+                {
+                    return getDroppedCount(priority);
+                }
+            });
+        }
+    }
+
+    public void unregisterMetrics(MetricsRegistry metrics)
+    {
+        String prefix="queue."+this.name+".";
+        setWaitLatency(null);
+        metrics.removeGauge(prefix+"depth");
+        metrics.removeGauge(prefix+"max_depth");
+        metrics.removeGauge(prefix+"conflated");
+        for(SensorDescriptor.Priority priority:PRIORITIES)
+            metrics.removeGauge(prefix+"dropped."+priority.name().toLowerCase());
+    }
+
+}
@@ -0,0 +1,131 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sequence numbers and metrics of one notification stream, registered under
+ * "stream.&lt;address&gt;.&lt;sensor&gt;": notifications, time between notifications, jitter,
+ * which is the change of that time from one notification to the next, and gaps. A gap is a time
+ * between two notifications longer than {@link #GAP_PERIODS} periods of the stream; the gaps are
+ * counted, their durations recorded, and the notifications that should have come in between
+ * counted as missed. These are lost before the engine, on the radio or in the stack.
+ *
+ * Notifications of one stream must be recorded from one thread at a time, which is how GATT
+ * callbacks come in; the metrics themselves can be read from anywhere.
+ */
+public class StreamMetrics
+{
+
+    // Time between two notifications, in periods, from which it is a gap.
+    public final static double GAP_PERIODS=1.5;
+
+    private final AtomicLong notifications;
+    private final AtomicLong gaps;
+    private final AtomicLong missed;
+    private final LogHistogram intervals;
+    private final LogHistogram jitter;
+    private final LogHistogram gapDurations;
+    // Owned by the notifying thread.
+    private long lastNanos;
+    private long lastIntervalNanos;
+    private volatile long sequence;
+
+    public StreamMetrics(MetricsRegistry registry,String address,UUID dataUuid)
+    {
+        String prefix=String.format(Locale.ROOT,"stream.%s.%04x.",address,SampleLog.sensorId(dataUuid));
+        this.notifications=registry.counter(prefix+"notifications");
+        this.gaps=registry.counter(prefix+"gaps");
+        this.missed=registry.counter(prefix+"missed");
+        this.intervals=registry.histogram(prefix+"interval");
+        this.jitter=registry.histogram(prefix+"jitter");
+        this.gapDurations=registry.histogram(prefix+"gap");
+    }
+
+    /**
+     * Records a notification.
+     *
+     * @param timestampNanos Time of the notification, on the monotonic clock of the transport.
+     * @param periodMillis Period of the stream, 0 if unknown or if it only notifies on change.
+     * @return Sequence number of the notification.
+     */
+    public long onNotification(long timestampNanos,long periodMillis)
+    {
+        long sequence=this.sequence;
+        this.sequence=sequence+1;
+        this.notifications.incrementAndGet();
+        long last=this.lastNanos;
+        this.lastNanos=timestampNanos;
+        if(last==0)
+            return sequence;
+        long interval=timestampNanos-last;
+        this.intervals.record(interval);
+        if(this.lastIntervalNanos!=0)
+            this.jitter.record(Math.abs(interval-this.lastIntervalNanos));
+        this.lastIntervalNanos=interval;
+        if(periodMillis<=0)
+            return sequence;
+        long periodNanos=TimeUnit.MILLISECONDS.toNanos(periodMillis);
+        if(interval>GAP_PERIODS*periodNanos)
+        {
+            this.gaps.incrementAndGet();
+            this.gapDurations.record(interval);
+            this.missed.addAndGet(Math.max(0,Math.round((double)interval/periodNanos)-1));
+        }
+        return sequence;
+    }
+
+    /**
+     * Forgets the last notification, e.g. after a reconnection, so the gap is not counted.
+     * Sequence numbers go on.
+     */
+    public void restart()
+    {
+        this.lastNanos=0;
+        this.lastIntervalNanos=0;
+    }
+
+    public long getNotificationCount()
+    {
+        return this.notifications.get();
+    }
+
+    /**
+     * Sequence number of the next notification, which is also the number of notifications so far.
+     */
+    public long getSequence()
+    {
+        return this.sequence;
+    }
+
+    public long getGapCount()
+    {
+        return this.gaps.get();
+    }
+
+    /**
+     * Durations of the gaps, in nanoseconds.
+     */
+    public LogHistogram getGapDurations()
+    {
+        return this.gapDurations;
+    }
+
+    public long getMissedCount()
+    {
+        return this.missed.get();
+    }
+
+    public LogHistogram getIntervals()
+    {
+        return this.intervals;
+    }
+
+    public LogHistogram getJitter()
+    {
+        return this.jitter;
+    }
+
+}
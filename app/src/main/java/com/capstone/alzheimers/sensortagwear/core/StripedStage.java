@@ -0,0 +1,134 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A stage of the pipeline spread over several worker threads, one {@link StageQueue} each. Every
+ * device address hashes to one worker, so the notifications of a device are processed on a single
+ * thread, in the order they arrived across all its streams, while different devices use different
+ * cores. The queues deliver by {@link StageQueue.Order#ARRIVAL}: when a worker falls behind, the
+ * priority of a stream chooses what is shed, not what goes first. The listener may keep per-device
+ * state without locks; state shared between devices must be thread safe.
+ */
+public class StripedStage implements NotificationListener
+{
+
+    // Workers at most, whatever the number of cores: a watch has few tags and few cores.
+    public final static int MAX_STRIPES=4;
+
+    private final String name;
+    private final ExecutorService[] workers;
+    private final StageQueue[] queues;
+
+    /**
+     * @param name Name of the threads, and of the queues in the metrics, followed by the stripe.
+     * @param capacity Capacity of the queue of each worker.
+     */
+    public StripedStage(final String name,int stripes,StageQueue.Policy policy,int capacity,NotificationListener listener)
+    {
+        if(stripes<=0)
+            throw new IllegalArgumentException("stripes "+stripes);
+        this.name=name;
+        this.workers=new ExecutorService[stripes];
+        this.queues=new StageQueue[stripes];
+        for(int i=0;i<stripes;i++)
+        {
+            final String thread=name+"-"+i;
+            this.workers[i]=Executors.newSingleThreadExecutor(new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread worker=new Thread(runnable,thread);
+                    worker.setDaemon(true);
+                    return worker;
+                }
+            });
+            this.queues[i]=new StageQueue(name+"."+i,policy,StageQueue.Order.ARRIVAL,capacity,StageQueue.DEFAULT_BATCH,
+                    this.workers[i],listener);
+        }
+    }
+
+    /**
+     * One worker per core but one, left to the main thread, up to {@link #MAX_STRIPES}.
+     */
+    public static int defaultStripes()
+    {
+        return Math.max(1,Math.min(MAX_STRIPES,Runtime.getRuntime().availableProcessors()-1));
+    }
+
+    public String getName()
+    {
+        return this.name;
+    }
+
+    public int getStripeCount()
+    {
+        return this.queues.length;
+    }
+
+    /**
+     * Worker of a device.
+     */
+    public int stripeOf(String address)
+    {
+        int hash=address.hashCode();
+        hash^=hash>>>16;
+        return (hash&0x7FFFFFFF)%this.queues.length;
+    }
+
+    public StageQueue getQueue(int stripe)
+    {
+        return this.queues[stripe];
+    }
+
+    @Override
+    public void onNotification(String deviceAddress,UUID characteristicUuid,byte[] value,long timestampNanos,long sequence)
+    {
+        try
+        {
+            this.queues[stripeOf(deviceAddress)].offer(deviceAddress,characteristicUuid,value,timestampNanos,sequence);
+        }
+        catch(RejectedExecutionException e)
+        {
+            // Shut down while a notification was on its way.
+        }
+    }
+
+    public long getDroppedCount()
+    {
+        long dropped=0;
+        for(StageQueue queue:this.queues)
+            dropped+=queue.getDroppedCount();
+        return dropped;
+    }
+
+    /**
+     * Adds the metrics of the queue of every worker, see {@link StageQueue#registerMetrics}.
+     */
+    public void registerMetrics(MetricsRegistry metrics)
+    {
+        for(StageQueue queue:this.queues)
+            queue.registerMetrics(metrics);
+    }
+
+    public void unregisterMetrics(MetricsRegistry metrics)
+    {
+        for(StageQueue queue:this.queues)
+            queue.unregisterMetrics(metrics);
+    }
+
+    /**
+     * Stops the workers; the notifications still queued are not processed.
+     */
+    public void shutdown()
+    {
+        for(ExecutorService worker:this.workers)
+            worker.shutdownNow();
+    }
+
+}
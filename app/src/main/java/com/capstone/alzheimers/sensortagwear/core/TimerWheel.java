@@ -0,0 +1,146 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+/**
+ * Hashed timer wheel: timeouts are hashed by their deadline tick into a fixed ring of buckets, so
+ * scheduling and cancelling are O(1) and each tick only walks one bucket, whatever the number of
+ * timeouts. Deadlines further away than one revolution stay in their bucket until their tick
+ * comes round. Resolution is one tick.
+ *
+ * Not thread safe: confine it to the thread that calls {@link #advance}.
+ */
+public class TimerWheel
+{
+
+    /**
+     * A scheduled task, linked into the bucket of its deadline.
+     */
+    public final static class Timeout
+    {
+        private final Runnable task;
+        private long deadline;
+        private Timeout previous;
+        private Timeout next;
+        private int bucket=-1;
+
+        private Timeout(Runnable task)
+        {
+            this.task=task;
+        }
+
+        public boolean isPending()
+        {
+            return this.bucket>=0;
+        }
+    }
+
+    private final Timeout[] buckets;
+    private final int mask;
+    private final long tickMillis;
+    private final long startMillis;
+    // Last tick processed.
+    private long tick;
+    private int size;
+
+    /**
+     * @param bucketCount Rounded up to a power of two.
+     */
+    public TimerWheel(int bucketCount,long tickMillis,long nowMillis)
+    {
+        if(bucketCount<=0||tickMillis<=0)
+            throw new IllegalArgumentException("buckets "+bucketCount+", tick "+tickMillis);
+        int capacity=Integer.highestOneBit(bucketCount);
+        if(capacity<bucketCount)
+            capacity<<=1;
+        this.buckets=new Timeout[capacity];
+        this.mask=capacity-1;
+        this.tickMillis=tickMillis;
+        this.startMillis=nowMillis;
+    }
+
+    public long getTickMillis()
+    {
+        return this.tickMillis;
+    }
+
+    /**
+     * Number of pending timeouts.
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Schedules the task to run from {@link #advance} once the delay has elapsed, at the earliest
+     * on the next tick.
+     */
+    public Timeout schedule(Runnable task,long delayMillis)
+    {
+        Timeout timeout=new Timeout(task);
+        reschedule(timeout,delayMillis);
+        return timeout;
+    }
+
+    /**
+     * Moves a timeout, pending or not, to a new deadline.
+     */
+    public void reschedule(Timeout timeout,long delayMillis)
+    {
+        cancel(timeout);
+        long ticks=Math.max(1,(delayMillis+this.tickMillis-1)/this.tickMillis);
+        timeout.deadline=this.tick+ticks;
+        int bucket=(int)(timeout.deadline&this.mask);
+        timeout.bucket=bucket;
+        timeout.next=this.buckets[bucket];
+        if(timeout.next!=null)
+            timeout.next.previous=timeout;
+        this.buckets[bucket]=timeout;
+        this.size++;
+    }
+
+    public void cancel(Timeout timeout)
+    {
+        if(timeout.bucket<0)
+            return;
+        if(timeout.previous!=null)
+            timeout.previous.next=timeout.next;
+        else
+            this.buckets[timeout.bucket]=timeout.next;
+        if(timeout.next!=null)
+            timeout.next.previous=timeout.previous;
+        timeout.previous=null;
+        timeout.next=null;
+        timeout.bucket=-1;
+        this.size--;
+    }
+
+    /**
+     * Processes every tick up to the time and runs the tasks that expired, in this thread. Tasks
+     * may schedule, reschedule or cancel their own timeout.
+     *
+     * @return Number of tasks run.
+     */
+    public int advance(long nowMillis)
+    {
+        long target=(nowMillis-this.startMillis)/this.tickMillis;
+        int expired=0;
+        while(this.tick<target)
+        {
+            this.tick++;
+            Timeout timeout=this.buckets[(int)(this.tick&this.mask)];
+            while(timeout!=null)
+            {
+                Timeout next=timeout.next;
+                if(timeout.deadline<=this.tick)
+                {
+                    cancel(timeout);
+                    timeout.task.run();
+                    expired++;
+                }
+                timeout=next;
+            }
+        }
+        return expired;
+    }
+
+}
@@ -0,0 +1,14 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+/**
+ * Link to the paired phone the sample batches are sent over, e.g. the Wearable Data Layer.
+ */
+public interface UplinkChannel
+{
+    /**
+     * Sends one message. Called from the uplink thread only, so it may block.
+     *
+     * @return True if the message was delivered to at least one node.
+     */
+    boolean send(String path,byte[] payload);
+}
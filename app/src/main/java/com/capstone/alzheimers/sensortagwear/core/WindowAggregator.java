@@ -0,0 +1,361 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+/**
+ * Rolling aggregates of one sensor stream over several sliding windows, e.g. the last 10 s, 1 min
+ * and 10 min: minimum, maximum, mean, variance and approximate quantiles of each value, updated
+ * in constant time per sample.
+ *
+ * The samples are kept once, in a ring sized for the longest window, and each window only points
+ * at its oldest sample. A new sample first evicts the ones that left each window, then is added to
+ * all of them. Minimum and maximum come from monotonic deques of sample indexes, mean and
+ * variance from Welford updates run forwards on adding and backwards on evicting, quantiles from
+ * a {@link QuantileSketch}. Moments are recomputed from the samples each time a window has turned
+ * over, so rounding errors do not pile up; amortized, that is two more reads of each sample.
+ *
+ * Nothing is allocated per sample, apart from a deque growing towards its bound. If samples come
+ * faster than the ring was sized for, a window holds the latest capacity samples only.
+ */
+public class WindowAggregator
+{
+
+    private final static int INITIAL_DEQUE_CAPACITY=16;
+
+    /**
+     * Sample indexes in a growable circular array.
+     */
+    private static class IndexDeque
+    {
+        private long[] items=new long[INITIAL_DEQUE_CAPACITY];
+        private int head;
+        private int size;
+
+        boolean isEmpty()
+        {
+            return this.size==0;
+        }
+
+        long first()
+        {
+            return this.items[this.head];
+        }
+
+        long last()
+        {
+            return this.items[(this.head+this.size-1)&(this.items.length-1)];
+        }
+
+        void addLast(long index)
+        {
+            if(this.size==this.items.length)
+                grow();
+            this.items[(this.head+this.size)&(this.items.length-1)]=index;
+            this.size++;
+        }
+
+        void removeFirst()
+        {
+            this.head=(this.head+1)&(this.items.length-1);
+            this.size--;
+        }
+
+        void removeLast()
+        {
+            this.size--;
+        }
+
+        private void grow()
+        {
+            long[] items=new long[this.items.length*2];
+            for(int i=0;i<this.size;i++)
+                items[i]=this.items[(this.head+i)&(this.items.length-1)];
+            this.items=items;
+            this.head=0;
+        }
+
+        int capacity()
+        {
+            return this.items.length;
+        }
+    }
+
+    /**
+     * Aggregates over one window: the samples from tail to the latest.
+     */
+    private static class Window
+    {
+        final long millis;
+        long tail;
+        // Evictions since the moments were last recomputed.
+        long evicted;
+        final double[] means;
+        final double[] m2s;
+        final IndexDeque[] mins;
+        final IndexDeque[] maxs;
+        final QuantileSketch[] sketches;
+
+        Window(long millis,int width)
+        {
+            this.millis=millis;
+            this.means=new double[width];
+            this.m2s=new double[width];
+            this.mins=new IndexDeque[width];
+            this.maxs=new IndexDeque[width];
+            this.sketches=new QuantileSketch[width];
+            for(int i=0;i<width;i++)
+            {
+                this.mins[i]=new IndexDeque();
+                this.maxs[i]=new IndexDeque();
+            }
+        }
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final int width;
+    private final long[] timestamps;
+    private final float[] values;
+    private final Window[] windows;
+    // Number of samples ever added.
+    private long head;
+
+    /**
+     * @param windowsMillis Length of each window, in the unit of the timestamps.
+     * @param capacity Number of samples kept, rounded up to a power of two: enough for the longest
+     *                 window, see {@link SampleStore#capacityFor}.
+     * @param width Number of values per sample, at most {@link SensorSample#MAX_VALUES}.
+     */
+    public WindowAggregator(long[] windowsMillis,int capacity,int width)
+    {
+        if(windowsMillis.length==0||capacity<=0||width<=0||width>SensorSample.MAX_VALUES)
+            throw new IllegalArgumentException("windows "+windowsMillis.length+", capacity "+capacity+", width "+width);
+        int size=Integer.highestOneBit(capacity);
+        if(size<capacity)
+            size<<=1;
+        this.capacity=size;
+        this.mask=size-1;
+        this.width=width;
+        this.timestamps=new long[size];
+        this.values=new float[size*width];
+        this.windows=new Window[windowsMillis.length];
+        for(int i=0;i<windowsMillis.length;i++)
+            this.windows[i]=new Window(windowsMillis[i],width);
+    }
+
+    public int getWidth()
+    {
+        return this.width;
+    }
+
+    public int getWindowCount()
+    {
+        return this.windows.length;
+    }
+
+    public long getWindowMillis(int window)
+    {
+        return this.windows[window].millis;
+    }
+
+    /**
+     * Adds a sample. Timestamps must not decrease. Samples with fewer values than the width are
+     * ignored, extra values too.
+     */
+    public synchronized void add(long timestamp,SensorSample sample)
+    {
+        if(sample.count<this.width)
+            return;
+        long index=this.head;
+        // The sample about to be overwritten leaves the windows still holding it.
+        if(index>=this.capacity)
+        {
+            for(Window window:this.windows)
+            {
+                if(window.tail==index-this.capacity)
+                    evict(window);
+            }
+        }
+        for(Window window:this.windows)
+            expire(window,timestamp);
+        int offset=((int)index&this.mask)*this.width;
+        this.timestamps[(int)index&this.mask]=timestamp;
+        for(int i=0;i<this.width;i++)
+            this.values[offset+i]=(float)sample.values[i];
+        this.head=index+1;
+        for(Window window:this.windows)
+        {
+            insert(window,index,offset);
+            if(window.evicted>=index+1-window.tail)
+                recompute(window);
+        }
+    }
+
+    /**
+     * Evicts the samples that are out of their windows at the given time, e.g. to stop a stream
+     * that went quiet from showing stale aggregates.
+     */
+    public synchronized void expire(long timestamp)
+    {
+        for(Window window:this.windows)
+            expire(window,timestamp);
+    }
+
+    private void expire(Window window,long timestamp)
+    {
+        long limit=timestamp-window.millis;
+        while(window.tail<this.head&&this.timestamps[(int)window.tail&this.mask]<=limit)
+            evict(window);
+    }
+
+    private void insert(Window window,long index,int offset)
+    {
+        long count=index+1-window.tail;
+        for(int i=0;i<this.width;i++)
+        {
+            double x=this.values[offset+i];
+            double delta=x-window.means[i];
+            window.means[i]+=delta/count;
+            window.m2s[i]+=delta*(x-window.means[i]);
+            IndexDeque mins=window.mins[i];
+            while(!mins.isEmpty()&&value(mins.last(),i)>=x)
+                mins.removeLast();
+            mins.addLast(index);
+            IndexDeque maxs=window.maxs[i];
+            while(!maxs.isEmpty()&&value(maxs.last(),i)<=x)
+                maxs.removeLast();
+            maxs.addLast(index);
+            // The first sample of the stream is the reference of the sketches.
+            if(window.sketches[i]==null)
+                window.sketches[i]=new QuantileSketch(x);
+            window.sketches[i].add(x);
+        }
+    }
+
+    private void evict(Window window)
+    {
+        long index=window.tail;
+        long count=this.head-index-1;
+        int offset=((int)index&this.mask)*this.width;
+        for(int i=0;i<this.width;i++)
+        {
+            double x=this.values[offset+i];
+            if(count==0)
+            {
+                window.means[i]=0;
+                window.m2s[i]=0;
+            }
+            else
+            {
+                double delta=x-window.means[i];
+                window.means[i]-=delta/count;
+                window.m2s[i]=Math.max(0,window.m2s[i]-delta*(x-window.means[i]));
+            }
+            if(window.mins[i].first()==index)
+                window.mins[i].removeFirst();
+            if(window.maxs[i].first()==index)
+                window.maxs[i].removeFirst();
+            window.sketches[i].remove(x);
+        }
+        window.tail=index+1;
+        window.evicted++;
+    }
+
+    private void recompute(Window window)
+    {
+        window.evicted=0;
+        long count=this.head-window.tail;
+        // Sample by sample, all the values of each at once.
+        for(int i=0;i<this.width;i++)
+        {
+            window.means[i]=0;
+            window.m2s[i]=0;
+        }
+        for(long j=window.tail;j<this.head;j++)
+        {
+            int offset=((int)j&this.mask)*this.width;
+            for(int i=0;i<this.width;i++)
+                window.means[i]+=this.values[offset+i];
+        }
+        for(int i=0;i<this.width;i++)
+            window.means[i]/=count;
+        for(long j=window.tail;j<this.head;j++)
+        {
+            int offset=((int)j&this.mask)*this.width;
+            for(int i=0;i<this.width;i++)
+            {
+                double delta=this.values[offset+i]-window.means[i];
+                window.m2s[i]+=delta*delta;
+            }
+        }
+    }
+
+    private double value(long index,int value)
+    {
+        return this.values[((int)index&this.mask)*this.width+value];
+    }
+
+    /**
+     * Fills the aggregates of one value over one window.
+     *
+     * @return False if the window is empty.
+     */
+    public synchronized boolean getStats(int window,int value,WindowStats stats)
+    {
+        Window w=this.windows[window];
+        long count=this.head-w.tail;
+        if(count==0)
+        {
+            stats.clear();
+            return false;
+        }
+        stats.count=(int)count;
+        stats.min=value(w.mins[value].first(),value);
+        stats.max=value(w.maxs[value].first(),value);
+        stats.mean=w.means[value];
+        stats.variance=w.m2s[value]/count;
+        return true;
+    }
+
+    /**
+     * Approximate quantile of one value over one window, within its minimum and maximum. NaN if
+     * the window is empty.
+     *
+     * @param fraction Between 0 and 1, e.g. 0.9 for the 90th percentile.
+     */
+    public synchronized double getQuantile(int window,int value,double fraction)
+    {
+        Window w=this.windows[window];
+        if(this.head==w.tail)
+            return Double.NaN;
+        double quantile=w.sketches[value].getQuantile(fraction);
+        double min=value(w.mins[value].first(),value);
+        double max=value(w.maxs[value].first(),value);
+        return Math.max(min,Math.min(max,quantile));
+    }
+
+    /**
+     * Number of samples in a window.
+     */
+    public synchronized int getCount(int window)
+    {
+        return (int)(this.head-this.windows[window].tail);
+    }
+
+    /**
+     * Bytes held by the ring, the deques and the sketches, roughly.
+     */
+    public synchronized long getMemoryBytes()
+    {
+        long bytes=this.capacity*(8L+4L*this.width);
+        for(Window window:this.windows)
+        {
+            for(int i=0;i<this.width;i++)
+            {
+                bytes+=8L*(window.mins[i].capacity()+window.maxs[i].capacity());
+                if(window.sketches[i]!=null)
+                    bytes+=QuantileSketch.MEMORY_BYTES;
+            }
+        }
+        return bytes;
+    }
+
+}
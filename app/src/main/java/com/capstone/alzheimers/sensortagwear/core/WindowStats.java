@@ -0,0 +1,37 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+/**
+ * Reusable, mutable holder for the aggregates of one value over one window, filled by
+ * {@link WindowAggregator#getStats}.
+ */
+public class WindowStats
+{
+
+    // Number of samples in the window, 0 if empty, in which case the rest is NaN.
+    public int count;
+    public double min;
+    public double max;
+    public double mean;
+    // Population variance of the samples in the window.
+    public double variance;
+
+    public double getStandardDeviation()
+    {
+        return Math.sqrt(this.variance);
+    }
+
+    public boolean isEmpty()
+    {
+        return this.count==0;
+    }
+
+    void clear()
+    {
+        this.count=0;
+        this.min=Double.NaN;
+        this.max=Double.NaN;
+        this.mean=Double.NaN;
+        this.variance=Double.NaN;
+    }
+
+}
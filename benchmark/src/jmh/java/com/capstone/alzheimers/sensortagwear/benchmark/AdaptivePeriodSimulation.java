@@ -0,0 +1,74 @@
+package com.capstone.alzheimers.sensortagwear.benchmark;
+
+import com.capstone.alzheimers.sensortagwear.core.AdaptivePeriodController;
+import com.capstone.alzheimers.sensortagwear.core.SensorSample;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Replays a day of room light and temperature at the minimum period through the adaptive period
+ * controller. A simulated tag notifies at the period the controller asks for. Compares the
+ * signal a reader would see, each notified value held until the next notification, with the
+ * full-rate signal. Reports the notifications saved and the error of the held signal.
+ *
+ * The signals are synthetic: slow drift and sensor noise, with the light switched and a person
+ * passing by now and then.
+ *
+ * Run with: ./gradlew :benchmark:simulatePeriods
+ */
+public class AdaptivePeriodSimulation
+{
+
+    private final static int MIN_PERIOD=10;
+    // One day at 100 ms.
+    private final static int SAMPLES=24*3600*10;
+
+    public static void main(String[] args)
+    {
+        Random random=new Random(7);
+        double[] lux=new double[SAMPLES];
+        double[] temperature=new double[SAMPLES];
+        boolean on=false;
+        for(int i=0;i<SAMPLES;i++)
+        {
+            // Light switched every two hours or so, shadows for a few seconds.
+            if(random.nextInt(72000)==0)
+                on=!on;
+            double shadow=random.nextInt(20000)==0?0.5:1;
+            lux[i]=(on?400:20)*shadow+random.nextGaussian()*(on?2:0.5);
+            temperature[i]=22+1.5*Math.sin(2*Math.PI*i/SAMPLES)+random.nextGaussian()*0.03;
+        }
+        report("Lux",lux,new AdaptivePeriodController(MIN_PERIOD,AdaptivePeriodController.MAX_PERIOD,2,0.01));
+        report("IR temperature",temperature,new AdaptivePeriodController(MIN_PERIOD,AdaptivePeriodController.MAX_PERIOD,0.1,0));
+    }
+
+    private static void report(String name,double[] signal,AdaptivePeriodController controller)
+    {
+        SensorSample sample=new SensorSample();
+        double held=signal[0];
+        double squaredError=0;
+        double maxError=0;
+        int next=0;
+        for(int i=0;i<signal.length;i++)
+        {
+            if(i==next)
+            {
+                sample.set(signal[i]);
+                controller.update(sample);
+                held=signal[i];
+                next=i+controller.getPeriod()/MIN_PERIOD;
+            }
+            double error=Math.abs(signal[i]-held);
+            squaredError+=error*error;
+            maxError=Math.max(maxError,error);
+        }
+        long received=controller.getNotificationCount();
+        System.out.printf(Locale.ROOT,"%s: %d of %d notifications (%.1f %% saved), %d period changes%n",
+                name,received,signal.length,100.0*(signal.length-received)/signal.length,
+                controller.getPeriodChangeCount());
+        System.out.printf(Locale.ROOT,"  held signal error: rms %.3f, max %.3f; controller estimate rms %.3f%n",
+                Math.sqrt(squaredError/signal.length),maxError,controller.getRmsHoldError());
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.capstone.alzheimers.sensortagwear.benchmark;
+
+import com.capstone.alzheimers.sensortagwear.core.AdvertisingData;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checking a scan record for SensorTag names and service UUID, as done for every advertisement of
+ * a new device. Run with the gc profiler: it should not allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AdvertisingDataBenchmark
+{
+
+    // Advertisement and scan response of a CC2650 SensorTag, then of some other device.
+    private final byte[] sensorTag=new byte[]{0x02,0x01,0x05,0x03,0x03,(byte)0x80,(byte)0xAA,
+            0x11,0x09,'C','C','2','6','5','0',' ','S','e','n','s','o','r','T','a','g',0x02,0x0A,0x00};
+    private final byte[] other=new byte[]{0x02,0x01,0x06,0x05,0x03,0x0F,0x18,0x0D,0x18,
+            0x09,0x09,'H','R',' ','S','t','r','a','p'};
+
+    @Benchmark
+    public boolean sensorTag()
+    {
+        return AdvertisingData.hasUuid16(this.sensorTag,0xAA80);
+    }
+
+    @Benchmark
+    public boolean otherDevice()
+    {
+        return AdvertisingData.hasUuid16(this.other,0xAA80)
+                ||AdvertisingData.hasName(this.other,"SensorTag")
+                ||AdvertisingData.hasName(this.other,"TI BLE Sensor Tag")
+                ||AdvertisingData.hasName(this.other,"CC2650 SensorTag");
+    }
+
+}
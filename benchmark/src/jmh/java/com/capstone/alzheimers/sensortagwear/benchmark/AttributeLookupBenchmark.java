@@ -0,0 +1,66 @@
+package com.capstone.alzheimers.sensortagwear.benchmark;
+
+import com.capstone.alzheimers.sensortagwear.SensorTagGattAttributes;
+import com.capstone.alzheimers.sensortagwear.core.SensorDescriptor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The attribute lookups as Sensor makes them: from a service UUID object to a characteristic UUID
+ * object. stringMapConfigUuid is the way it used to go, through a String map and back, as a
+ * baseline for the SensorDescriptor lookups.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AttributeLookupBenchmark
+{
+
+    private final UUID serviceUuid=UUID.fromString(SensorTagGattAttributes.UUID_MOV_SERV);
+    private final UUID dataUuid=UUID.fromString(SensorTagGattAttributes.UUID_MOV_DATA);
+    private final HashMap<String,String> servToConfig=new HashMap<String,String>();
+
+    {
+        this.servToConfig.put(SensorTagGattAttributes.UUID_MOV_SERV,SensorTagGattAttributes.UUID_MOV_CONF);
+    }
+
+    @Benchmark
+    public UUID stringMapConfigUuid()
+    {
+        return UUID.fromString(this.servToConfig.get(this.serviceUuid.toString()));
+    }
+
+    @Benchmark
+    public UUID descriptorConfigUuid()
+    {
+        return SensorDescriptor.forService(this.serviceUuid).getConfigUuid();
+    }
+
+    @Benchmark
+    public SensorDescriptor descriptorForData()
+    {
+        return SensorDescriptor.forData(this.dataUuid);
+    }
+
+    @Benchmark
+    public byte defaultPeriod()
+    {
+        return SensorDescriptor.forService(this.serviceUuid).getDefaultPeriod();
+    }
+
+    @Benchmark
+    public String lookupName()
+    {
+        return SensorTagGattAttributes.lookup(this.serviceUuid,"Unknown");
+    }
+
+}
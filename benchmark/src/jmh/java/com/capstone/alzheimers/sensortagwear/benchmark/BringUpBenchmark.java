@@ -0,0 +1,81 @@
+package com.capstone.alzheimers.sensortagwear.benchmark;
+
+import com.capstone.alzheimers.sensortagwear.core.ConnectionOrchestrator;
+import com.capstone.alzheimers.sensortagwear.core.SensorTagConfigurator;
+import com.capstone.alzheimers.sensortagwear.core.SensorTagEngine;
+import com.capstone.alzheimers.sensortagwear.core.SimulatedGattTransport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from the bring-up request until every simulated tag is connected, discovered and
+ * configured, with the default simulated latencies and at most four tags in bring-up at once.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=1)
+@Measurement(iterations=5)
+public class BringUpBenchmark
+{
+
+    @Param({"1","4","16"})
+    private int devices;
+
+    private ScheduledExecutorService scheduler;
+    private SimulatedGattTransport transport;
+    private SensorTagEngine engine;
+    private List<String> addresses;
+
+    @Setup(Level.Invocation)
+    public void setUp()
+    {
+        this.scheduler=Executors.newScheduledThreadPool(2);
+        this.transport=new SimulatedGattTransport(this.scheduler);
+        this.engine=new SensorTagEngine(this.transport,this.scheduler);
+        this.addresses=this.transport.addTags(this.devices);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown()
+    {
+        this.engine.close();
+        this.scheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public long bringUp() throws InterruptedException
+    {
+        final CountDownLatch done=new CountDownLatch(this.devices);
+        this.engine.bringUp(this.addresses,ConnectionOrchestrator.DEFAULT_MAX_CONCURRENT,
+                new SensorTagConfigurator(this.engine,(byte)0),null,new ConnectionOrchestrator.ProgressListener()
+        {
+            @Override
+            public void onProgress(String address,ConnectionOrchestrator.Stage stage)
+            {
+                if(stage==ConnectionOrchestrator.Stage.READY||stage==ConnectionOrchestrator.Stage.FAILED)
+                    done.countDown();
+            }
+        });
+        done.await();
+        return done.getCount();
+    }
+
+}
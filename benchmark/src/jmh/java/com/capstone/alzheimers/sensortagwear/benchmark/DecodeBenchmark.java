@@ -0,0 +1,122 @@
+package com.capstone.alzheimers.sensortagwear.benchmark;
+
+import com.capstone.alzheimers.sensortagwear.Point3D;
+import com.capstone.alzheimers.sensortagwear.core.SensorSample;
+import com.capstone.alzheimers.sensortagwear.core.SensorTagDecoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of one notification payload, per sensor format. Run with the gc profiler to check
+ * that the decoders allocate nothing (gc.alloc.rate.norm of 0 bytes per operation).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DecodeBenchmark
+{
+
+    // Payloads as sent by a SensorTag.
+    private final byte[] lux=new byte[]{(byte)0xA4,0x5C};
+    private final byte[] irTemperature=new byte[]{(byte)0x80,0x0C,(byte)0xE0,0x0B};
+    private final byte[] humidity=new byte[]{0x66,0x66,0x00,(byte)0x80};
+    private final byte[] barometer=new byte[]{0x3C,0x09,0x00,(byte)0x8C,(byte)0x8A,0x01};
+    private final byte[] barometerRaw=new byte[]{0x10,0x62,0x3E,(byte)0x9C};
+    private final long[] barometerCalibration=new long[]{29112,51,41870,10,-1024,-8192,7,-20000};
+    private final byte[] movement=new byte[]{0x12,0x00,(byte)0xF0,(byte)0xFF,0x05,0x00,
+            0x00,0x10,0x20,0x00,0x00,(byte)0xF0,0x40,0x01,(byte)0xC0,(byte)0xFE,0x10,0x00};
+    private final byte[] keys=new byte[]{0x05};
+
+    private final SensorSample sample=new SensorSample();
+
+    @Benchmark
+    public int shortSignedAtOffset()
+    {
+        return SensorTagDecoder.shortSignedAtOffset(this.movement,2);
+    }
+
+    @Benchmark
+    public int shortUnsignedAtOffset()
+    {
+        return SensorTagDecoder.shortUnsignedAtOffset(this.lux,0);
+    }
+
+    @Benchmark
+    public int twentyFourBitUnsignedAtOffset()
+    {
+        return SensorTagDecoder.twentyFourBitUnsignedAtOffset(this.barometer,3);
+    }
+
+    @Benchmark
+    public SensorSample luxometer()
+    {
+        this.sample.set(SensorTagDecoder.sfloatToLux(SensorTagDecoder.shortUnsignedAtOffset(this.lux,0)));
+        return this.sample;
+    }
+
+    /**
+     * The luxometer conversion as it was before the primitive decode path: boxed helper,
+     * Math.pow and a new Point3D per notification.
+     */
+    @Benchmark
+    public Point3D luxometerBoxedPow()
+    {
+        Integer lowerByte=(int)this.lux[0]&0xFF;
+        Integer upperByte=(int)this.lux[1]&0xFF;
+        Integer sfloat=(upperByte<<8)+lowerByte;
+        int mantissa=sfloat&0x0FFF;
+        int exponent=(sfloat>>12)&0xFF;
+        double output=mantissa*Math.pow(2.0f,exponent);
+        return new Point3D(output/100.0f,0,0);
+    }
+
+    @Benchmark
+    public SensorSample irTemperature()
+    {
+        SensorTagDecoder.decodeIrTemperature(this.irTemperature,this.sample);
+        return this.sample;
+    }
+
+    @Benchmark
+    public SensorSample humidity()
+    {
+        SensorTagDecoder.decodeHumidity(this.humidity,this.sample);
+        return this.sample;
+    }
+
+    @Benchmark
+    public SensorSample barometer()
+    {
+        SensorTagDecoder.decodeBarometer(this.barometer,this.sample);
+        return this.sample;
+    }
+
+    @Benchmark
+    public SensorSample barometerCalibrated()
+    {
+        SensorTagDecoder.decodeBarometer(this.barometerRaw,this.barometerCalibration,this.sample);
+        return this.sample;
+    }
+
+    @Benchmark
+    public SensorSample movement()
+    {
+        SensorTagDecoder.decodeMovement(this.movement,8,this.sample);
+        return this.sample;
+    }
+
+    @Benchmark
+    public SensorSample keys()
+    {
+        SensorTagDecoder.decodeKeys(this.keys,this.sample);
+        return this.sample;
+    }
+
+}
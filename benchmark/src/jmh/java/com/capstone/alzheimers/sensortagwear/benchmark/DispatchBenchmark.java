@@ -0,0 +1,94 @@
+package com.capstone.alzheimers.sensortagwear.benchmark;
+
+import com.capstone.alzheimers.sensortagwear.core.NotificationDispatcher;
+import com.capstone.alzheimers.sensortagwear.core.NotificationListener;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivery of one notification to one listener. The broadcast path cannot run off-device, so
+ * broadcastStyleCopy only models its JVM-side cost: copying the payload and the UUID and
+ * address strings into a keyed bundle, then reading them back. The Binder transaction and the
+ * main-thread hop come on top of that on a device.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DispatchBenchmark
+{
+
+    private final String address="B0:B4:48:C0:5D:81";
+    private final UUID uuid=UUID.fromString("f000aa71-0451-4000-b000-000000000000");
+    private final byte[] value=new byte[]{(byte)0xA4,0x5C};
+    private final long timestampNanos=System.nanoTime();
+    private long sequence;
+
+    private NotificationDispatcher direct;
+    private NotificationDispatcher executor;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setUp(final Blackhole blackhole)
+    {
+        this.blackhole=blackhole;
+        NotificationListener listener=new NotificationListener()
+        {
+            @Override
+            public void onNotification(String deviceAddress,UUID characteristicUuid,byte[] value,long timestampNanos,long sequence)
+            {
+                blackhole.consume(value);
+            }
+        };
+        this.direct=new NotificationDispatcher();
+        this.direct.addListener(listener,null);
+        this.executor=new NotificationDispatcher();
+        this.executor.addListener(listener,new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                command.run();
+            }
+        });
+    }
+
+    @Benchmark
+    public void directListener()
+    {
+        this.direct.dispatch(this.address,this.uuid,this.value,this.timestampNanos,this.sequence++);
+    }
+
+    @Benchmark
+    public void executorListener()
+    {
+        this.executor.dispatch(this.address,this.uuid,this.value,this.timestampNanos,this.sequence++);
+    }
+
+    @Benchmark
+    public void broadcastStyleCopy()
+    {
+        HashMap<String,Object> extras=new HashMap<String,Object>();
+        extras.put("EXTRA_DATA",this.value.clone());
+        extras.put("EXTRA_UUID",this.uuid.toString());
+        extras.put("EXTRA_DEVICEADDRESS",this.address);
+        byte[] value=((byte[])extras.get("EXTRA_DATA")).clone();
+        String uuid=(String)extras.get("EXTRA_UUID");
+        String address=(String)extras.get("EXTRA_DEVICEADDRESS");
+        this.blackhole.consume(value);
+        this.blackhole.consume(UUID.fromString(uuid));
+        this.blackhole.consume(address);
+    }
+
+}
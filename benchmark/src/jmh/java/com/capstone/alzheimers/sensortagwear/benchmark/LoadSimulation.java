@@ -0,0 +1,266 @@
+package com.capstone.alzheimers.sensortagwear.benchmark;
+
+import com.capstone.alzheimers.sensortagwear.core.ConnectionOrchestrator;
+import com.capstone.alzheimers.sensortagwear.core.ConnectionProfile;
+import com.capstone.alzheimers.sensortagwear.core.DeviceLink;
+import com.capstone.alzheimers.sensortagwear.core.LogHistogram;
+import com.capstone.alzheimers.sensortagwear.core.NotificationListener;
+import com.capstone.alzheimers.sensortagwear.core.SampleLog;
+import com.capstone.alzheimers.sensortagwear.core.SampleUplink;
+import com.capstone.alzheimers.sensortagwear.core.SensorDescriptor;
+import com.capstone.alzheimers.sensortagwear.core.SensorSample;
+import com.capstone.alzheimers.sensortagwear.core.SensorTagConfigurator;
+import com.capstone.alzheimers.sensortagwear.core.SensorTagDecoder;
+import com.capstone.alzheimers.sensortagwear.core.SensorTagEngine;
+import com.capstone.alzheimers.sensortagwear.core.SimulatedGattTransport;
+import com.capstone.alzheimers.sensortagwear.core.StreamMetrics;
+import com.capstone.alzheimers.sensortagwear.core.UplinkChannel;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end load test of the headless pipeline: brings up simulated tags, streams their
+ * notifications at the given period for a while, and decodes them on a single consumer thread
+ * standing in for the main thread. Reports the bring-up time, the throughput and the latency from
+ * the transport handing a notification to the engine until the consumer has decoded it. Decoded
+ * samples go through the phone uplink into a local stand-in for the Data Layer, which reports the
+ * bytes per sample and messages per minute.
+ *
+ * Run with: ./gradlew :benchmark:simulate -Pargs="tags periodTensOfMillis seconds"
+ * (defaults: 50 tags, period 1, i.e. 100 Hz per sensor, for 10 seconds).
+ */
+public class LoadSimulation
+{
+
+    private final static UUID IRT_DATA=SensorDescriptor.IR_TEMPERATURE.getDataUuid();
+    private final static UUID HUM_DATA=SensorDescriptor.HUMIDITY.getDataUuid();
+    private final static UUID BAR_DATA=SensorDescriptor.BAROMETER.getDataUuid();
+    private final static UUID OPT_DATA=SensorDescriptor.LUXOMETER.getDataUuid();
+    private final static UUID MOV_DATA=SensorDescriptor.MOVEMENT.getDataUuid();
+
+    // Latency samples, written by the consumer thread only.
+    private long[] latencies=new long[1<<16];
+    private int latencyCount;
+    private long received;
+    private final SensorSample sample=new SensorSample();
+    private SampleUplink uplink;
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        int tags=args.length>0?Integer.parseInt(args[0]):50;
+        byte period=args.length>1?Byte.parseByte(args[1]):1;
+        int seconds=args.length>2?Integer.parseInt(args[2]):10;
+        new LoadSimulation().run(tags,period,seconds);
+    }
+
+    private void run(int tagCount,byte period,int seconds) throws InterruptedException
+    {
+        ScheduledExecutorService scheduler=Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors());
+        ExecutorService consumer=Executors.newSingleThreadExecutor();
+        ScheduledExecutorService uplinkExecutor=Executors.newSingleThreadScheduledExecutor();
+        LoopbackChannel channel=new LoopbackChannel();
+        this.uplink=new SampleUplink(channel,uplinkExecutor,SampleUplink.DEFAULT_BATCH_SAMPLES,
+                SampleUplink.DEFAULT_FLUSH_INTERVAL_MILLIS);
+        SimulatedGattTransport simulator=new SimulatedGattTransport(scheduler);
+        SensorTagEngine engine=new SensorTagEngine(simulator,scheduler);
+        List<String> addresses=simulator.addTags(tagCount);
+
+        engine.addNotificationListener(new NotificationListener()
+        {
+            @Override
+            public void onNotification(String deviceAddress,UUID characteristicUuid,byte[] value,long timestampNanos,long sequence)
+            {
+                consume(timestampNanos,deviceAddress,characteristicUuid,value);
+            }
+        },consumer);
+
+        final CountDownLatch done=new CountDownLatch(tagCount);
+        final int[] ready=new int[1];
+        long start=System.nanoTime();
+        engine.bringUp(addresses,ConnectionOrchestrator.DEFAULT_MAX_CONCURRENT,new SensorTagConfigurator(engine,period),null,
+                new ConnectionOrchestrator.ProgressListener()
+        {
+            @Override
+            public void onProgress(String address,ConnectionOrchestrator.Stage stage)
+            {
+                if(stage==ConnectionOrchestrator.Stage.READY)
+                {
+                    synchronized(ready)
+                    {
+                        ready[0]++;
+                    }
+                }
+                if(stage==ConnectionOrchestrator.Stage.READY||stage==ConnectionOrchestrator.Stage.FAILED)
+                    done.countDown();
+            }
+        });
+        done.await();
+        long bringUpMillis=TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-start);
+        System.out.println(String.format(Locale.US,"Bring-up: %d/%d tags ready in %d ms",ready[0],tagCount,bringUpMillis));
+
+        // Measure only the steady state.
+        for(String address:addresses)
+            engine.getLink(address).resetStats();
+        engine.getMetrics().reset();
+        resetOnConsumer(consumer);
+        this.uplink.start();
+        long sentBefore=simulator.getNotificationsSent();
+        long measureStart=System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        long sent=simulator.getNotificationsSent()-sentBefore;
+        reportLinks(engine,addresses);
+        reportStreams(engine,addresses);
+        engine.close();
+        consumer.shutdown();
+        consumer.awaitTermination(10,TimeUnit.SECONDS);
+        this.uplink.stop();
+        uplinkExecutor.shutdown();
+        uplinkExecutor.awaitTermination(10,TimeUnit.SECONDS);
+        double elapsed=(System.nanoTime()-measureStart)/1e9;
+        scheduler.shutdownNow();
+
+        long[] sorted=Arrays.copyOf(this.latencies,this.latencyCount);
+        Arrays.sort(sorted);
+        System.out.println(String.format(Locale.US,"Sent: %d (%.0f/s), received: %d (%.0f/s)",
+                sent,sent/elapsed,this.received,this.received/elapsed));
+        System.out.println(String.format(Locale.US,"Latency us: p50 %.1f, p99 %.1f, p99.9 %.1f, max %.1f",
+                percentile(sorted,0.5),percentile(sorted,0.99),percentile(sorted,0.999),percentile(sorted,1)));
+        System.out.println(String.format(Locale.US,"Uplink: %d samples in %d messages (%.1f/min), %.2f bytes/sample, %d dropped, %d received",
+                this.uplink.getSamplesSent(),this.uplink.getMessagesSent(),this.uplink.getMessagesPerMinute(),
+                this.uplink.getBytesPerSample(),this.uplink.getSamplesDropped(),channel.received));
+    }
+
+    /**
+     * Prints how many devices ended up with each profile, and the link measurements of each group.
+     */
+    private static void reportLinks(SensorTagEngine engine,List<String> addresses)
+    {
+        for(ConnectionProfile profile:ConnectionProfile.values())
+        {
+            int devices=0;
+            double rate=0;
+            double maxGap=0;
+            double operation=0;
+            for(String address:addresses)
+            {
+                DeviceLink link=engine.getLink(address);
+                if(link.getProfile()!=profile)
+                    continue;
+                devices++;
+                rate+=link.getNotificationRate();
+                maxGap=Math.max(maxGap,link.getMaxGapMillis());
+                operation+=link.getMeanOperationMillis();
+            }
+            if(devices>0)
+                System.out.println(String.format(Locale.US,"Profile %s: %d tags, %.1f notifications/s per tag, max gap %.1f ms, GATT round trip %.2f ms",
+                        profile,devices,rate/devices,maxGap,operation/devices));
+        }
+    }
+
+    /**
+     * Prints the delivery latency and the gaps in the streams from the metrics of the engine.
+     */
+    private static void reportStreams(SensorTagEngine engine,List<String> addresses)
+    {
+        long gaps=0;
+        long missed=0;
+        double jitter=0;
+        int streams=0;
+        for(String address:addresses)
+        {
+            for(StreamMetrics stream:engine.getLink(address).getStreamMetrics())
+            {
+                gaps+=stream.getGapCount();
+                missed+=stream.getMissedCount();
+                jitter=Math.max(jitter,stream.getJitter().getPercentile(0.99)/1e6);
+                streams++;
+            }
+        }
+        LogHistogram delivery=engine.getMetrics().histogram("latency.delivery");
+        System.out.println(String.format(Locale.US,"Streams: %d, %d gaps, %d notifications missed, worst p99 jitter %.2f ms",
+                streams,gaps,missed,jitter));
+        System.out.println(String.format(Locale.US,"Delivery to consumer us: p50 %.1f, p99 %.1f, max %.1f",
+                delivery.getPercentile(0.5)/1e3,delivery.getPercentile(0.99)/1e3,delivery.getMax()/1e3));
+    }
+
+    private void resetOnConsumer(ExecutorService consumer) throws InterruptedException
+    {
+        final CountDownLatch reset=new CountDownLatch(1);
+        consumer.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                latencyCount=0;
+                received=0;
+                reset.countDown();
+            }
+        });
+        reset.await();
+    }
+
+    /**
+     * Decodes one notification like the app would and records its latency. Consumer thread only.
+     */
+    private void consume(long timestampNanos,String address,UUID characteristicUuid,byte[] value)
+    {
+        if(characteristicUuid.equals(MOV_DATA))
+            SensorTagDecoder.decodeMovement(value,8,this.sample);
+        else if(characteristicUuid.equals(OPT_DATA))
+            this.sample.set(SensorTagDecoder.sfloatToLux(SensorTagDecoder.shortUnsignedAtOffset(value,0)));
+        else if(characteristicUuid.equals(IRT_DATA))
+            SensorTagDecoder.decodeIrTemperature(value,this.sample);
+        else if(characteristicUuid.equals(HUM_DATA))
+            SensorTagDecoder.decodeHumidity(value,this.sample);
+        else if(characteristicUuid.equals(BAR_DATA))
+            SensorTagDecoder.decodeBarometer(value,this.sample);
+        this.received++;
+        this.uplink.offer(System.currentTimeMillis(),SampleLog.deviceId(address),SampleLog.sensorId(characteristicUuid),this.sample);
+        if(this.latencyCount==this.latencies.length)
+            this.latencies=Arrays.copyOf(this.latencies,this.latencies.length*2);
+        this.latencies[this.latencyCount++]=System.nanoTime()-timestampNanos;
+    }
+
+    private static double percentile(long[] sorted,double p)
+    {
+        if(sorted.length==0)
+            return 0;
+        int index=(int)Math.ceil(p*sorted.length)-1;
+        return sorted[Math.max(0,index)]/1000.0;
+    }
+
+    /**
+     * Stand-in for the Data Layer: decodes every message as the phone would.
+     */
+    private static class LoopbackChannel implements UplinkChannel
+    {
+        private final SampleLog.Visitor visitor=new SampleLog.Visitor()
+        {
+            @Override
+            public void onRecord(long timestamp,long deviceId,int sensorId,int count,float[] values)
+            {
+            }
+        };
+        // Uplink thread only.
+        long received;
+
+        @Override
+        public boolean send(String path,byte[] payload)
+        {
+            int samples=SampleUplink.decode(payload,this.visitor);
+            if(samples<0)
+                throw new IllegalStateException("Undecodable message on "+path);
+            this.received+=samples;
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.capstone.alzheimers.sensortagwear.benchmark;
+
+import com.capstone.alzheimers.sensortagwear.core.LogHistogram;
+import com.capstone.alzheimers.sensortagwear.core.MetricsRegistry;
+import com.capstone.alzheimers.sensortagwear.core.StreamMetrics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the metrics on the notification path: recording a latency in a histogram, alone and
+ * from four threads at once as the GATT callbacks of several tags do, and the whole per-stream
+ * update of one notification.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MetricsBenchmark
+{
+
+    private final LogHistogram histogram=new LogHistogram();
+    private StreamMetrics stream;
+    private long value;
+    private long now;
+
+    @Setup
+    public void setUp()
+    {
+        this.stream=new StreamMetrics(new MetricsRegistry(),"B0:B4:48:C0:5D:81",
+                UUID.fromString("f000aa81-0451-4000-b000-000000000000"));
+    }
+
+    @Benchmark
+    @Group("record")
+    public void record()
+    {
+        // Latencies of a few microseconds to a few milliseconds.
+        this.value=(this.value*31+7)&0x3FFFFF;
+        this.histogram.record(this.value);
+    }
+
+    @Benchmark
+    @Group("recordContended")
+    @GroupThreads(4)
+    public void recordContended()
+    {
+        this.histogram.record(System.nanoTime()&0x3FFFFF);
+    }
+
+    @Benchmark
+    @Group("streamNotification")
+    public void streamNotification()
+    {
+        this.now+=100000000+(this.now&0xFFFFF);
+        this.stream.onNotification(this.now,100);
+    }
+
+}
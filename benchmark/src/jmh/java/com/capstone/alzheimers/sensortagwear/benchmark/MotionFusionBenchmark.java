@@ -0,0 +1,203 @@
+package com.capstone.alzheimers.sensortagwear.benchmark;
+
+import com.capstone.alzheimers.sensortagwear.core.MetricsRegistry;
+import com.capstone.alzheimers.sensortagwear.core.MotionFusion;
+import com.capstone.alzheimers.sensortagwear.core.SampleLog;
+import com.capstone.alzheimers.sensortagwear.core.SensorDescriptor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a 100 Hz movement trace through the fall detection, one notification per operation:
+ * decoding, orientation filter and fall detector. Run with the gc profiler to check that nothing
+ * is allocated.
+ *
+ * The trace is "fall": standing, walking, then a forward fall and lying still, or "daily":
+ * standing, walking and sitting down hard. Setup checks that the first gives a fall and the
+ * second none. Any other value is taken as the directory of a sample log pulled from the watch
+ * ("adb pull /data/data/com.capstone.alzheimers.sensortagwear/files/samples"), whose movement
+ * records are replayed as notifications.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MotionFusionBenchmark
+{
+
+    private final static UUID MOV_DATA=SensorDescriptor.MOVEMENT.getDataUuid();
+    private final static double ACCELEROMETER_RAW=32768.0/SensorDescriptor.MOVEMENT_ACCELEROMETER_RANGE;
+    private final static double GYROSCOPE_RAW=65536.0/500.0;
+    private final static double MAGNETOMETER_RAW=32768.0/4912.0;
+    // Earth magnetic field in micro Tesla, x north and z up.
+    private final static double FIELD_NORTH=20;
+    private final static double FIELD_UP=-40;
+
+    @Param({"fall","daily"})
+    private String trace;
+
+    private MotionFusion fusion;
+    private final List<String> addresses=new ArrayList<String>();
+    private final List<byte[]> payloads=new ArrayList<byte[]>();
+    private final List<Long> timestamps=new ArrayList<Long>();
+    private String[] addressArray;
+    private byte[][] payloadArray;
+    private long[] timestampArray;
+    private long duration;
+    private long offset;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        if(this.trace.equals("fall"))
+            synthesize(true);
+        else if(this.trace.equals("daily"))
+            synthesize(false);
+        else
+            load(new File(this.trace));
+        if(this.payloads.isEmpty())
+            throw new IllegalStateException("No movement samples in "+this.trace);
+        this.addressArray=this.addresses.toArray(new String[0]);
+        this.payloadArray=this.payloads.toArray(new byte[0][]);
+        this.timestampArray=new long[this.timestamps.size()];
+        for(int i=0;i<this.timestampArray.length;i++)
+            this.timestampArray[i]=this.timestamps.get(i);
+        // Replays are apart by more than a gap, so each starts from the orientation it gives.
+        this.duration=this.timestampArray[this.timestampArray.length-1]-this.timestampArray[0]
+                +2*TimeUnit.MILLISECONDS.toNanos(MotionFusion.MAX_GAP_MILLIS);
+        MetricsRegistry metrics=new MetricsRegistry();
+        this.fusion=new MotionFusion(metrics);
+        for(int i=0;i<this.payloadArray.length;i++)
+            this.fusion.onNotification(this.addressArray[i],MOV_DATA,this.payloadArray[i],this.timestampArray[i],i);
+        long falls=metrics.counter("motion.falls").get();
+        if(this.trace.equals("fall")&&falls!=1||this.trace.equals("daily")&&falls!=0)
+            throw new IllegalStateException(falls+" falls detected in the "+this.trace+" trace");
+        this.offset=this.duration;
+    }
+
+    @Benchmark
+    public void notification()
+    {
+        int i=this.next;
+        this.fusion.onNotification(this.addressArray[i],MOV_DATA,this.payloadArray[i],this.timestampArray[i]+this.offset,i);
+        if(++i==this.payloadArray.length)
+        {
+            i=0;
+            this.offset+=this.duration;
+        }
+        this.next=i;
+    }
+
+    /**
+     * Builds a trace of a tag worn upright, z up, with sensor noise.
+     */
+    private void synthesize(boolean fall)
+    {
+        Random random=new Random(42);
+        double t=0;
+        // Standing.
+        for(;t<3;t+=0.01)
+            add(t,0,0,1,0,0,0,0,random);
+        // Walking at two steps per second.
+        for(;t<6;t+=0.01)
+            add(t,0.2*Math.sin(2*Math.PI*t),0,1+0.3*Math.sin(4*Math.PI*t),0,20*Math.sin(2*Math.PI*t),0,0,random);
+        if(fall)
+        {
+            // Free fall, pitching forward by 90 degrees, then the impact on the side the tag faces.
+            double start=t;
+            for(;t<start+0.35;t+=0.01)
+            {
+                double angle=Math.PI/2*(t-start)/0.35;
+                add(t,0.2*Math.sin(angle),0,0.2*Math.cos(angle),0,-257,0,angle,random);
+            }
+            for(int i=0;i<5;i++,t+=0.01)
+                add(t,5-0.8*i,0.3,0.2,0,0,0,Math.PI/2,random);
+            // Lying still.
+            for(;t<10;t+=0.01)
+                add(t,1,0,0,0,0,0,Math.PI/2,random);
+        }
+        else
+        {
+            // Sitting down hard: leaning back by 30 degrees, a 2 G bump, then still.
+            double start=t;
+            for(;t<start+0.5;t+=0.01)
+            {
+                double angle=Math.toRadians(30)*(t-start)/0.5;
+                add(t,-Math.sin(angle),0,0.8*Math.cos(angle),0,60,0,-angle,random);
+            }
+            for(int i=0;i<3;i++,t+=0.01)
+                add(t,-0.5,0,2,0,0,0,-Math.PI/6,random);
+            for(;t<10;t+=0.01)
+                add(t,-0.5,0,0.87,0,0,0,-Math.PI/6,random);
+        }
+    }
+
+    /**
+     * @param pitch Rotation of the tag about its y axis from upright, which turns the magnetic
+     *              field it measures.
+     */
+    private void add(double t,double ax,double ay,double az,double gx,double gy,double gz,double pitch,Random random)
+    {
+        double noise=0.02;
+        double mx=FIELD_NORTH*Math.cos(pitch)+FIELD_UP*Math.sin(pitch);
+        double mz=-FIELD_NORTH*Math.sin(pitch)+FIELD_UP*Math.cos(pitch);
+        // Magnetometer axes: x and y swapped, z reversed.
+        add("B0:B4:48:C0:5D:81",(long)(t*1e9),
+                ax+noise*random.nextGaussian(),ay+noise*random.nextGaussian(),az+noise*random.nextGaussian(),
+                gx+2*random.nextGaussian(),gy+2*random.nextGaussian(),gz+2*random.nextGaussian(),
+                0,(int)(mx*MAGNETOMETER_RAW),(int)(-mz*MAGNETOMETER_RAW));
+    }
+
+    /**
+     * Adds a notification with the payload the SensorTag would send for these values.
+     */
+    private void add(String address,long timestampNanos,double ax,double ay,double az,double gx,double gy,double gz,
+                     int mx,int my,int mz)
+    {
+        int[] raw=new int[]{(int)(gx*GYROSCOPE_RAW),(int)(gy*GYROSCOPE_RAW),(int)(gz*GYROSCOPE_RAW),
+                (int)(ax*ACCELEROMETER_RAW),(int)(ay*ACCELEROMETER_RAW),(int)(az*ACCELEROMETER_RAW),mx,my,mz};
+        byte[] value=new byte[18];
+        for(int i=0;i<raw.length;i++)
+        {
+            int clamped=Math.max(Short.MIN_VALUE,Math.min(Short.MAX_VALUE,raw[i]));
+            value[2*i]=(byte)clamped;
+            value[2*i+1]=(byte)(clamped>>8);
+        }
+        this.addresses.add(address);
+        this.timestamps.add(timestampNanos);
+        this.payloads.add(value);
+    }
+
+    private void load(File directory) throws IOException
+    {
+        final int movement=SampleLog.sensorId(MOV_DATA);
+        SampleLog.replay(directory,new SampleLog.Visitor()
+        {
+            @Override
+            public void onRecord(long timestamp,long deviceId,int sensorId,int count,float[] values)
+            {
+                if(sensorId!=movement||count<9)
+                    return;
+                add(SampleLog.address(deviceId),TimeUnit.MILLISECONDS.toNanos(timestamp),
+                        values[0],values[1],values[2],values[3],values[4],values[5],
+                        (int)(values[6]*MAGNETOMETER_RAW),(int)(values[7]*MAGNETOMETER_RAW),(int)(values[8]*MAGNETOMETER_RAW));
+            }
+        });
+    }
+
+}
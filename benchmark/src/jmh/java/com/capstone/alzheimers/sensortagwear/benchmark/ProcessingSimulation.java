@@ -0,0 +1,345 @@
+package com.capstone.alzheimers.sensortagwear.benchmark;
+
+import com.capstone.alzheimers.sensortagwear.core.AggregateStore;
+import com.capstone.alzheimers.sensortagwear.core.CareRules;
+import com.capstone.alzheimers.sensortagwear.core.ConnectionOrchestrator;
+import com.capstone.alzheimers.sensortagwear.core.LogHistogram;
+import com.capstone.alzheimers.sensortagwear.core.NotificationListener;
+import com.capstone.alzheimers.sensortagwear.core.RuleEngine;
+import com.capstone.alzheimers.sensortagwear.core.SampleStore;
+import com.capstone.alzheimers.sensortagwear.core.SensorDescriptor;
+import com.capstone.alzheimers.sensortagwear.core.SensorSample;
+import com.capstone.alzheimers.sensortagwear.core.SensorTagConfigurator;
+import com.capstone.alzheimers.sensortagwear.core.SensorTagDecoder;
+import com.capstone.alzheimers.sensortagwear.core.SensorTagEngine;
+import com.capstone.alzheimers.sensortagwear.core.SimulatedGattTransport;
+import com.capstone.alzheimers.sensortagwear.core.StageQueue;
+import com.capstone.alzheimers.sensortagwear.core.StripedStage;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Busy time of the main thread with simulated tags streaming, with the notifications processed on
+ * the main thread as the activity used to, then on per-device workers as it does now. Processing
+ * is what the activity does per notification: decoding, the history, the rolling aggregates and
+ * the rules. In both runs the main thread also redraws the readings at most every 100 ms, from a
+ * copy of the latest ones. Reports the share of the wall time the main thread was busy, and how
+ * long its tasks ran, which is what a frame or a touch waits for.
+ *
+ * Run with: ./gradlew :benchmark:simulateProcessing -Pargs="tags periodTensOfMillis seconds"
+ * (defaults: 8 tags, period 1, i.e. 100 Hz per sensor, for 10 seconds).
+ */
+public class ProcessingSimulation
+{
+
+    private final static UUID IRT_DATA=SensorDescriptor.IR_TEMPERATURE.getDataUuid();
+    private final static UUID HUM_DATA=SensorDescriptor.HUMIDITY.getDataUuid();
+    private final static UUID BAR_DATA=SensorDescriptor.BAROMETER.getDataUuid();
+    private final static UUID OPT_DATA=SensorDescriptor.LUXOMETER.getDataUuid();
+    private final static UUID MOV_DATA=SensorDescriptor.MOVEMENT.getDataUuid();
+    private final static UUID[] STREAMS={IRT_DATA,HUM_DATA,BAR_DATA,OPT_DATA,MOV_DATA};
+    private final static long FRAME_MILLIS=100;
+
+    /**
+     * Stand-in for the main thread: a single thread that times its tasks.
+     */
+    private static class MainThread
+    {
+        final ExecutorService thread=Executors.newSingleThreadExecutor();
+        final LogHistogram taskNanos=new LogHistogram();
+        // Main thread only.
+        long busyNanos;
+        long startNanos;
+        // Busy time when measure() was last reached.
+        long measuredBusyNanos;
+
+        void post(final Runnable task)
+        {
+            try
+            {
+                this.thread.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        long start=System.nanoTime();
+                        task.run();
+                        long elapsed=System.nanoTime()-start;
+                        busyNanos+=elapsed;
+                        taskNanos.record(elapsed);
+                    }
+                });
+            }
+            catch(RejectedExecutionException e)
+            {
+                // Stopped at the end of the run.
+            }
+        }
+
+        /**
+         * Waits for the main thread to get to this point, then starts measuring again if asked.
+         *
+         * @return The time since the measure started.
+         */
+        long measure(final boolean restart) throws InterruptedException
+        {
+            final long[] elapsed=new long[1];
+            final CountDownLatch reached=new CountDownLatch(1);
+            this.thread.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    long now=System.nanoTime();
+                    elapsed[0]=now-startNanos;
+                    measuredBusyNanos=busyNanos;
+                    if(restart)
+                    {
+                        startNanos=now;
+                        busyNanos=0;
+                        taskNanos.reset();
+                    }
+                    reached.countDown();
+                }
+            });
+            reached.await();
+            return elapsed[0];
+        }
+    }
+
+    /**
+     * The latest readings of a tag: decoded on its processing thread, copied for the display.
+     */
+    private static class Device
+    {
+        final String address;
+        final SensorSample[] latest=new SensorSample[STREAMS.length];
+        final SensorSample[] shown=new SensorSample[STREAMS.length];
+
+        Device(String address)
+        {
+            this.address=address;
+            for(int i=0;i<STREAMS.length;i++)
+            {
+                this.latest[i]=new SensorSample();
+                this.shown[i]=new SensorSample();
+            }
+        }
+    }
+
+    private final HashMap<String,Device> devices=new HashMap<String,Device>();
+    private final SampleStore history=new SampleStore(SampleStore.capacityFor(10*60*1000,100));
+    private final AggregateStore aggregates=new AggregateStore(AggregateStore.DEFAULT_WINDOWS_MILLIS,100);
+    private final RuleEngine rules=new RuleEngine(this.aggregates,TimeZone.getDefault(),System.currentTimeMillis());
+    private final AtomicBoolean pending=new AtomicBoolean();
+    private final StringBuilder text=new StringBuilder(1024);
+    private MainThread main;
+    // Whether the main thread was asked to redraw, main thread only.
+    private boolean dirty;
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        int tags=args.length>0?Integer.parseInt(args[0]):8;
+        byte period=args.length>1?Byte.parseByte(args[1]):1;
+        int seconds=args.length>2?Integer.parseInt(args[2]):10;
+        System.out.println(String.format(Locale.US,"%d tags at %d ms, %d s each",tags,period*10,seconds));
+        new ProcessingSimulation().run(tags,period,seconds,false);
+        new ProcessingSimulation().run(tags,period,seconds,true);
+    }
+
+    private void run(int tagCount,byte period,int seconds,boolean striped) throws InterruptedException
+    {
+        ScheduledExecutorService scheduler=Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors());
+        SimulatedGattTransport simulator=new SimulatedGattTransport(scheduler);
+        SensorTagEngine engine=new SensorTagEngine(simulator,scheduler);
+        List<String> addresses=simulator.addTags(tagCount);
+        for(int i=0;i<addresses.size();i++)
+        {
+            String address=addresses.get(i);
+            this.devices.put(address,new Device(address));
+            this.rules.add(CareRules.inactivity(address,TimeUnit.MINUTES.toMillis(30)));
+            this.rules.add(CareRules.nightWandering(address,addresses.get((i+1)%addresses.size()),TimeUnit.MINUTES.toMillis(5)));
+        }
+        this.main=new MainThread();
+        NotificationListener processor=new NotificationListener()
+        {
+            @Override
+            public void onNotification(String deviceAddress,UUID characteristicUuid,byte[] value,long timestampNanos,long sequence)
+            {
+                process(deviceAddress,characteristicUuid,value,timestampNanos);
+            }
+        };
+        StripedStage stage=null;
+        StageQueue queue=null;
+        if(striped)
+        {
+            stage=new StripedStage("processing",StripedStage.defaultStripes(),StageQueue.Policy.DROP_OLDEST,
+                    StageQueue.DEFAULT_CAPACITY,processor);
+            engine.addNotificationListener(stage,null);
+        }
+        else
+        {
+            queue=new StageQueue("activity",StageQueue.Policy.DROP_OLDEST,StageQueue.DEFAULT_CAPACITY,new Executor()
+            {
+                @Override
+                public void execute(Runnable command)
+                {
+                    main.post(command);
+                }
+            },processor);
+            engine.addNotificationListener(queue,null);
+        }
+
+        final CountDownLatch done=new CountDownLatch(tagCount);
+        engine.bringUp(addresses,ConnectionOrchestrator.DEFAULT_MAX_CONCURRENT,new SensorTagConfigurator(engine,period),null,
+                new ConnectionOrchestrator.ProgressListener()
+        {
+            @Override
+            public void onProgress(String address,ConnectionOrchestrator.Stage stage)
+            {
+                if(stage==ConnectionOrchestrator.Stage.READY||stage==ConnectionOrchestrator.Stage.FAILED)
+                    done.countDown();
+            }
+        });
+        done.await();
+        final MainThread main=this.main;
+        ScheduledExecutorService frames=Executors.newSingleThreadScheduledExecutor();
+        frames.scheduleAtFixedRate(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                main.post(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        frame();
+                    }
+                });
+            }
+        },FRAME_MILLIS,FRAME_MILLIS,TimeUnit.MILLISECONDS);
+        // Measure only the steady state.
+        main.measure(true);
+        long sentBefore=simulator.getNotificationsSent();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        double elapsed=main.measure(false);
+        long sent=simulator.getNotificationsSent()-sentBefore;
+        long busy=main.measuredBusyNanos;
+        LogHistogram tasks=main.taskNanos;
+        engine.close();
+        frames.shutdownNow();
+        if(stage!=null)
+            stage.shutdown();
+        main.thread.shutdown();
+        main.thread.awaitTermination(10,TimeUnit.SECONDS);
+        scheduler.shutdownNow();
+
+        System.out.println(String.format(Locale.US,"%s: %.0f notifications/s, main thread busy %.1f%% in %d tasks, task us p50 %.1f, p99 %.1f, max %.1f, %d dropped",
+                striped?"Workers ("+stage.getStripeCount()+")":"Main thread",sent/(elapsed/1e9),100*busy/elapsed,
+                tasks.getCount(),tasks.getPercentile(0.5)/1e3,tasks.getPercentile(0.99)/1e3,tasks.getMax()/1e3,
+                striped?stage.getDroppedCount():queue.getDroppedCount()));
+    }
+
+    /**
+     * What the activity does with a notification, on the thread of its device.
+     */
+    private void process(String address,UUID uuid,byte[] value,long timestampNanos)
+    {
+        Device device=this.devices.get(address);
+        int stream=streamOf(uuid);
+        if(device==null||stream<0)
+            return;
+        SensorSample sample=device.latest[stream];
+        if(uuid.equals(MOV_DATA))
+            SensorTagDecoder.decodeMovement(value,SensorDescriptor.MOVEMENT_ACCELEROMETER_RANGE,sample);
+        else if(uuid.equals(OPT_DATA))
+            sample.set(SensorTagDecoder.sfloatToLux(SensorTagDecoder.shortUnsignedAtOffset(value,0)));
+        else if(uuid.equals(IRT_DATA))
+            SensorTagDecoder.decodeIrTemperature(value,sample);
+        else if(uuid.equals(HUM_DATA))
+            SensorTagDecoder.decodeHumidity(value,sample);
+        else
+            SensorTagDecoder.decodeBarometer(value,sample);
+        synchronized(device.shown[stream])
+        {
+            device.shown[stream].copyFrom(sample);
+        }
+        long millis=TimeUnit.NANOSECONDS.toMillis(timestampNanos);
+        this.history.record(address,uuid,millis,sample);
+        this.aggregates.record(address,uuid,millis,sample);
+        synchronized(this.rules)
+        {
+            this.rules.onSample(address,uuid,System.currentTimeMillis(),sample);
+        }
+        invalidate();
+    }
+
+    /**
+     * Asks the main thread for a redraw, once until it ran.
+     */
+    private void invalidate()
+    {
+        if(!this.pending.compareAndSet(false,true))
+            return;
+        this.main.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                pending.set(false);
+                dirty=true;
+            }
+        });
+    }
+
+    /**
+     * Redraws the readings if they changed, main thread only.
+     */
+    private void frame()
+    {
+        if(!this.dirty)
+            return;
+        this.dirty=false;
+        this.text.setLength(0);
+        for(Device device:this.devices.values())
+        {
+            this.text.append(device.address).append('\n');
+            for(SensorSample shown:device.shown)
+            {
+                synchronized(shown)
+                {
+                    if(shown.isEmpty())
+                        continue;
+                    this.text.append("  ");
+                    for(int i=0;i<shown.count;i++)
+                        this.text.append(i>0?"/":"").append(shown.get(i));
+                    this.text.append('\n');
+                }
+            }
+        }
+    }
+
+    private static int streamOf(UUID uuid)
+    {
+        for(int i=0;i<STREAMS.length;i++)
+        {
+            if(STREAMS[i].equals(uuid))
+                return i;
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.capstone.alzheimers.sensortagwear.benchmark;
+
+import com.capstone.alzheimers.sensortagwear.core.ConnectionOrchestrator;
+import com.capstone.alzheimers.sensortagwear.core.GattTransport;
+import com.capstone.alzheimers.sensortagwear.core.NotificationListener;
+import com.capstone.alzheimers.sensortagwear.core.SensorTagConfigurator;
+import com.capstone.alzheimers.sensortagwear.core.SensorTagEngine;
+import com.capstone.alzheimers.sensortagwear.core.SimulatedGattTransport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to first sample after a reconnection: from the bring-up request of tags brought up and
+ * disconnected before, until each of them has delivered a notification. With the layout cache,
+ * reconnection reads the firmware revision instead of discovering the services again.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=1)
+@Measurement(iterations=5)
+public class ReconnectBenchmark
+{
+
+    @Param({"1","4"})
+    private int devices;
+
+    @Param({"false","true"})
+    private boolean cached;
+
+    private ScheduledExecutorService scheduler;
+    private SensorTagEngine engine;
+    private SensorTagConfigurator configurator;
+    private List<String> addresses;
+    // Devices yet to notify, null outside of the measurement.
+    private volatile Set<String> waiting;
+    private volatile CountDownLatch firstSamples;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws InterruptedException
+    {
+        this.scheduler=Executors.newScheduledThreadPool(2);
+        SimulatedGattTransport transport=new SimulatedGattTransport(this.scheduler);
+        this.engine=new SensorTagEngine(transport,this.scheduler);
+        if(!this.cached)
+            this.engine.setLayoutCache(null);
+        this.addresses=transport.addTags(this.devices);
+        this.configurator=new SensorTagConfigurator(this.engine,(byte)1);
+        this.engine.addNotificationListener(new NotificationListener()
+        {
+            @Override
+            public void onNotification(String deviceAddress,UUID characteristicUuid,byte[] value,long timestampNanos,long sequence)
+            {
+                Set<String> waiting=ReconnectBenchmark.this.waiting;
+                if(waiting!=null&&waiting.remove(deviceAddress))
+                    firstSamples.countDown();
+            }
+        },null);
+        bringUp();
+        final CountDownLatch disconnected=new CountDownLatch(this.devices);
+        this.engine.setObserver(new DisconnectionObserver(disconnected));
+        this.engine.disconnectAll();
+        disconnected.await();
+        this.engine.setObserver(null);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown()
+    {
+        this.engine.close();
+        this.scheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public long reconnect() throws InterruptedException
+    {
+        Set<String> waiting=Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+        waiting.addAll(this.addresses);
+        this.firstSamples=new CountDownLatch(this.devices);
+        this.waiting=waiting;
+        this.engine.bringUp(this.addresses,ConnectionOrchestrator.DEFAULT_MAX_CONCURRENT,this.configurator,null,null);
+        this.firstSamples.await();
+        return this.firstSamples.getCount();
+    }
+
+    private void bringUp() throws InterruptedException
+    {
+        final CountDownLatch done=new CountDownLatch(this.devices);
+        this.engine.bringUp(this.addresses,ConnectionOrchestrator.DEFAULT_MAX_CONCURRENT,this.configurator,null,
+                new ConnectionOrchestrator.ProgressListener()
+        {
+            @Override
+            public void onProgress(String address,ConnectionOrchestrator.Stage stage)
+            {
+                if(stage==ConnectionOrchestrator.Stage.READY||stage==ConnectionOrchestrator.Stage.FAILED)
+                    done.countDown();
+            }
+        });
+        done.await();
+    }
+
+    private static class DisconnectionObserver implements GattTransport.Callback
+    {
+        private final CountDownLatch disconnected;
+
+        DisconnectionObserver(CountDownLatch disconnected)
+        {
+            this.disconnected=disconnected;
+        }
+
+        @Override
+        public void onConnectionStateChange(String address,boolean connected)
+        {
+            if(!connected)
+                this.disconnected.countDown();
+        }
+
+        @Override
+        public void onServicesDiscovered(String address,boolean success)
+        {
+        }
+
+        @Override
+        public void onCharacteristicWrite(String address,UUID characteristicUuid,int status)
+        {
+        }
+
+        @Override
+        public void onCharacteristicRead(String address,UUID characteristicUuid,byte[] value,int status)
+        {
+        }
+
+        @Override
+        public void onDescriptorWrite(String address,UUID characteristicUuid,int status)
+        {
+        }
+
+        @Override
+        public void onCharacteristicChanged(String address,UUID characteristicUuid,byte[] value,long timestampNanos)
+        {
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.capstone.alzheimers.sensortagwear.benchmark;
+
+import com.capstone.alzheimers.sensortagwear.core.SampleRingBuffer;
+import com.capstone.alzheimers.sensortagwear.core.SensorSample;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appending a movement sample (nine values) to a ten-minute history at 100 ms, and reading the
+ * last minute back. Run with the gc profiler: neither should allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RingBufferBenchmark
+{
+
+    private final SampleRingBuffer buffer=new SampleRingBuffer(6000,SensorSample.MAX_VALUES);
+    private final SensorSample sample=new SensorSample();
+    private final long[] timestamps=new long[600];
+    private final float[] values=new float[600*SensorSample.MAX_VALUES];
+    private long timestamp;
+
+    @Setup
+    public void setUp()
+    {
+        for(int i=0;i<SensorSample.MAX_VALUES;i++)
+            this.sample.values[i]=i*0.5;
+        this.sample.count=SensorSample.MAX_VALUES;
+        for(int i=0;i<this.buffer.getCapacity();i++)
+            add();
+    }
+
+    @Benchmark
+    public void add()
+    {
+        this.timestamp+=100;
+        this.buffer.add(this.timestamp,this.sample);
+    }
+
+    @Benchmark
+    public int readLastMinute()
+    {
+        return this.buffer.read(this.timestamp-60000,this.timestamp+1,this.timestamps,this.values);
+    }
+
+    @Benchmark
+    public long latest()
+    {
+        return this.buffer.latest(this.sample);
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.capstone.alzheimers.sensortagwear.benchmark;
+
+import com.capstone.alzheimers.sensortagwear.core.AggregateStore;
+import com.capstone.alzheimers.sensortagwear.core.CareRules;
+import com.capstone.alzheimers.sensortagwear.core.Rule;
+import com.capstone.alzheimers.sensortagwear.core.RuleEngine;
+import com.capstone.alzheimers.sensortagwear.core.SensorDescriptor;
+import com.capstone.alzheimers.sensortagwear.core.SensorSample;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one movement sample in the rule engine as the number of rules grows: night wandering,
+ * inactivity and door sequences over 20 tags, with a few thresholds each, so that many rules share
+ * their conditions. The samples go round the tags at 100 ms each, with a door swing or a patient
+ * turn from time to time. The aggregates the rules read are filled at setup and not updated
+ * during the measurement, see {@link WindowAggregatorBenchmark} for that cost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RuleEngineBenchmark
+{
+
+    private final static UUID MOV_DATA=SensorDescriptor.MOVEMENT.getDataUuid();
+    private final static int DEVICES=20;
+    private final static int THRESHOLDS=4;
+    private final static int SAMPLES=4096;
+
+    @Param({"10","100","1000"})
+    private int rules;
+
+    private AggregateStore aggregates;
+    private RuleEngine engine;
+    private final String[] addresses=new String[DEVICES];
+    private final SensorSample[] samples=new SensorSample[SAMPLES];
+    private long timestamp;
+    private int next;
+
+    @Setup
+    public void setUp()
+    {
+        for(int i=0;i<DEVICES;i++)
+            this.addresses[i]=String.format("B0:B4:48:C0:5D:%02X",i);
+        Random random=new Random(42);
+        for(int i=0;i<SAMPLES;i++)
+        {
+            SensorSample sample=new SensorSample();
+            sample.count=SensorSample.MAX_VALUES;
+            sample.values[2]=1+0.01*random.nextGaussian();
+            sample.values[3]=random.nextInt(50)==0?90:random.nextGaussian();
+            this.samples[i]=sample;
+        }
+        this.aggregates=new AggregateStore(AggregateStore.DEFAULT_WINDOWS_MILLIS,100);
+        this.timestamp=TimeUnit.DAYS.toMillis(100);
+        this.engine=new RuleEngine(this.aggregates,TimeZone.getTimeZone("UTC"),this.timestamp);
+        for(int i=0;i<this.rules;i++)
+        {
+            String a=this.addresses[random.nextInt(DEVICES)];
+            String b=this.addresses[random.nextInt(DEVICES)];
+            double threshold=20+10*random.nextInt(THRESHOLDS);
+            switch(i%3)
+            {
+                case 0:
+                    this.engine.add(CareRules.nightWandering(a,b,TimeUnit.MINUTES.toMillis(5+random.nextInt(THRESHOLDS))));
+                    break;
+                case 1:
+                    this.engine.add(CareRules.inactivity(a,TimeUnit.MINUTES.toMillis(30+random.nextInt(THRESHOLDS))));
+                    break;
+                default:
+                    Rule.Condition swing=Rule.Condition.magnitude(a,SensorDescriptor.MOVEMENT,3,Rule.Comparison.ABOVE,threshold);
+                    Rule.Condition other=Rule.Condition.magnitude(b,SensorDescriptor.MOVEMENT,3,Rule.Comparison.ABOVE,threshold);
+                    this.engine.add(new Rule("Door sequence "+i).when(swing).then(other,TimeUnit.SECONDS.toMillis(30)));
+                    break;
+            }
+        }
+        for(int i=0;i<SAMPLES;i++)
+        {
+            this.aggregates.record(this.addresses[i%DEVICES],MOV_DATA,this.timestamp,this.samples[i]);
+            sample();
+        }
+    }
+
+    @Benchmark
+    public long sample()
+    {
+        int i=this.next;
+        this.next=(i+1)&(SAMPLES-1);
+        String address=this.addresses[i%DEVICES];
+        SensorSample sample=this.samples[i];
+        this.timestamp+=100/DEVICES;
+        this.engine.onSample(address,MOV_DATA,this.timestamp,sample);
+        return this.engine.getMatchCount();
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.capstone.alzheimers.sensortagwear.benchmark;
+
+import com.capstone.alzheimers.sensortagwear.core.SampleLog;
+import com.capstone.alzheimers.sensortagwear.core.SensorSample;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sustained write throughput of the sample log: each operation appends a batch of movement samples
+ * and waits until the writer has put all of them in the mapped segments, with rotation and
+ * retention running as in the app. append measures the cost seen by the notification thread alone,
+ * staged or dropped.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SampleLogBenchmark
+{
+
+    private final static int BATCH=4096;
+
+    private final SensorSample sample=new SensorSample();
+    private final long deviceId=SampleLog.deviceId("B0:B4:48:C0:5D:81");
+    private File directory;
+    private SampleLog log;
+    private long timestamp;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        this.directory=File.createTempFile("samplelog",null);
+        if(!this.directory.delete()||!this.directory.mkdir())
+            throw new IOException("Cannot create "+this.directory);
+        this.log=new SampleLog(this.directory,SampleLog.DEFAULT_SEGMENT_BYTES,SampleLog.DEFAULT_MAX_BYTES,
+                BATCH,SampleLog.DEFAULT_FLUSH_INTERVAL_MILLIS);
+        for(int i=0;i<SensorSample.MAX_VALUES;i++)
+            this.sample.values[i]=i*0.5;
+        this.sample.count=SensorSample.MAX_VALUES;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException,InterruptedException
+    {
+        this.log.close();
+        File[] files=this.directory.listFiles();
+        if(files!=null)
+            for(File file:files)
+                file.delete();
+        this.directory.delete();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OperationsPerInvocation(BATCH)
+    public long sustainedWrite() throws IOException,InterruptedException
+    {
+        for(int i=0;i<BATCH;i++)
+            this.log.append(this.timestamp++,this.deviceId,0xAA81,this.sample);
+        this.log.flush();
+        return this.log.getDroppedCount();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean append()
+    {
+        return this.log.append(this.timestamp++,this.deviceId,0xAA81,this.sample);
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.capstone.alzheimers.sensortagwear.benchmark;
+
+import com.capstone.alzheimers.sensortagwear.core.SensorSample;
+import com.capstone.alzheimers.sensortagwear.core.SensorTagDecoder;
+import com.capstone.alzheimers.sensortagwear.core.SeriesCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding one block of a SensorTag trace. The traces are generated as raw
+ * notification payloads (slow motion plus sensor noise, jittered 100 ms period) and decoded with
+ * {@link SensorTagDecoder}, so the values have the resolution of the real sensors.
+ *
+ * One operation is one byte of raw samples (a long timestamp and a float per value), so the
+ * score in ops/us reads as MB/s. Every trace has the same raw size, 288 movement samples, 792 IR
+ * temperature samples or 1056 lux samples. The compression ratio of each trace is printed at
+ * setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SeriesCodecBenchmark
+{
+
+    // Multiple of the raw sample sizes: 44 bytes for movement, 16 for IR temperature, 12 for lux.
+    private final static int RAW_BYTES=24*528;
+    private final static int MAX_SAMPLES=RAW_BYTES/12;
+
+    @Param({"movement","lux","irTemperature"})
+    public String trace;
+
+    private final long[] timestamps=new long[MAX_SAMPLES];
+    private final float[] values=new float[MAX_SAMPLES*SensorSample.MAX_VALUES];
+    private final long[] decodedTimestamps=new long[MAX_SAMPLES];
+    private final float[] decodedValues=new float[MAX_SAMPLES*SensorSample.MAX_VALUES];
+    private final byte[] block=new byte[SeriesCodec.maxEncodedBytes(MAX_SAMPLES,SensorSample.MAX_VALUES)];
+    private int width;
+    private int samples;
+
+    @Setup
+    public void setUp()
+    {
+        Random random=new Random(42);
+        SensorSample sample=new SensorSample();
+        byte[] payload;
+        long timestamp=1000000;
+        this.width=this.trace.equals("movement")?9:this.trace.equals("lux")?1:2;
+        this.samples=RAW_BYTES/(8+4*this.width);
+        for(int i=0;i<this.samples;i++)
+        {
+            double phase=i*0.02;
+            if(this.trace.equals("movement"))
+            {
+                payload=new byte[18];
+                for(int axis=0;axis<9;axis++)
+                    putShort(payload,axis*2,(int)(4000*Math.sin(phase+axis)+random.nextGaussian()*20));
+                SensorTagDecoder.decodeMovement(payload,2,sample);
+            }
+            else if(this.trace.equals("lux"))
+            {
+                // SFLOAT with a 4-bit exponent and a 12-bit mantissa, as the sensor sends it.
+                int lux=(int)(30000+2000*Math.sin(phase)+random.nextGaussian()*50);
+                int exponent=0;
+                while(lux>0x0FFF)
+                {
+                    lux>>=1;
+                    exponent++;
+                }
+                sample.set(SensorTagDecoder.sfloatToLux(exponent<<12|lux));
+            }
+            else
+            {
+                payload=new byte[4];
+                putShort(payload,0,(int)(3200+random.nextGaussian()*8));
+                putShort(payload,2,(int)(3040+100*Math.sin(phase)));
+                SensorTagDecoder.decodeIrTemperature(payload,sample);
+            }
+            this.timestamps[i]=timestamp;
+            for(int j=0;j<this.width;j++)
+                this.values[i*this.width+j]=(float)sample.values[j];
+            timestamp+=100+random.nextInt(3)-1;
+        }
+        int encoded=encode();
+        System.out.printf("%n%s: %d raw bytes, %d encoded, ratio %.2f%n",
+                this.trace,RAW_BYTES,encoded,(double)RAW_BYTES/encoded);
+    }
+
+    private static void putShort(byte[] payload,int offset,int value)
+    {
+        payload[offset]=(byte)value;
+        payload[offset+1]=(byte)(value>>8);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAW_BYTES)
+    public int encode()
+    {
+        return SeriesCodec.encodeBlock(this.timestamps,this.values,0,this.samples,this.width,this.block,0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAW_BYTES)
+    public int decode()
+    {
+        return SeriesCodec.decodeBlock(this.block,0,this.decodedTimestamps,this.decodedValues,0);
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.capstone.alzheimers.sensortagwear.benchmark;
+
+import com.capstone.alzheimers.sensortagwear.core.NotificationListener;
+import com.capstone.alzheimers.sensortagwear.core.SensorDescriptor;
+import com.capstone.alzheimers.sensortagwear.core.StageQueue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one notification through a stage queue, for each shedding policy, over the streams of
+ * 4 tags: movement, keys, magnetometer and lux. keepingUp delivers each notification as it comes,
+ * so it is the hand-over alone. fallingBehind only lets the consumer run once per 4 queues' worth
+ * of notifications, so that most offers shed or conflate: the cost the producer pays when the next
+ * stage stalls.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StageQueueBenchmark
+{
+
+    private final static int DEVICES=4;
+    private final static int CAPACITY=64;
+    private final static UUID[] STREAMS={
+            SensorDescriptor.MOVEMENT.getDataUuid(),
+            SensorDescriptor.KEYS.getDataUuid(),
+            SensorDescriptor.MAGNETOMETER.getDataUuid(),
+            SensorDescriptor.LUXOMETER.getDataUuid()
+    };
+
+    @Param({"DROP_OLDEST","DROP_NEWEST","CONFLATE"})
+    private StageQueue.Policy policy;
+
+    private final String[] addresses=new String[DEVICES];
+    private final byte[] value=new byte[18];
+    private StageQueue keepingUp;
+    private StageQueue fallingBehind;
+    // Drain of fallingBehind, run by the benchmark rather than by the executor.
+    private Runnable pending;
+    private long sequence;
+
+    @Setup
+    public void setUp(final Blackhole blackhole)
+    {
+        for(int i=0;i<DEVICES;i++)
+            this.addresses[i]=String.format("B0:B4:48:C0:5D:%02X",i);
+        NotificationListener listener=new NotificationListener()
+        {
+            @Override
+            public void onNotification(String deviceAddress,UUID characteristicUuid,byte[] value,long timestampNanos,long sequence)
+            {
+                blackhole.consume(sequence);
+            }
+        };
+        this.keepingUp=new StageQueue("keepingUp",this.policy,CAPACITY,new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                command.run();
+            }
+        },listener);
+        this.fallingBehind=new StageQueue("fallingBehind",this.policy,CAPACITY,CAPACITY,new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                StageQueueBenchmark.this.pending=command;
+            }
+        },listener);
+    }
+
+    @Benchmark
+    public boolean keepingUp()
+    {
+        long sequence=this.sequence++;
+        int stream=(int)sequence;
+        return this.keepingUp.offer(this.addresses[(stream>>2)&(DEVICES-1)],STREAMS[stream&3],this.value,
+                sequence,sequence);
+    }
+
+    @Benchmark
+    public boolean fallingBehind()
+    {
+        long sequence=this.sequence++;
+        int stream=(int)sequence;
+        if((stream&(4*CAPACITY-1))==0&&this.pending!=null)
+        {
+            Runnable drain=this.pending;
+            this.pending=null;
+            drain.run();
+        }
+        return this.fallingBehind.offer(this.addresses[(stream>>2)&(DEVICES-1)],STREAMS[stream&3],this.value,
+                sequence,sequence);
+    }
+
+}
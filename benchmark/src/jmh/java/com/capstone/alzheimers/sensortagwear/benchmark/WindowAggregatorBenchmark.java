@@ -0,0 +1,84 @@
+package com.capstone.alzheimers.sensortagwear.benchmark;
+
+import com.capstone.alzheimers.sensortagwear.core.AggregateStore;
+import com.capstone.alzheimers.sensortagwear.core.SampleStore;
+import com.capstone.alzheimers.sensortagwear.core.SensorSample;
+import com.capstone.alzheimers.sensortagwear.core.WindowAggregator;
+import com.capstone.alzheimers.sensortagwear.core.WindowStats;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adding a sample to the 10 s, 1 min and 10 min windows of a stream at 100 ms, once they are
+ * full, for a single value (e.g. humidity) and for the nine of the movement sensor; and reading
+ * the aggregates back. Run with the gc profiler: none of it should allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WindowAggregatorBenchmark
+{
+
+    private final static long PERIOD_MILLIS=100;
+    // Precomputed noisy samples, cycled through.
+    private final static int SAMPLES=4096;
+
+    @Param({"1","9"})
+    private int width;
+
+    private WindowAggregator aggregator;
+    private final SensorSample sample=new SensorSample();
+    private final WindowStats stats=new WindowStats();
+    private double[] values;
+    private long timestamp;
+    private int next;
+
+    @Setup
+    public void setUp()
+    {
+        long[] windows=AggregateStore.DEFAULT_WINDOWS_MILLIS;
+        this.aggregator=new WindowAggregator(windows,
+                SampleStore.capacityFor(windows[windows.length-1],PERIOD_MILLIS),this.width);
+        Random random=new Random(42);
+        this.values=new double[SAMPLES*this.width];
+        for(int i=0;i<this.values.length;i++)
+            this.values[i]=20+random.nextGaussian();
+        this.sample.count=this.width;
+        for(long i=0;i<2*windows[windows.length-1]/PERIOD_MILLIS;i++)
+            add();
+    }
+
+    @Benchmark
+    public void add()
+    {
+        int offset=this.next*this.width;
+        System.arraycopy(this.values,offset,this.sample.values,0,this.width);
+        this.next=(this.next+1)&(SAMPLES-1);
+        this.timestamp+=PERIOD_MILLIS;
+        this.aggregator.add(this.timestamp,this.sample);
+    }
+
+    @Benchmark
+    public double stats()
+    {
+        this.aggregator.getStats(2,0,this.stats);
+        return this.stats.variance;
+    }
+
+    @Benchmark
+    public double percentile()
+    {
+        return this.aggregator.getQuantile(2,0,0.9);
+    }
+
+}
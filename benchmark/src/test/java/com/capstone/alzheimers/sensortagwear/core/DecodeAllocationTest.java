@@ -0,0 +1,250 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Decoding runs for every notification, so it must not allocate: each decoder, and the period
+ * controller fed by every decoded sample, is run until compiled and then checked to leave the bytes
+ * allocated by the thread unchanged.
+ *
+ * A round can still count a few bytes that are not the code's, e.g. while the JIT replaces a loop
+ * being run, so the check is that at least one of several rounds allocates nothing. Code that does
+ * allocate does so in every round.
+ */
+public class DecodeAllocationTest
+{
+
+    private final static int WARM_UP=20000;
+    private final static int DECODES=10000;
+    private final static int ROUNDS=10;
+
+    private static com.sun.management.ThreadMXBean threads;
+
+    private final byte[] value={(byte)0x5C,0x0B,(byte)0xA4,0x0C,0x10,0x27,0x33,(byte)0xF0,0x12,0x00,
+            (byte)0x80,0x01,(byte)0xFF,0x7F,0x00,(byte)0x80,0x22,0x11};
+    private final byte[] calibration={(byte)0xB6,(byte)0xBD,(byte)0xA8,0x6A,(byte)0xC5,(byte)0x80,(byte)0xB9,0x3A,
+            (byte)0x80,0x2A,(byte)0xA6,(byte)0xEA,0x30,(byte)0xBE,(byte)0x8A,(byte)0xEA};
+    private final long[] coefficients=new long[8];
+    private final SensorSample sample=new SensorSample();
+
+    @BeforeClass
+    public static void setUpClass()
+    {
+        Object bean=ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threads=(com.sun.management.ThreadMXBean)bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    private static long allocatedBytes()
+    {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void assertNoAllocation(String name,Runnable decode)
+    {
+        for(int i=0;i<WARM_UP;i++)
+            decode.run();
+        long least=Long.MAX_VALUE;
+        for(int round=0;round<ROUNDS&&least>0;round++)
+        {
+            long before=allocatedBytes();
+            for(int i=0;i<DECODES;i++)
+                decode.run();
+            least=Math.min(least,allocatedBytes()-before);
+        }
+        assertEquals(name+" allocated bytes over "+DECODES+" decodes, least of "+ROUNDS+" rounds",0,least);
+    }
+
+    @Test
+    public void irTemperature()
+    {
+        assertNoAllocation("decodeIrTemperature",new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                SensorTagDecoder.decodeIrTemperature(value,sample);
+            }
+        });
+    }
+
+    @Test
+    public void irTemperatureTmp006()
+    {
+        assertNoAllocation("decodeIrTemperatureTmp006",new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                SensorTagDecoder.decodeIrTemperatureTmp006(value,sample);
+            }
+        });
+    }
+
+    @Test
+    public void humidity()
+    {
+        assertNoAllocation("decodeHumidity",new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                SensorTagDecoder.decodeHumidity(value,sample);
+            }
+        });
+    }
+
+    @Test
+    public void humiditySht21()
+    {
+        assertNoAllocation("decodeHumiditySht21",new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                SensorTagDecoder.decodeHumiditySht21(value,sample);
+            }
+        });
+    }
+
+    @Test
+    public void barometer()
+    {
+        assertNoAllocation("decodeBarometer",new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                SensorTagDecoder.decodeBarometer(value,sample);
+            }
+        });
+    }
+
+    @Test
+    public void calibratedBarometer()
+    {
+        assertNoAllocation("parseBarometerCalibration",new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                SensorTagDecoder.parseBarometerCalibration(calibration,coefficients);
+            }
+        });
+        assertNoAllocation("decodeBarometer calibrated",new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                SensorTagDecoder.decodeBarometer(value,coefficients,sample);
+            }
+        });
+    }
+
+    @Test
+    public void accelerometer()
+    {
+        assertNoAllocation("decodeAccelerometer",new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                SensorTagDecoder.decodeAccelerometer(value,sample);
+            }
+        });
+    }
+
+    @Test
+    public void magnetometer()
+    {
+        assertNoAllocation("decodeMagnetometer",new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                SensorTagDecoder.decodeMagnetometer(value,sample);
+            }
+        });
+    }
+
+    @Test
+    public void gyroscope()
+    {
+        assertNoAllocation("decodeGyroscope",new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                SensorTagDecoder.decodeGyroscope(value,sample);
+            }
+        });
+    }
+
+    @Test
+    public void movement()
+    {
+        assertNoAllocation("decodeMovement",new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                SensorTagDecoder.decodeMovement(value,SensorDescriptor.MOVEMENT_ACCELEROMETER_RANGE,sample);
+            }
+        });
+    }
+
+    @Test
+    public void luxometer()
+    {
+        assertNoAllocation("sfloatToLux",new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                sample.set(SensorTagDecoder.sfloatToLux(SensorTagDecoder.shortUnsignedAtOffset(value,0)));
+            }
+        });
+    }
+
+    @Test
+    public void keys()
+    {
+        assertNoAllocation("decodeKeys",new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                SensorTagDecoder.decodeKeys(value,sample);
+            }
+        });
+    }
+
+    @Test
+    public void periodController()
+    {
+        final AdaptivePeriodController controller=new AdaptivePeriodController(
+                SensorDescriptor.HUMIDITY.getDefaultPeriod(),AdaptivePeriodController.MAX_PERIOD,0.2,0);
+        assertNoAllocation("AdaptivePeriodController.update",new Runnable()
+        {
+            private int tick;
+
+            @Override
+            public void run()
+            {
+                // Changes now and then, so that the period both backs off and comes back.
+                value[0]=(byte)((this.tick++>>6)&0x0F);
+                SensorTagDecoder.decodeHumidity(value,sample);
+                controller.update(sample);
+            }
+        });
+    }
+
+}
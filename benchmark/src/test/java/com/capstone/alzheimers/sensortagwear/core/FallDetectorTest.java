@@ -0,0 +1,103 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Synthetic falls and near falls at 100 Hz, with the posture given directly as the direction of
+ * gravity: upright is z, lying on the side is x.
+ */
+public class FallDetectorTest
+{
+
+    private final static long PERIOD_NANOS=TimeUnit.MILLISECONDS.toNanos(10);
+    private final static double[] UPRIGHT={0,0,1};
+    private final static double[] LYING={1,0,0};
+
+    private final FallDetector detector=new FallDetector();
+    private long now=TimeUnit.SECONDS.toNanos(1);
+    private int falls;
+    private int impacts;
+
+    /**
+     * Feeds samples for the time, all alike.
+     */
+    private void feed(long millis,double accelerationG,double rotation,double[] gravity)
+    {
+        for(long t=0;t<millis;t+=10)
+        {
+            FallDetector.Event event=this.detector.update(this.now,accelerationG,rotation,gravity);
+            if(event==FallDetector.Event.FALL)
+                this.falls++;
+            else if(event==FallDetector.Event.IMPACT)
+                this.impacts++;
+            this.now+=PERIOD_NANOS;
+        }
+    }
+
+    private void assertEvents(int falls,int impacts)
+    {
+        assertEquals("falls",falls,this.falls);
+        assertEquals("impacts",impacts,this.impacts);
+    }
+
+    @Test
+    public void freeFallImpactThenStillTiltedIsAFall()
+    {
+        feed(1000,1,0,UPRIGHT);
+        feed(300,0.2,50,UPRIGHT);
+        feed(20,3,200,UPRIGHT);
+        feed(400,1.5,150,LYING);
+        feed(2000,1,5,LYING);
+        assertEvents(0,0);
+        feed(500,1,5,LYING);
+        assertEvents(1,0);
+        assertEquals(90,this.detector.getTiltDegrees(),1);
+        assertEquals(3,this.detector.getImpactG(),0.01);
+    }
+
+    @Test
+    public void impactThenUprightIsAnImpact()
+    {
+        feed(1000,1,0,UPRIGHT);
+        feed(300,0.2,50,UPRIGHT);
+        feed(20,3,200,UPRIGHT);
+        feed(3000,1,5,UPRIGHT);
+        assertEvents(0,1);
+        assertEquals(0,this.detector.getTiltDegrees(),1);
+    }
+
+    @Test
+    public void hardImpactWithoutFreeFall()
+    {
+        feed(1000,1,0,UPRIGHT);
+        feed(20,4,200,UPRIGHT);
+        feed(3000,1,5,LYING);
+        assertEvents(1,0);
+    }
+
+    @Test
+    public void softImpactWithoutFreeFallIsNothing()
+    {
+        feed(1000,1,0,UPRIGHT);
+        feed(20,3,200,UPRIGHT);
+        feed(3000,1,5,LYING);
+        assertEvents(0,0);
+    }
+
+    @Test
+    public void freeFallWithoutImpactTimesOut()
+    {
+        feed(1000,1,0,UPRIGHT);
+        feed(100,0.3,20,UPRIGHT);
+        // No impact within the window: back to monitoring, so a later soft impact is nothing.
+        feed(FallDetector.IMPACT_WINDOW_MILLIS+500,1,0,UPRIGHT);
+        feed(20,3,200,UPRIGHT);
+        feed(3000,1,5,LYING);
+        assertEvents(0,0);
+    }
+
+}
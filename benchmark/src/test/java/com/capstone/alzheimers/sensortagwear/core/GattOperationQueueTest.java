@@ -0,0 +1,166 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A barrier reports how the operations before it went, so that a failed configuration is not
+ * taken for a ready device, and the late acknowledgement of a timed out write does not complete
+ * the next write to the same characteristic.
+ */
+public class GattOperationQueueTest
+{
+
+    private final static UUID FIRST=UUID.fromString("f000aa02-0451-4000-b000-000000000000");
+    private final static UUID SECOND=UUID.fromString("f000aa22-0451-4000-b000-000000000000");
+
+    private final ScheduledExecutorService timer=Executors.newSingleThreadScheduledExecutor();
+    private final GattOperationQueue queue=new GattOperationQueue(this.timer);
+
+    @After
+    public void tearDown()
+    {
+        this.timer.shutdownNow();
+    }
+
+    private void write(UUID uuid,final boolean accepted)
+    {
+        this.queue.enqueue(new GattOperation(GattOperation.Type.WRITE_CHARACTERISTIC,uuid,
+                GattOperationQueue.DEFAULT_TIMEOUT_MILLIS,null)
+        {
+            @Override
+            protected boolean start()
+            {
+                return accepted;
+            }
+        });
+    }
+
+    /**
+     * Queues an accepted write, whose status is -100 until it completes.
+     */
+    private AtomicInteger write(UUID uuid,long timeoutMillis)
+    {
+        final AtomicInteger status=new AtomicInteger(-100);
+        this.queue.enqueue(new GattOperation(GattOperation.Type.WRITE_CHARACTERISTIC,uuid,timeoutMillis,
+                new GattOperation.Callback()
+        {
+            @Override
+            public void onComplete(GattOperation operation,int completed)
+            {
+                status.set(completed);
+            }
+        })
+        {
+            @Override
+            protected boolean start()
+            {
+                return true;
+            }
+        });
+        return status;
+    }
+
+    private static void awaitStatus(AtomicInteger status,int expected) throws InterruptedException
+    {
+        for(int i=0;i<200&&status.get()!=expected;i++)
+            Thread.sleep(10);
+        assertEquals(expected,status.get());
+    }
+
+    /**
+     * Queues a barrier, whose status is -100 until it completes.
+     */
+    private AtomicInteger barrier()
+    {
+        final AtomicInteger status=new AtomicInteger(-100);
+        this.queue.enqueueBarrier(new GattOperation.Callback()
+        {
+            @Override
+            public void onComplete(GattOperation operation,int completed)
+            {
+                status.set(completed);
+            }
+        });
+        return status;
+    }
+
+    @Test
+    public void barrierSucceedsAfterSuccesses()
+    {
+        write(FIRST,true);
+        write(SECOND,true);
+        AtomicInteger status=barrier();
+        assertEquals(-100,status.get());
+        this.queue.onComplete(GattOperation.Type.WRITE_CHARACTERISTIC,FIRST,GattOperation.STATUS_SUCCESS);
+        assertEquals(-100,status.get());
+        this.queue.onComplete(GattOperation.Type.WRITE_CHARACTERISTIC,SECOND,GattOperation.STATUS_SUCCESS);
+        assertEquals(GattOperation.STATUS_SUCCESS,status.get());
+    }
+
+    @Test
+    public void barrierReportsFirstFailure()
+    {
+        write(FIRST,true);
+        write(SECOND,true);
+        AtomicInteger status=barrier();
+        // 133: GATT_ERROR.
+        this.queue.onComplete(GattOperation.Type.WRITE_CHARACTERISTIC,FIRST,133);
+        this.queue.onComplete(GattOperation.Type.WRITE_CHARACTERISTIC,SECOND,GattOperation.STATUS_SUCCESS);
+        assertEquals(133,status.get());
+    }
+
+    @Test
+    public void barrierReportsRefusal()
+    {
+        write(FIRST,false);
+        AtomicInteger status=barrier();
+        assertEquals(GattOperation.STATUS_NOT_STARTED,status.get());
+    }
+
+    @Test
+    public void barrierCoversOperationsSinceThePreviousOne()
+    {
+        write(FIRST,false);
+        AtomicInteger first=barrier();
+        write(SECOND,true);
+        AtomicInteger second=barrier();
+        this.queue.onComplete(GattOperation.Type.WRITE_CHARACTERISTIC,SECOND,GattOperation.STATUS_SUCCESS);
+        assertEquals(GattOperation.STATUS_NOT_STARTED,first.get());
+        assertEquals(GattOperation.STATUS_SUCCESS,second.get());
+    }
+
+    @Test
+    public void lateAcknowledgementDoesNotCompleteTheNextWrite() throws InterruptedException
+    {
+        AtomicInteger first=write(FIRST,50);
+        AtomicInteger second=write(FIRST,GattOperationQueue.DEFAULT_TIMEOUT_MILLIS);
+        awaitStatus(first,GattOperation.STATUS_TIMEOUT);
+        // 133: GATT_ERROR, for the write that timed out.
+        assertFalse(this.queue.onComplete(GattOperation.Type.WRITE_CHARACTERISTIC,FIRST,133));
+        assertEquals(-100,second.get());
+        assertTrue(this.queue.onComplete(GattOperation.Type.WRITE_CHARACTERISTIC,FIRST,GattOperation.STATUS_SUCCESS));
+        assertEquals(GattOperation.STATUS_SUCCESS,second.get());
+    }
+
+    @Test
+    public void disconnectionForgetsTimedOutWrites() throws InterruptedException
+    {
+        AtomicInteger first=write(FIRST,50);
+        awaitStatus(first,GattOperation.STATUS_TIMEOUT);
+        this.queue.cancelAll();
+        AtomicInteger second=write(FIRST,GattOperationQueue.DEFAULT_TIMEOUT_MILLIS);
+        assertTrue(this.queue.onComplete(GattOperation.Type.WRITE_CHARACTERISTIC,FIRST,GattOperation.STATUS_SUCCESS));
+        assertEquals(GattOperation.STATUS_SUCCESS,second.get());
+    }
+
+}
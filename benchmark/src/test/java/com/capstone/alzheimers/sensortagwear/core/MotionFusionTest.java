@@ -0,0 +1,81 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The orientation filter between the samples and the fall detector: after a gap in the samples,
+ * the posture is taken again from the accelerometer rather than converged to.
+ */
+public class MotionFusionTest
+{
+
+    private final static String ADDRESS="B0:B4:48:C0:5D:00";
+    private final static long PERIOD_NANOS=TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final MotionFusion fusion=new MotionFusion(new MetricsRegistry());
+    private final SensorSample sample=new SensorSample();
+    private long now=TimeUnit.SECONDS.toNanos(1);
+    private FallDetector.Event last=FallDetector.Event.NONE;
+    private double tilt;
+
+    /**
+     * Feeds still samples with the acceleration for the time, keeping the last event.
+     */
+    private void feed(long millis,double ax,double ay,double az)
+    {
+        this.sample.count=9;
+        this.sample.values[0]=ax;
+        this.sample.values[1]=ay;
+        this.sample.values[2]=az;
+        for(long t=0;t<millis;t+=10)
+        {
+            FallDetector.Event event=this.fusion.update(ADDRESS,this.now,this.sample);
+            if(event!=FallDetector.Event.NONE)
+                this.last=event;
+            this.now+=PERIOD_NANOS;
+        }
+    }
+
+    /**
+     * Upright, then a hard impact, then lying on the side, with a gap of the given length while
+     * the tag turned over.
+     */
+    private void fallWithGap(long gapMillis)
+    {
+        this.fusion.setListener(new MotionFusion.Listener()
+        {
+            @Override
+            public void onMotionEvent(String address,FallDetector.Event event,FallDetector detector)
+            {
+                tilt=detector.getTiltDegrees();
+            }
+        });
+        feed(1000,0,0,1);
+        feed(20,0,0,4);
+        this.now+=TimeUnit.MILLISECONDS.toNanos(gapMillis);
+        feed(3000,1,0,0);
+    }
+
+    @Test
+    public void gapStartsTheOrientationOver()
+    {
+        fallWithGap(MotionFusion.MAX_GAP_MILLIS+500);
+        assertEquals(FallDetector.Event.FALL,this.last);
+        assertEquals(90,this.tilt,5);
+    }
+
+    @Test
+    public void withoutGapTheOrientationConverges()
+    {
+        // The posture jumps with no rotation measured: the filter only follows it slowly.
+        fallWithGap(0);
+        assertEquals(FallDetector.Event.IMPACT,this.last);
+        assertTrue("tilt "+this.tilt,this.tilt<FallDetector.FALL_TILT_DEGREES);
+    }
+
+}
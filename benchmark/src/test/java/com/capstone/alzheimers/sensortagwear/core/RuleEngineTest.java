@@ -0,0 +1,193 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Matching of rules on key presses of several tags: a key is pressed while its value is 1. Times
+ * are in UTC from the epoch, and absences are given a tick of the wheel to expire.
+ */
+public class RuleEngineTest
+{
+
+    private final static UUID KEYS=SensorDescriptor.KEYS.getDataUuid();
+    private final static long TICK=RuleEngine.DEFAULT_TICK_MILLIS;
+    private final static long HOUR=60*60*1000;
+
+    private final RuleEngine engine=new RuleEngine(null,TimeZone.getTimeZone("UTC"),0);
+    // Rule name and timestamp of each match.
+    private final List<String> matches=new ArrayList<String>();
+    private final SensorSample sample=new SensorSample();
+
+    @Before
+    public void setUp()
+    {
+        this.engine.setListener(new RuleEngine.Listener()
+        {
+            @Override
+            public void onRuleMatched(Rule rule,long timestamp)
+            {
+                matches.add(rule.getName()+"@"+timestamp);
+            }
+        });
+    }
+
+    private static Rule.Condition pressed(String address)
+    {
+        return Rule.Condition.value(address,SensorDescriptor.KEYS,0,Rule.Comparison.ABOVE,0.5);
+    }
+
+    private void key(String address,long timestamp,boolean pressed)
+    {
+        this.sample.set(pressed?1:0);
+        this.engine.onSample(address,KEYS,timestamp,this.sample);
+    }
+
+    /**
+     * Presses and releases the key.
+     */
+    private void press(String address,long timestamp)
+    {
+        key(address,timestamp,true);
+        key(address,timestamp+10,false);
+    }
+
+    /**
+     * The matches so far, in any order: the rules matched by one sample come in no given order.
+     */
+    private void assertMatches(String... expected)
+    {
+        List<String> sorted=new ArrayList<String>(Arrays.asList(expected));
+        Collections.sort(sorted);
+        List<String> matched=new ArrayList<String>(this.matches);
+        Collections.sort(matched);
+        assertEquals(sorted,matched);
+    }
+
+    @Test
+    public void whenThenWithoutLimit()
+    {
+        this.engine.add(new Rule("ab").when(pressed("A")).then(pressed("B"),0));
+        press("B",1000);
+        assertMatches();
+        press("A",2000);
+        press("B",10*HOUR);
+        assertMatches("ab@"+10*HOUR);
+        // Starts over: B alone again does not match.
+        press("B",11*HOUR);
+        assertMatches("ab@"+10*HOUR);
+    }
+
+    @Test
+    public void whenThenWithinLimit()
+    {
+        this.engine.add(new Rule("ab").when(pressed("A")).then(pressed("B"),5000));
+        press("A",1000);
+        press("B",7000);
+        assertMatches();
+        press("A",10000);
+        press("B",14000);
+        assertMatches("ab@14000");
+    }
+
+    @Test
+    public void absenceFailsWhenTheConditionHolds()
+    {
+        this.engine.add(new Rule("a, no b").when(pressed("A")).absent(pressed("B"),5000));
+        press("A",1000);
+        press("B",3000);
+        this.engine.advance(20000);
+        assertMatches();
+    }
+
+    @Test
+    public void absenceExpiresThroughAdvance()
+    {
+        this.engine.add(new Rule("a, no b").when(pressed("A")).absent(pressed("B"),5000));
+        press("A",1000);
+        this.engine.advance(5000);
+        assertMatches();
+        this.engine.advance(6000+TICK);
+        assertMatches("a, no b@6000");
+        // One match per start.
+        this.engine.advance(20000);
+        assertMatches("a, no b@6000");
+    }
+
+    @Test
+    public void firstAbsenceRearms()
+    {
+        this.engine.add(new Rule("no a").absent(pressed("A"),5000));
+        this.engine.advance(5000+TICK);
+        assertMatches("no a@5000");
+        this.engine.advance(10000+TICK);
+        assertMatches("no a@5000","no a@10000");
+        // A press starts the absence over from then.
+        press("A",12000);
+        this.engine.advance(16000);
+        assertMatches("no a@5000","no a@10000");
+        this.engine.advance(17000+TICK);
+        assertMatches("no a@5000","no a@10000","no a@17000");
+    }
+
+    @Test
+    public void betweenAcrossMidnight()
+    {
+        this.engine.add(new Rule("night").between(22*60,6*60).when(pressed("A")));
+        press("A",21*HOUR);
+        press("A",23*HOUR);
+        press("A",12*HOUR+24*HOUR);
+        press("A",1*HOUR+48*HOUR);
+        press("A",6*HOUR+48*HOUR);
+        assertMatches("night@"+23*HOUR,"night@"+(1*HOUR+48*HOUR));
+    }
+
+    @Test
+    public void conditionSharedByRules()
+    {
+        this.engine.add(new Rule("a").when(pressed("A")));
+        this.engine.add(new Rule("ab").when(pressed("A")).then(pressed("B"),0));
+        this.engine.add(new Rule("ba").when(pressed("B")).then(pressed("A"),0));
+        assertEquals(2,this.engine.getConditionCount());
+        press("A",1000);
+        assertMatches("a@1000");
+        press("B",2000);
+        assertMatches("a@1000","ab@2000");
+        press("A",3000);
+        assertMatches("a@1000","ab@2000","a@3000","ba@3000");
+    }
+
+    /**
+     * Three rules wait on C; the first and then the last leave its list, each replaced by the last
+     * one, and C must still step exactly those left waiting.
+     */
+    @Test
+    public void runsLeavingTheWaitingList()
+    {
+        this.engine.add(new Rule("ac").when(pressed("A")).then(pressed("C"),1000));
+        this.engine.add(new Rule("bc").when(pressed("B")).then(pressed("C"),0));
+        this.engine.add(new Rule("dc").when(pressed("D")).then(pressed("C"),0));
+        press("A",1000);
+        press("B",1100);
+        press("D",1200);
+        // ac times out, dc takes its place.
+        this.engine.advance(3000);
+        // dc starts over, bc takes its place.
+        press("D",4000);
+        press("C",5000);
+        assertMatches("bc@5000","dc@5000");
+        // All back at their first step.
+        press("C",6000);
+        assertMatches("bc@5000","dc@5000");
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reads of the history, alone and while the writer laps the readers.
+ */
+public class SampleRingBufferTest
+{
+
+    private final static int WIDTH=SensorSample.MAX_VALUES;
+
+    /**
+     * Every value of a sample is its timestamp, modulo what a float holds exactly.
+     */
+    private static void set(SensorSample sample,long timestamp)
+    {
+        for(int i=0;i<WIDTH;i++)
+            sample.values[i]=timestamp%(1<<20)+i;
+        sample.count=WIDTH;
+    }
+
+    private static boolean whole(long timestamp,float[] values,int offset)
+    {
+        for(int i=0;i<WIDTH;i++)
+        {
+            if(values[offset+i]!=timestamp%(1<<20)+i)
+                return false;
+        }
+        return true;
+    }
+
+    @Test
+    public void readsBackWhatWasWritten()
+    {
+        SampleRingBuffer buffer=new SampleRingBuffer(8,WIDTH);
+        SensorSample sample=new SensorSample();
+        for(long timestamp=1;timestamp<=20;timestamp++)
+        {
+            set(sample,timestamp);
+            buffer.add(timestamp,sample);
+        }
+        assertEquals(20,buffer.latest(sample));
+        long[] timestamps=new long[16];
+        float[] values=new float[16*WIDTH];
+        // The slot of the next sample is not readable: 7 of 8 are.
+        int count=buffer.snapshot(timestamps,values);
+        assertEquals(7,count);
+        for(int i=0;i<count;i++)
+        {
+            assertEquals(14+i,timestamps[i]);
+            assertTrue(whole(timestamps[i],values,i*WIDTH));
+        }
+        count=buffer.read(16,19,timestamps,values);
+        assertEquals(3,count);
+        assertEquals(16,timestamps[0]);
+        assertTrue(whole(18,values,2*WIDTH));
+    }
+
+    @Test
+    public void readersNeverSeeTornSamples() throws InterruptedException
+    {
+        final SampleRingBuffer buffer=new SampleRingBuffer(16,WIDTH);
+        final AtomicBoolean stop=new AtomicBoolean();
+        final AtomicReference<String> torn=new AtomicReference<String>();
+        Thread writer=new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                SensorSample sample=new SensorSample();
+                for(long timestamp=1;!stop.get();timestamp++)
+                {
+                    set(sample,timestamp);
+                    buffer.add(timestamp,sample);
+                }
+            }
+        });
+        Thread[] readers=new Thread[2];
+        for(int r=0;r<readers.length;r++)
+        {
+            readers[r]=new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    SensorSample sample=new SensorSample();
+                    long[] timestamps=new long[16];
+                    float[] values=new float[16*WIDTH];
+                    float[] latest=new float[WIDTH];
+                    while(!stop.get())
+                    {
+                        int count=buffer.snapshot(timestamps,values);
+                        for(int i=0;i<count;i++)
+                        {
+                            if(!whole(timestamps[i],values,i*WIDTH)||i>0&&timestamps[i]!=timestamps[i-1]+1)
+                                torn.compareAndSet(null,"snapshot at "+timestamps[i]);
+                        }
+                        long timestamp=buffer.latest(sample);
+                        if(timestamp<0)
+                            continue;
+                        for(int i=0;i<WIDTH;i++)
+                            latest[i]=(float)sample.values[i];
+                        if(!whole(timestamp,latest,0))
+                            torn.compareAndSet(null,"latest at "+timestamp);
+                    }
+                }
+            });
+        }
+        writer.start();
+        for(Thread reader:readers)
+            reader.start();
+        Thread.sleep(500);
+        stop.set(true);
+        writer.join();
+        for(Thread reader:readers)
+            reader.join();
+        assertTrue(buffer.getWriteCount()>0);
+        assertNull(torn.get());
+    }
+
+}
@@ -0,0 +1,145 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Known byte vectors of every decoder, including the sensors that differ between the CC2650 and
+ * the CC2541, which share the UUIDs but not the chips.
+ */
+public class SensorTagDecoderTest
+{
+
+    private final static double DELTA=1E-4;
+
+    private final SensorSample sample=new SensorSample();
+
+    private static byte[] bytes(int... values)
+    {
+        byte[] bytes=new byte[values.length];
+        for(int i=0;i<values.length;i++)
+            bytes[i]=(byte)values[i];
+        return bytes;
+    }
+
+    private void assertSample(double... expected)
+    {
+        assertEquals(expected.length,this.sample.count);
+        for(int i=0;i<expected.length;i++)
+            assertEquals("value "+i,expected[i],this.sample.get(i),DELTA);
+    }
+
+    @Test
+    public void irTemperatureTmp007()
+    {
+        // Object 0x0C80, ambient 0x0B40: 14 bits of 1/32 C.
+        SensorTagDecoder.decodeIrTemperature(bytes(0x80,0x0C,0x40,0x0B),this.sample);
+        assertSample(22.5,25.0);
+    }
+
+    @Test
+    public void irTemperatureTmp006()
+    {
+        // Thermopile -200, ambient 3200/128 C.
+        SensorTagDecoder.decodeIrTemperatureTmp006(bytes(0x38,0xFF,0x80,0x0C),this.sample);
+        assertSample(25.0,24.687511);
+        // Thermopile 400, ambient 2560/128 C: warmer object.
+        SensorTagDecoder.decodeIrTemperatureTmp006(bytes(0x90,0x01,0x00,0x0A),this.sample);
+        assertSample(20.0,34.787547);
+    }
+
+    @Test
+    public void humidityHdc1000()
+    {
+        // Temperature 0x8000, humidity 0x8003 with both status bits set.
+        SensorTagDecoder.decodeHumidity(bytes(0x00,0x80,0x03,0x80),this.sample);
+        assertSample(42.5,50.0);
+    }
+
+    @Test
+    public void humiditySht21()
+    {
+        // Temperature 0x6666 and humidity 0x8002, status bits cleared first.
+        SensorTagDecoder.decodeHumiditySht21(bytes(0x66,0x66,0x02,0x80),this.sample);
+        assertSample(23.431565,56.5);
+    }
+
+    @Test
+    public void barometerBmp280()
+    {
+        // 2500 then 101325, 24 bits each.
+        SensorTagDecoder.decodeBarometer(bytes(0xC4,0x09,0x00,0xCD,0x8B,0x01),this.sample);
+        assertSample(25.0,1013.25);
+    }
+
+    @Test
+    public void barometerT5400()
+    {
+        // c1..c4 45000, 50000, 28000, 4000, c5..c8 30000, -3000, 2000, -7700.
+        long[] coefficients=new long[8];
+        SensorTagDecoder.parseBarometerCalibration(bytes(0xC8,0xAF,0x50,0xC3,0x60,0x6D,0xA0,0x0F,
+                0x30,0x75,0x48,0xF4,0xD0,0x07,0xEC,0xE1),coefficients);
+        assertArrayEquals(new long[]{45000,50000,28000,4000,30000,-3000,2000,-7700},coefficients);
+        // Temperature -10000, pressure 61000.
+        SensorTagDecoder.decodeBarometer(bytes(0xF0,0xD8,0x48,0xEE),coefficients,this.sample);
+        assertSample(22.006035,1005.197522);
+    }
+
+    @Test
+    public void movementMpu9250()
+    {
+        // Gyroscope 1000, -2000, 300, accelerometer 8192, -16384, 4096, magnetometer 100, -200, 300.
+        byte[] value=bytes(0xE8,0x03,0x30,0xF8,0x2C,0x01,0x00,0x20,0x00,0xC0,0x00,0x10,0x64,0x00,0x38,0xFF,
+                0x2C,0x01);
+        SensorTagDecoder.decodeMovement(value,4,this.sample);
+        assertSample(1.0,-2.0,0.5,7.629395,-15.258789,2.288818,14.990234,-29.980469,44.970703);
+        // The accelerometer range only scales the accelerometer.
+        SensorTagDecoder.decodeMovement(value,8,this.sample);
+        assertSample(2.0,-4.0,1.0,7.629395,-15.258789,2.288818,14.990234,-29.980469,44.970703);
+    }
+
+    @Test
+    public void accelerometerKxtj9()
+    {
+        SensorTagDecoder.decodeAccelerometer(bytes(32,-64,16),this.sample);
+        assertSample(0.5,-1.0,-0.25);
+    }
+
+    @Test
+    public void magnetometerMag3110()
+    {
+        // 1000, -2000, 3000.
+        SensorTagDecoder.decodeMagnetometer(bytes(0xE8,0x03,0x30,0xF8,0xB8,0x0B),this.sample);
+        assertSample(-30.517578,61.035156,91.552734);
+    }
+
+    @Test
+    public void gyroscopeImu3000()
+    {
+        // 1000, -2000, 3000, as y, x, z.
+        SensorTagDecoder.decodeGyroscope(bytes(0xE8,0x03,0x30,0xF8,0xB8,0x0B),this.sample);
+        assertSample(-15.258789,-7.629395,22.888184);
+    }
+
+    @Test
+    public void luxometerSfloat()
+    {
+        // Mantissa 0xABC, exponent 2.
+        assertEquals(109.92,SensorTagDecoder.sfloatToLux(0x2ABC),DELTA);
+        // Largest exponent.
+        assertEquals(327.68,SensorTagDecoder.sfloatToLux(0xF001),DELTA);
+        assertEquals(0,SensorTagDecoder.sfloatToLux(0),DELTA);
+    }
+
+    @Test
+    public void keys()
+    {
+        SensorTagDecoder.decodeKeys(bytes(0x05),this.sample);
+        assertSample(1,0,1);
+        SensorTagDecoder.decodeKeys(bytes(0x02),this.sample);
+        assertSample(0,1,0);
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The headless pipeline under load, as in LoadSimulation but with bounds: simulated tags are
+ * brought up and stream at 50 Hz per sensor to a single consumer thread, and every tag must reach
+ * READY, almost every notification sent must arrive, and the latency from the transport to the
+ * consumer must stay well under a notification period.
+ */
+public class SimulatedLoadTest
+{
+
+    private final static int TAGS=16;
+    // 20 ms, in tens of milliseconds.
+    private final static byte PERIOD=2;
+    private final static long STREAM_MILLIS=2000;
+    private final static long BRING_UP_TIMEOUT_SECONDS=30;
+    // At most 1% of the notifications lost, p99 latency under 20 ms.
+    private final static double MAX_LOSS=0.01;
+    private final static long MAX_P99_NANOS=TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final ScheduledExecutorService scheduler=Executors.newScheduledThreadPool(2);
+    private final ExecutorService consumer=Executors.newSingleThreadExecutor();
+    // Consumer thread only, read once it has stopped.
+    private final LogHistogram latency=new LogHistogram();
+    private long received;
+
+    @After
+    public void tearDown()
+    {
+        this.consumer.shutdownNow();
+        this.scheduler.shutdownNow();
+    }
+
+    @Test
+    public void tagsReachReadyAndStreamWithinBounds() throws InterruptedException
+    {
+        // A tenth of the default delays, so that the test brings up quickly.
+        SimulatedGattTransport simulator=new SimulatedGattTransport(this.scheduler,
+                SimulatedGattTransport.DEFAULT_CONNECT_MICROS/10,SimulatedGattTransport.DEFAULT_DISCOVERY_MICROS/10,
+                SimulatedGattTransport.DEFAULT_ACK_MICROS/10);
+        SensorTagEngine engine=new SensorTagEngine(simulator,this.scheduler);
+        List<String> addresses=simulator.addTags(TAGS);
+        engine.addNotificationListener(new NotificationListener()
+        {
+            @Override
+            public void onNotification(String deviceAddress,UUID characteristicUuid,byte[] value,long timestampNanos,long sequence)
+            {
+                latency.record(System.nanoTime()-timestampNanos);
+                received++;
+            }
+        },this.consumer);
+
+        final CountDownLatch done=new CountDownLatch(TAGS);
+        final AtomicInteger ready=new AtomicInteger();
+        engine.bringUp(addresses,ConnectionOrchestrator.DEFAULT_MAX_CONCURRENT,new SensorTagConfigurator(engine,PERIOD),null,
+                new ConnectionOrchestrator.ProgressListener()
+        {
+            @Override
+            public void onProgress(String address,ConnectionOrchestrator.Stage stage)
+            {
+                if(stage==ConnectionOrchestrator.Stage.READY)
+                    ready.incrementAndGet();
+                if(stage==ConnectionOrchestrator.Stage.READY||stage==ConnectionOrchestrator.Stage.FAILED)
+                    done.countDown();
+            }
+        });
+        assertTrue("bring-up timed out",done.await(BRING_UP_TIMEOUT_SECONDS,TimeUnit.SECONDS));
+        assertEquals("tags ready",TAGS,ready.get());
+
+        // Steady state only.
+        runOnConsumer(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                latency.reset();
+                received=0;
+            }
+        });
+        long sentBefore=simulator.getNotificationsSent();
+        Thread.sleep(STREAM_MILLIS);
+        long sent=simulator.getNotificationsSent()-sentBefore;
+        engine.close();
+        runOnConsumer(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+            }
+        });
+
+        // 5 streams per tag.
+        long expected=TAGS*5*STREAM_MILLIS/(PERIOD*10);
+        assertTrue("sent "+sent+" of "+expected,sent>=expected/2);
+        double loss=Math.max(0,sent-this.received)/(double)sent;
+        assertTrue("lost "+(sent-this.received)+" of "+sent,loss<=MAX_LOSS);
+        long p99=this.latency.getPercentile(0.99);
+        assertTrue("p99 latency "+p99+" ns",p99<=MAX_P99_NANOS);
+    }
+
+    /**
+     * Runs the task on the consumer after every notification queued before it.
+     */
+    private void runOnConsumer(Runnable task) throws InterruptedException
+    {
+        final CountDownLatch latch=new CountDownLatch(1);
+        final Runnable run=task;
+        this.consumer.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                run.run();
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(10,TimeUnit.SECONDS));
+    }
+
+}
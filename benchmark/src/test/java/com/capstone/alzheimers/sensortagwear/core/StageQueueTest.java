@@ -0,0 +1,96 @@
+package com.capstone.alzheimers.sensortagwear.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Delivery order and shedding of a stage queue whose consumer only runs when the test drains it.
+ */
+public class StageQueueTest
+{
+
+    private final static String ADDRESS="B0:B4:48:C0:5D:00";
+    private final static UUID HIGH=SensorDescriptor.MOVEMENT.getDataUuid();
+    private final static UUID NORMAL=SensorDescriptor.MAGNETOMETER.getDataUuid();
+    private final static UUID LOW=SensorDescriptor.LUXOMETER.getDataUuid();
+
+    private final List<Long> delivered=new ArrayList<Long>();
+    private Runnable pending;
+    private long offered;
+
+    private StageQueue queue(StageQueue.Order order,int capacity)
+    {
+        return new StageQueue("test",StageQueue.Policy.DROP_OLDEST,order,capacity,StageQueue.DEFAULT_BATCH,new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                pending=command;
+            }
+        },new NotificationListener()
+        {
+            @Override
+            public void onNotification(String deviceAddress,UUID characteristicUuid,byte[] value,long timestampNanos,long sequence)
+            {
+                delivered.add(sequence);
+            }
+        });
+    }
+
+    /**
+     * Offers the streams in turn, the sequence numbers counting the offers.
+     */
+    private void offer(StageQueue queue,UUID... streams)
+    {
+        for(UUID stream:streams)
+            queue.offer(ADDRESS,stream,new byte[2],0,this.offered++);
+    }
+
+    private void drain()
+    {
+        while(this.pending!=null)
+        {
+            Runnable drain=this.pending;
+            this.pending=null;
+            drain.run();
+        }
+    }
+
+    @Test
+    public void priorityOrderDeliversHighestFirst()
+    {
+        StageQueue queue=queue(StageQueue.Order.PRIORITY,16);
+        offer(queue,LOW,NORMAL,HIGH,LOW,HIGH);
+        drain();
+        assertEquals(Arrays.asList(2L,4L,1L,0L,3L),this.delivered);
+    }
+
+    @Test
+    public void arrivalOrderDeliversAsOffered()
+    {
+        StageQueue queue=queue(StageQueue.Order.ARRIVAL,16);
+        offer(queue,LOW,NORMAL,HIGH,LOW,HIGH);
+        drain();
+        assertEquals(Arrays.asList(0L,1L,2L,3L,4L),this.delivered);
+    }
+
+    @Test
+    public void arrivalOrderShedsByPriority()
+    {
+        StageQueue queue=queue(StageQueue.Order.ARRIVAL,3);
+        // Full at the 4th: the oldest low goes, then the only low left, then the normal.
+        offer(queue,HIGH,LOW,NORMAL,LOW,HIGH,HIGH);
+        drain();
+        assertEquals(Arrays.asList(0L,4L,5L),this.delivered);
+        assertEquals(2,queue.getDroppedCount(SensorDescriptor.Priority.LOW));
+        assertEquals(1,queue.getDroppedCount(SensorDescriptor.Priority.NORMAL));
+    }
+
+}